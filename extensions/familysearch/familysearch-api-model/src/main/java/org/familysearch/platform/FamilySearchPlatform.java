@@ -16,10 +16,10 @@
 package org.familysearch.platform;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.xml.bind.annotation.XmlElement;
@@ -61,6 +61,7 @@ import org.gedcomx.common.ResourceReference;
 import org.gedcomx.conclusion.Identifier;
 import org.gedcomx.conclusion.Person;
 import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.links.HypermediaEnabledData;
 import org.gedcomx.rt.DefaultNamespace;
 import org.gedcomx.rt.GedcomxConstants;
 import org.gedcomx.rt.GedcomxModelVisitor;
@@ -70,6 +71,7 @@ import org.gedcomx.rt.json.JsonElementWrapper;
 import org.gedcomx.source.SourceDescription;
 import org.gedcomx.types.IdentifierType;
 import org.gedcomx.types.RelationshipType;
+import org.gedcomx.util.LookupIndex;
 
 /**
  * <p>The FamilySearch data types define serialization formats that are specific to the FamilySearch developer platform. These
@@ -139,6 +141,9 @@ public class FamilySearchPlatform extends Gedcomx {
   @Schema(description = "The vocabulary concepts included in this data set.")
   private List<VocabConcept> vocabConcepts;
 
+  // Index for findChildAndParentsRelationship(), if lookup indexes are enabled.
+  private LookupIndex<ChildAndParentsRelationship> childAndParentsIndex;
+
   /**
    * The merge analysis results for this data set.
    *
@@ -228,6 +233,7 @@ public class FamilySearchPlatform extends Gedcomx {
   @JsonProperty ( "childAndParentsRelationships" )
   public void setChildAndParentsRelationships(List<ChildAndParentsRelationship> childAndParentsRelationships) {
     this.childAndParentsRelationships = childAndParentsRelationships;
+    fireElementsReplaced();
   }
 
   /**
@@ -241,11 +247,22 @@ public class FamilySearchPlatform extends Gedcomx {
         childAndParentsRelationships = new LinkedList<ChildAndParentsRelationship>();
       }
       childAndParentsRelationships.add(childAndParentsRelationship);
+      fireElementAdded(childAndParentsRelationship);
     }
   }
 
   public ChildAndParentsRelationship findChildAndParentsRelationship(ResourceReference child, ResourceReference parent1, ResourceReference parent2) {
     if (child != null && getRelationships() != null && (parent1 != null || parent2 != null)) {
+      if (usesLookupIndex() && isIndexable(child) && isIndexable(parent1) && isIndexable(parent2)) {
+        LookupIndex<ChildAndParentsRelationship> index = this.childAndParentsIndex = LookupIndex.current(this.childAndParentsIndex, getChildAndParentsRelationships(),
+          (relationship, keys) -> keys.accept(referencesKey(relationship.getChild(), relationship.getParent1(), relationship.getParent2())));
+        ChildAndParentsRelationship found = index.get(referencesKey(child, parent1, parent2));
+        if (found == null || (samePerson(found.getChild(), child) && samePerson(found.getParent1(), parent1) && samePerson(found.getParent2(), parent2))) {
+          return found;
+        }
+        // changed since it was indexed.
+      }
+
       for (ChildAndParentsRelationship relationship : getChildAndParentsRelationships()) {
         if (samePerson(relationship.getChild(), child) &&
             samePerson(relationship.getParent1(), parent1) &&
@@ -268,6 +285,32 @@ public class FamilySearchPlatform extends Gedcomx {
     return this;
   }
 
+  @Override
+  public boolean removeElement(HypermediaEnabledData element) {
+    if (super.removeElement(element)) {
+      return true;
+    }
+    else if (removeFrom(this.childAndParentsRelationships, element)) {
+      fireElementRemoved(element);
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public void invalidateLookupIndex() {
+    super.invalidateLookupIndex();
+    this.childAndParentsIndex = null;
+  }
+
+  @Override
+  protected void fireElementAdded(HypermediaEnabledData element) {
+    super.fireElementAdded(element);
+    if (this.childAndParentsIndex != null && element instanceof ChildAndParentsRelationship) {
+      this.childAndParentsIndex.appended(this.childAndParentsRelationships, (ChildAndParentsRelationship) element);
+    }
+  }
+
   /**
    * The discussions included in this data set.
    *
@@ -542,71 +585,10 @@ public class FamilySearchPlatform extends Gedcomx {
     super.embed(gedcomx);
 
     if (gedcomx instanceof FamilySearchPlatform) {
-      List<ChildAndParentsRelationship> relationships = ((FamilySearchPlatform) gedcomx).getChildAndParentsRelationships();
-      if (relationships != null) {
-        for (ChildAndParentsRelationship relationship : relationships) {
-          boolean found = false;
-          if (relationship.getId() != null) {
-            if (getChildAndParentsRelationships() != null) {
-              for (ChildAndParentsRelationship target : getChildAndParentsRelationships()) {
-                if (relationship.getId().equals(target.getId())) {
-                  target.embed(relationship);
-                  found = true;
-                  break;
-                }
-              }
-            }
-          }
-
-          if (!found) {
-            addChildAndParentsRelationship(relationship);
-          }
-        }
-      }
-
-      List<Discussion> discussions = ((FamilySearchPlatform) gedcomx).getDiscussions();
-      if (discussions != null) {
-        for (Discussion discussion : discussions) {
-          boolean found = false;
-          if (discussion.getId() != null) {
-            if (getDiscussions() != null) {
-              for (Discussion target : getDiscussions()) {
-                if (discussion.getId().equals(target.getId())) {
-                  target.embed(discussion);
-                  found = true;
-                  break;
-                }
-              }
-            }
-          }
-
-          if (!found) {
-            addDiscussion(discussion);
-          }
-        }
-      }
-    }
-
-  List<VocabConcept> localVocabConcepts = ((FamilySearchPlatform) gedcomx).getVocabConcepts();
-    if (localVocabConcepts != null) {
-      for (VocabConcept vocabConcept : localVocabConcepts) {
-        boolean found = false;
-        if (vocabConcept.getId() != null) {
-          if (getVocabConcepts() != null) {
-            for (VocabConcept target : getVocabConcepts()) {
-              if (vocabConcept.getId().equals(target.getId())) {
-                target.embed(vocabConcept);
-                found = true;
-                break;
-              }
-            }
-          }
-        }
-
-        if (!found) {
-          addVocabConcept(vocabConcept);
-        }
-      }
+      FamilySearchPlatform platform = (FamilySearchPlatform) gedcomx;
+      embedElements(platform.getChildAndParentsRelationships(), getChildAndParentsRelationships(), this::addChildAndParentsRelationship, ChildAndParentsRelationship::embed);
+      embedElements(platform.getDiscussions(), getDiscussions(), this::addDiscussion, Discussion::embed);
+      embedElements(platform.getVocabConcepts(), getVocabConcepts(), this::addVocabConcept, VocabConcept::embed);
     }
   }
 
@@ -684,25 +666,24 @@ public class FamilySearchPlatform extends Gedcomx {
 
   @Override
   public FamilySearchPlatform fixLocalReferences() {
-    List<Person> locals = getPersons() == null ? Collections.emptyList() : getPersons();
-    List<ChildAndParentsRelationship> childAndParentsRelationships = getChildAndParentsRelationships() != null ? getChildAndParentsRelationships() : Collections.emptyList();
-    List<Ordinance> ordinances = getOrdinances(this);
-    List<SourceDescription> sds = getSourceDescriptions() == null ? Collections.emptyList() : getSourceDescriptions();
-
-    for (Person local : locals) {
-      String localId = local.getId();
-      if (localId != null) {
-        for (ChildAndParentsRelationship capRelationship : childAndParentsRelationships) {
-          fixId(capRelationship.getParent1(), localId);
-          fixId(capRelationship.getParent2(), localId);
-          fixId(capRelationship.getChild(), localId);
-          fixupSourceReferences(sds, capRelationship);
+    return (FamilySearchPlatform) super.fixLocalReferences();
+  }
+
+  @Override
+  protected FamilySearchPlatform fixLocalReferences(Set<String> personIds, Set<String> descriptionIds) {
+    if (!personIds.isEmpty()) {
+      if (getChildAndParentsRelationships() != null) {
+        for (ChildAndParentsRelationship capRelationship : getChildAndParentsRelationships()) {
+          fixId(capRelationship.getParent1(), personIds);
+          fixId(capRelationship.getParent2(), personIds);
+          fixId(capRelationship.getChild(), personIds);
+          fixupSourceReferences(descriptionIds, capRelationship);
         }
-        fixupPersonReferencesInOrdinances(ordinances, localId);
       }
+      fixupPersonReferencesInOrdinances(getOrdinances(this), personIds);
     }
 
-    return (FamilySearchPlatform) super.fixLocalReferences();
+    return (FamilySearchPlatform) super.fixLocalReferences(personIds, descriptionIds);
   }
 
   protected static List<Ordinance> getOrdinances(Gedcomx gx) {
@@ -735,4 +716,14 @@ public class FamilySearchPlatform extends Gedcomx {
 
     }
   }
+
+  protected static void fixupPersonReferencesInOrdinances(List<Ordinance> ordinances, Set<String> personIds) {
+    for (Ordinance ordinance : ordinances) {
+      if (ordinance.getParticipants() != null) {
+        for (OrdinanceParticipant participant: ordinance.getParticipants()) {
+          fixId(participant.getParticipant(), personIds);
+        }
+      }
+    }
+  }
 }
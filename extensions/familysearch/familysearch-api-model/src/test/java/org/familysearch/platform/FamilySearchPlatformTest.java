@@ -15,9 +15,14 @@ import org.junit.jupiter.api.Test;
 import tools.jackson.databind.json.JsonMapper;
 
 import org.familysearch.platform.ct.ChildAndParentsRelationship;
+import org.familysearch.platform.ordinances.Ordinance;
+import org.familysearch.platform.ordinances.OrdinanceParticipant;
 import org.familysearch.platform.records.AlternateDate;
 import org.familysearch.platform.records.AlternatePlaceReference;
 
+import java.util.ArrayList;
+import java.util.Collections;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -49,7 +54,23 @@ class FamilySearchPlatformTest {
 
   @Test
   void family() {
+    assertFamily(makeDoc());
+  }
+
+  @Test
+  void familyWithLookupIndex() {
     FamilySearchPlatform g = makeDoc();
+    g.enableLookupIndex();
+    assertFamily(g);
+    assertFamily(g);
+
+    // a relationship added after the index was built is found.
+    addChild(g, "parent1", "parent2", "kid4", null, null);
+    assertEquals("#kid4", g.findChildAndParentsRelationship(makeRef("kid4"), makeRef("parent1"), makeRef("parent2")).getChild().getResource().toString());
+    assertEquals("#kid4", g.findParentChildRelationship(makeRef("parent2"), makeRef("kid4")).getPerson2().getResource().toString());
+  }
+
+  private void assertFamily(FamilySearchPlatform g) {
     FamilyView family = g.getPerson().getDisplayExtension().getFamiliesAsChild().get(0);
 
     // parent1-parent2 relationship
@@ -105,6 +126,55 @@ class FamilySearchPlatformTest {
     assertNull(g.findCoupleRelationship(fam2));
   }
 
+  @Test
+  void embed() {
+    FamilySearchPlatform target = makeDoc();
+    target.getChildAndParentsRelationships().get(0).setId("cap1");
+
+    FamilySearchPlatform page = new FamilySearchPlatform();
+    ChildAndParentsRelationship same = new ChildAndParentsRelationship();
+    same.setId("cap1");
+    same.addParent2Fact(new Fact(FactType.StepParent, null));
+    page.addChildAndParentsRelationship(same);
+    ChildAndParentsRelationship other = new ChildAndParentsRelationship();
+    other.setId("cap2");
+    page.addChildAndParentsRelationship(other);
+
+    target.embed(page);
+    assertEquals(4, target.getChildAndParentsRelationships().size());
+    assertEquals(2, target.getChildAndParentsRelationships().get(0).getParent2Facts().size());
+    assertSame(other, target.getChildAndParentsRelationships().get(3));
+
+    // a plain GEDCOM X document can be embedded, too.
+    Gedcomx plain = new Gedcomx();
+    plain.addPerson(new Person().id("p1"));
+    target.embed(plain);
+    assertEquals("p1", target.getPersons().get(1).getId());
+  }
+
+  @Test
+  void fixLocalReferences() {
+    FamilySearchPlatform doc = new FamilySearchPlatform();
+    Person father = new Person().id("father");
+    doc.addPerson(father);
+    doc.addPerson(new Person().id("kid"));
+    ChildAndParentsRelationship cap = new ChildAndParentsRelationship();
+    cap.setParent1(new ResourceReference(new URI("https://example.org/father"), "father"));
+    cap.setParent2(new ResourceReference(new URI("https://example.org/mother"), "mother"));
+    cap.setChild(new ResourceReference(new URI("https://example.org/kid"), "kid"));
+    doc.addChildAndParentsRelationship(cap);
+    Ordinance ordinance = new Ordinance();
+    ordinance.addParticipant(new OrdinanceParticipant().participant(new ResourceReference(new URI("https://example.org/kid"), "kid")));
+    father.addExtensionElement(new ArrayList<>(Collections.singletonList(ordinance)));
+
+    assertSame(doc, doc.fixLocalReferences());
+
+    assertEquals("#father", cap.getParent1().getResource().toString());
+    assertEquals("https://example.org/mother", cap.getParent2().getResource().toString());
+    assertEquals("#kid", cap.getChild().getResource().toString());
+    assertEquals("#kid", ordinance.getParticipants().get(0).getParticipant().getResource().toString());
+  }
+
   private FamilySearchPlatform makeDoc() {
     FamilySearchPlatform g = new FamilySearchPlatform();
     g.addPerson(makePerson());
@@ -0,0 +1,85 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.benchmarks;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.util.DocMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and maintaining DocMaps for census records. Run it with the GC profiler ('-prof gc'): the allocation per
+ *   'build' operation is (nearly all of) the memory that a DocMap holds for one record. 'renameAndRebuild' and
+ *   'renameTracked' compare rebuilding a DocMap after a small edit with keeping a tracking DocMap up to date.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocMapBenchmark {
+
+  // Persons in the household.
+  @Param({"5", "50"})
+  public int size;
+
+  private Gedcomx record;
+  private Gedcomx trackedRecord;
+  private DocMap docMap;
+  private DocMap trackingDocMap;
+  private int renames;
+
+  @Setup
+  public void setUp() {
+    record = SyntheticData.generate(SyntheticData.Shape.CENSUS, size);
+    docMap = new DocMap(record);
+    trackedRecord = SyntheticData.generate(SyntheticData.Shape.CENSUS, size);
+    trackingDocMap = new DocMap(trackedRecord, true);
+  }
+
+  @Benchmark
+  public DocMap build() {
+    return new DocMap(record);
+  }
+
+  @Benchmark
+  public Person renameAndRebuild() {
+    Person person = record.getPersons().get(0);
+    person.setId("renamed" + (renames++ & 1));
+    docMap.update(record);
+    return docMap.getPerson(person.getId());
+  }
+
+  @Benchmark
+  public Person renameTracked() {
+    Person person = trackedRecord.getPersons().get(0);
+    trackedRecord.renameElement(person, "renamed" + (renames++ & 1));
+    return trackingDocMap.getPerson(person.getId());
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.benchmarks;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.util.DocMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a DocMap over a document, and merging one document into another with Gedcomx.embed().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentBenchmark {
+
+  @Param({"CENSUS", "FAMILYSEARCH"})
+  public SyntheticData.Shape shape;
+
+  @Param({"10", "100", "1000"})
+  public int size;
+
+  private Gedcomx doc;
+  private Gedcomx other;
+
+  /**
+   * A fresh target document for each embed() invocation, since embed() modifies the target.
+   */
+  @State(Scope.Thread)
+  public static class Target {
+    private Gedcomx doc;
+
+    @Setup(Level.Invocation)
+    public void setUp(DocumentBenchmark benchmark) {
+      doc = SyntheticData.generate(benchmark.shape, benchmark.size, 1);
+    }
+  }
+
+  @Setup
+  public void setUp() {
+    doc = SyntheticData.generate(shape, size, 1);
+    // Same shape and ids, different content, so that embed() has to match up every person.
+    other = SyntheticData.generate(shape, size, 2);
+  }
+
+  @Benchmark
+  public DocMap docMap() {
+    return new DocMap(doc);
+  }
+
+  @Benchmark
+  public Gedcomx embed(Target target) {
+    target.doc.embed(other);
+    return target.doc;
+  }
+}
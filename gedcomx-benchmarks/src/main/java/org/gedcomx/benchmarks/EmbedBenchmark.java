@@ -0,0 +1,85 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.benchmarks;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.common.URI;
+import org.gedcomx.conclusion.Fact;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.types.FactType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merging paged results into one document with Gedcomx.embed(). Each page overlaps the previous one by half, so half of
+ *   the persons on a page are merged into persons already in the document and the other half are added to it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EmbedBenchmark {
+
+  @Param({"100"})
+  public int pages;
+
+  // Persons on each page.
+  @Param({"1000"})
+  public int pageSize;
+
+  private List<Gedcomx> documents;
+
+  // The merged document takes over the persons of the pages and adds facts to them, so each invocation gets new pages.
+  @Setup(Level.Invocation)
+  public void setUp() {
+    documents = new ArrayList<>(pages);
+    for (int p = 0; p < pages; p++) {
+      Gedcomx page = new Gedcomx();
+      int first = p * pageSize / 2;
+      for (int i = first; i < first + pageSize; i++) {
+        page.addPerson(new Person().id("p" + i).fact(new Fact(FactType.Residence, String.valueOf(1900 + p))));
+      }
+      page.link("self", URI.create("https://example.org/persons?page=" + p));
+      page.link("next", URI.create("https://example.org/persons?page=" + (p + 1)));
+      documents.add(page);
+    }
+  }
+
+  @Benchmark
+  public Gedcomx embed() {
+    Gedcomx merged = new Gedcomx();
+    for (Gedcomx page : documents) {
+      merged.embed(page);
+    }
+    return merged;
+  }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.benchmarks;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.fileformat.GedcomxEntryDeserializer;
+import org.gedcomx.fileformat.GedcomxEntrySerializer;
+import org.gedcomx.fileformat.JacksonJsonSerialization;
+import org.gedcomx.fileformat.JacksonSmileSerialization;
+import org.gedcomx.fileformat.JaxbXmlSerialization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Encoding and decoding whole documents with the entry serializers of the GEDCOM X file format: compact JSON, XML and
+ *   Smile. The size of a document in each format, as is and deflated (as it would be in a {@code .gedx} file), is
+ *   printed when the benchmark is set up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntryFormatBenchmark {
+
+  public enum Format {
+    JSON, XML, SMILE
+  }
+
+  @Param({"JSON", "XML", "SMILE"})
+  public Format format;
+
+  @Param({"PERSON", "CENSUS", "FAMILYSEARCH"})
+  public SyntheticData.Shape shape;
+
+  @Param({"10", "100"})
+  public int size;
+
+  private Gedcomx doc;
+  private GedcomxEntrySerializer serializer;
+  private GedcomxEntryDeserializer deserializer;
+  private String mediaType;
+  private byte[] encoded;
+
+  @Setup
+  public void setUp() throws IOException {
+    doc = SyntheticData.generate(shape, size);
+    Class<? extends Gedcomx> type = doc.getClass();
+    switch (format) {
+      case JSON:
+        JacksonJsonSerialization json = new JacksonJsonSerialization(false, type);
+        serializer = json;
+        deserializer = json;
+        break;
+      case XML:
+        JaxbXmlSerialization xml = new JaxbXmlSerialization(false, type);
+        serializer = xml;
+        deserializer = xml;
+        break;
+      default:
+        JacksonSmileSerialization smile = new JacksonSmileSerialization(type);
+        serializer = smile;
+        deserializer = smile;
+    }
+    mediaType = serializer.suggestMediaType();
+    encoded = encode();
+
+    ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+    try (DeflaterOutputStream out = new DeflaterOutputStream(deflated, new Deflater(Deflater.DEFAULT_COMPRESSION, true))) {
+      out.write(encoded);
+    }
+    System.out.println("# " + format + " " + shape + " " + size + ": " + encoded.length + " bytes, " + deflated.size() + " deflated");
+  }
+
+  @Benchmark
+  public byte[] encode() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    serializer.serialize(doc, out);
+    return out.toByteArray();
+  }
+
+  @Benchmark
+  public Object decode() throws IOException {
+    return deserializer.deserialize(new ByteArrayInputStream(encoded), mediaType);
+  }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.benchmarks;
+
+import org.familysearch.platform.FamilySearchPlatform;
+import org.gedcomx.rt.json.JsonMapperRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectReader;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading FamilySearchPlatform documents whose persons carry extension properties: the ordinances of the FAMILYSEARCH
+ *   shape (a known JSON type), plus 'extensions' properties per person that aren't known to the model and are skipped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtensionBenchmark {
+
+  @Param({"10", "100"})
+  public int size;
+
+  @Param({"0", "10"})
+  public int extensions;
+
+  private ObjectReader reader;
+  private byte[] json;
+
+  @Setup
+  public void setUp() {
+    JsonMapper mapper = JsonMapperRegistry.getJsonMapper(FamilySearchPlatform.class);
+    ObjectNode root = (ObjectNode) mapper.valueToTree(SyntheticData.generate(SyntheticData.Shape.FAMILYSEARCH, size));
+    for (JsonNode person : root.get("persons")) {
+      for (int i = 0; i < extensions; i++) {
+        ((ObjectNode) person).put("http://example.org/ext/v1/property" + i, "value " + i);
+      }
+    }
+    json = mapper.writeValueAsBytes(root);
+    reader = JsonMapperRegistry.getReader(FamilySearchPlatform.class);
+  }
+
+  @Benchmark
+  public FamilySearchPlatform read() {
+    return reader.readValue(json);
+  }
+}
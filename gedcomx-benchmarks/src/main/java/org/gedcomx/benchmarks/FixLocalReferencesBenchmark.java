@@ -0,0 +1,117 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.benchmarks;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.common.ResourceReference;
+import org.gedcomx.common.URI;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.source.SourceDescription;
+import org.gedcomx.source.SourceReference;
+import org.gedcomx.types.RelationshipType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gedcomx.fixLocalReferences() on documents like those converted from GEDCOM files, where every reference to a person,
+ *   source or place carries the id of its target and an absolute URI. The time per person should stay about the same
+ *   as the documents get bigger. Fixing the references again does the same work, so the documents are reused.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FixLocalReferencesBenchmark {
+
+  // Persons in the document.
+  @Param({"1000", "10000", "30000"})
+  public int size;
+
+  private Gedcomx census;
+  private Gedcomx tree;
+
+  @Setup
+  public void setUp() {
+    census = imported(size);
+    tree = SyntheticData.generate(SyntheticData.Shape.FAMILYSEARCH, size);
+  }
+
+  @Benchmark
+  public Gedcomx imported() {
+    return census.fixLocalReferences();
+  }
+
+  @Benchmark
+  public Gedcomx familySearch() {
+    return tree.fixLocalReferences();
+  }
+
+  // Couples of persons with two children each, with one source for every ten persons and one place for every twenty.
+  private static Gedcomx imported(int size) {
+    Gedcomx doc = new Gedcomx();
+    for (int i = 0; i < size / 10; i++) {
+      doc.addSourceDescription(new SourceDescription().id("S" + i));
+    }
+    for (int i = 0; i < size / 20; i++) {
+      // Pairs of descriptions of the same place.
+      String placeId = "P" + (i / 2);
+      doc.addPlace(new PlaceDescription().id("PD" + i).place(new ResourceReference(URI.create("https://example.org/places/" + placeId), placeId)));
+    }
+    for (int i = 0; i < size; i++) {
+      Person person = new Person().id("I" + i);
+      String sourceId = "S" + (i / 10);
+      person.addSource(new SourceReference().descriptionRef(URI.create("https://example.org/sources/" + sourceId)).descriptionId(sourceId));
+      doc.addPerson(person);
+      int family = i / 4 * 4;
+      if (i % 4 == 1) {
+        doc.addRelationship(relationship(RelationshipType.Couple, family, i, sourceId));
+      }
+      else if (i % 4 > 1) {
+        doc.addRelationship(relationship(RelationshipType.ParentChild, family, i, sourceId));
+        doc.addRelationship(relationship(RelationshipType.ParentChild, family + 1, i, sourceId));
+      }
+    }
+    return doc;
+  }
+
+  private static Relationship relationship(RelationshipType type, int person1, int person2, String sourceId) {
+    Relationship relationship = new Relationship();
+    relationship.setKnownType(type);
+    relationship.setPerson1(reference("I" + person1));
+    relationship.setPerson2(reference("I" + person2));
+    relationship.addSource(new SourceReference().descriptionRef(URI.create("https://example.org/sources/" + sourceId)).descriptionId(sourceId));
+    return relationship;
+  }
+
+  private static ResourceReference reference(String personId) {
+    return new ResourceReference(URI.create("https://example.org/persons/" + personId), personId);
+  }
+}
@@ -0,0 +1,239 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.benchmarks;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.fileformat.GedcomxElementHandler;
+import org.gedcomx.fileformat.GedcomxEntryDeserializer;
+import org.gedcomx.fileformat.GedcomxEntrySerializer;
+import org.gedcomx.fileformat.GedcomxFile;
+import org.gedcomx.fileformat.GedcomxFileEntry;
+import org.gedcomx.fileformat.GedcomxFileResourceIterator;
+import org.gedcomx.fileformat.GedcomxOutputStream;
+import org.gedcomx.fileformat.JacksonJsonSerialization;
+import org.gedcomx.fileformat.JaxbXmlSerialization;
+import org.gedcomx.fileformat.MappedGedcomxFile;
+import org.gedcomx.rt.GedcomxConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarFile;
+
+/**
+ * Reading and writing the entries of one GEDCOM X file, shared by all of the benchmark threads. {@code readEntry}
+ *   reads one entry per operation (run it with {@code -t} to vary the number of threads); {@code readAllParallel} reads
+ *   every entry on the fork-join pool and {@code readResources} reads every entry with
+ *   {@code GedcomxFile.readResources} on a pool of {@code threads} threads, so their scores are files per second, as
+ *   are the scores of {@code write} and {@code writeParallel}, which write the whole file serially and on the pool.
+ *   {@code openJar} and {@code openMapped} open the file and read one entry by name, with {@code JarFile} and with
+ *   {@code MappedGedcomxFile}; {@code readEntryMapped} is {@code readEntry} with {@code MappedGedcomxFile}, and
+ *   {@code readPersonsMapped} reads only the persons of the entry, one at a time, with a {@code GedcomxElementHandler}.
+ *   {@code update} replaces one entry of a copy of the file in place with {@code GedcomxOutputStream.update}, and
+ *   {@code rewrite} writes the whole copy again, for comparison (vary {@code entries} to see how each scales).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GedcomxFileBenchmark {
+
+  public enum Format {
+    JSON, XML
+  }
+
+  @Param({"JSON", "XML"})
+  public Format format;
+
+  @Param({"200"})
+  public int entries;
+
+  @Param({"10"})
+  public int size;
+
+  @Param({"4"})
+  public int threads;
+
+  private File file;
+  private File updateFile;
+  private GedcomxFile gedxFile;
+  private MappedGedcomxFile mappedFile;
+  private List<GedcomxFileEntry> mappedEntryList;
+  private List<GedcomxFileEntry> entryList;
+  private List<Gedcomx> documents;
+  private GedcomxEntrySerializer serializer;
+  private String contentType;
+  private final AtomicInteger next = new AtomicInteger();
+  private ExecutorService executor;
+
+  @Setup
+  public void setUp() throws IOException {
+    serializer = format == Format.JSON ? new JacksonJsonSerialization(false) : new JaxbXmlSerialization();
+    contentType = format == Format.JSON ? GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE : GedcomxConstants.GEDCOMX_XML_MEDIA_TYPE;
+    documents = new ArrayList<>();
+    for (int i = 0; i < entries; i++) {
+      documents.add(SyntheticData.generate(SyntheticData.Shape.CENSUS, size, i));
+    }
+    file = File.createTempFile("gedcomx-benchmark", ".gedx");
+    writeAll(new GedcomxOutputStream(new FileOutputStream(file), serializer));
+    updateFile = File.createTempFile("gedcomx-benchmark", ".gedx");
+    Files.copy(file.toPath(), updateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+    gedxFile = new GedcomxFile(new JarFile(file), (GedcomxEntryDeserializer) serializer);
+    entryList = new ArrayList<>();
+    for (GedcomxFileEntry entry : gedxFile.getEntries()) {
+      entryList.add(entry);
+    }
+    mappedFile = new MappedGedcomxFile(file.toPath(), (GedcomxEntryDeserializer) serializer);
+    mappedEntryList = new ArrayList<>();
+    for (GedcomxFileEntry entry : mappedFile.getEntries()) {
+      mappedEntryList.add(entry);
+    }
+    executor = Executors.newFixedThreadPool(threads);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    executor.shutdown();
+    gedxFile.close();
+    mappedFile.close();
+    file.delete();
+    updateFile.delete();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Object readEntry() throws IOException {
+    return gedxFile.readResource(entryList.get(Math.floorMod(next.getAndIncrement(), entryList.size())));
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Object readEntryMapped() throws IOException {
+    return mappedFile.readResource(mappedEntryList.get(Math.floorMod(next.getAndIncrement(), mappedEntryList.size())));
+  }
+
+  @Benchmark
+  @Threads(4)
+  public int readPersonsMapped() throws IOException {
+    int[] persons = new int[1];
+    GedcomxElementHandler handler = new GedcomxElementHandler().onPerson(person -> persons[0]++);
+    mappedFile.readResource(mappedEntryList.get(Math.floorMod(next.getAndIncrement(), mappedEntryList.size())), handler);
+    return persons[0];
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Object openJar() throws IOException {
+    try (JarFile jarFile = new JarFile(file)) {
+      GedcomxFile opened = new GedcomxFile(jarFile, (GedcomxEntryDeserializer) serializer);
+      return opened.readResource(new GedcomxFileEntry(jarFile.getJarEntry(middleEntryName())));
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Object openMapped() throws IOException {
+    try (MappedGedcomxFile opened = new MappedGedcomxFile(file.toPath(), (GedcomxEntryDeserializer) serializer)) {
+      return opened.readResource(opened.getEntry(middleEntryName()));
+    }
+  }
+
+  private String middleEntryName() {
+    return "tree" + (entries / 2) + serializer.suggestFilenameExtension();
+  }
+
+  @Benchmark
+  public int readAllParallel() {
+    return entryList.parallelStream().mapToInt(entry -> {
+      try {
+        return ((Gedcomx) gedxFile.readResource(entry)).getPersons().size();
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }).sum();
+  }
+
+  @Benchmark
+  public int readResources() throws IOException {
+    int persons = 0;
+    GedcomxFileResourceIterator resources = gedxFile.readResources(executor);
+    while (resources.hasNext()) {
+      persons += ((Gedcomx) resources.next().getResource()).getPersons().size();
+    }
+    return persons;
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void write() throws IOException {
+    writeAll(new GedcomxOutputStream(OutputStream.nullOutputStream(), serializer));
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void writeParallel() throws IOException {
+    writeAll(new GedcomxOutputStream(OutputStream.nullOutputStream(), serializer, executor));
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void update() throws IOException {
+    int i = Math.floorMod(next.getAndIncrement(), documents.size());
+    GedcomxOutputStream out = GedcomxOutputStream.update(updateFile, serializer);
+    out.addResource(contentType, "tree" + i + serializer.suggestFilenameExtension(), documents.get(i), null);
+    out.close();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void rewrite() throws IOException {
+    writeAll(new GedcomxOutputStream(new FileOutputStream(updateFile), serializer));
+  }
+
+  private void writeAll(GedcomxOutputStream out) throws IOException {
+    for (int i = 0; i < documents.size(); i++) {
+      out.addResource(contentType, "tree" + i + serializer.suggestFilenameExtension(), documents.get(i), null);
+    }
+    out.close();
+  }
+}
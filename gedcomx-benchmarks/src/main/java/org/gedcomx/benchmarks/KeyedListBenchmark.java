@@ -0,0 +1,79 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.benchmarks;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.common.URI;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.rt.json.JsonMapperRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.jackson.databind.ObjectWriter;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing documents whose persons carry many links, which are written as keyed lists (a JSON object of links, keyed
+ *   by rel). Mostly of interest for its allocation rate, so run it with the GC profiler ('-prof gc').
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyedListBenchmark {
+
+  private static final String[] RELS = {"self", "person", "ancestry", "descendancy", "portrait", "change-history",
+    "memories", "notes", "sources", "related"};
+
+  @Param({"100"})
+  public int size;
+
+  // Links per person, on both sides of the size at which the serializer stops searching and indexes the keys.
+  @Param({"5", "25"})
+  public int links;
+
+  private ObjectWriter writer;
+  private Gedcomx document;
+
+  @Setup
+  public void setUp() {
+    document = SyntheticData.generate(SyntheticData.Shape.CENSUS, size);
+    for (Person person : document.getPersons()) {
+      for (int i = 0; i < links; i++) {
+        String rel = i < RELS.length ? RELS[i] : "related";
+        person.addLink(rel, new URI("https://example.org/platform/tree/persons/" + person.getId() + "/" + i));
+      }
+    }
+    writer = JsonMapperRegistry.getWriter(Gedcomx.class);
+  }
+
+  @Benchmark
+  public void write() {
+    writer.writeValue(OutputStream.nullOutputStream(), document);
+  }
+}
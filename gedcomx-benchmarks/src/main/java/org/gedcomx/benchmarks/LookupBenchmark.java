@@ -0,0 +1,89 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.benchmarks;
+
+import org.familysearch.platform.FamilySearchPlatform;
+import org.familysearch.platform.ct.ChildAndParentsRelationship;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.types.RelationshipType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validating the relationships of a document the way relationship-validation code does: for each relationship, find
+ *   its persons and look the relationship up again by its persons. Without the lookup index (see
+ *   Gedcomx.enableLookupIndex()) this is quadratic in the size of the document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+
+  // Persons in the document.
+  @Param({"100", "1000", "10000"})
+  public int size;
+
+  @Param({"false", "true"})
+  public boolean indexed;
+
+  private Gedcomx census;
+  private FamilySearchPlatform tree;
+
+  @Setup
+  public void setUp() {
+    census = SyntheticData.generate(SyntheticData.Shape.CENSUS, size);
+    tree = (FamilySearchPlatform) SyntheticData.generate(SyntheticData.Shape.FAMILYSEARCH, size);
+    if (indexed) {
+      census.enableLookupIndex();
+      tree.enableLookupIndex();
+    }
+  }
+
+  @Benchmark
+  public void relationships(Blackhole blackhole) {
+    for (Relationship relationship : census.getRelationships()) {
+      blackhole.consume(census.findPerson(relationship.getPerson1().getResource()));
+      blackhole.consume(census.findPerson(relationship.getPerson2().getResource()));
+      blackhole.consume(relationship.getKnownType() == RelationshipType.Couple
+        ? census.findCoupleRelationship(relationship.getPerson1(), relationship.getPerson2())
+        : census.findParentChildRelationship(relationship.getPerson1(), relationship.getPerson2()));
+    }
+  }
+
+  @Benchmark
+  public void childAndParentsRelationships(Blackhole blackhole) {
+    for (ChildAndParentsRelationship relationship : tree.getChildAndParentsRelationships()) {
+      blackhole.consume(tree.findPerson(relationship.getChild().getResource()));
+      blackhole.consume(tree.findChildAndParentsRelationship(relationship.getChild(), relationship.getParent1(), relationship.getParent2()));
+    }
+  }
+}
@@ -0,0 +1,324 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.benchmarks;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.rt.json.GedcomJacksonModule;
+import org.gedcomx.source.SourceDescription;
+import org.gedcomx.util.AsyncRecordSetWriter;
+import org.gedcomx.util.BlockRecordSetReader;
+import org.gedcomx.util.BlockRecordSetWriter;
+import org.gedcomx.util.JsonRecordSetIterator;
+import org.gedcomx.util.JsonRecordSetWriter;
+import org.gedcomx.util.PipelinedXmlRecordSetIterator;
+import org.gedcomx.util.RecordSetIndex;
+import org.gedcomx.util.RecordSetIterator;
+import org.gedcomx.util.RecordSetWriter;
+import org.gedcomx.util.XmlRecordSetIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.jackson.databind.json.JsonMapper;
+
+import jakarta.xml.bind.JAXBException;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading whole RecordSets of census records, with the sequential, pipelined, asynchronous and
+ *   block-compressed readers and writers. Each operation processes all of the records, so the scores are RecordSets
+ *   per second. readJsonLegacy reads the same JSON with the brace-counting JsonRecordSetIterator that the streaming
+ *   one replaced, for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordSetBenchmark {
+
+  @Param({"1000"})
+  public int records;
+
+  @Param({"5"})
+  public int householdSize;
+
+  @Param({"4"})
+  public int threads;
+
+  private List<Gedcomx> recordList;
+  private byte[] xml;
+  private byte[] json;
+  private File blockFile;
+
+  @Setup
+  public void setUp() throws IOException, JAXBException {
+    recordList = SyntheticData.records(records, householdSize);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RecordSetWriter xmlWriter = new RecordSetWriter(out);
+    for (Gedcomx record : recordList) {
+      xmlWriter.writeRecord(record);
+    }
+    xmlWriter.close();
+    xml = out.toByteArray();
+
+    out = new ByteArrayOutputStream();
+    // The legacy JSON iterator can't skip null metadata, so there is some.
+    Gedcomx metadata = new Gedcomx().sourceDescription(new SourceDescription().id("collection").title("Census"));
+    JsonRecordSetWriter jsonWriter = new JsonRecordSetWriter(out, metadata);
+    for (Gedcomx record : recordList) {
+      jsonWriter.writeRecord(record);
+    }
+    jsonWriter.close();
+    json = out.toByteArray();
+    if (readJsonLegacy() != readJson()) {
+      throw new IllegalStateException("The legacy JSON iterator read different records.");
+    }
+
+    blockFile = File.createTempFile("gedcomx-benchmark", ".gxrs");
+    BlockRecordSetWriter blockWriter = new BlockRecordSetWriter(new FileOutputStream(blockFile), RecordSetIndex.Format.JSON, 64 * 1024, -1);
+    for (Gedcomx record : recordList) {
+      blockWriter.writeRecord(record);
+    }
+    blockWriter.close();
+  }
+
+  @TearDown
+  public void tearDown() {
+    blockFile.delete();
+  }
+
+  @Benchmark
+  public void writeXml() throws IOException, JAXBException {
+    RecordSetWriter writer = new RecordSetWriter(OutputStream.nullOutputStream());
+    for (Gedcomx record : recordList) {
+      writer.writeRecord(record);
+    }
+    writer.close();
+  }
+
+  @Benchmark
+  public void writeJson() throws IOException {
+    JsonRecordSetWriter writer = new JsonRecordSetWriter(OutputStream.nullOutputStream(), null);
+    for (Gedcomx record : recordList) {
+      writer.writeRecord(record);
+    }
+    writer.close();
+  }
+
+  @Benchmark
+  public void writeJsonCompact() throws IOException {
+    JsonRecordSetWriter writer = new JsonRecordSetWriter(OutputStream.nullOutputStream(), null, false);
+    for (Gedcomx record : recordList) {
+      writer.writeRecord(record);
+    }
+    writer.close();
+  }
+
+  @Benchmark
+  public void writeXmlAsync() throws IOException {
+    AsyncRecordSetWriter writer = new AsyncRecordSetWriter(OutputStream.nullOutputStream(), RecordSetIndex.Format.XML, threads);
+    for (Gedcomx record : recordList) {
+      writer.writeRecord(record);
+    }
+    writer.close();
+  }
+
+  @Benchmark
+  public int readXml() throws IOException {
+    return count(new XmlRecordSetIterator(new ByteArrayInputStream(xml)));
+  }
+
+  @Benchmark
+  public int readXmlPipelined() {
+    return count(new PipelinedXmlRecordSetIterator(new ByteArrayInputStream(xml), threads));
+  }
+
+  @Benchmark
+  public int readXmlParallelStream() throws IOException {
+    return new XmlRecordSetIterator(new ByteArrayInputStream(xml)).records().parallel().mapToInt(record -> record.getPersons().size()).sum();
+  }
+
+  @Benchmark
+  public int readJson() throws IOException {
+    return count(new JsonRecordSetIterator(new ByteArrayInputStream(json)));
+  }
+
+  @Benchmark
+  public int readJsonLegacy() throws IOException {
+    return count(new LegacyJsonRecordSetIterator(new ByteArrayInputStream(json)));
+  }
+
+  @Benchmark
+  public int readBlocksParallel() throws IOException {
+    try (BlockRecordSetReader reader = new BlockRecordSetReader(blockFile.getPath())) {
+      return reader.records().parallel().mapToInt(record -> record.getPersons().size()).sum();
+    }
+  }
+
+  private static int count(RecordSetIterator iterator) {
+    int persons = 0;
+    while (iterator.hasNext()) {
+      persons += iterator.next().getPersons().size();
+    }
+    iterator.close();
+    return persons;
+  }
+
+  /**
+   * JsonRecordSetIterator as it was before it streamed the records through a single parser: each record's bytes are
+   *   found by counting braces, a byte at a time, and then parsed on their own, with a mapper made for the iterator.
+   */
+  private static final class LegacyJsonRecordSetIterator implements RecordSetIterator {
+    private InputStream inputStream;
+    private Gedcomx nextRecord;
+    private Gedcomx metadata;
+    private final JsonMapper jsonMapper;
+    private boolean noMoreRecords;
+
+    private LegacyJsonRecordSetIterator(InputStream inputStream) throws IOException {
+      this.inputStream = new BufferedInputStream(inputStream);
+      jsonMapper = GedcomJacksonModule.createJsonMapper();
+      int character = inputStream.read();
+      assert character == '{';
+      noMoreRecords = false;
+      readUntil(inputStream, "records");
+      readUntilChar(inputStream, '[');
+      prepareNext();
+    }
+
+    private void readUntil(InputStream inputStream, String untilLabel) throws IOException {
+      String name;
+      while (!(name = getName(inputStream)).equals(untilLabel)) {
+        if (name.equals("metadata")) {
+          metadata = jsonMapper.readValue(getObjectAsBytes(inputStream), Gedcomx.class);
+        }
+      }
+    }
+
+    private byte[] getObjectAsBytes(InputStream inputStream) throws IOException {
+      int character;
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      int openingBraces = 0;
+      int closingBraces = 0;
+      boolean firstTime = true;
+      while ((character = inputStream.read()) >= 0) {
+        if (character == ',' && firstTime) {
+          firstTime = false;
+          continue;
+        }
+        firstTime = false;
+        bos.write(character);
+        if (character == '{') {
+          openingBraces++;
+        }
+        else if (character == '}') {
+          closingBraces++;
+        }
+        if ((openingBraces > 0) && (openingBraces == closingBraces)) {
+          break;
+        }
+      }
+      return bos.toByteArray();
+    }
+
+    private String getName(InputStream inputStream) throws IOException {
+      StringBuilder name = new StringBuilder();
+      readUntilChar(inputStream, '"');
+      int character;
+      while ((character = inputStream.read()) != '"') {
+        name.append((char) character);
+      }
+      readUntilChar(inputStream, ':');
+      return name.toString();
+    }
+
+    private void readUntilChar(InputStream inputStream, char c) throws IOException {
+      int character;
+      while ((character = inputStream.read()) != c) {
+        if (character < 0) {
+          close();
+          break;
+        }
+      }
+    }
+
+    private void prepareNext() throws IOException {
+      if (noMoreRecords) {
+        nextRecord = null;
+        return;
+      }
+      nextRecord = jsonMapper.readValue(getObjectAsBytes(inputStream), Gedcomx.class);
+      int character;
+      while ((character = inputStream.read()) != ',') {
+        if (character == ']') {
+          noMoreRecords = true;
+          break;
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return nextRecord != null;
+    }
+
+    @Override
+    public Gedcomx next() {
+      try {
+        Gedcomx record = nextRecord;
+        prepareNext();
+        return record;
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public Gedcomx getMetadata() {
+      return metadata;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      inputStream = null;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.benchmarks;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.rt.SerializationUtil;
+import org.gedcomx.rt.json.GedcomJacksonModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.jackson.databind.json.JsonMapper;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON and XML round trips of whole documents, both through a preconfigured JsonMapper/JAXBContext and through the
+ *   SerializationUtil convenience methods (which set up their mapper or context on each call). JSON is written both
+ *   pretty-printed and compact; the size of each is printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+  @Param({"PERSON", "CENSUS", "FAMILYSEARCH"})
+  public SyntheticData.Shape shape;
+
+  @Param({"1", "10", "100", "1000"})
+  public int size;
+
+  private Gedcomx doc;
+  private Class<? extends Gedcomx> type;
+  private JsonMapper mapper;
+  private JsonMapper compactMapper;
+  private JAXBContext context;
+  private byte[] json;
+  private byte[] compactJson;
+  private byte[] xml;
+
+  @Setup
+  public void setUp() throws JAXBException {
+    doc = SyntheticData.generate(shape, size);
+    type = doc.getClass();
+    mapper = GedcomJacksonModule.createJsonMapper(type);
+    context = JAXBContext.newInstance(type);
+    compactMapper = GedcomJacksonModule.createJsonMapper(false, type);
+    json = mapper.writeValueAsBytes(doc);
+    compactJson = compactMapper.writeValueAsBytes(doc);
+    xml = SerializationUtil.toXmlStream(doc, type, context);
+    System.out.println("# " + shape + " " + size + ": " + json.length + " bytes pretty, " + compactJson.length + " bytes compact");
+  }
+
+  @Benchmark
+  public byte[] jsonWrite() {
+    return mapper.writeValueAsBytes(doc);
+  }
+
+  @Benchmark
+  public Gedcomx jsonRead() {
+    return mapper.readValue(json, type);
+  }
+
+  @Benchmark
+  public byte[] jsonWriteCompact() {
+    return compactMapper.writeValueAsBytes(doc);
+  }
+
+  @Benchmark
+  public Gedcomx jsonReadCompact() {
+    return compactMapper.readValue(compactJson, type);
+  }
+
+  @Benchmark
+  public byte[] jsonWriteSerializationUtil() {
+    return SerializationUtil.toJsonStream(doc);
+  }
+
+  @Benchmark
+  public byte[] jsonWriteSerializationUtilCompact() {
+    return SerializationUtil.toJsonStream(doc, false);
+  }
+
+  @Benchmark
+  public byte[] xmlWrite() throws JAXBException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SerializationUtil.writeXml(doc, type, context, out);
+    return out.toByteArray();
+  }
+
+  @Benchmark
+  public Gedcomx xmlRead() throws JAXBException {
+    return context.createUnmarshaller().unmarshal(new StreamSource(new ByteArrayInputStream(xml)), type).getValue();
+  }
+
+  @Benchmark
+  public byte[] xmlWriteSerializationUtil() throws JAXBException {
+    return SerializationUtil.toXmlStream(doc);
+  }
+}
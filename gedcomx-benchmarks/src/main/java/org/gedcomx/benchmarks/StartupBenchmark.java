@@ -0,0 +1,90 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.benchmarks;
+
+import org.familysearch.platform.FamilySearchPlatform;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.atom.Feed;
+import org.gedcomx.common.Note;
+import org.gedcomx.conclusion.Document;
+import org.gedcomx.conclusion.Event;
+import org.gedcomx.conclusion.Fact;
+import org.gedcomx.conclusion.Name;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.rt.GedcomNamespaceManager;
+import org.gedcomx.rt.json.JsonMapperRegistry;
+import org.gedcomx.source.SourceDescription;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start: the first use of the GedcomNamespaceManager (loading the model metadata and naming the model types), and
+ *   the first JSON serialization of a document, each in a fresh JVM, with and without the model registries generated
+ *   at build time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class StartupBenchmark {
+
+  // Loaded with this class, so that loading them isn't measured.
+  private static final Class<?>[] TYPES = {Gedcomx.class, FamilySearchPlatform.class, Feed.class, Person.class,
+    Relationship.class, SourceDescription.class, Agent.class, Event.class, PlaceDescription.class, Document.class,
+    Fact.class, Name.class, Note.class};
+
+  @Param({"true", "false"})
+  public boolean modelRegistries;
+
+  @Setup
+  public void setUp() {
+    System.setProperty("gedcomx.modelRegistries", String.valueOf(modelRegistries));
+  }
+
+  @Benchmark
+  public int namespaceManager() {
+    GedcomNamespaceManager.registerKnownJsonTypes(TYPES);
+    int count = GedcomNamespaceManager.getKnownPrefixes().size();
+    for (Class<?> type : TYPES) {
+      String jsonName = GedcomNamespaceManager.getJsonName(type);
+      count += jsonName == null ? 0 : jsonName.length();
+    }
+    return count;
+  }
+
+  @Benchmark
+  public byte[] firstJsonWrite() {
+    FamilySearchPlatform doc = new FamilySearchPlatform();
+    doc.addPerson(new Person().id("p1"));
+    return JsonMapperRegistry.getWriter(FamilySearchPlatform.class).writeValueAsBytes(doc);
+  }
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.benchmarks;
+
+import org.familysearch.platform.FamilySearchPlatform;
+import org.familysearch.platform.ct.ChildAndParentsRelationship;
+import org.familysearch.platform.ct.Merge;
+import org.familysearch.platform.ordinances.Ordinance;
+import org.familysearch.platform.ordinances.OrdinanceParticipant;
+import org.familysearch.platform.ordinances.OrdinanceStatus;
+import org.familysearch.platform.ordinances.OrdinanceType;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.common.ResourceReference;
+import org.gedcomx.common.URI;
+import org.gedcomx.conclusion.Date;
+import org.gedcomx.conclusion.Fact;
+import org.gedcomx.conclusion.Gender;
+import org.gedcomx.conclusion.Identifier;
+import org.gedcomx.conclusion.Name;
+import org.gedcomx.conclusion.NameForm;
+import org.gedcomx.conclusion.NamePart;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
+import org.gedcomx.conclusion.PlaceReference;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.source.SourceDescription;
+import org.gedcomx.source.SourceReference;
+import org.gedcomx.types.FactType;
+import org.gedcomx.types.GenderType;
+import org.gedcomx.types.IdentifierType;
+import org.gedcomx.types.NamePartType;
+import org.gedcomx.types.RelationshipType;
+import org.gedcomx.types.ResourceType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generator of synthetic (but realistically shaped) GedcomX documents whose size scales with a single parameter, so
+ *   that throughput can be plotted against document size. The documents are deterministic for a given shape, size
+ *   and seed.
+ */
+public class SyntheticData {
+
+  /**
+   * The kinds of documents that can be generated.
+   */
+  public enum Shape {
+    /** A single tree person, with 'size' facts (and a source for each). */
+    PERSON,
+    /** A census record with a household of 'size' persons, with relationships, places and a record description. */
+    CENSUS,
+    /** A FamilySearchPlatform document with 'size' tree persons, child-and-parents relationships, ordinances and merges. */
+    FAMILYSEARCH
+  }
+
+  private static final String[] GIVEN_NAMES = {"John", "Mary", "William", "Elizabeth", "James", "Sarah", "George", "Ann", "Thomas", "Margaret"};
+  private static final String[] SURNAMES = {"Smith", "Jones", "Brown", "Taylor", "Wilson", "Davies", "Evans", "Thomas", "Johnson", "Roberts"};
+  private static final String[] PLACES = {"Boston, Suffolk, Massachusetts, United States", "Manchester, Lancashire, England",
+    "Provo, Utah, Utah, United States", "Cardiff, Glamorgan, Wales", "Toronto, York, Ontario, Canada"};
+  private static final FactType[] FACT_TYPES = {FactType.Birth, FactType.Christening, FactType.Residence, FactType.Marriage,
+    FactType.Occupation, FactType.Death, FactType.Burial, FactType.Census};
+
+  private SyntheticData() {
+  }
+
+  /**
+   * Generate a document with the given shape and size, using a fixed seed.
+   * @param shape - The kind of document to generate.
+   * @param size - How big to make the document (see Shape).
+   * @return The generated document.
+   */
+  public static Gedcomx generate(Shape shape, int size) {
+    return generate(shape, size, 42);
+  }
+
+  /**
+   * Generate a document with the given shape and size.
+   * @param shape - The kind of document to generate.
+   * @param size - How big to make the document (see Shape).
+   * @param seed - Seed for the random choices of names, dates and places.
+   * @return The generated document.
+   */
+  public static Gedcomx generate(Shape shape, int size, long seed) {
+    Random random = new Random(seed);
+    switch (shape) {
+      case PERSON:
+        return person(random, size);
+      case CENSUS:
+        return census(random, "r1", size);
+      case FAMILYSEARCH:
+        return familySearch(random, size);
+      default:
+        throw new IllegalArgumentException(String.valueOf(shape));
+    }
+  }
+
+  /**
+   * Generate a list of census records (e.g., for a RecordSet), each with a household of the given size.
+   * @param count - Number of records.
+   * @param householdSize - Number of persons in each record.
+   * @return The generated records.
+   */
+  public static List<Gedcomx> records(int count, int householdSize) {
+    Random random = new Random(42);
+    List<Gedcomx> records = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      records.add(census(random, "r" + i, householdSize));
+    }
+    return records;
+  }
+
+  private static Gedcomx person(Random random, int facts) {
+    Gedcomx doc = new Gedcomx();
+    Person person = newPerson(random, "KWCB-" + random.nextInt(1000), 0, pick(random, SURNAMES));
+    for (int i = 0; i < facts; i++) {
+      SourceDescription source = new SourceDescription().id("sd" + i)
+        .about(URI.create("https://familysearch.org/ark:/61903/1:1:" + (100000 + random.nextInt(900000))))
+        .resourceType(ResourceType.Record)
+        .title("Source " + i + " for " + person.getId())
+        .citation("\"United States Census\", database, FamilySearch, entry " + i + ".");
+      doc.sourceDescription(source);
+      Fact fact = newFact(random, FACT_TYPES[i % FACT_TYPES.length]);
+      fact.setSources(new ArrayList<>(Collections.singletonList(new SourceReference().descriptionRef(URI.create("#" + source.getId())))));
+      person.fact(fact);
+      person.source(new SourceReference().descriptionRef(URI.create("#" + source.getId())));
+    }
+    doc.person(person);
+    doc.agent(new Agent().id("a1").name("FamilySearch"));
+    return doc;
+  }
+
+  private static Gedcomx census(Random random, String recordId, int householdSize) {
+    Gedcomx record = new Gedcomx().id(recordId);
+    String surname = pick(random, SURNAMES);
+    for (int i = 0; i < householdSize; i++) {
+      Person person = newPerson(random, recordId + "p" + i, i, surname);
+      person.setPrincipal(i == 0);
+      person.fact(newFact(random, FactType.Census));
+      person.fact(new Fact(FactType.Race, "White"));
+      person.fact(new Fact(FactType.Occupation, "Laborer"));
+      record.person(person);
+      if (i == 1) {
+        record.relationship(new Relationship().type(RelationshipType.Couple)
+          .person1(new ResourceReference(URI.create("#" + recordId + "p0")))
+          .person2(new ResourceReference(URI.create("#" + recordId + "p1"))));
+      }
+      else if (i > 1) {
+        for (int parent = 0; parent < 2; parent++) {
+          record.relationship(new Relationship().type(RelationshipType.ParentChild)
+            .person1(new ResourceReference(URI.create("#" + recordId + "p" + parent)))
+            .person2(new ResourceReference(URI.create("#" + person.getId()))));
+        }
+      }
+    }
+    record.place(new PlaceDescription().id("pl1").name(pick(random, PLACES)).latitude(40 + random.nextDouble()).longitude(-100 + random.nextDouble()));
+    record.sourceDescription(new SourceDescription().id("sd1")
+      .about(URI.create("https://familysearch.org/ark:/61903/1:2:" + recordId))
+      .resourceType(ResourceType.Record)
+      .title("United States Census, 1900")
+      .citation("\"United States Census, 1900,\" database with images, FamilySearch."));
+    record.sourceDescription(new SourceDescription().id("sd2")
+      .about(URI.create("#" + recordId + "p0"))
+      .resourceType(ResourceType.Person));
+    record.setDescriptionRef(URI.create("#sd1"));
+    return record;
+  }
+
+  private static FamilySearchPlatform familySearch(Random random, int size) {
+    FamilySearchPlatform doc = new FamilySearchPlatform();
+    for (int i = 0; i < size; i++) {
+      Person person = newPerson(random, "KW" + i, i, pick(random, SURNAMES));
+      person.fact(newFact(random, FactType.Birth));
+      person.fact(newFact(random, FactType.Death));
+      for (OrdinanceType type : new OrdinanceType[]{OrdinanceType.Baptism, OrdinanceType.Confirmation, OrdinanceType.Endowment}) {
+        Ordinance ordinance = new Ordinance().type(type).status(OrdinanceStatus.Completed);
+        OrdinanceParticipant participant = new OrdinanceParticipant();
+        participant.setParticipant(new ResourceReference(URI.create("#" + person.getId())));
+        ordinance.participant(participant);
+        person.addExtensionElement(ordinance);
+      }
+      doc.person(person);
+      if (i >= 2) {
+        ChildAndParentsRelationship relationship = new ChildAndParentsRelationship();
+        relationship.setId("cap" + i);
+        relationship.setParent1(new ResourceReference(URI.create("#KW" + (i - 2 - (i % 2)))));
+        relationship.setParent2(new ResourceReference(URI.create("#KW" + (i - 1 - (i % 2)))));
+        relationship.setChild(new ResourceReference(URI.create("#" + person.getId())));
+        doc.addChildAndParentsRelationship(relationship);
+      }
+      if (i % 10 == 9) {
+        Merge merge = new Merge();
+        merge.setResourcesToCopy(new ArrayList<>(Collections.singletonList(new ResourceReference(URI.create("#KW" + i)))));
+        merge.setResourcesToDelete(new ArrayList<>(Collections.singletonList(new ResourceReference(URI.create("#KW" + (i - 1))))));
+        doc.addMerge(merge);
+      }
+    }
+    return doc;
+  }
+
+  private static Person newPerson(Random random, String id, int index, String surname) {
+    Person person = new Person();
+    person.setId(id);
+    person.gender(new Gender(index % 2 == 0 ? GenderType.Male : GenderType.Female));
+    person.name(name(pick(random, GIVEN_NAMES), surname));
+    person.identifier(new Identifier(URI.create("https://familysearch.org/ark:/61903/4:1:" + id), IdentifierType.Persistent));
+    return person;
+  }
+
+  private static Name name(String given, String surname) {
+    return new Name().nameForm(new NameForm(given + " " + surname,
+      new NamePart(NamePartType.Given, given), new NamePart(NamePartType.Surname, surname)));
+  }
+
+  private static Fact newFact(Random random, FactType type) {
+    int year = 1800 + random.nextInt(150);
+    int month = 1 + random.nextInt(12);
+    int day = 1 + random.nextInt(28);
+    Date date = new Date().original(day + " " + month + " " + year).formal(String.format("+%04d-%02d-%02d", year, month, day));
+    return new Fact(type, date, new PlaceReference().original(pick(random, PLACES)));
+  }
+
+  private static String pick(Random random, String[] values) {
+    return values[random.nextInt(values.length)];
+  }
+}
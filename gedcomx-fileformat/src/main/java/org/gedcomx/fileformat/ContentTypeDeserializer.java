@@ -0,0 +1,139 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.fileformat;
+
+import org.gedcomx.Gedcomx;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads each entry of a GEDCOM X file with the deserializer for the syntax of its content type: the suffix of the
+ * subtype (<code>json</code> for <code>application/x-gedcomx-v1+json</code>), or the subtype itself if it has no suffix
+ * (<code>xml</code> for <code>text/xml</code>). Entries of other content types (such as images) are returned as input
+ * streams.
+ * <p>
+ * Instances are thread-safe, as long as the deserializers are.
+ */
+public class ContentTypeDeserializer implements GedcomxStreamingDeserializer {
+
+  private final Map<String, GedcomxEntryDeserializer> deserializers = new ConcurrentHashMap<String, GedcomxEntryDeserializer>();
+
+  /**
+   * Creates a deserializer for JSON, XML and Smile entries. (The XML deserializer is created when the first XML entry
+   * is read, since creating its JAXB context is expensive.)
+   *
+   * @param classes the classes to use for deserialization
+   */
+  public ContentTypeDeserializer(Class<?>... classes) {
+    register("json", new JacksonJsonSerialization(classes));
+    register("smile", new JacksonSmileSerialization(classes));
+    register("xml", new LazyXmlDeserializer(classes));
+  }
+
+  /**
+   * Register the deserializer for a syntax, replacing any deserializer already registered for it.
+   *
+   * @param syntax The syntax (such as <code>json</code>).
+   * @param deserializer The deserializer.
+   * @return this.
+   */
+  public ContentTypeDeserializer register(String syntax, GedcomxEntryDeserializer deserializer) {
+    this.deserializers.put(syntax.toLowerCase(Locale.ROOT), deserializer);
+    return this;
+  }
+
+  @Override
+  public Object deserialize(InputStream in, String mediaType) throws IOException {
+    String type = baseType(mediaType);
+    GedcomxEntryDeserializer deserializer = findDeserializer(type);
+    return deserializer == null ? in : deserializer.deserialize(in, type);
+  }
+
+  @Override
+  public boolean deserialize(InputStream in, String mediaType, GedcomxElementHandler handler) throws IOException {
+    String type = baseType(mediaType);
+    GedcomxEntryDeserializer deserializer = findDeserializer(type);
+    if (deserializer instanceof GedcomxStreamingDeserializer) {
+      return ((GedcomxStreamingDeserializer) deserializer).deserialize(in, type, handler);
+    }
+    Object resource = deserializer == null ? null : deserializer.deserialize(in, type);
+    if (resource instanceof Gedcomx) {
+      handler.handle((Gedcomx) resource);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * The media type without its parameters (such as <code>charset</code>), which the deserializers don't expect.
+   */
+  private static String baseType(String mediaType) {
+    if (mediaType == null) {
+      return null;
+    }
+    int end = mediaType.indexOf(';');
+    return (end < 0 ? mediaType : mediaType.substring(0, end)).trim().toLowerCase(Locale.ROOT);
+  }
+
+  private GedcomxEntryDeserializer findDeserializer(String type) {
+    if (type == null) {
+      //the JSON deserializer has always been the default.
+      return this.deserializers.get("json");
+    }
+    int start = Math.max(type.lastIndexOf('+'), type.indexOf('/'));
+    return this.deserializers.get(type.substring(start + 1));
+  }
+
+  /**
+   * Creates the XML deserializer when it is first needed.
+   */
+  private static final class LazyXmlDeserializer implements GedcomxStreamingDeserializer {
+    private final Class<?>[] classes;
+    private volatile JaxbXmlSerialization delegate;
+
+    private LazyXmlDeserializer(Class<?>[] classes) {
+      this.classes = classes.clone();
+    }
+
+    private JaxbXmlSerialization getDelegate() {
+      JaxbXmlSerialization delegate = this.delegate;
+      if (delegate == null) {
+        synchronized (this) {
+          delegate = this.delegate;
+          if (delegate == null) {
+            delegate = new JaxbXmlSerialization(this.classes);
+            this.delegate = delegate;
+          }
+        }
+      }
+      return delegate;
+    }
+
+    @Override
+    public Object deserialize(InputStream in, String mediaType) throws IOException {
+      return getDelegate().deserialize(in, mediaType);
+    }
+
+    @Override
+    public boolean deserialize(InputStream in, String mediaType, GedcomxElementHandler handler) throws IOException {
+      return getDelegate().deserialize(in, mediaType, handler);
+    }
+  }
+}
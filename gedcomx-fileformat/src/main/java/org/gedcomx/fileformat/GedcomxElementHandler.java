@@ -0,0 +1,304 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.fileformat;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Document;
+import org.gedcomx.conclusion.Event;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.records.Collection;
+import org.gedcomx.records.Field;
+import org.gedcomx.records.RecordDescriptor;
+import org.gedcomx.source.SourceDescription;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+
+/**
+ * Handles the elements of the top-level collections of a GEDCOM X document (its persons, relationships, source
+ * descriptions, and so on) one at a time, as they are read from a GEDCOM X file. Only the collections that have a
+ * callback are bound to objects; the rest are skipped. The elements aren't kept, so a document of any size can be read
+ * in constant memory.
+ *
+ * @see GedcomxFile#readResource(GedcomxFileEntry, GedcomxElementHandler)
+ */
+public class GedcomxElementHandler {
+
+  private final Map<Binding<?>, Consumer<Object>> consumers = new HashMap<Binding<?>, Consumer<Object>>();
+
+  /**
+   * Handle the persons of the document.
+   *
+   * @param consumer The callback for each person.
+   * @return this.
+   */
+  public GedcomxElementHandler onPerson(Consumer<? super Person> consumer) {
+    return on(Binding.PERSONS, consumer);
+  }
+
+  /**
+   * Handle the relationships of the document.
+   *
+   * @param consumer The callback for each relationship.
+   * @return this.
+   */
+  public GedcomxElementHandler onRelationship(Consumer<? super Relationship> consumer) {
+    return on(Binding.RELATIONSHIPS, consumer);
+  }
+
+  /**
+   * Handle the source descriptions of the document.
+   *
+   * @param consumer The callback for each source description.
+   * @return this.
+   */
+  public GedcomxElementHandler onSourceDescription(Consumer<? super SourceDescription> consumer) {
+    return on(Binding.SOURCE_DESCRIPTIONS, consumer);
+  }
+
+  /**
+   * Handle the agents of the document.
+   *
+   * @param consumer The callback for each agent.
+   * @return this.
+   */
+  public GedcomxElementHandler onAgent(Consumer<? super Agent> consumer) {
+    return on(Binding.AGENTS, consumer);
+  }
+
+  /**
+   * Handle the events of the document.
+   *
+   * @param consumer The callback for each event.
+   * @return this.
+   */
+  public GedcomxElementHandler onEvent(Consumer<? super Event> consumer) {
+    return on(Binding.EVENTS, consumer);
+  }
+
+  /**
+   * Handle the places of the document.
+   *
+   * @param consumer The callback for each place.
+   * @return this.
+   */
+  public GedcomxElementHandler onPlace(Consumer<? super PlaceDescription> consumer) {
+    return on(Binding.PLACES, consumer);
+  }
+
+  /**
+   * Handle the documents of the document.
+   *
+   * @param consumer The callback for each document.
+   * @return this.
+   */
+  public GedcomxElementHandler onDocument(Consumer<? super Document> consumer) {
+    return on(Binding.DOCUMENTS, consumer);
+  }
+
+  /**
+   * Handle the collections of the document.
+   *
+   * @param consumer The callback for each collection.
+   * @return this.
+   */
+  public GedcomxElementHandler onCollection(Consumer<? super Collection> consumer) {
+    return on(Binding.COLLECTIONS, consumer);
+  }
+
+  /**
+   * Handle the fields of the document.
+   *
+   * @param consumer The callback for each field.
+   * @return this.
+   */
+  public GedcomxElementHandler onField(Consumer<? super Field> consumer) {
+    return on(Binding.FIELDS, consumer);
+  }
+
+  /**
+   * Handle the record descriptors of the document.
+   *
+   * @param consumer The callback for each record descriptor.
+   * @return this.
+   */
+  public GedcomxElementHandler onRecordDescriptor(Consumer<? super RecordDescriptor> consumer) {
+    return on(Binding.RECORD_DESCRIPTORS, consumer);
+  }
+
+  private <T> GedcomxElementHandler on(Binding<T> binding, Consumer<? super T> consumer) {
+    this.consumers.put(binding, element -> consumer.accept(binding.type.cast(element)));
+    return this;
+  }
+
+  /**
+   * The binding of the collection with the given JSON property name, if it is to be handled.
+   *
+   * @param property The JSON property name.
+   * @return The binding, or null if the property isn't a collection to be handled.
+   */
+  Binding<?> getJsonBinding(String property) {
+    Binding<?> binding = Binding.BY_JSON_NAME.get(property);
+    return binding != null && this.consumers.containsKey(binding) ? binding : null;
+  }
+
+  /**
+   * The binding of the collection with the given XML element name (in the GEDCOM X namespace), if it is to be handled.
+   *
+   * @param localName The local name of the XML element.
+   * @return The binding, or null if the element isn't of a collection to be handled.
+   */
+  Binding<?> getXmlBinding(String localName) {
+    Binding<?> binding = Binding.BY_XML_NAME.get(localName);
+    return binding != null && this.consumers.containsKey(binding) ? binding : null;
+  }
+
+  /**
+   * Handle an element that has been read.
+   *
+   * @param binding The binding of its collection.
+   * @param element The element.
+   */
+  void handle(Binding<?> binding, Object element) {
+    this.consumers.get(binding).accept(element);
+  }
+
+  /**
+   * Read the document in the given stream with the given deserializer, one element at a time if it can. A deserializer
+   * that can't is used to read the whole document, whose elements are then handled. The stream is closed.
+   *
+   * @param deserializer The deserializer.
+   * @param in The stream.
+   * @param gedxEntry The entry that contains the document.
+   * @throws IOException If the document can't be read.
+   * @throws IllegalArgumentException If the entry isn't a GEDCOM X document.
+   */
+  void read(GedcomxEntryDeserializer deserializer, InputStream in, GedcomxFileEntry gedxEntry) throws IOException {
+    try {
+      String contentType = gedxEntry.getContentType();
+      if (deserializer instanceof GedcomxStreamingDeserializer) {
+        if (!((GedcomxStreamingDeserializer) deserializer).deserialize(in, contentType, this)) {
+          throw new IllegalArgumentException("Not a GEDCOM X document: " + gedxEntry.getJarEntry().getName());
+        }
+      }
+      else {
+        Object resource = deserializer.deserialize(in, contentType);
+        if (!(resource instanceof Gedcomx)) {
+          throw new IllegalArgumentException("Not a GEDCOM X document: " + gedxEntry.getJarEntry().getName());
+        }
+        handle((Gedcomx) resource);
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Read a document from the given Jackson parser (JSON or a binary equivalent), handling its elements as they are
+   * read and skipping the rest.
+   *
+   * @param parser The parser, positioned before the document.
+   * @throws IOException If the parser isn't at the start of an object.
+   */
+  void read(JsonParser parser) throws IOException {
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      throw new IOException("Expected an object at the start of the GEDCOM X document.");
+    }
+    while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+      Binding<?> binding = getJsonBinding(parser.currentName());
+      JsonToken token = parser.nextToken();
+      if (binding != null && token == JsonToken.START_ARRAY) {
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+          if (token == JsonToken.START_OBJECT) {
+            handle(binding, parser.readValueAs(binding.type));
+          }
+          else {
+            parser.skipChildren();
+          }
+        }
+      }
+      else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  /**
+   * Handle the elements of a document that has already been read.
+   *
+   * @param document The document.
+   */
+  void handle(Gedcomx document) {
+    for (Binding<?> binding : Binding.ALL) {
+      Consumer<Object> consumer = this.consumers.get(binding);
+      List<?> elements = binding.list.apply(document);
+      if (consumer != null && elements != null) {
+        elements.forEach(consumer);
+      }
+    }
+  }
+
+  /**
+   * How a top-level collection of a GEDCOM X document is named and typed.
+   */
+  static final class Binding<T> {
+    static final Binding<Person> PERSONS = new Binding<Person>("persons", "person", Person.class, Gedcomx::getPersons);
+    static final Binding<Relationship> RELATIONSHIPS = new Binding<Relationship>("relationships", "relationship", Relationship.class, Gedcomx::getRelationships);
+    static final Binding<SourceDescription> SOURCE_DESCRIPTIONS = new Binding<SourceDescription>("sourceDescriptions", "sourceDescription", SourceDescription.class, Gedcomx::getSourceDescriptions);
+    static final Binding<Agent> AGENTS = new Binding<Agent>("agents", "agent", Agent.class, Gedcomx::getAgents);
+    static final Binding<Event> EVENTS = new Binding<Event>("events", "event", Event.class, Gedcomx::getEvents);
+    static final Binding<PlaceDescription> PLACES = new Binding<PlaceDescription>("places", "place", PlaceDescription.class, Gedcomx::getPlaces);
+    static final Binding<Document> DOCUMENTS = new Binding<Document>("documents", "document", Document.class, Gedcomx::getDocuments);
+    static final Binding<Collection> COLLECTIONS = new Binding<Collection>("collections", "collection", Collection.class, Gedcomx::getCollections);
+    static final Binding<Field> FIELDS = new Binding<Field>("fields", "field", Field.class, Gedcomx::getFields);
+    static final Binding<RecordDescriptor> RECORD_DESCRIPTORS = new Binding<RecordDescriptor>("recordDescriptors", "recordDescriptor", RecordDescriptor.class, Gedcomx::getRecordDescriptors);
+    static final List<Binding<?>> ALL = Arrays.<Binding<?>>asList(PERSONS, RELATIONSHIPS, SOURCE_DESCRIPTIONS, AGENTS, EVENTS, PLACES, DOCUMENTS, COLLECTIONS, FIELDS, RECORD_DESCRIPTORS);
+    private static final Map<String, Binding<?>> BY_JSON_NAME = new HashMap<String, Binding<?>>();
+    private static final Map<String, Binding<?>> BY_XML_NAME = new HashMap<String, Binding<?>>();
+
+    static {
+      for (Binding<?> binding : ALL) {
+        BY_JSON_NAME.put(binding.jsonName, binding);
+        BY_XML_NAME.put(binding.xmlName, binding);
+      }
+    }
+
+    final String jsonName;
+    final String xmlName;
+    final Class<T> type;
+    private final Function<Gedcomx, List<T>> list;
+
+    private Binding(String jsonName, String xmlName, Class<T> type, Function<Gedcomx, List<T>> list) {
+      this.jsonName = jsonName;
+      this.xmlName = xmlName;
+      this.type = type;
+      this.list = list;
+    }
+  }
+}
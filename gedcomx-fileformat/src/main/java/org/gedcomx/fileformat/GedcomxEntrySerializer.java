@@ -15,6 +15,8 @@
  */
 package org.gedcomx.fileformat;
 
+import org.gedcomx.rt.GedcomxConstants;
+
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -40,4 +42,13 @@ public interface GedcomxEntrySerializer {
    * @return The suggested filename extension.
    */
   String suggestFilenameExtension();
+
+  /**
+   * Suggest a media type (the <code>Content-Type</code> in the manifest) for the entries of this serializer.
+   *
+   * @return The suggested media type.
+   */
+  default String suggestMediaType() {
+    return GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE;
+  }
 }
@@ -21,6 +21,8 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -29,9 +31,14 @@ import java.util.jar.Manifest;
 /**
  * The <code>GedcomxFile</code> class is used to read the contents of a GEDCOM X file
  * from any file that can be opened with <code>java.util.jar.JarFile</code>.
+ * <p>
+ * Entries may be read from several threads at once, without any locking by the caller, as long as the deserializer
+ * is thread-safe (as <code>JacksonJsonSerialization</code> and <code>JaxbXmlSerialization</code> are).
  */
 public class GedcomxFile {
 
+  private static final int DEFAULT_MAX_PENDING_READS = 64;
+
   private final JarFile gedxFile;
   private final GedcomxEntryDeserializer deserializer;
 
@@ -41,14 +48,15 @@ public class GedcomxFile {
   }
 
   /**
-   * Creates a new <code>GedcomxFile</code> to read from the specified file <code>JarFile</code>.
+   * Creates a new <code>GedcomxFile</code> to read from the specified file <code>JarFile</code>. The entries are read
+   * according to their content types (JSON, XML or Smile), with a {@link ContentTypeDeserializer}.
    *
    * @param jarFile the jar file to be read
    * @param classes the classes to use for serialization
    * @throws IOException if an I/O error has occurred
    */
   public GedcomxFile(JarFile jarFile, Class<?>... classes) throws IOException {
-    this(jarFile, new JacksonJsonSerialization(classes));
+    this(jarFile, new ContentTypeDeserializer(classes));
   }
 
   /**
@@ -158,9 +166,61 @@ public class GedcomxFile {
    * @throws IOException If there was a problem unmarshalling the resource.
    */
   public Object readResource(GedcomxFileEntry gedxEntry) throws IOException {
-    return this.deserializer.deserialize(getResourceStream(gedxEntry), gedxEntry.getContentType());
+    InputStream in = getResourceStream(gedxEntry);
+    Object resource = null;
+    try {
+      resource = this.deserializer.deserialize(in, gedxEntry.getContentType());
+      return resource;
+    }
+    finally {
+      if (resource != in) {
+        //release the entry's inflater now, unless the stream itself is the resource.
+        in.close();
+      }
+    }
+  }
+
+  /**
+   * Read the GEDCOM X document contained in the given entry one element at a time, passing the elements of its
+   * top-level collections to the given handler as they are read, so that the document is never held in memory as a
+   * whole. (If the deserializer isn't a {@link GedcomxStreamingDeserializer}, the whole document is read first.)
+   *
+   * @param gedxEntry The entry that contains the document.
+   * @param handler The handler for the elements.
+   *
+   * @throws IOException If there was a problem unmarshalling the document.
+   * @throws IllegalArgumentException If the entry doesn't contain a GEDCOM X document.
+   */
+  public void readResource(GedcomxFileEntry gedxEntry, GedcomxElementHandler handler) throws IOException {
+    handler.read(this.deserializer, getResourceStream(gedxEntry), gedxEntry);
   }
 
+  /**
+   * Read the resources of all of the entries in this GEDCOM X file concurrently on the given executor. See
+   * {@link #readResources(Executor, Predicate, int)}.
+   *
+   * @param executor The executor on which to read the entries.
+   * @return An iterator over the resources, in the order in which they are read.
+   */
+  public GedcomxFileResourceIterator readResources(Executor executor) {
+    return readResources(executor, entry -> true, DEFAULT_MAX_PENDING_READS);
+  }
+
+  /**
+   * Read the resources of the entries in this GEDCOM X file that pass the given filter concurrently on the given
+   * executor. The resources are returned as they are read, which isn't necessarily the order of the entries. An entry
+   * that can't be read is returned with its error, and doesn't stop the others from being read. The deserializer must
+   * be thread-safe. Entries the deserializer doesn't know how to read (such as images) are returned as input streams,
+   * so they would usually be filtered out.
+   *
+   * @param executor The executor on which to read the entries.
+   * @param filter Which entries to read.
+   * @param maxPending The most entries that may be being read, or waiting to be taken from the iterator, at once.
+   * @return An iterator over the resources, in the order in which they are read.
+   */
+  public GedcomxFileResourceIterator readResources(Executor executor, Predicate<GedcomxFileEntry> filter, int maxPending) {
+    return new GedcomxFileResourceIterator(this, executor, filter, maxPending);
+  }
 
   /**
    * Closes the GEDCOM X file.
@@ -0,0 +1,81 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.fileformat;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The result of reading the resource in an entry of a GEDCOM X file: either the resource or the error that kept it
+ * from being read, along with the time it took.
+ *
+ * @see GedcomxFile#readResources(java.util.concurrent.Executor, java.util.function.Predicate, int)
+ */
+public class GedcomxFileResource {
+  private final GedcomxFileEntry entry;
+  private final Object resource;
+  private final IOException error;
+  private final long readNanos;
+
+  GedcomxFileResource(GedcomxFileEntry entry, Object resource, IOException error, long readNanos) {
+    this.entry = entry;
+    this.resource = resource;
+    this.error = error;
+    this.readNanos = readNanos;
+  }
+
+  /**
+   * The entry that was read.
+   *
+   * @return The entry that was read.
+   */
+  public GedcomxFileEntry getEntry() {
+    return entry;
+  }
+
+  /**
+   * The resource that was read from the entry.
+   *
+   * @return The resource.
+   * @throws IOException if the resource couldn't be read.
+   */
+  public Object getResource() throws IOException {
+    if (this.error != null) {
+      throw new IOException("Unable to read " + this.entry.getJarEntry().getName(), this.error);
+    }
+    return resource;
+  }
+
+  /**
+   * The error that kept the resource from being read.
+   *
+   * @return The error, or null if the resource was read.
+   */
+  public IOException getError() {
+    return error;
+  }
+
+  /**
+   * How long it took to read (decompress and deserialize) the resource.
+   *
+   * @param unit The unit of the result.
+   * @return The time it took, in the given unit.
+   */
+  public long getReadTime(TimeUnit unit) {
+    return unit.convert(this.readNanos, TimeUnit.NANOSECONDS);
+  }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.fileformat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Predicate;
+
+
+/**
+ * Iterates over the resources of a GEDCOM X file as they are read on an executor, in the order in which they finish.
+ * No more than a fixed number of entries are being read or waiting to be taken from the iterator at once, so the
+ * memory used doesn't depend on the number of entries in the file. The iterator itself should be used by one thread.
+ *
+ * @see GedcomxFile#readResources(Executor, Predicate, int)
+ */
+public class GedcomxFileResourceIterator implements Iterator<GedcomxFileResource>, Closeable {
+  private final GedcomxFile gedxFile;
+  private final Executor executor;
+  private final Predicate<GedcomxFileEntry> filter;
+  private final Iterator<GedcomxFileEntry> entries;
+  private final int maxPending;
+  private final BlockingQueue<GedcomxFileResource> completed = new LinkedBlockingQueue<GedcomxFileResource>();
+  private GedcomxFileEntry nextEntry;
+  private int pending = 0;
+  private volatile boolean closed = false;
+
+  GedcomxFileResourceIterator(GedcomxFile gedxFile, Executor executor, Predicate<GedcomxFileEntry> filter, int maxPending) {
+    if (maxPending < 1) {
+      throw new IllegalArgumentException("maxPending must be at least 1.");
+    }
+    this.gedxFile = gedxFile;
+    this.executor = executor;
+    this.filter = filter;
+    this.entries = gedxFile.getEntries().iterator();
+    this.maxPending = maxPending;
+    this.nextEntry = findNext();
+    try {
+      while (this.pending < maxPending && submitNext()) {
+        // keep submitting until the limit is reached or the entries run out.
+      }
+    }
+    catch (RejectedExecutionException e) {
+      if (this.pending == 0) {
+        throw e;
+      }
+      // the rest are submitted as resources are taken.
+    }
+  }
+
+  private GedcomxFileEntry findNext() {
+    while (this.entries.hasNext()) {
+      GedcomxFileEntry entry = this.entries.next();
+      if (this.filter.test(entry)) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  private boolean submitNext() {
+    if (this.nextEntry == null || this.closed) {
+      return false;
+    }
+    final GedcomxFileEntry entry = this.nextEntry;
+    // Only move on once the executor has taken the entry, so that an entry it rejects isn't skipped.
+    this.executor.execute(() -> read(entry));
+    this.nextEntry = findNext();
+    this.pending++;
+    return true;
+  }
+
+  private void read(GedcomxFileEntry entry) {
+    if (this.closed) {
+      return;
+    }
+    long start = System.nanoTime();
+    Object resource = null;
+    IOException error = null;
+    try {
+      resource = this.gedxFile.readResource(entry);
+    }
+    catch (IOException e) {
+      error = e;
+    }
+    catch (RuntimeException | Error e) {
+      // Errors (e.g. a StackOverflowError on a deeply nested entry) are reported with the entry too, or no result
+      // would be queued for it and next() would wait forever.
+      error = new IOException(e);
+    }
+    this.completed.add(new GedcomxFileResource(entry, resource, error, System.nanoTime() - start));
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !this.closed && (this.pending > 0 || this.nextEntry != null);
+  }
+
+  /**
+   * The next resource to finish being read, waiting for it if need be.
+   *
+   * @return The next resource.
+   * @throws RejectedExecutionException If no entry is being read and the executor won't accept the next one. The entry
+   *   isn't skipped; it is submitted again on the next call.
+   */
+  @Override
+  public GedcomxFileResource next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    if (this.pending == 0) {
+      submitNext();
+    }
+    GedcomxFileResource resource;
+    try {
+      resource = this.completed.take();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    this.pending--;
+    try {
+      while (this.pending < this.maxPending && submitNext()) {
+        // top up the entries being read.
+      }
+    }
+    catch (RejectedExecutionException e) {
+      // the entries that weren't accepted are submitted again on the next call, so the resource isn't lost.
+    }
+    return resource;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Stop reading entries. Entries that are already being read are allowed to finish, but their resources are
+   * discarded. The GEDCOM X file itself is not closed.
+   */
+  @Override
+  public void close() {
+    this.closed = true;
+    this.completed.clear();
+  }
+}
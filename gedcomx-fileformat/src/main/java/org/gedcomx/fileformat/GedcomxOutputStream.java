@@ -18,31 +18,213 @@ package org.gedcomx.fileformat;
 import org.gedcomx.Gedcomx;
 import org.gedcomx.rt.GedcomxConstants;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.jar.*;
+import java.util.zip.Deflater;
 
 
 /**
  * Class to help in writing a GEDCOM X file.
+ * <p>
+ * When constructed with an executor, the resources are serialized and deflated on the executor, several at a time, and
+ * written to the file in the order in which they were added. In that mode the serializer must be thread-safe, and a
+ * resource must not be changed after it has been added until the stream has been closed.
+ * <p>
+ * An existing file can be updated in place with {@link #update(File, GedcomxEntrySerializer)}, and the update abandoned
+ * with {@link #abort()}.
  */
 public class GedcomxOutputStream {
 
+  private static final int DEFAULT_MAX_PENDING_WRITES = 64;
+
   private final GedcomxEntrySerializer serializer;
   private final JarOutputStream gedxOutputStream;
+  private final ParallelJarWriter parallelWriter;
   private final Manifest mf;
+  private final boolean update;
+  private final FileUpdateStream updateStream;
   private int entryCount = 0;
 
   public GedcomxOutputStream(OutputStream gedxOutputStream, GedcomxEntrySerializer serializer) throws IOException {
     this.serializer = serializer;
     this.gedxOutputStream = new JarOutputStream(gedxOutputStream);
+    this.parallelWriter = null;
+    this.update = false;
+    this.updateStream = null;
     this.mf = new Manifest();
     this.mf.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
   }
 
+  /**
+   * Constructs a GEDCOM X output stream that serializes and deflates the resources on the given executor.
+   *
+   * @param gedxOutputStream an output stream to which the GEDCOM X resources will appended
+   * @param serializer the (thread-safe) serializer for the resources
+   * @param executor the executor on which to serialize and deflate the resources
+   */
+  public GedcomxOutputStream(OutputStream gedxOutputStream, GedcomxEntrySerializer serializer, Executor executor) {
+    this(gedxOutputStream, serializer, executor, DEFAULT_MAX_PENDING_WRITES);
+  }
+
+  /**
+   * Constructs a GEDCOM X output stream that serializes and deflates the resources on the given executor.
+   *
+   * @param gedxOutputStream an output stream to which the GEDCOM X resources will appended
+   * @param serializer the (thread-safe) serializer for the resources
+   * @param executor the executor on which to serialize and deflate the resources
+   * @param maxPending the most resources that may be waiting to be written at once (adding a resource waits when there are more)
+   */
+  public GedcomxOutputStream(OutputStream gedxOutputStream, GedcomxEntrySerializer serializer, Executor executor, int maxPending) {
+    this.serializer = serializer;
+    this.gedxOutputStream = null;
+    this.parallelWriter = new ParallelJarWriter(gedxOutputStream, executor, maxPending, Deflater.DEFAULT_COMPRESSION);
+    this.update = false;
+    this.updateStream = null;
+    this.mf = new Manifest();
+    this.mf.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+  }
+
+  private GedcomxOutputStream(ParallelJarWriter parallelWriter, FileUpdateStream updateStream, Manifest mf, int entryCount, GedcomxEntrySerializer serializer) {
+    this.serializer = serializer;
+    this.gedxOutputStream = null;
+    this.parallelWriter = parallelWriter;
+    this.update = true;
+    this.updateStream = updateStream;
+    this.mf = mf;
+    this.entryCount = entryCount;
+  }
+
+  /**
+   * Opens an existing GEDCOM X file to add resources to it, or to replace or remove its resources.
+   *
+   * @param gedxFile the GEDCOM X file
+   * @param serializer the serializer for the resources
+   * @return the GEDCOM X output stream, which must be closed to finish the update
+   * @throws IOException if the file can't be read or written, or isn't a zip file
+   * @see #update(File, GedcomxEntrySerializer, Executor, int)
+   */
+  public static GedcomxOutputStream update(File gedxFile, GedcomxEntrySerializer serializer) throws IOException {
+    return update(gedxFile, serializer, Runnable::run, 1);
+  }
+
+  /**
+   * Opens an existing GEDCOM X file to add resources to it, or to replace or remove its resources, serializing and
+   * deflating the resources on the given executor.
+   *
+   * @param gedxFile the GEDCOM X file
+   * @param serializer the (thread-safe) serializer for the resources
+   * @param executor the executor on which to serialize and deflate the resources
+   * @return the GEDCOM X output stream, which must be closed to finish the update
+   * @throws IOException if the file can't be read or written, or isn't a zip file
+   * @see #update(File, GedcomxEntrySerializer, Executor, int)
+   */
+  public static GedcomxOutputStream update(File gedxFile, GedcomxEntrySerializer serializer, Executor executor) throws IOException {
+    return update(gedxFile, serializer, executor, DEFAULT_MAX_PENDING_WRITES);
+  }
+
+  /**
+   * Opens an existing GEDCOM X file to add resources to it, or to replace or remove its resources. The entries that
+   * are left alone are not read or rewritten: they stay where they are in the file, still compressed. Nothing that is
+   * already in the file is overwritten: the new entries are written after the end of the file, followed by a new
+   * manifest and central directory, which take the place of the old ones only when the stream is closed. So the cost
+   * of an update is in proportion to the size of the resources that are added, plus the size of the manifest and
+   * central directory.
+   * <p>
+   * The file is locked for the whole of the update, so only one update of it can happen at a time. Readers that
+   * already have the file open keep reading it as it was. If the update fails, or is abandoned with {@link #abort()},
+   * the file is cut back to the length it had, leaving it as it was.
+   * <p>
+   * Adding a resource with the name of an existing entry replaces the entry, and resources added without a name are
+   * given names that aren't taken. The space taken by replaced and removed entries, and by the old manifest and
+   * central directory, isn't reclaimed; {@link #compact(File, File)} makes a copy of the file without it.
+   *
+   * @param gedxFile the GEDCOM X file
+   * @param serializer the (thread-safe) serializer for the resources
+   * @param executor the executor on which to serialize and deflate the resources
+   * @param maxPending the most resources that may be waiting to be written at once (adding a resource waits when there are more)
+   * @return the GEDCOM X output stream, which must be closed to finish the update
+   * @throws IOException if the file can't be read or written, or isn't a zip file
+   */
+  public static GedcomxOutputStream update(File gedxFile, GedcomxEntrySerializer serializer, Executor executor, int maxPending) throws IOException {
+    FileChannel channel = FileChannel.open(gedxFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      // held until the update is committed or rolled back, or the channel is closed.
+      FileLock lock = channel.lock();
+      ZipDirectory directory = ZipDirectory.read(channel);
+      List<ZipDirectory.Record> kept = new ArrayList<ZipDirectory.Record>(directory.size());
+      ZipDirectory.Record manifestRecord = null;
+      for (int i = 0; i < directory.size(); i++) {
+        ZipDirectory.Record record = directory.getRecord(directory.getPosition(i));
+        if (JarFile.MANIFEST_NAME.equals(record.getName())) {
+          manifestRecord = record;
+        }
+        else {
+          kept.add(record);
+        }
+      }
+
+      Manifest mf;
+      if (manifestRecord == null) {
+        mf = new Manifest();
+        mf.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+      }
+      else {
+        try (InputStream in = ZipDirectory.readContent(channel, manifestRecord)) {
+          mf = new Manifest(in);
+        }
+      }
+
+      // the new entries go after the end of the file, so the old central directory stands until the new one is written.
+      FileUpdateStream updateStream = new FileUpdateStream(channel, lock);
+      ParallelJarWriter writer = new ParallelJarWriter(updateStream, updateStream.start, kept, executor, maxPending, Deflater.DEFAULT_COMPRESSION);
+      return new GedcomxOutputStream(writer, updateStream, mf, kept.size(), serializer);
+    }
+    catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Copies a GEDCOM X file, leaving out the space taken by entries that were replaced or removed by updates. The
+   * entries are copied as they are, without being inflated and deflated again.
+   *
+   * @param gedxFile the GEDCOM X file
+   * @param target the file to copy it to
+   * @throws IOException if the file can't be read or the copy can't be written
+   */
+  public static void compact(File gedxFile, File target) throws IOException {
+    try (FileChannel channel = FileChannel.open(gedxFile.toPath(), StandardOpenOption.READ)) {
+      ZipDirectory directory = ZipDirectory.read(channel);
+      FileOutputStream out = new FileOutputStream(target);
+      ParallelJarWriter writer = new ParallelJarWriter(out, Runnable::run, 1, Deflater.DEFAULT_COMPRESSION);
+      try {
+        for (int i = 0; i < directory.size(); i++) {
+          ZipDirectory.Record record = directory.getRecord(directory.getPosition(i));
+          writer.copy(record, ZipDirectory.readData(channel, record));
+        }
+      }
+      catch (IOException | RuntimeException e) {
+        out.close();
+        throw e;
+      }
+      writer.close();
+    }
+  }
+
     /**
      * Constructs a GEDCOM X output stream.
      *
@@ -55,7 +237,8 @@ public class GedcomxOutputStream {
      * @throws IOException if an I/O error has occurred
      */
   public GedcomxOutputStream(OutputStream gedxOutputStream, Class<?>... classes) throws IOException {
-    this(gedxOutputStream, new JacksonJsonSerialization(classes));
+    // Entries are written as compact JSON; indentation only makes them bigger.
+    this(gedxOutputStream, new JacksonJsonSerialization(false, classes));
   }
 
   /**
@@ -86,16 +269,25 @@ public class GedcomxOutputStream {
    * @throws IOException if an I/O error has occurred
    */
   public void addResource(Gedcomx resource, Date lastModified) throws IOException {
+    String entryName = nextEntryName();
+    while (this.update && this.parallelWriter.contains(entryName)) {
+      this.entryCount++;
+      entryName = nextEntryName();
+    }
+    addResource(entryName, resource, lastModified);
+  }
+
+  private String nextEntryName() {
     StringBuilder entryName = new StringBuilder("tree");
     if (this.entryCount > 0) {
       entryName.append(this.entryCount);
     }
     entryName.append(this.serializer.suggestFilenameExtension());
-    addResource(entryName.toString(), resource, lastModified);
+    return entryName.toString();
   }
 
   /**
-   * Add a resource to the GEDCOM X output stream.
+   * Add a resource to the GEDCOM X output stream, with the media type suggested by the serializer.
    *
    * @param entryName The name by which this resource shall be known within the GEDCOM X file.
    * @param resource The resource.
@@ -103,7 +295,7 @@ public class GedcomxOutputStream {
    * @throws IOException if an I/O error has occurred
    */
   public void addResource(String entryName, Gedcomx resource, Date lastModified) throws IOException {
-    addResource(GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE, entryName, resource, lastModified, null);
+    addResource(this.serializer.suggestMediaType(), entryName, resource, lastModified, null);
   }
 
   /**
@@ -131,8 +323,17 @@ public class GedcomxOutputStream {
    * @throws IOException if an I/O error has occurred
    */
   public void addResource(String contentType, String entryName, Object resource, Date lastModified, Map<String, String> attributes) throws IOException {
-    putNextEntry(contentType, entryName, lastModified, attributes);
-    this.serializer.serialize(resource, this.gedxOutputStream);
+    if (this.parallelWriter != null) {
+      String name = addManifestEntry(contentType, entryName, lastModified, attributes);
+      if (this.update) {
+        this.parallelWriter.remove(name);
+      }
+      write(name, out -> this.serializer.serialize(resource, out));
+    }
+    else {
+      putNextEntry(contentType, entryName, lastModified, attributes);
+      this.serializer.serialize(resource, this.gedxOutputStream);
+    }
     this.entryCount++;
   }
 
@@ -147,6 +348,18 @@ public class GedcomxOutputStream {
    * @throws IOException if an I/O error has occurred
    */
   public void addResource(String contentType, String entryName, InputStream resource, Date lastModified, Map<String, String> attributes) throws IOException {
+    if (this.parallelWriter != null) {
+      //the stream has to be read now, since the caller may close it as soon as this returns.
+      String name = addManifestEntry(contentType, entryName, lastModified, attributes);
+      if (this.update) {
+        this.parallelWriter.remove(name);
+      }
+      byte[] bytes = resource.readAllBytes();
+      write(name, out -> out.write(bytes));
+      this.entryCount++;
+      return;
+    }
+
     putNextEntry(contentType, entryName, lastModified, attributes);
     byte[] buffer = new byte[1024];
     int len = resource.read(buffer);
@@ -157,15 +370,50 @@ public class GedcomxOutputStream {
     this.entryCount++;
   }
 
+  private void write(String name, ParallelJarWriter.EntryContent content) throws IOException {
+    try {
+      this.parallelWriter.write(name, System.currentTimeMillis(), content);
+    }
+    catch (IOException | RuntimeException e) {
+      if (this.update) {
+        abandon();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Remove a resource from the GEDCOM X file being updated.
+   *
+   * @param entryName The name of the resource within the GEDCOM X file.
+   * @return Whether the file had such a resource.
+   * @throws IllegalStateException if this stream isn't updating a file.
+   */
+  public boolean removeResource(String entryName) {
+    if (!this.update) {
+      throw new IllegalStateException("Resources can only be removed from a file being updated.");
+    }
+    String name = normalizeEntryName(entryName);
+    if (!this.parallelWriter.remove(name)) {
+      return false;
+    }
+    this.mf.getEntries().remove(name);
+    return true;
+  }
+
   protected void putNextEntry(String contentType, String entryName, Date lastModified, Map<String, String> attributes) throws IOException {
+    entryName = addManifestEntry(contentType, entryName, lastModified, attributes);
+    this.gedxOutputStream.putNextEntry(new JarEntry(entryName));
+  }
+
+  private String addManifestEntry(String contentType, String entryName, Date lastModified, Map<String, String> attributes) {
     if (contentType.trim().length() == 0) {
       throw new IllegalArgumentException("contentType must not be null or empty.");
     }
 
-    entryName = entryName.replaceAll("\\\\", "/");
-    entryName = entryName.charAt(0) == '/' ? entryName.substring(1) : entryName;
+    entryName = normalizeEntryName(entryName);
 
-    JarEntry gedxEntry = new JarEntry(entryName); // will throw a runtime exception if entryName is not okay
+    new JarEntry(entryName); // will throw a runtime exception if entryName is not okay
     Attributes entryAttrs = new Attributes();
 
     if (lastModified != null) {
@@ -184,7 +432,12 @@ public class GedcomxOutputStream {
       this.mf.getEntries().put(entryName, entryAttrs);
     }
 
-    this.gedxOutputStream.putNextEntry(gedxEntry);
+    return entryName;
+  }
+
+  private static String normalizeEntryName(String entryName) {
+    entryName = entryName.replaceAll("\\\\", "/");
+    return entryName.charAt(0) == '/' ? entryName.substring(1) : entryName;
   }
 
   /**
@@ -193,8 +446,115 @@ public class GedcomxOutputStream {
    * @throws IOException if an I/O error has occurred
    */
   public void close() throws IOException {
+    if (this.parallelWriter != null) {
+      write(JarFile.MANIFEST_NAME, this.mf::write);
+      try {
+        this.parallelWriter.close();
+      }
+      catch (IOException | RuntimeException e) {
+        if (this.update) {
+          this.updateStream.rollBack();
+        }
+        throw e;
+      }
+      if (this.update) {
+        this.updateStream.commit();
+      }
+      return;
+    }
+
     this.gedxOutputStream.putNextEntry(new JarEntry(JarFile.MANIFEST_NAME));
     this.mf.write(this.gedxOutputStream);
     this.gedxOutputStream.close();
   }
+
+  /**
+   * Abandons the update of a GEDCOM X file, leaving the file as it was before the update.
+   *
+   * @throws IOException if the file can't be cut back to its original length
+   * @throws IllegalStateException if this stream isn't updating a file.
+   */
+  public void abort() throws IOException {
+    if (!this.update) {
+      throw new IllegalStateException("Only the update of a file can be abandoned.");
+    }
+    abandon();
+  }
+
+  private void abandon() throws IOException {
+    this.parallelWriter.cancel();
+    this.updateStream.rollBack();
+  }
+
+  /**
+   * Writes the entries of an update after the end of the file, holding the lock on the file until the update is
+   * committed or rolled back.
+   */
+  private static final class FileUpdateStream extends OutputStream {
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final long start;
+
+    private FileUpdateStream(FileChannel channel, FileLock lock) throws IOException {
+      this.channel = channel;
+      this.lock = lock;
+      this.start = channel.size();
+      channel.position(this.start);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+      while (buffer.hasRemaining()) {
+        this.channel.write(buffer);
+      }
+    }
+
+    @Override
+    public void close() {
+      // the update is finished by commit() or rollBack().
+    }
+
+    /**
+     * Makes sure the entries written, the last of which is the new central directory, are on disk, and releases the file.
+     */
+    private void commit() throws IOException {
+      try {
+        this.channel.force(false);
+      }
+      finally {
+        release();
+      }
+    }
+
+    /**
+     * Cuts the file back to the length it had before the update, and releases it. Does nothing if the file has already
+     * been released.
+     */
+    private void rollBack() throws IOException {
+      if (!this.channel.isOpen()) {
+        return;
+      }
+      try {
+        this.channel.truncate(this.start);
+      }
+      finally {
+        release();
+      }
+    }
+
+    private void release() throws IOException {
+      try {
+        this.lock.release();
+      }
+      finally {
+        this.channel.close();
+      }
+    }
+  }
 }
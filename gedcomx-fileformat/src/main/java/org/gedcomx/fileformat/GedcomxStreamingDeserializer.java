@@ -0,0 +1,37 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.fileformat;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A deserializer that can also read a GEDCOM X document one element at a time.
+ */
+public interface GedcomxStreamingDeserializer extends GedcomxEntryDeserializer {
+
+  /**
+   * Deserialize the GEDCOM X document in the specified input stream one element at a time, passing the elements of the
+   * top-level collections to the handler as they are read.
+   *
+   * @param in The input stream.
+   * @param mediaType The media type of the input stream.
+   * @param handler The handler for the elements.
+   * @return whether the media type was one this deserializer reads GEDCOM X documents from (if not, nothing is read).
+   * @throws IOException a IOException
+   */
+  boolean deserialize(InputStream in, String mediaType, GedcomxElementHandler handler) throws IOException;
+}
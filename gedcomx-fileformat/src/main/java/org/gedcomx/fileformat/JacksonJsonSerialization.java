@@ -15,27 +15,39 @@
  */
 package org.gedcomx.fileformat;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
 import org.gedcomx.Gedcomx;
+import org.gedcomx.rt.GedcomxConstants;
 import org.gedcomx.rt.json.GedcomJacksonModule;
 import tools.jackson.core.JsonEncoding;
 import tools.jackson.core.JsonGenerator;
-import tools.jackson.core.ObjectWriteContext;
+import tools.jackson.core.JsonParser;
 import tools.jackson.databind.json.JsonMapper;
 
 /**
- * A class for creating instances of <code>JAXBContext</code> appropriate for reading and writing GEDCOM X files.
+ * A class for reading and writing the JSON entries of GEDCOM X files with a Jackson <code>JsonMapper</code>.
+ * Instances are thread-safe, as long as the mapper isn't reconfigured after it is given to this class.
  */
-public class JacksonJsonSerialization implements GedcomxEntrySerializer, GedcomxEntryDeserializer {
+public class JacksonJsonSerialization implements GedcomxEntrySerializer, GedcomxStreamingDeserializer {
 
   private final JsonMapper mapper;
 
+  /**
+   * Serialization that writes compact (non-indented) JSON, as this class always has.
+   *
+   * @param classes The context classes.
+   */
   public JacksonJsonSerialization(Class<?>... classes) {
-    this(true, classes);
+    this(false, classes);
   }
 
+  /**
+   * @param pretty Whether to pretty-print (indent) the JSON that is written.
+   * @param classes The context classes.
+   */
   public JacksonJsonSerialization(boolean pretty, Class<?>... classes) {
     this(createJsonMapper(pretty, classes));
   }
@@ -45,7 +57,7 @@ public class JacksonJsonSerialization implements GedcomxEntrySerializer, Gedcomx
   }
 
   public static JsonMapper createJsonMapper(boolean pretty, Class<?>... classes) {
-    return GedcomJacksonModule.createJsonMapper(classes);
+    return GedcomJacksonModule.createJsonMapper(pretty, classes);
   }
 
   @Override
@@ -54,13 +66,27 @@ public class JacksonJsonSerialization implements GedcomxEntrySerializer, Gedcomx
     return clazz == null ? in : this.mapper.readValue(in, clazz);
   }
 
+  @Override
+  public boolean deserialize(InputStream in, String mediaType, GedcomxElementHandler handler) throws IOException {
+    if (findClass(mediaType) != Gedcomx.class) {
+      return false;
+    }
+
+    try (JsonParser parser = this.mapper.createParser(in)) {
+      handler.read(parser);
+    }
+    return true;
+  }
+
   protected Class<?> findClass(String mediaType) {
     return mediaType == null || mediaType.endsWith("json") ? Gedcomx.class : null;
   }
 
   @Override
   public void serialize(Object resource, OutputStream out) {
-    JsonGenerator generator = this.mapper.tokenStreamFactory().createGenerator(ObjectWriteContext.empty(), out, JsonEncoding.UTF8); //we're creating a generator so that the stream doesn't get auto-closed
+    // We're creating a generator so that the stream doesn't get auto-closed. It's created through the mapper (rather
+    // than its token stream factory) so that the mapper's output settings, such as indentation, apply to it.
+    JsonGenerator generator = this.mapper.createGenerator(out, JsonEncoding.UTF8);
     this.mapper.writeValue(generator, resource);
   }
 
@@ -69,4 +95,9 @@ public class JacksonJsonSerialization implements GedcomxEntrySerializer, Gedcomx
     return ".json";
   }
 
+  @Override
+  public String suggestMediaType() {
+    return GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE;
+  }
+
 }
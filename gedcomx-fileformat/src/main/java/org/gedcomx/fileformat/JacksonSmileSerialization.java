@@ -0,0 +1,108 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.fileformat;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.rt.GedcomNamespaceManager;
+import org.gedcomx.rt.GedcomxConstants;
+import org.gedcomx.rt.json.GedcomJacksonModule;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.core.JsonParser;
+import tools.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import tools.jackson.dataformat.smile.SmileMapper;
+import tools.jackson.dataformat.smile.SmileWriteFeature;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A class for reading and writing the entries of GEDCOM X files in <a href="https://github.com/FasterXML/smile-format-specification">Smile</a>,
+ * a binary equivalent of the JSON format, with a Jackson <code>SmileMapper</code>. Smile entries are smaller than JSON
+ * entries and faster to read and write; the names of properties, and short string values (such as the URIs of types),
+ * are written once per entry and referred to after that.
+ * Instances are thread-safe, as long as the mapper isn't reconfigured after it is given to this class.
+ */
+public class JacksonSmileSerialization implements GedcomxEntrySerializer, GedcomxStreamingDeserializer {
+
+  private final SmileMapper mapper;
+
+  public JacksonSmileSerialization(Class<?>... classes) {
+    this(createSmileMapper(classes));
+  }
+
+  public JacksonSmileSerialization(SmileMapper mapper) {
+    this.mapper = mapper;
+  }
+
+  /**
+   * Create a Smile mapper configured as <code>GedcomJacksonModule.createJsonMapper</code> configures a JSON mapper.
+   *
+   * @param classes the context classes.
+   * @return The Smile mapper.
+   */
+  public static SmileMapper createSmileMapper(Class<?>... classes) {
+    GedcomNamespaceManager.registerKnownJsonTypes(classes);
+
+    return SmileMapper.builder()
+      .annotationIntrospector(new JacksonAnnotationIntrospector())
+      .changeDefaultPropertyInclusion(
+        incl -> JsonInclude.Value.construct(JsonInclude.Include.NON_NULL, JsonInclude.Include.NON_NULL))
+      .enable(SmileWriteFeature.CHECK_SHARED_STRING_VALUES)
+      .addModule(new GedcomJacksonModule())
+      .build();
+  }
+
+  @Override
+  public Object deserialize(InputStream in, String mediaType) {
+    Class<?> clazz = findClass(mediaType);
+    return clazz == null ? in : this.mapper.readValue(in, clazz);
+  }
+
+  @Override
+  public boolean deserialize(InputStream in, String mediaType, GedcomxElementHandler handler) throws IOException {
+    if (findClass(mediaType) != Gedcomx.class) {
+      return false;
+    }
+
+    try (JsonParser parser = this.mapper.createParser(in)) {
+      handler.read(parser);
+    }
+    return true;
+  }
+
+  protected Class<?> findClass(String mediaType) {
+    return mediaType == null || mediaType.endsWith("smile") ? Gedcomx.class : null;
+  }
+
+  @Override
+  public void serialize(Object resource, OutputStream out) {
+    //the generator isn't closed, so the stream doesn't get auto-closed.
+    JsonGenerator generator = this.mapper.createGenerator(out);
+    this.mapper.writeValue(generator, resource);
+  }
+
+  @Override
+  public String suggestFilenameExtension() {
+    return ".sml";
+  }
+
+  @Override
+  public String suggestMediaType() {
+    return GedcomxConstants.GEDCOMX_SMILE_MEDIA_TYPE;
+  }
+}
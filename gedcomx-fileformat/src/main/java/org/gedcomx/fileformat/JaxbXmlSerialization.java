@@ -16,12 +16,15 @@
 package org.gedcomx.fileformat;
 
 import org.gedcomx.Gedcomx;
-import org.gedcomx.rt.GedcomNamespaceManager;
+import org.gedcomx.rt.GedcomxConstants;
+import org.gedcomx.rt.xml.JaxbContextRegistry;
 
 import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
-import jakarta.xml.bind.Marshaller;
-import jakarta.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -32,11 +35,15 @@ import java.util.Set;
 
 /**
  * A class for creating instances of <code>JAXBContext</code> appropriate for reading and writing GEDCOM X files.
+ * Instances are thread-safe: the context is shared (see {@link JaxbContextRegistry}) and each call borrows its own
+ * marshaller or unmarshaller.
  */
-public class JaxbXmlSerialization implements GedcomxEntrySerializer, GedcomxEntryDeserializer {
+public class JaxbXmlSerialization implements GedcomxEntrySerializer, GedcomxStreamingDeserializer {
 
-  private final Unmarshaller unmarshaller;
-  private final Marshaller marshaller;
+  private static final XMLInputFactory XML_INPUT_FACTORY = newXmlInputFactory();
+
+  private final JAXBContext context;
+  private final boolean pretty;
 
   public JaxbXmlSerialization(Class<?>... classes) {
     this(true, classes);
@@ -44,13 +51,8 @@ public class JaxbXmlSerialization implements GedcomxEntrySerializer, GedcomxEntr
 
   public JaxbXmlSerialization(boolean pretty, Class<?>... classes) {
     try {
-      JAXBContext context = newContext(classes);
-      this.unmarshaller = context.createUnmarshaller();
-      this.marshaller = context.createMarshaller();
-      this.marshaller.setProperty("org.glassfish.jaxb.namespacePrefixMapper", new GedcomNamespaceManager(Gedcomx.class));
-      if (pretty) {
-        this.marshaller.setProperty("jaxb.formatted.output", Boolean.TRUE);
-      }
+      this.context = newContext(classes);
+      this.pretty = pretty;
     }
     catch (JAXBException e) {
       throw new IllegalArgumentException(e);
@@ -64,13 +66,78 @@ public class JaxbXmlSerialization implements GedcomxEntrySerializer, GedcomxEntr
     }
 
     try {
-      return this.unmarshaller.unmarshal(in);
+      return JaxbContextRegistry.withUnmarshaller(this.context, unmarshaller -> unmarshaller.unmarshal(in));
     }
     catch (JAXBException e) {
       throw new IOException(e);
     }
   }
 
+  @Override
+  public boolean deserialize(InputStream in, String mediaType, GedcomxElementHandler handler) throws IOException {
+    if (!isKnownContentType(mediaType)) {
+      return false;
+    }
+
+    try {
+      XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+      try {
+        if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !GedcomxConstants.GEDCOMX_NAMESPACE.equals(reader.getNamespaceURI())) {
+          throw new IOException("Expected a GEDCOM X element at the start of the document.");
+        }
+        JaxbContextRegistry.withUnmarshaller(this.context, unmarshaller -> {
+          try {
+            // the children of the root element are either unmarshalled or skipped, so the end element we stop at is the root's.
+            int event = reader.next();
+            while (event != XMLStreamConstants.END_ELEMENT && event != XMLStreamConstants.END_DOCUMENT) {
+              if (event == XMLStreamConstants.START_ELEMENT) {
+                GedcomxElementHandler.Binding<?> binding = GedcomxConstants.GEDCOMX_NAMESPACE.equals(reader.getNamespaceURI()) ? handler.getXmlBinding(reader.getLocalName()) : null;
+                if (binding != null) {
+                  handler.handle(binding, unmarshaller.unmarshal(reader, binding.type).getValue());
+                  event = reader.getEventType(); // the unmarshaller leaves the reader just past the element.
+                  continue;
+                }
+                skipElement(reader);
+              }
+              event = reader.next();
+            }
+            return null;
+          }
+          catch (XMLStreamException e) {
+            throw new JAXBException(e);
+          }
+        });
+      }
+      finally {
+        reader.close();
+      }
+    }
+    catch (XMLStreamException | JAXBException e) {
+      throw new IOException(e);
+    }
+    return true;
+  }
+
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      }
+      else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  private static XMLInputFactory newXmlInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
   private boolean isKnownContentType(String mediaType) {
     return mediaType.endsWith("xml");
   }
@@ -78,7 +145,10 @@ public class JaxbXmlSerialization implements GedcomxEntrySerializer, GedcomxEntr
   @Override
   public void serialize(Object resource, OutputStream out) throws IOException {
     try {
-      this.marshaller.marshal(resource, out);
+      JaxbContextRegistry.withMarshaller(this.context, Gedcomx.class, this.pretty, false, marshaller -> {
+        marshaller.marshal(resource, out);
+        return null;
+      });
     }
     catch (JAXBException e) {
       throw new IOException(e);
@@ -86,7 +156,7 @@ public class JaxbXmlSerialization implements GedcomxEntrySerializer, GedcomxEntr
   }
 
   /**
-   * Factory method for creating a new instance of a <code>JAXBContext</code> appropriate for reading and/or writing a GEDCOM X file.
+   * Factory method for getting the (shared) <code>JAXBContext</code> appropriate for reading and/or writing a GEDCOM X file.
    *
    * The created <code>JAXBContext</code> references the following classes by default:
    *   org.gedcomx.conclusion.Person
@@ -106,11 +176,16 @@ public class JaxbXmlSerialization implements GedcomxEntrySerializer, GedcomxEntr
     Set<Class<?>> contextClasses = new HashSet<Class<?>>();
     contextClasses.add(Gedcomx.class);
     contextClasses.addAll(Arrays.asList(classes));
-    return JAXBContext.newInstance((Class<?>[]) contextClasses.toArray(new Class<?>[contextClasses.size()]));
+    return JaxbContextRegistry.getContext((Class<?>[]) contextClasses.toArray(new Class<?>[contextClasses.size()]));
   }
 
   @Override
   public String suggestFilenameExtension() {
     return ".xml";
   }
+
+  @Override
+  public String suggestMediaType() {
+    return GedcomxConstants.GEDCOMX_XML_MEDIA_TYPE;
+  }
 }
@@ -0,0 +1,527 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.fileformat;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+
+/**
+ * Reads a GEDCOM X file by mapping it into memory. Opening the file reads only its central directory, into a compact
+ * index of the positions of the entries by name, so an entry can be found by name without scanning the entries. The
+ * manifest is parsed the first time it is needed, and kept. Entries can also be found by the value of one of their
+ * manifest attributes; the index for an attribute is built the first time the attribute is looked up.
+ * <p>
+ * Instances are thread-safe (as long as the deserializer is). The mapped memory is released when the mapping is
+ * garbage-collected, some time after the file is closed.
+ */
+public class MappedGedcomxFile implements Closeable {
+
+  // Files are mapped in segments of this size (the most that one buffer can address is 2 GB).
+  private static final long SEGMENT_SIZE = 1L << 30;
+
+  private final FileChannel channel;
+  private final long size;
+  private final MappedByteBuffer[] segments;
+  private final GedcomxEntryDeserializer deserializer;
+  // The central directory, and the positions in it of the entries (other than the manifest), in order and by name.
+  private final ZipDirectory directory;
+  private final int[] positions;
+  private final Map<String, Integer> positionsByName;
+  private final int manifestPosition;
+  private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<Inflater>();
+  // Keyed by Attributes.Name, whose equality ignores case, as manifest attribute names do.
+  private final Map<Attributes.Name, Map<String, List<GedcomxFileEntry>>> attributeIndexes = new ConcurrentHashMap<Attributes.Name, Map<String, List<GedcomxFileEntry>>>();
+  private volatile Manifest manifest;
+  private volatile boolean closed = false;
+
+  /**
+   * Opens the given GEDCOM X file. The entries are read according to their content types (JSON, XML or Smile), with a
+   * {@link ContentTypeDeserializer}.
+   *
+   * @param file the file.
+   * @param classes the classes to use for serialization
+   * @throws IOException if the file can't be read, or isn't a zip file.
+   */
+  public MappedGedcomxFile(File file, Class<?>... classes) throws IOException {
+    this(file.toPath(), new ContentTypeDeserializer(classes));
+  }
+
+  /**
+   * Opens the given GEDCOM X file.
+   *
+   * @param file the file.
+   * @param deserializer the deserializer for the resources.
+   * @throws IOException if the file can't be read, or isn't a zip file.
+   */
+  public MappedGedcomxFile(Path file, GedcomxEntryDeserializer deserializer) throws IOException {
+    this.deserializer = deserializer;
+    this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      this.size = this.channel.size();
+      int count = (int) ((this.size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+      this.segments = new MappedByteBuffer[count];
+      for (int i = 0; i < count; i++) {
+        long position = i * SEGMENT_SIZE;
+        this.segments[i] = this.channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, this.size - position));
+      }
+
+      this.directory = ZipDirectory.read(this.channel);
+      int entryCount = this.directory.size();
+      int[] positions = new int[entryCount];
+      this.positionsByName = new HashMap<String, Integer>(entryCount * 4 / 3 + 1);
+      int manifestPosition = -1;
+      int found = 0;
+      for (int i = 0; i < entryCount; i++) {
+        int position = this.directory.getPosition(i);
+        String name = this.directory.getName(position);
+        if (JarFile.MANIFEST_NAME.equals(name)) {
+          manifestPosition = position;
+        }
+        else {
+          positions[found++] = position;
+          this.positionsByName.put(name, position);
+        }
+      }
+      this.positions = found == positions.length ? positions : Arrays.copyOf(positions, found);
+      this.manifestPosition = manifestPosition;
+    }
+    catch (IOException | RuntimeException e) {
+      this.channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Get the value of the specified attribute for this GEDCOM X file.
+   *
+   * @param name The attribute name.
+   * @return The attribute value.
+   * @throws IOException if an I/O error has occurred
+   */
+  public String getAttribute(String name) throws IOException {
+    return getManifest().getMainAttributes().getValue(name);
+  }
+
+  /**
+   * Get the attributes that have been associated with this GEDCOM X file.
+   *
+   * @return The attributes.
+   * @throws IOException if an I/O error has occurred
+   */
+  public Map<String, String> getAttributes() throws IOException {
+    Map<String, String> attributes = new HashMap<String, String>();
+    for (Map.Entry<Object, Object> entry : getManifest().getMainAttributes().entrySet()) {
+      attributes.put(entry.getKey().toString(), (String) entry.getValue());
+    }
+    return attributes;
+  }
+
+  /**
+   * Get the manifest. It is parsed only once, so it must not be modified.
+   *
+   * @return The manifest.
+   * @throws IOException if an I/O error has occurred
+   */
+  public Manifest getManifest() throws IOException {
+    Manifest manifest = this.manifest;
+    if (manifest == null) {
+      synchronized (this) {
+        manifest = this.manifest;
+        if (manifest == null) {
+          if (this.manifestPosition < 0) {
+            manifest = new Manifest();
+          }
+          else {
+            InputStream in = getResourceStream(entryAt(this.manifestPosition));
+            try {
+              manifest = new Manifest(in);
+            }
+            finally {
+              in.close();
+            }
+          }
+          this.manifest = manifest;
+        }
+      }
+    }
+    return manifest;
+  }
+
+  /**
+   * Get the entries found in this GEDCOM X file, in the order of its central directory.
+   *
+   * @return The GEDCOM X file entries.
+   */
+  public List<GedcomxFileEntry> getEntries() {
+    return new AbstractList<GedcomxFileEntry>() {
+      @Override
+      public GedcomxFileEntry get(int index) {
+        return new GedcomxFileEntry(entryAt(MappedGedcomxFile.this.positions[index]));
+      }
+
+      @Override
+      public int size() {
+        return MappedGedcomxFile.this.positions.length;
+      }
+    };
+  }
+
+  /**
+   * Get the number of entries in this GEDCOM X file (not counting the manifest).
+   *
+   * @return The number of entries.
+   */
+  public int size() {
+    return this.positions.length;
+  }
+
+  /**
+   * Get the entry with the given name.
+   *
+   * @param name The name of the entry.
+   * @return The entry, or null if there is no such entry.
+   */
+  public GedcomxFileEntry getEntry(String name) {
+    Integer position = this.positionsByName.get(name);
+    return position == null ? null : new GedcomxFileEntry(entryAt(position));
+  }
+
+  /**
+   * Get the entries with the given value for the given per-entry manifest attribute (such as
+   * <code>Content-Type</code>).
+   *
+   * @param attributeName The name of the attribute.
+   * @param value The value of the attribute.
+   * @return The entries, in the order of the central directory.
+   * @throws IOException if the manifest can't be read.
+   */
+  public List<GedcomxFileEntry> findEntries(String attributeName, String value) throws IOException {
+    Attributes.Name name = new Attributes.Name(attributeName);
+    Map<String, List<GedcomxFileEntry>> index = this.attributeIndexes.get(name);
+    if (index == null) {
+      index = indexAttribute(name);
+      Map<String, List<GedcomxFileEntry>> existing = this.attributeIndexes.putIfAbsent(name, index);
+      if (existing != null) {
+        index = existing;
+      }
+    }
+    List<GedcomxFileEntry> found = index.get(value);
+    return found == null ? Collections.<GedcomxFileEntry>emptyList() : found;
+  }
+
+  private Map<String, List<GedcomxFileEntry>> indexAttribute(Attributes.Name attributeName) throws IOException {
+    Map<String, List<Integer>> positionsByValue = new HashMap<String, List<Integer>>();
+    for (Map.Entry<String, Attributes> entry : getManifest().getEntries().entrySet()) {
+      Object value = entry.getValue().get(attributeName);
+      Integer position = this.positionsByName.get(entry.getKey());
+      if (value != null && position != null) {
+        positionsByValue.computeIfAbsent((String) value, v -> new ArrayList<Integer>()).add(position);
+      }
+    }
+    Map<String, List<GedcomxFileEntry>> index = new HashMap<String, List<GedcomxFileEntry>>();
+    for (Map.Entry<String, List<Integer>> found : positionsByValue.entrySet()) {
+      List<Integer> positions = found.getValue();
+      Collections.sort(positions);
+      List<GedcomxFileEntry> entries = new ArrayList<GedcomxFileEntry>(positions.size());
+      for (Integer position : positions) {
+        entries.add(new GedcomxFileEntry(entryAt(position)));
+      }
+      index.put(found.getKey(), Collections.unmodifiableList(entries));
+    }
+    return index;
+  }
+
+  /**
+   * Get the input stream of the resource in the given entry.
+   *
+   * @param gedxEntry The entry that contains the desired resource.
+   * @return The input stream that constitutes the nature of the resource.
+   * @throws IOException if an I/O error has occurred
+   */
+  public InputStream getResourceStream(GedcomxFileEntry gedxEntry) throws IOException {
+    if (!(gedxEntry.getJarEntry() instanceof IndexedEntry) || ((IndexedEntry) gedxEntry.getJarEntry()).file() != this) {
+      throw new IllegalArgumentException("Not an entry of this file: " + gedxEntry.getJarEntry().getName());
+    }
+    return getResourceStream((IndexedEntry) gedxEntry.getJarEntry());
+  }
+
+  private InputStream getResourceStream(IndexedEntry entry) throws IOException {
+    ByteBuffer header = slice(entry.localHeaderOffset, ZipDirectory.LOCAL_HEADER_SIZE);
+    if (header.getInt(0) != 0x04034b50) {
+      throw new ZipException("Invalid local header for " + entry.getName());
+    }
+    long dataOffset = entry.localHeaderOffset + ZipDirectory.LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+    ByteBuffer data = slice(dataOffset, entry.getCompressedSize());
+    if (entry.getMethod() == ZipEntry.STORED) {
+      return new StoredInputStream(data);
+    }
+    else if (entry.getMethod() == ZipEntry.DEFLATED) {
+      return new DeflatedInputStream(data);
+    }
+    throw new ZipException("Unsupported compression method " + entry.getMethod() + " for " + entry.getName());
+  }
+
+  /**
+   * Unmarshal the resource contained in the given entry as an object.
+   *
+   * @param gedxEntry The entry that contains the desired resource.
+   * @return The resource.
+   *
+   * @throws IOException If there was a problem unmarshalling the resource.
+   */
+  public Object readResource(GedcomxFileEntry gedxEntry) throws IOException {
+    InputStream in = getResourceStream(gedxEntry);
+    Object resource = null;
+    try {
+      resource = this.deserializer.deserialize(in, gedxEntry.getContentType());
+      return resource;
+    }
+    finally {
+      if (resource != in) {
+        in.close();
+      }
+    }
+  }
+
+  /**
+   * Read the GEDCOM X document contained in the given entry one element at a time, passing the elements of its
+   * top-level collections to the given handler as they are read, so that the document is never held in memory as a
+   * whole. (If the deserializer isn't a {@link GedcomxStreamingDeserializer}, the whole document is read first.)
+   *
+   * @param gedxEntry The entry that contains the document.
+   * @param handler The handler for the elements.
+   *
+   * @throws IOException If there was a problem unmarshalling the document.
+   * @throws IllegalArgumentException If the entry doesn't contain a GEDCOM X document.
+   */
+  public void readResource(GedcomxFileEntry gedxEntry, GedcomxElementHandler handler) throws IOException {
+    handler.read(this.deserializer, getResourceStream(gedxEntry), gedxEntry);
+  }
+
+  /**
+   * Closes the GEDCOM X file.
+   *
+   * @throws IOException if an I/O error has occurred
+   */
+  @Override
+  public void close() throws IOException {
+    this.closed = true;
+    this.channel.close();
+    endPooledInflaters();
+  }
+
+  private void endPooledInflaters() {
+    for (Inflater inflater = this.inflaters.poll(); inflater != null; inflater = this.inflaters.poll()) {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Read the entry whose central directory header is at the given position.
+   */
+  private IndexedEntry entryAt(int position) {
+    ZipDirectory.Record record = this.directory.getRecord(position);
+    IndexedEntry entry = new IndexedEntry(record.getName());
+    entry.setMethod(record.method);
+    entry.setCrc(record.crc);
+    entry.setSize(record.size);
+    entry.setCompressedSize(record.compressedSize);
+    entry.localHeaderOffset = record.offset;
+    return entry;
+  }
+
+  /**
+   * A view of the given part of the file.
+   */
+  private ByteBuffer slice(long position, long length) throws IOException {
+    if (position < 0 || length < 0 || position + length > this.size) {
+      throw new ZipException("Truncated zip file.");
+    }
+    if (length > Integer.MAX_VALUE) {
+      throw new ZipException("Zip entry too large to read.");
+    }
+    int segment = (int) (position / SEGMENT_SIZE);
+    int offset = (int) (position % SEGMENT_SIZE);
+    ByteBuffer buffer;
+    if (length == 0) {
+      buffer = ByteBuffer.allocate(0);
+    }
+    else if (offset + length <= this.segments[segment].capacity()) {
+      buffer = this.segments[segment].slice(offset, (int) length);
+    }
+    else {
+      // Spans two segments, so copy it.
+      buffer = ByteBuffer.allocate((int) length);
+      while (buffer.hasRemaining()) {
+        if (this.channel.read(buffer, position + buffer.position()) < 0) {
+          throw new ZipException("Truncated zip file.");
+        }
+      }
+      buffer.flip();
+    }
+    return buffer.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * An entry of this file, which is the <code>JarEntry</code> of its <code>GedcomxFileEntry</code>.
+   */
+  private final class IndexedEntry extends JarEntry {
+    private long localHeaderOffset;
+
+    private IndexedEntry(String name) {
+      super(name);
+    }
+
+    private MappedGedcomxFile file() {
+      return MappedGedcomxFile.this;
+    }
+
+    @Override
+    public Attributes getAttributes() throws IOException {
+      return getManifest().getAttributes(getName());
+    }
+  }
+
+  /**
+   * Reads a stored entry.
+   */
+  private static final class StoredInputStream extends InputStream {
+    private final ByteBuffer data;
+
+    private StoredInputStream(ByteBuffer data) {
+      this.data = data;
+    }
+
+    @Override
+    public int read() {
+      return this.data.hasRemaining() ? this.data.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!this.data.hasRemaining()) {
+        return -1;
+      }
+      int read = Math.min(len, this.data.remaining());
+      this.data.get(b, off, read);
+      return read;
+    }
+
+    @Override
+    public int available() {
+      return this.data.remaining();
+    }
+  }
+
+  /**
+   * Inflates a deflated entry straight from the mapped file, with an inflater borrowed from this file's pool.
+   */
+  private final class DeflatedInputStream extends InputStream {
+    private Inflater inflater;
+    private final byte[] single = new byte[1];
+
+    private DeflatedInputStream(ByteBuffer data) {
+      Inflater inflater = MappedGedcomxFile.this.inflaters.poll();
+      this.inflater = inflater == null ? new Inflater(true) : inflater;
+      this.inflater.setInput(data);
+    }
+
+    @Override
+    public int read() throws IOException {
+      return read(this.single, 0, 1) < 0 ? -1 : this.single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (this.inflater == null) {
+        throw new IOException("Stream closed");
+      }
+      if (len == 0) {
+        return 0;
+      }
+      try {
+        int read;
+        while ((read = this.inflater.inflate(b, off, len)) == 0) {
+          if (this.inflater.finished()) {
+            return -1;
+          }
+          if (this.inflater.needsInput() || this.inflater.needsDictionary()) {
+            throw new EOFException("Unexpected end of deflated data.");
+          }
+        }
+        return read;
+      }
+      catch (DataFormatException e) {
+        throw new ZipException(e.getMessage());
+      }
+    }
+
+    @Override
+    public int available() {
+      return this.inflater == null || this.inflater.finished() ? 0 : 1;
+    }
+
+    @Override
+    public void close() {
+      if (this.inflater != null) {
+        if (MappedGedcomxFile.this.closed) {
+          // The pool has already been emptied, so an inflater put back now would never be ended.
+          this.inflater.end();
+        }
+        else {
+          this.inflater.reset();
+          MappedGedcomxFile.this.inflaters.offer(this.inflater);
+          if (MappedGedcomxFile.this.closed) {
+            // the file was closed while the inflater was being put back.
+            endPooledInflaters();
+          }
+        }
+        this.inflater = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,422 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.fileformat;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
+
+
+/**
+ * Writes a jar (zip) file whose entries are deflated concurrently on an executor, each into its own buffer. The
+ * buffers are written to the file in the order the entries were added, with the sizes and CRC already known, so the
+ * local headers need no data descriptors. Zip64 records are written when the file has too many entries, or entries or
+ * offsets too large, for the original format.
+ * <p>
+ * A writer can also continue an existing file: it is given the entries of the file to keep, which stay where they are,
+ * and starts writing after them. The central directory it writes lists the kept entries first.
+ */
+class ParallelJarWriter {
+
+  private static final long MAX_32 = ZipDirectory.MAX_32;
+  private static final int MAX_16 = 0xFFFF;
+  private static final int UTF8_FLAG = 0x0800;
+  private static final int DEFLATED = 8;
+
+  /**
+   * The content of an entry.
+   */
+  interface EntryContent {
+    void writeTo(OutputStream out) throws IOException;
+  }
+
+  private final OutputStream out;
+  private final Executor executor;
+  private final int maxPending;
+  private final int level;
+  private final Deque<Future<Entry>> pending = new ArrayDeque<Future<Entry>>();
+  private final Map<String, ZipDirectory.Record> kept = new LinkedHashMap<String, ZipDirectory.Record>();
+  private final List<ZipDirectory.Record> written = new ArrayList<ZipDirectory.Record>();
+  private final Set<String> names = new HashSet<String>();
+  private long offset;
+
+  ParallelJarWriter(OutputStream out, Executor executor, int maxPending, int level) {
+    this(out, 0, Collections.<ZipDirectory.Record>emptyList(), executor, maxPending, level);
+  }
+
+  /**
+   * Continue an existing file.
+   *
+   * @param out The stream, positioned where the new entries are to be written.
+   * @param offset The offset in the file of that position, which must be past the end of the kept entries.
+   * @param kept The entries of the file to keep.
+   * @param executor The executor on which to deflate the new entries.
+   * @param maxPending The most entries that may be waiting to be written at once.
+   * @param level The compression level.
+   */
+  ParallelJarWriter(OutputStream out, long offset, Collection<ZipDirectory.Record> kept, Executor executor, int maxPending, int level) {
+    if (maxPending < 1) {
+      throw new IllegalArgumentException("maxPending must be at least 1.");
+    }
+    this.out = new BufferedOutputStream(out, 64 * 1024);
+    this.offset = offset;
+    this.executor = executor;
+    this.maxPending = maxPending;
+    this.level = level;
+    for (ZipDirectory.Record record : kept) {
+      String name = record.getName();
+      this.kept.put(name, record);
+      this.names.add(name);
+    }
+  }
+
+  /**
+   * Whether there is an entry of the given name, kept or added.
+   *
+   * @param name The name of the entry.
+   * @return Whether there is such an entry.
+   */
+  boolean contains(String name) {
+    return this.names.contains(name);
+  }
+
+  /**
+   * Leave a kept entry out of the file. Its data stays where it is, but is no longer part of the file.
+   *
+   * @param name The name of the entry.
+   * @return Whether there was such a kept entry.
+   */
+  boolean remove(String name) {
+    if (this.kept.remove(name) == null) {
+      return false;
+    }
+    this.names.remove(name);
+    return true;
+  }
+
+  /**
+   * Add an entry whose data is already compressed (copied from another file), as is. Waits for the pending entries
+   * to be written first.
+   *
+   * @param record The entry, as recorded in the other file.
+   * @param data The compressed data of the entry.
+   * @throws IOException If the entry, or an earlier one, couldn't be written.
+   */
+  void copy(ZipDirectory.Record record, ByteBuffer data) throws IOException {
+    String name = record.getName();
+    if (!this.names.add(name)) {
+      throw new ZipException("duplicate entry: " + name);
+    }
+    while (!this.pending.isEmpty()) {
+      writeEntry(take(this.pending.poll()));
+    }
+    // The sizes and CRC go in the local header, so there's no data descriptor.
+    writeEntry(new Entry(new ZipDirectory.Record(record.name, record.flags & ~ZipDirectory.DATA_DESCRIPTOR_FLAG, record.method,
+                                                 record.dosTime, record.crc, record.size, record.compressedSize).describedAs(record), data));
+  }
+
+  /**
+   * Add an entry, to be deflated on the executor. Waits for earlier entries to be written if too many are pending.
+   *
+   * @param name The name of the entry.
+   * @param time The modification time of the entry.
+   * @param content The content of the entry, which is written on the executor.
+   * @throws IOException If an earlier entry couldn't be written.
+   */
+  void write(String name, long time, EntryContent content) throws IOException {
+    if (!this.names.add(name)) {
+      throw new ZipException("duplicate entry: " + name);
+    }
+    FutureTask<Entry> task = new FutureTask<Entry>(() -> deflate(name, time, content));
+    this.pending.add(task);
+    this.executor.execute(task);
+    while (!this.pending.isEmpty() && (this.pending.size() > this.maxPending || this.pending.peek().isDone())) {
+      writeEntry(take(this.pending.poll()));
+    }
+  }
+
+  /**
+   * Write the remaining entries and the central directory, and close the underlying stream.
+   *
+   * @throws IOException If an entry couldn't be written.
+   */
+  void close() throws IOException {
+    try {
+      while (!this.pending.isEmpty()) {
+        writeEntry(take(this.pending.poll()));
+      }
+      writeCentralDirectory();
+    }
+    finally {
+      for (Future<Entry> future : this.pending) {
+        future.cancel(false);
+      }
+      this.out.close();
+    }
+  }
+
+  /**
+   * Abandon the file: cancel the entries that are still waiting to be written, without writing anything more.
+   */
+  void cancel() {
+    for (Future<Entry> future : this.pending) {
+      future.cancel(false);
+    }
+    this.pending.clear();
+  }
+
+  private Entry deflate(String name, long time, EntryContent content) throws IOException {
+    Deflater deflater = new Deflater(this.level, true);
+    try {
+      CompressedData compressed = new CompressedData();
+      CRC32 crc = new CRC32();
+      long[] size = new long[1];
+      DeflaterOutputStream deflated = new DeflaterOutputStream(compressed, deflater, 8192);
+      content.writeTo(new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+          crc.update(b);
+          size[0]++;
+          deflated.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          crc.update(b, off, len);
+          size[0] += len;
+          deflated.write(b, off, len);
+        }
+      });
+      deflated.finish();
+      ZipDirectory.Record record = new ZipDirectory.Record(name.getBytes(StandardCharsets.UTF_8), UTF8_FLAG, DEFLATED, dosTime(time),
+                                                           crc.getValue(), size[0], compressed.size());
+      return new Entry(record, compressed.toByteBuffer());
+    }
+    finally {
+      deflater.end();
+    }
+  }
+
+  private static Entry take(Future<Entry> future) throws IOException {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  private void writeEntry(Entry pending) throws IOException {
+    ZipDirectory.Record entry = pending.record;
+    entry.offset = this.offset;
+    boolean zip64 = entry.isZip64();
+    ByteBuffer header = buffer(30 + entry.name.length + (zip64 ? 20 : 0));
+    header.putInt(0x04034b50);
+    header.putShort((short) (zip64 ? 45 : 20));
+    header.putShort((short) entry.flags);
+    header.putShort((short) entry.method);
+    header.putInt(entry.dosTime);
+    header.putInt((int) entry.crc);
+    header.putInt((int) (zip64 ? MAX_32 : entry.compressedSize));
+    header.putInt((int) (zip64 ? MAX_32 : entry.size));
+    header.putShort((short) entry.name.length);
+    header.putShort((short) (zip64 ? 20 : 0));
+    header.put(entry.name);
+    if (zip64) {
+      header.putShort((short) 0x0001);
+      header.putShort((short) 16);
+      header.putLong(entry.size);
+      header.putLong(entry.compressedSize);
+    }
+    write(header);
+    ByteBuffer data = pending.data;
+    if (data.hasArray()) {
+      this.out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+    }
+    else {
+      byte[] chunk = new byte[(int) Math.min(data.remaining(), 64 * 1024)];
+      while (data.hasRemaining()) {
+        int length = Math.min(chunk.length, data.remaining());
+        data.get(chunk, 0, length);
+        this.out.write(chunk, 0, length);
+      }
+    }
+    this.offset += entry.compressedSize;
+    this.written.add(entry);
+  }
+
+  private void writeCentralDirectory() throws IOException {
+    long start = this.offset;
+    List<ZipDirectory.Record> entries = new ArrayList<ZipDirectory.Record>(this.kept.size() + this.written.size());
+    entries.addAll(this.kept.values());
+    entries.addAll(this.written);
+    for (ZipDirectory.Record entry : entries) {
+      boolean zip64 = entry.isZip64();
+      boolean bigOffset = entry.offset >= MAX_32;
+      int zip64Length = (zip64 ? 16 : 0) + (bigOffset ? 8 : 0);
+      if (zip64Length > 0) {
+        zip64Length += 4;
+      }
+      int extraLength = zip64Length + entry.extra.length;
+      if (extraLength > MAX_16) {
+        throw new ZipException("Extra fields too long for " + entry.getName());
+      }
+      ByteBuffer header = buffer(46 + entry.name.length + extraLength + entry.comment.length);
+      int version = zip64 || bigOffset ? 45 : 20;
+      header.putInt(0x02014b50);
+      // an entry kept from an existing file keeps the system it was made on, and the version if that's later.
+      header.putShort((short) ((entry.versionMadeBy & 0xFF00) | Math.max(entry.versionMadeBy & 0xFF, version)));
+      header.putShort((short) version);
+      header.putShort((short) entry.flags);
+      header.putShort((short) entry.method);
+      header.putInt(entry.dosTime);
+      header.putInt((int) entry.crc);
+      header.putInt((int) (zip64 ? MAX_32 : entry.compressedSize));
+      header.putInt((int) (zip64 ? MAX_32 : entry.size));
+      header.putShort((short) entry.name.length);
+      header.putShort((short) extraLength);
+      header.putShort((short) entry.comment.length);
+      header.putShort((short) 0); // disk number
+      header.putShort((short) entry.internalAttributes);
+      header.putInt(entry.externalAttributes);
+      header.putInt((int) (bigOffset ? MAX_32 : entry.offset));
+      header.put(entry.name);
+      if (zip64Length > 0) {
+        header.putShort((short) 0x0001);
+        header.putShort((short) (zip64Length - 4));
+        if (zip64) {
+          header.putLong(entry.size);
+          header.putLong(entry.compressedSize);
+        }
+        if (bigOffset) {
+          header.putLong(entry.offset);
+        }
+      }
+      header.put(entry.extra);
+      header.put(entry.comment);
+      write(header);
+    }
+
+    long size = this.offset - start;
+    long count = entries.size();
+    if (count >= MAX_16 || size >= MAX_32 || start >= MAX_32) {
+      long zip64End = this.offset;
+      ByteBuffer end = buffer(56 + 20);
+      end.putInt(0x06064b50);
+      end.putLong(44);
+      end.putShort((short) 45);
+      end.putShort((short) 45);
+      end.putInt(0);
+      end.putInt(0);
+      end.putLong(count);
+      end.putLong(count);
+      end.putLong(size);
+      end.putLong(start);
+      // locator
+      end.putInt(0x07064b50);
+      end.putInt(0);
+      end.putLong(zip64End);
+      end.putInt(1);
+      write(end);
+    }
+    ByteBuffer end = buffer(22);
+    end.putInt(0x06054b50);
+    end.putShort((short) 0);
+    end.putShort((short) 0);
+    end.putShort((short) Math.min(count, MAX_16));
+    end.putShort((short) Math.min(count, MAX_16));
+    end.putInt((int) Math.min(size, MAX_32));
+    end.putInt((int) Math.min(start, MAX_32));
+    end.putShort((short) 0);
+    write(end);
+  }
+
+  private static ByteBuffer buffer(int size) {
+    return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private void write(ByteBuffer buffer) throws IOException {
+    this.out.write(buffer.array(), 0, buffer.position());
+    this.offset += buffer.position();
+  }
+
+  private static int dosTime(long time) {
+    LocalDateTime date = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+    if (date.getYear() < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return ((date.getYear() - 1980) << 25) | (date.getMonthValue() << 21) | (date.getDayOfMonth() << 16)
+      | (date.getHour() << 11) | (date.getMinute() << 5) | (date.getSecond() >> 1);
+  }
+
+  /**
+   * An entry, and its compressed data, waiting to be written.
+   */
+  private static final class Entry {
+    private final ZipDirectory.Record record;
+    private final ByteBuffer data;
+
+    private Entry(ZipDirectory.Record record, ByteBuffer data) {
+      this.record = record;
+      this.data = data;
+    }
+  }
+
+  /**
+   * A buffer for deflated data that can be read without copying it.
+   */
+  private static final class CompressedData extends ByteArrayOutputStream {
+    private ByteBuffer toByteBuffer() {
+      return ByteBuffer.wrap(this.buf, 0, this.count);
+    }
+  }
+}
@@ -0,0 +1,340 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.fileformat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+
+/**
+ * The central directory of a zip (jar) file: where its entries are and how they are stored. Read by
+ * {@link MappedGedcomxFile}, and by {@link GedcomxOutputStream} to add to or update an existing file.
+ */
+final class ZipDirectory {
+
+  static final int LOCAL_HEADER_SIZE = 30;
+  static final int CENTRAL_HEADER_SIZE = 46;
+  static final long MAX_32 = 0xFFFFFFFFL;
+  static final int DATA_DESCRIPTOR_FLAG = 0x0008;
+  private static final int END_SIZE = 22;
+
+  private final ByteBuffer directory;
+  private final long offset;
+  private final int[] positions;
+
+  private ZipDirectory(ByteBuffer directory, long offset, int[] positions) {
+    this.directory = directory;
+    this.offset = offset;
+    this.positions = positions;
+  }
+
+  /**
+   * Read the central directory of the given file.
+   *
+   * @param channel The file.
+   * @return The central directory.
+   * @throws IOException If the file can't be read, or isn't a zip file.
+   */
+  static ZipDirectory read(FileChannel channel) throws IOException {
+    // The end of central directory record is at the end of the file, before a comment of up to 64K.
+    long size = channel.size();
+    if (size < END_SIZE) {
+      throw new ZipException("Not a zip file: no end of central directory.");
+    }
+    long tailStart = Math.max(0, size - END_SIZE - 0xFFFF);
+    ByteBuffer tail = read(channel, tailStart, size - tailStart);
+    int end = -1;
+    for (int position = tail.limit() - END_SIZE; position >= 0; position--) {
+      if (tail.getInt(position) == 0x06054b50) {
+        end = position;
+        break;
+      }
+    }
+    if (end < 0) {
+      throw new ZipException("Not a zip file: no end of central directory.");
+    }
+    long count = tail.getShort(end + 10) & 0xFFFF;
+    long directorySize = tail.getInt(end + 12) & MAX_32;
+    long directoryOffset = tail.getInt(end + 16) & MAX_32;
+    long locator = tailStart + end - 20;
+    if (locator >= 0 && read(channel, locator, 4).getInt(0) == 0x07064b50) {
+      ByteBuffer zip64End = read(channel, read(channel, locator, 20).getLong(8), 56);
+      if (zip64End.getInt(0) != 0x06064b50) {
+        throw new ZipException("Invalid zip64 end of central directory.");
+      }
+      count = zip64End.getLong(32);
+      directorySize = zip64End.getLong(40);
+      directoryOffset = zip64End.getLong(48);
+    }
+
+    ByteBuffer directory = read(channel, directoryOffset, directorySize);
+    if (count > directory.limit() / CENTRAL_HEADER_SIZE) {
+      throw new ZipException("Invalid entry count " + count + ".");
+    }
+    int[] positions = new int[(int) count];
+    int position = 0;
+    for (int i = 0; i < count; i++) {
+      if (position + CENTRAL_HEADER_SIZE > directory.limit() || directory.getInt(position) != 0x02014b50) {
+        throw new ZipException("Invalid central directory header at entry " + i + ".");
+      }
+      positions[i] = position;
+      position += CENTRAL_HEADER_SIZE + (directory.getShort(position + 28) & 0xFFFF) + (directory.getShort(position + 30) & 0xFFFF) + (directory.getShort(position + 32) & 0xFFFF);
+    }
+    return new ZipDirectory(directory, directoryOffset, positions);
+  }
+
+  /**
+   * Read the given part of the given file.
+   *
+   * @param channel The file.
+   * @param position Where the part starts.
+   * @param length The length of the part.
+   * @return The part, in little-endian order.
+   * @throws IOException If the part can't be read.
+   */
+  static ByteBuffer read(FileChannel channel, long position, long length) throws IOException {
+    if (position < 0 || length < 0 || length > Integer.MAX_VALUE || position + length > channel.size()) {
+      throw new ZipException("Truncated zip file.");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new ZipException("Truncated zip file.");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * The offset of the central directory in the file.
+   *
+   * @return The offset of the central directory.
+   */
+  long getOffset() {
+    return this.offset;
+  }
+
+  /**
+   * The number of entries.
+   *
+   * @return The number of entries.
+   */
+  int size() {
+    return this.positions.length;
+  }
+
+  /**
+   * The position in the directory of the header of the given entry.
+   *
+   * @param index The index of the entry.
+   * @return The position of its header.
+   */
+  int getPosition(int index) {
+    return this.positions[index];
+  }
+
+  /**
+   * The name of the entry whose header is at the given position.
+   *
+   * @param position The position of the header.
+   * @return The name of the entry.
+   */
+  String getName(int position) {
+    int nameLength = this.directory.getShort(position + 28) & 0xFFFF;
+    byte[] name = new byte[nameLength];
+    this.directory.get(position + CENTRAL_HEADER_SIZE, name);
+    return new String(name, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * The record of the entry whose header is at the given position.
+   *
+   * @param position The position of the header.
+   * @return The record of the entry.
+   */
+  Record getRecord(int position) {
+    int nameLength = this.directory.getShort(position + 28) & 0xFFFF;
+    byte[] name = new byte[nameLength];
+    this.directory.get(position + CENTRAL_HEADER_SIZE, name);
+    long compressedSize = this.directory.getInt(position + 20) & MAX_32;
+    long size = this.directory.getInt(position + 24) & MAX_32;
+    long offset = this.directory.getInt(position + 42) & MAX_32;
+
+    // The zip64 extra field has the values that were too big for their places in the header, in this order. The other
+    // extra fields are kept as they are.
+    int extra = position + CENTRAL_HEADER_SIZE + nameLength;
+    int extraEnd = extra + (this.directory.getShort(position + 30) & 0xFFFF);
+    ByteArrayOutputStream otherExtra = new ByteArrayOutputStream();
+    while (extra + 4 <= extraEnd) {
+      int id = this.directory.getShort(extra) & 0xFFFF;
+      int length = this.directory.getShort(extra + 2) & 0xFFFF;
+      if (id != 0x0001) {
+        byte[] field = new byte[Math.min(4 + length, extraEnd - extra)];
+        this.directory.get(extra, field);
+        otherExtra.write(field, 0, field.length);
+      }
+      else {
+        int field = extra + 4;
+        if (size == MAX_32) {
+          size = this.directory.getLong(field);
+          field += 8;
+        }
+        if (compressedSize == MAX_32) {
+          compressedSize = this.directory.getLong(field);
+          field += 8;
+        }
+        if (offset == MAX_32) {
+          offset = this.directory.getLong(field);
+        }
+      }
+      extra += 4 + length;
+    }
+    Record record = new Record(name, this.directory.getShort(position + 8) & 0xFFFF, this.directory.getShort(position + 10) & 0xFFFF,
+                               this.directory.getInt(position + 12), this.directory.getInt(position + 16) & MAX_32, size, compressedSize);
+    record.offset = offset;
+    record.versionMadeBy = this.directory.getShort(position + 4) & 0xFFFF;
+    record.internalAttributes = this.directory.getShort(position + 36) & 0xFFFF;
+    record.externalAttributes = this.directory.getInt(position + 38);
+    record.extra = otherExtra.toByteArray();
+    record.comment = new byte[this.directory.getShort(position + 32) & 0xFFFF];
+    this.directory.get(extraEnd, record.comment);
+    return record;
+  }
+
+  /**
+   * The offset of the (compressed) data of the given entry, from its local header.
+   *
+   * @param channel The file.
+   * @param record The entry.
+   * @return The offset of its data.
+   * @throws IOException If the local header can't be read.
+   */
+  static long getDataOffset(FileChannel channel, Record record) throws IOException {
+    ByteBuffer header = read(channel, record.offset, LOCAL_HEADER_SIZE);
+    if (header.getInt(0) != 0x04034b50) {
+      throw new ZipException("Invalid local header for " + record.getName());
+    }
+    return record.offset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+  }
+
+  /**
+   * Read the (compressed) data of the given entry.
+   *
+   * @param channel The file.
+   * @param record The entry.
+   * @return The data of the entry.
+   * @throws IOException If the entry can't be read.
+   */
+  static ByteBuffer readData(FileChannel channel, ZipDirectory.Record record) throws IOException {
+    return read(channel, getDataOffset(channel, record), record.compressedSize);
+  }
+
+  /**
+   * Read the content of the given entry.
+   *
+   * @param channel The file.
+   * @param record The entry.
+   * @return The content of the entry.
+   * @throws IOException If the entry can't be read, or is compressed by an unsupported method.
+   */
+  static InputStream readContent(FileChannel channel, ZipDirectory.Record record) throws IOException {
+    ByteBuffer data = readData(channel, record);
+    InputStream in = new ByteArrayInputStream(data.array(), data.arrayOffset(), data.remaining());
+    if (record.method == ZipEntry.STORED) {
+      return in;
+    }
+    else if (record.method == ZipEntry.DEFLATED) {
+      Inflater inflater = new Inflater(true);
+      return new InflaterInputStream(in, inflater) {
+        @Override
+        public void close() throws IOException {
+          super.close();
+          inflater.end();
+        }
+      };
+    }
+    throw new ZipException("Unsupported compression method " + record.method + " for " + record.getName());
+  }
+
+  /**
+   * What the central directory says about an entry.
+   */
+  static final class Record {
+    private static final byte[] NONE = new byte[0];
+
+    final byte[] name;
+    final int flags;
+    final int method;
+    final int dosTime;
+    final long crc;
+    final long size;
+    final long compressedSize;
+    // The offset of the local header, once it's known.
+    long offset;
+    // The rest of what the central directory says about an entry of an existing file, so that it can be written back
+    // as it was: the "version made by" (whose high byte is the system whose attributes these are), the attributes,
+    // the extra fields other than zip64's, and the comment.
+    int versionMadeBy;
+    int internalAttributes;
+    int externalAttributes;
+    byte[] extra = NONE;
+    byte[] comment = NONE;
+
+    Record(byte[] name, int flags, int method, int dosTime, long crc, long size, long compressedSize) {
+      this.name = name;
+      this.flags = flags;
+      this.method = method;
+      this.dosTime = dosTime;
+      this.crc = crc;
+      this.size = size;
+      this.compressedSize = compressedSize;
+    }
+
+    String getName() {
+      return new String(this.name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Take the rest of what the central directory says about the given entry.
+     *
+     * @param other The entry.
+     * @return This record.
+     */
+    Record describedAs(Record other) {
+      this.versionMadeBy = other.versionMadeBy;
+      this.internalAttributes = other.internalAttributes;
+      this.externalAttributes = other.externalAttributes;
+      this.extra = other.extra;
+      this.comment = other.comment;
+      return this;
+    }
+
+    boolean isZip64() {
+      return this.size >= MAX_32 || this.compressedSize >= MAX_32;
+    }
+  }
+}
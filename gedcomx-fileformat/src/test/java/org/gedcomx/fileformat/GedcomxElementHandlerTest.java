@@ -0,0 +1,120 @@
+package org.gedcomx.fileformat;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.rt.GedcomxConstants;
+import org.gedcomx.source.SourceDescription;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class GedcomxElementHandlerTest {
+
+  @Test
+  void readJsonAndXml() throws Exception {
+    Gedcomx doc = new Gedcomx().id("doc");
+    doc.setLang("en");
+    for (int i = 0; i < 50; i++) {
+      doc.addPerson(new Person().id("p" + i));
+      doc.addSourceDescription(new SourceDescription().id("s" + i));
+      doc.addRelationship(new Relationship().id("r" + i));
+    }
+    doc.addPlace(new PlaceDescription().id("pl"));
+    doc.addAgent(new Agent().id("a"));
+
+    List<String> expectedPersons = new ArrayList<String>();
+    List<String> expectedSources = new ArrayList<String>();
+    for (int i = 0; i < 50; i++) {
+      expectedPersons.add("p" + i);
+      expectedSources.add("s" + i);
+    }
+
+    JacksonJsonSerialization json = new JacksonJsonSerialization();
+    JaxbXmlSerialization xml = new JaxbXmlSerialization();
+    File tempFile = File.createTempFile("FsTestTmp", ".gedx");
+    try {
+      GedcomxOutputStream out = new GedcomxOutputStream(new FileOutputStream(tempFile), json);
+      out.addResource(GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE, "tree.json", doc, null);
+      ByteArrayOutputStream xmlBytes = new ByteArrayOutputStream();
+      xml.serialize(doc, xmlBytes);
+      out.addResource(GedcomxConstants.GEDCOMX_XML_MEDIA_TYPE, "tree.xml", new ByteArrayInputStream(xmlBytes.toByteArray()), null, null);
+      out.addResource("image/png", "person1.png", new ByteArrayInputStream(new byte[]{1, 2, 3}), null, null);
+      out.close();
+
+      GedcomxEntryDeserializer notStreaming = (in, mediaType) -> mediaType.endsWith("xml") ? xml.deserialize(in, mediaType) : json.deserialize(in, mediaType);
+      GedcomxEntryDeserializer streaming = new GedcomxStreamingDeserializer() {
+        @Override
+        public Object deserialize(InputStream in, String mediaType) throws IOException {
+          return notStreaming.deserialize(in, mediaType);
+        }
+
+        @Override
+        public boolean deserialize(InputStream in, String mediaType, GedcomxElementHandler handler) throws IOException {
+          return mediaType.endsWith("xml") ? xml.deserialize(in, mediaType, handler) : json.deserialize(in, mediaType, handler);
+        }
+      };
+
+      for (GedcomxEntryDeserializer deserializer : Arrays.asList(streaming, notStreaming)) {
+        GedcomxFile gedxFile = new GedcomxFile(new JarFile(tempFile), deserializer);
+        MappedGedcomxFile mapped = new MappedGedcomxFile(tempFile.toPath(), deserializer);
+        try {
+          for (String name : new String[]{"tree.json", "tree.xml"}) {
+            for (boolean useMapped : new boolean[]{false, true}) {
+              List<String> persons = new ArrayList<String>();
+              List<String> sources = new ArrayList<String>();
+              List<String> agents = new ArrayList<String>();
+              GedcomxElementHandler handler = new GedcomxElementHandler()
+                .onPerson(person -> persons.add(person.getId()))
+                .onSourceDescription(source -> sources.add(source.getId()))
+                .onAgent(agent -> agents.add(agent.getId()));
+              if (useMapped) {
+                mapped.readResource(mapped.getEntry(name), handler);
+              }
+              else {
+                gedxFile.readResource(findEntry(gedxFile, name), handler);
+              }
+              assertEquals(expectedPersons, persons, name);
+              assertEquals(expectedSources, sources, name);
+              assertEquals(List.of("a"), agents, name);
+            }
+          }
+
+          GedcomxFileEntry png = mapped.getEntry("person1.png");
+          assertThrows(IllegalArgumentException.class, () -> mapped.readResource(png, new GedcomxElementHandler()));
+          assertThrows(IllegalArgumentException.class, () -> gedxFile.readResource(findEntry(gedxFile, "person1.png"), new GedcomxElementHandler()));
+        }
+        finally {
+          gedxFile.close();
+          mapped.close();
+        }
+      }
+    }
+    finally {
+      tempFile.delete();
+    }
+  }
+
+  private static GedcomxFileEntry findEntry(GedcomxFile gedxFile, String name) {
+    for (GedcomxFileEntry entry : gedxFile.getEntries()) {
+      if (entry.getJarEntry().getName().equals(name)) {
+        return entry;
+      }
+    }
+    throw new AssertionError(name);
+  }
+}
@@ -0,0 +1,386 @@
+package org.gedcomx.fileformat;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.rt.GedcomxConstants;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class GedcomxFileConcurrencyTest {
+
+  private static final int ENTRIES = 50;
+  private static final int THREADS = 8;
+  private static final int ROUNDS = 10;
+
+  @Test
+  void concurrentJsonReads() throws Exception {
+    readConcurrently(new JacksonJsonSerialization(), GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE);
+  }
+
+  @Test
+  void concurrentXmlReads() throws Exception {
+    readConcurrently(new JaxbXmlSerialization(), GedcomxConstants.GEDCOMX_XML_MEDIA_TYPE);
+  }
+
+  @Test
+  void readResources() throws Exception {
+    File tempFile = File.createTempFile("FsTestTmp", ".gedx");
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      GedcomxOutputStream gedxOutputStream = new GedcomxOutputStream(new FileOutputStream(tempFile));
+      try {
+        for (int i = 0; i < ENTRIES; i++) {
+          gedxOutputStream.addResource("person" + i + ".json", createResource(i), null);
+        }
+        gedxOutputStream.addResource(GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE, "bad.json", new ByteArrayInputStream("{\"persons\":".getBytes(StandardCharsets.UTF_8)), null, null);
+        gedxOutputStream.addResource("image/png", "person1.png", getClass().getResourceAsStream("/person1.png"), null, null);
+      }
+      finally {
+        gedxOutputStream.close();
+      }
+
+      // Count how many entries are being read at once.
+      final AtomicInteger reading = new AtomicInteger();
+      final AtomicInteger maxReading = new AtomicInteger();
+      final JacksonJsonSerialization json = new JacksonJsonSerialization();
+      GedcomxEntryDeserializer deserializer = (in, mediaType) -> {
+        maxReading.accumulateAndGet(reading.incrementAndGet(), Math::max);
+        try {
+          Thread.sleep(1);
+          return json.deserialize(in, mediaType);
+        }
+        catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        finally {
+          reading.decrementAndGet();
+        }
+      };
+
+      GedcomxFile gedxFile = new GedcomxFile(new JarFile(tempFile), deserializer);
+      try {
+        Set<String> ids = new HashSet<String>();
+        List<String> errors = new ArrayList<String>();
+        GedcomxFileResourceIterator resources = gedxFile.readResources(executor, entry -> entry.getJarEntry().getName().endsWith(".json"), 4);
+        while (resources.hasNext()) {
+          GedcomxFileResource resource = resources.next();
+          assertTrue(resource.getReadTime(TimeUnit.NANOSECONDS) > 0);
+          if (resource.getError() != null) {
+            errors.add(resource.getEntry().getJarEntry().getName());
+            assertThrows(IOException.class, resource::getResource);
+          }
+          else {
+            ids.add(((Gedcomx) resource.getResource()).getPersons().get(0).getId());
+          }
+        }
+        assertThrows(NoSuchElementException.class, resources::next);
+        assertEquals(ENTRIES, ids.size());
+        assertEquals(Collections.singletonList("bad.json"), errors);
+        assertTrue(maxReading.get() <= 4);
+
+        // Stopping early.
+        resources = gedxFile.readResources(executor);
+        assertNotNull(resources.next());
+        resources.close();
+        assertFalse(resources.hasNext());
+      }
+      finally {
+        gedxFile.close();
+      }
+    }
+    finally {
+      executor.shutdown();
+      tempFile.delete();
+    }
+  }
+
+  @Test
+  void readResourcesWithErrorsAndRejections() throws Exception {
+    File tempFile = File.createTempFile("FsTestTmp", ".gedx");
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      GedcomxOutputStream gedxOutputStream = new GedcomxOutputStream(new FileOutputStream(tempFile));
+      try {
+        for (int i = 0; i < ENTRIES; i++) {
+          gedxOutputStream.addResource("person" + i + ".json", createResource(i), null);
+        }
+      }
+      finally {
+        gedxOutputStream.close();
+      }
+
+      // One entry fails with an Error rather than an exception.
+      final AtomicInteger reads = new AtomicInteger();
+      final JacksonJsonSerialization json = new JacksonJsonSerialization();
+      GedcomxEntryDeserializer deserializer = (in, mediaType) -> {
+        if (reads.incrementAndGet() == 3) {
+          throw new StackOverflowError();
+        }
+        return json.deserialize(in, mediaType);
+      };
+      // Some entries are rejected by the executor the first time they're submitted.
+      final AtomicInteger submissions = new AtomicInteger();
+      Executor rejecting = command -> {
+        if (submissions.incrementAndGet() % 5 == 2) {
+          throw new RejectedExecutionException();
+        }
+        executor.execute(command);
+      };
+
+      GedcomxFile gedxFile = new GedcomxFile(new JarFile(tempFile), deserializer);
+      try {
+        Set<String> ids = new HashSet<String>();
+        int errors = 0;
+        GedcomxFileResourceIterator resources = gedxFile.readResources(rejecting, entry -> entry.getJarEntry().getName().endsWith(".json"), 4);
+        while (resources.hasNext()) {
+          GedcomxFileResource resource = resources.next();
+          if (resource.getError() != null) {
+            assertTrue(resource.getError().getCause() instanceof StackOverflowError);
+            errors++;
+          }
+          else {
+            ids.add(((Gedcomx) resource.getResource()).getPersons().get(0).getId());
+          }
+        }
+        assertEquals(1, errors);
+        assertEquals(ENTRIES - 1, ids.size());
+      }
+      finally {
+        gedxFile.close();
+      }
+    }
+    finally {
+      executor.shutdown();
+      tempFile.delete();
+    }
+  }
+
+  @Test
+  void parallelWrite() throws Exception {
+    File tempFile = File.createTempFile("FsTestTmp", ".gedx");
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      byte[] png = getClass().getResourceAsStream("/person1.png").readAllBytes();
+      GedcomxOutputStream gedxOutputStream = new GedcomxOutputStream(new FileOutputStream(tempFile), new JacksonJsonSerialization(), executor, 4);
+      try {
+        gedxOutputStream.addAttribute("Created-By", "parallelWrite");
+        for (int i = 0; i < ENTRIES; i++) {
+          gedxOutputStream.addResource("person" + i + ".json", createResource(i), null);
+        }
+        gedxOutputStream.addResource("image/png", "person1.png", new ByteArrayInputStream(png), null, Collections.singletonMap("X-Person", "person1"));
+      }
+      finally {
+        gedxOutputStream.close();
+      }
+
+      GedcomxFile gedxFile = new GedcomxFile(new JarFile(tempFile));
+      try {
+        assertEquals("parallelWrite", gedxFile.getAttribute("Created-By"));
+        List<String> names = new ArrayList<String>();
+        for (GedcomxFileEntry entry : gedxFile.getEntries()) {
+          String name = entry.getJarEntry().getName();
+          names.add(name);
+          if (name.endsWith(".json")) {
+            assertEquals(GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE, entry.getContentType());
+            assertEquals(name.substring(0, name.indexOf('.')), ((Gedcomx) gedxFile.readResource(entry)).getPersons().get(0).getId());
+          }
+          else {
+            assertEquals("image/png", entry.getContentType());
+            assertEquals("person1", entry.getAttribute("X-Person"));
+            assertArrayEquals(png, gedxFile.getResourceStream(entry).readAllBytes());
+          }
+        }
+        assertEquals(ENTRIES + 1, names.size());
+        assertEquals("person0.json", names.get(0));
+        assertEquals("person1.png", names.get(ENTRIES));
+      }
+      finally {
+        gedxFile.close();
+      }
+
+      // The local headers (and CRCs) are right too.
+      ZipInputStream zip = new ZipInputStream(new FileInputStream(tempFile));
+      try {
+        int count = 0;
+        for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+          zip.readAllBytes();
+          count++;
+        }
+        assertEquals(ENTRIES + 2, count);
+      }
+      finally {
+        zip.close();
+      }
+    }
+    finally {
+      executor.shutdown();
+      tempFile.delete();
+    }
+  }
+
+  @Test
+  void parallelWriteManyEntries() throws Exception {
+    File tempFile = File.createTempFile("FsTestTmp", ".gedx");
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      // More entries than the original zip format allows, so the zip64 end records are needed.
+      int entries = 0x10000 + 10;
+      GedcomxOutputStream gedxOutputStream = new GedcomxOutputStream(new FileOutputStream(tempFile), new JacksonJsonSerialization(), executor);
+      try {
+        for (int i = 0; i < entries; i++) {
+          gedxOutputStream.addResource("text/plain", "e" + i, new ByteArrayInputStream(new byte[]{(byte) i}), null, null);
+        }
+      }
+      finally {
+        gedxOutputStream.close();
+      }
+
+      JarFile jarFile = new JarFile(tempFile);
+      try {
+        assertEquals(entries + 1, jarFile.size());
+        assertEquals((byte) 12345, (byte) jarFile.getInputStream(jarFile.getEntry("e12345")).read());
+        assertEquals("text/plain", new GedcomxFileEntry(jarFile.getJarEntry("e" + (entries - 1))).getContentType());
+      }
+      finally {
+        jarFile.close();
+      }
+
+      MappedGedcomxFile mapped = new MappedGedcomxFile(tempFile);
+      try {
+        assertEquals(entries, mapped.size());
+        assertEquals((byte) 12345, (byte) mapped.getResourceStream(mapped.getEntry("e12345")).read());
+        assertEquals(entries, mapped.findEntries("Content-Type", "text/plain").size());
+      }
+      finally {
+        mapped.close();
+      }
+    }
+    finally {
+      executor.shutdown();
+      tempFile.delete();
+    }
+  }
+
+  @Test
+  void parallelWriteFailure() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      GedcomxEntrySerializer failing = new GedcomxEntrySerializer() {
+        @Override
+        public void serialize(Object resource, OutputStream out) throws IOException {
+          throw new IOException("failed");
+        }
+
+        @Override
+        public String suggestFilenameExtension() {
+          return ".json";
+        }
+      };
+      GedcomxOutputStream gedxOutputStream = new GedcomxOutputStream(new ByteArrayOutputStream(), failing, executor);
+      // the failure is reported by whichever call comes after the entry has been serialized.
+      IOException e = assertThrows(IOException.class, () -> {
+        gedxOutputStream.addResource(createResource(0));
+        gedxOutputStream.close();
+      });
+      assertEquals("failed", e.getMessage());
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  private void readConcurrently(final GedcomxEntrySerializer serializer, String contentType) throws Exception {
+    File tempFile = File.createTempFile("FsTestTmp", ".gedx");
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      GedcomxOutputStream gedxOutputStream = new GedcomxOutputStream(new FileOutputStream(tempFile), serializer);
+      try {
+        for (int i = 0; i < ENTRIES; i++) {
+          gedxOutputStream.addResource(contentType, "person" + i + serializer.suggestFilenameExtension(), createResource(i), null);
+        }
+      }
+      finally {
+        gedxOutputStream.close();
+      }
+
+      final GedcomxFile gedxFile = new GedcomxFile(new JarFile(tempFile), (GedcomxEntryDeserializer) serializer);
+      try {
+        final List<GedcomxFileEntry> entries = new ArrayList<GedcomxFileEntry>();
+        for (GedcomxFileEntry entry : gedxFile.getEntries()) {
+          entries.add(entry);
+        }
+        assertEquals(ENTRIES, entries.size());
+
+        // All of the threads read all of the entries (each starting at a different entry), starting at the same time.
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (int t = 0; t < THREADS; t++) {
+          final int first = t * ENTRIES / THREADS;
+          results.add(executor.submit(() -> {
+            start.await();
+            int read = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+              for (int i = 0; i < ENTRIES; i++) {
+                GedcomxFileEntry entry = entries.get((first + i) % ENTRIES);
+                Gedcomx resource = (Gedcomx) gedxFile.readResource(entry);
+                String name = entry.getJarEntry().getName();
+                assertEquals(name.substring(0, name.indexOf('.')), resource.getPersons().get(0).getId());
+                read++;
+              }
+            }
+            return read;
+          }));
+        }
+        start.countDown();
+        for (Future<Integer> result : results) {
+          assertEquals(ENTRIES * ROUNDS, result.get().intValue());
+        }
+      }
+      finally {
+        gedxFile.close();
+      }
+    }
+    finally {
+      executor.shutdown();
+      tempFile.delete();
+    }
+  }
+
+  private static Gedcomx createResource(int i) {
+    Gedcomx resource = new Gedcomx();
+    Person person = new Person().id("person" + i);
+    for (int j = 0; j < 20; j++) {
+      person.name("Person " + i + " Name " + j);
+    }
+    resource.addPerson(person);
+    return resource;
+  }
+}
@@ -0,0 +1,242 @@
+package org.gedcomx.fileformat;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.conclusion.Person;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class GedcomxFileUpdateTest {
+
+  @Test
+  void update() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (boolean parallel : new boolean[]{false, true}) {
+        File tempFile = File.createTempFile("FsTestTmp", ".gedx");
+        File compacted = File.createTempFile("FsTestTmp", ".gedx");
+        try {
+          byte[] png = getClass().getResourceAsStream("/person1.png").readAllBytes();
+          JacksonJsonSerialization serializer = new JacksonJsonSerialization();
+          GedcomxOutputStream out = parallel
+            ? new GedcomxOutputStream(new FileOutputStream(tempFile), serializer, executor)
+            : new GedcomxOutputStream(new FileOutputStream(tempFile), serializer);
+          out.addAttribute("Created-By", "GedcomxFileUpdateTest");
+          for (int i = 0; i < 10; i++) {
+            out.addResource(new Gedcomx().person(new Person().id("p" + i)));
+          }
+          out.addResource("image/png", "person1.png", new ByteArrayInputStream(png), null, Collections.singletonMap("X-Person", "p1"));
+          out.close();
+
+          byte[] before = Files.readAllBytes(tempFile.toPath());
+
+          GedcomxOutputStream update = parallel
+            ? GedcomxOutputStream.update(tempFile, serializer, executor)
+            : GedcomxOutputStream.update(tempFile, serializer);
+          update.addAttribute("Updated-By", "GedcomxFileUpdateTest");
+          update.addResource("tree3.json", new Gedcomx().person(new Person().id("p3-updated")), new Date());
+          assertTrue(update.removeResource("tree5.json"));
+          assertFalse(update.removeResource("tree99.json"));
+          update.addResource(new Gedcomx().person(new Person().id("p-added")));
+          update.close();
+
+          // nothing that was in the file was touched.
+          byte[] after = Files.readAllBytes(tempFile.toPath());
+          assertArrayEquals(before, Arrays.copyOf(after, before.length));
+
+          Map<String, String> expected = new HashMap<String, String>();
+          for (int i = 0; i < 10; i++) {
+            expected.put("tree" + (i == 0 ? "" : i) + ".json", "p" + i);
+          }
+          expected.put("tree3.json", "p3-updated");
+          expected.remove("tree5.json");
+          expected.put("tree12.json", "p-added");
+          assertContents(tempFile, expected, png, "GedcomxFileUpdateTest");
+
+          GedcomxOutputStream.compact(tempFile, compacted);
+          assertTrue(compacted.length() < tempFile.length());
+          assertContents(compacted, expected, png, "GedcomxFileUpdateTest");
+        }
+        finally {
+          tempFile.delete();
+          compacted.delete();
+        }
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void abortedUpdate() throws Exception {
+    File tempFile = File.createTempFile("FsTestTmp", ".gedx");
+    try {
+      byte[] png = getClass().getResourceAsStream("/person1.png").readAllBytes();
+      JacksonJsonSerialization serializer = new JacksonJsonSerialization();
+      GedcomxOutputStream out = new GedcomxOutputStream(new FileOutputStream(tempFile), serializer);
+      out.addAttribute("Created-By", "GedcomxFileUpdateTest");
+      Map<String, String> expected = new HashMap<String, String>();
+      for (int i = 0; i < 10; i++) {
+        out.addResource(new Gedcomx().person(new Person().id("p" + i)));
+        expected.put("tree" + (i == 0 ? "" : i) + ".json", "p" + i);
+      }
+      out.addResource("image/png", "person1.png", new ByteArrayInputStream(png), null, Collections.singletonMap("X-Person", "p1"));
+      out.close();
+      byte[] before = Files.readAllBytes(tempFile.toPath());
+
+      try (MappedGedcomxFile reader = new MappedGedcomxFile(tempFile)) {
+        // abandoned partway, after enough has been written to reach the file.
+        GedcomxOutputStream update = GedcomxOutputStream.update(tempFile, serializer);
+        update.addAttribute("Updated-By", "GedcomxFileUpdateTest");
+        byte[] noise = new byte[256 * 1024];
+        new Random(1).nextBytes(noise);
+        update.addResource("application/octet-stream", "noise.bin", new ByteArrayInputStream(noise), null, null);
+        update.addResource("tree3.json", new Gedcomx().person(new Person().id("p3-updated")), new Date());
+        assertTrue(update.removeResource("tree5.json"));
+        assertTrue(tempFile.length() > before.length);
+        // only one update at a time.
+        assertThrows(OverlappingFileLockException.class, () -> GedcomxOutputStream.update(tempFile, serializer));
+        update.abort();
+        assertArrayEquals(before, Files.readAllBytes(tempFile.toPath()));
+
+        // a reader that had the file open can still read it.
+        assertEquals(11, reader.getEntries().size());
+        assertEquals("p3", ((Gedcomx) reader.readResource(reader.getEntry("tree3.json"))).getPersons().get(0).getId());
+      }
+      assertContents(tempFile, expected, png, null);
+
+      // an update that fails leaves the file as it was, too.
+      GedcomxOutputStream update = GedcomxOutputStream.update(tempFile, new JacksonJsonSerialization() {
+        @Override
+        public void serialize(Object resource, OutputStream out) {
+          throw new IllegalStateException("can't serialize");
+        }
+      });
+      update.addResource("image/png", "added.png", new ByteArrayInputStream(png), null, null);
+      assertThrows(IllegalStateException.class, () -> update.addResource(new Gedcomx().person(new Person().id("p-added"))));
+      assertThrows(IOException.class, update::close);
+      assertArrayEquals(before, Files.readAllBytes(tempFile.toPath()));
+      assertContents(tempFile, expected, png, null);
+    }
+    finally {
+      tempFile.delete();
+    }
+  }
+
+  @Test
+  void updateKeepsEntryMetadata() throws Exception {
+    File tempFile = File.createTempFile("FsTestTmp", ".gedx");
+    File compacted = File.createTempFile("FsTestTmp", ".gedx");
+    try {
+      FileTime modified = FileTime.from(Instant.parse("2001-02-03T04:05:06.789Z"));
+      byte[] extra = {(byte) 0x34, (byte) 0x12, 2, 0, 'h', 'i'};
+      try (JarOutputStream out = new JarOutputStream(new FileOutputStream(tempFile))) {
+        out.putNextEntry(new JarEntry(JarFile.MANIFEST_NAME));
+        new Manifest().write(out);
+        JarEntry entry = new JarEntry("tree.json");
+        entry.setLastModifiedTime(modified);
+        entry.setExtra(extra);
+        entry.setComment("the first tree");
+        out.putNextEntry(entry);
+        new JacksonJsonSerialization().serialize(new Gedcomx().person(new Person().id("p0")), out);
+      }
+      byte[] before;
+      try (JarFile jar = new JarFile(tempFile)) {
+        before = jar.getEntry("tree.json").getExtra();
+      }
+
+      GedcomxOutputStream update = GedcomxOutputStream.update(tempFile, new JacksonJsonSerialization());
+      update.addResource(new Gedcomx().person(new Person().id("p1")));
+      update.close();
+      GedcomxOutputStream.compact(tempFile, compacted);
+
+      for (File file : new File[]{tempFile, compacted}) {
+        try (JarFile jar = new JarFile(file)) {
+          ZipEntry kept = jar.getEntry("tree.json");
+          assertEquals(modified.toMillis() / 1000, kept.getLastModifiedTime().toMillis() / 1000);
+          assertArrayEquals(before, kept.getExtra());
+          assertEquals("the first tree", kept.getComment());
+          assertNotNull(jar.getEntry("tree1.json"));
+        }
+      }
+    }
+    finally {
+      tempFile.delete();
+      compacted.delete();
+    }
+  }
+
+  @Test
+  void removeWithoutUpdate() throws Exception {
+    GedcomxOutputStream out = new GedcomxOutputStream(new ByteArrayOutputStream(), new JacksonJsonSerialization());
+    assertThrows(IllegalStateException.class, () -> out.removeResource("tree.json"));
+    assertThrows(IllegalStateException.class, out::abort);
+  }
+
+  private void assertContents(File file, Map<String, String> expected, byte[] png, String updatedBy) throws Exception {
+    for (boolean mapped : new boolean[]{false, true}) {
+      Map<String, String> found = new HashMap<String, String>();
+      if (mapped) {
+        try (MappedGedcomxFile gedxFile = new MappedGedcomxFile(file)) {
+          assertEquals("GedcomxFileUpdateTest", gedxFile.getAttribute("Created-By"));
+          assertEquals(updatedBy, gedxFile.getAttribute("Updated-By"));
+          for (GedcomxFileEntry entry : gedxFile.getEntries()) {
+            if (entry.getJarEntry().getName().endsWith(".png")) {
+              assertEquals("p1", entry.getAttribute("X-Person"));
+              assertArrayEquals(png, gedxFile.getResourceStream(entry).readAllBytes());
+            }
+            else {
+              found.put(entry.getJarEntry().getName(), ((Gedcomx) gedxFile.readResource(entry)).getPersons().get(0).getId());
+            }
+          }
+        }
+      }
+      else {
+        GedcomxFile gedxFile = new GedcomxFile(new JarFile(file));
+        try {
+          assertEquals("GedcomxFileUpdateTest", gedxFile.getAttribute("Created-By"));
+          assertEquals(updatedBy, gedxFile.getAttribute("Updated-By"));
+          for (GedcomxFileEntry entry : gedxFile.getEntries()) {
+            if (entry.getJarEntry().getName().endsWith(".png")) {
+              assertEquals("p1", entry.getAttribute("X-Person"));
+              assertArrayEquals(png, gedxFile.getResourceStream(entry).readAllBytes());
+            }
+            else {
+              found.put(entry.getJarEntry().getName(), ((Gedcomx) gedxFile.readResource(entry)).getPersons().get(0).getId());
+            }
+          }
+        }
+        finally {
+          gedxFile.close();
+        }
+      }
+      assertEquals(expected, found);
+    }
+  }
+}
@@ -16,12 +16,15 @@
 package org.gedcomx.fileformat;
 
 import org.gedcomx.Gedcomx;
+import org.gedcomx.conclusion.Person;
 import org.gedcomx.rt.GedcomxConstants;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Map;
@@ -97,6 +100,23 @@ class GedcomxFileWriteReadTest {
     }
   }
 
+  @Test
+  void compactJsonSerialization() throws Exception {
+    Gedcomx doc = new Gedcomx().person(new Person().id("p1"));
+    ByteArrayOutputStream pretty = new ByteArrayOutputStream();
+    new JacksonJsonSerialization(true).serialize(doc, pretty);
+    ByteArrayOutputStream compact = new ByteArrayOutputStream();
+    new JacksonJsonSerialization(false).serialize(doc, compact);
+
+    assertTrue(pretty.toString(StandardCharsets.UTF_8).contains("\n"));
+    assertFalse(compact.toString(StandardCharsets.UTF_8).contains("\n"));
+    ByteArrayOutputStream byDefault = new ByteArrayOutputStream();
+    new JacksonJsonSerialization().serialize(doc, byDefault);
+    assertEquals(compact.toString(StandardCharsets.UTF_8), byDefault.toString(StandardCharsets.UTF_8));
+    Gedcomx read = (Gedcomx) new JacksonJsonSerialization().deserialize(new ByteArrayInputStream(compact.toByteArray()), GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE);
+    assertEquals("p1", read.getPersons().get(0).getId());
+  }
+
   @Test
   void gedcomxFileEntryNullPointerException() {
     assertThrows(NullPointerException.class, () -> {
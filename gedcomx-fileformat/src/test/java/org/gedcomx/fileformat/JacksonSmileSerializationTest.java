@@ -0,0 +1,86 @@
+package org.gedcomx.fileformat;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.rt.GedcomxConstants;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.jar.JarFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class JacksonSmileSerializationTest {
+
+  @Test
+  void roundTrip() throws Exception {
+    Gedcomx bundle = ExampleGedcomxFileData.create();
+    JacksonSmileSerialization smile = new JacksonSmileSerialization();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    smile.serialize(bundle, bytes);
+    Object read = smile.deserialize(new ByteArrayInputStream(bytes.toByteArray()), GedcomxConstants.GEDCOMX_SMILE_MEDIA_TYPE);
+    ExampleGedcomxFileData.assertContains((Gedcomx) read, bundle);
+
+    ByteArrayOutputStream json = new ByteArrayOutputStream();
+    new JacksonJsonSerialization(false).serialize(bundle, json);
+    assertTrue(bytes.size() < json.size(), bytes.size() + " >= " + json.size());
+  }
+
+  @Test
+  void dispatchOnContentType() throws Exception {
+    Gedcomx bundle = ExampleGedcomxFileData.create();
+    File tempFile = File.createTempFile("FsTestTmp", ".gedx");
+    try {
+      GedcomxOutputStream out = new GedcomxOutputStream(new FileOutputStream(tempFile), new JacksonSmileSerialization());
+      out.addResource(bundle);
+      ByteArrayOutputStream json = new ByteArrayOutputStream();
+      new JacksonJsonSerialization().serialize(bundle, json);
+      out.addResource(GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE, "tree.json", new ByteArrayInputStream(json.toByteArray()), null, null);
+      ByteArrayOutputStream xml = new ByteArrayOutputStream();
+      new JaxbXmlSerialization().serialize(bundle, xml);
+      out.addResource(GedcomxConstants.GEDCOMX_XML_MEDIA_TYPE + "; charset=UTF-8", "tree.xml", new ByteArrayInputStream(xml.toByteArray()), new Date(), null);
+      out.addResource("image/png", "person1.png", getClass().getResourceAsStream("/person1.png"), null, null);
+      out.close();
+
+      GedcomxFile gedxFile = new GedcomxFile(new JarFile(tempFile));
+      try {
+        List<String> names = new ArrayList<String>();
+        for (GedcomxFileEntry entry : gedxFile.getEntries()) {
+          String name = entry.getJarEntry().getName();
+          names.add(name);
+          Object resource = gedxFile.readResource(entry);
+          if (name.endsWith(".png")) {
+            assertTrue(resource instanceof java.io.InputStream);
+            ((java.io.InputStream) resource).close();
+          }
+          else {
+            ExampleGedcomxFileData.assertContains((Gedcomx) resource, bundle);
+            List<String> persons = new ArrayList<String>();
+            gedxFile.readResource(entry, new GedcomxElementHandler().onPerson(person -> persons.add(person.getId())));
+            assertEquals(bundle.getPersons().size(), persons.size(), name);
+          }
+        }
+        assertEquals(List.of("tree.sml", "tree.json", "tree.xml", "person1.png"), names);
+      }
+      finally {
+        gedxFile.close();
+      }
+
+      try (MappedGedcomxFile mapped = new MappedGedcomxFile(tempFile)) {
+        GedcomxFileEntry entry = mapped.getEntry("tree.sml");
+        assertEquals(GedcomxConstants.GEDCOMX_SMILE_MEDIA_TYPE, entry.getContentType());
+        ExampleGedcomxFileData.assertContains((Gedcomx) mapped.readResource(entry), bundle);
+      }
+    }
+    finally {
+      tempFile.delete();
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package org.gedcomx.fileformat;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.rt.GedcomxConstants;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.jar.JarFile;
+import java.util.zip.ZipException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class MappedGedcomxFileTest {
+
+  @Test
+  void readSerialAndParallel() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (boolean parallel : new boolean[]{false, true}) {
+        File tempFile = File.createTempFile("FsTestTmp", ".gedx");
+        try {
+          byte[] png = getClass().getResourceAsStream("/person1.png").readAllBytes();
+          JacksonJsonSerialization serializer = new JacksonJsonSerialization();
+          GedcomxOutputStream out = parallel
+            ? new GedcomxOutputStream(new FileOutputStream(tempFile), serializer, executor)
+            : new GedcomxOutputStream(new FileOutputStream(tempFile), serializer);
+          try {
+            out.addAttribute("Created-By", "MappedGedcomxFileTest");
+            for (int i = 0; i < 20; i++) {
+              out.addResource("tree" + i + ".json", new Gedcomx().person(new Person().id("p" + i)), new Date());
+            }
+            out.addResource("image/png", "person1.png", new ByteArrayInputStream(png), null, Collections.singletonMap("X-Person", "p1"));
+          }
+          finally {
+            out.close();
+          }
+
+          MappedGedcomxFile mapped = new MappedGedcomxFile(tempFile);
+          GedcomxFile gedxFile = new GedcomxFile(new JarFile(tempFile));
+          try {
+            assertEquals("MappedGedcomxFileTest", mapped.getAttribute("Created-By"));
+            assertEquals(gedxFile.getAttributes(), mapped.getAttributes());
+            assertEquals(gedxFile.getManifest(), mapped.getManifest());
+            assertSame(mapped.getManifest(), mapped.getManifest());
+
+            List<String> expectedNames = new ArrayList<String>();
+            for (GedcomxFileEntry entry : gedxFile.getEntries()) {
+              expectedNames.add(entry.getJarEntry().getName());
+            }
+            List<String> names = new ArrayList<String>();
+            for (GedcomxFileEntry entry : mapped.getEntries()) {
+              names.add(entry.getJarEntry().getName());
+              assertEquals(entry.getJarEntry().getSize(), mapped.getEntry(entry.getJarEntry().getName()).getJarEntry().getSize());
+              assertEquals(gedxFile.getManifest().getAttributes(entry.getJarEntry().getName()), entry.getJarEntry().getAttributes());
+            }
+            assertEquals(expectedNames, names);
+            assertEquals(21, mapped.size());
+            assertNull(mapped.getEntry("nothing.json"));
+            assertNull(mapped.getEntry(JarFile.MANIFEST_NAME));
+
+            GedcomxFileEntry tree7 = mapped.getEntry("tree7.json");
+            assertEquals("p7", ((Gedcomx) mapped.readResource(tree7)).getPersons().get(0).getId());
+            assertNotNull(tree7.getAttribute("X-DC-modified"));
+
+            assertEquals(20, mapped.findEntries("Content-Type", GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE).size());
+            assertEquals(20, mapped.findEntries("content-type", GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE).size());
+            assertSame(mapped.findEntries("Content-Type", GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE), mapped.findEntries("CONTENT-TYPE", GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE));
+            List<GedcomxFileEntry> images = mapped.findEntries("X-Person", "p1");
+            assertEquals(1, images.size());
+            assertArrayEquals(png, mapped.getResourceStream(images.get(0)).readAllBytes());
+            assertTrue(mapped.findEntries("X-Person", "p2").isEmpty());
+
+            assertThrows(IllegalArgumentException.class, () -> mapped.readResource(gedxFile.getEntries().iterator().next()));
+
+            // A stream that is still open when the file is closed ends its inflater when it's closed itself.
+            InputStream stillOpen = mapped.getResourceStream(tree7);
+            mapped.close();
+            stillOpen.close();
+          }
+          finally {
+            mapped.close();
+            gedxFile.close();
+          }
+        }
+        finally {
+          tempFile.delete();
+        }
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void notAZipFile() throws Exception {
+    File tempFile = File.createTempFile("FsTestTmp", ".gedx");
+    try {
+      FileOutputStream out = new FileOutputStream(tempFile);
+      out.write("not a zip file, but long enough to have an end record".getBytes());
+      out.close();
+      assertThrows(ZipException.class, () -> new MappedGedcomxFile(tempFile));
+    }
+    finally {
+      tempFile.delete();
+    }
+  }
+}
@@ -0,0 +1,392 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.beans.Introspector;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Generates the model registry (an implementation of <code>org.gedcomx.rt.ModelRegistry</code>) of a model module: the
+ * namespace prefixes of the models listed in the module's <code>META-INF/gedcomx.models</code>, and the JSON names and
+ * type ids of the module's JAXB types, computed just as <code>GedcomNamespaceManager</code> computes them from the
+ * annotations at runtime. The registry is registered as a service, so it's found with a <code>ServiceLoader</code>.
+ * <p>
+ * The names of the types in the registry are also written to <code>META-INF/gedcomx.types</code>. A compilation into
+ * the module's class output that doesn't include the models (such as an incremental compilation in an IDE, which only
+ * recompiles the changed classes) regenerates the registry from the changed classes and the classes listed there, so
+ * that the registry doesn't go stale. That file is only needed at build time, so the build leaves it out of the
+ * module's jar. Nothing is generated for a compilation whose class output doesn't list any models (for example, test
+ * compilations).
+ */
+@SupportedAnnotationTypes("*")
+public class ModelRegistryProcessor extends AbstractProcessor {
+
+  static final String MODELS_RESOURCE = "META-INF/gedcomx.models";
+  static final String TYPES_RESOURCE = "META-INF/gedcomx.types";
+  static final String REGISTRY_INTERFACE = "org.gedcomx.rt.ModelRegistry";
+
+  private static final String MEDIA_TYPE_DEFINITION = "org.gedcomx.rt.MediaTypeDefinition";
+  private static final String JSON_ELEMENT_WRAPPER = "org.gedcomx.rt.json.JsonElementWrapper";
+  private static final String XML_ROOT_ELEMENT = "jakarta.xml.bind.annotation.XmlRootElement";
+  private static final String XML_TYPE = "jakarta.xml.bind.annotation.XmlType";
+  private static final String XML_SCHEMA = "jakarta.xml.bind.annotation.XmlSchema";
+  private static final String XML_NS_URI = "http://www.w3.org/XML/1998/namespace";
+  private static final String DEFAULT = "##default";
+
+  private boolean done = false;
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    // Everything we need is in the first round; later rounds only have generated sources.
+    if (this.done || roundEnv.processingOver()) {
+      return false;
+    }
+    this.done = true;
+
+    List<TypeElement> types = new ArrayList<TypeElement>();
+    for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+      collectTypes(type, types);
+    }
+
+    List<String> modelClassNames = readResourceLines(MODELS_RESOURCE);
+    List<TypeElement> models = new ArrayList<TypeElement>();
+    for (String modelClassName : modelClassNames) {
+      for (TypeElement type : types) {
+        if (binaryName(type).equals(modelClassName) && getAnnotation(type, MEDIA_TYPE_DEFINITION) != null) {
+          models.add(type);
+        }
+      }
+    }
+    if (models.isEmpty() && !modelClassNames.isEmpty()) {
+      // An incremental compilation: the rest of the module was compiled earlier.
+      addCompiledTypes(modelClassNames, models, types);
+    }
+    if (models.isEmpty()) {
+      return false;
+    }
+
+    Map<String, String> namespacePrefixes = new TreeMap<String, String>();
+    for (TypeElement model : models) {
+      for (AnnotationValue value : getList(getAnnotation(model, MEDIA_TYPE_DEFINITION), "models")) {
+        AnnotationMirror modelInfo = (AnnotationMirror) value.getValue();
+        namespacePrefixes.put(getString(modelInfo, "namespace"), getString(modelInfo, "id"));
+      }
+    }
+
+    Map<String, String> jsonNames = new TreeMap<String, String>();
+    Map<String, String> typeIds = new TreeMap<String, String>();
+    for (TypeElement type : types) {
+      if (getAnnotation(type, JSON_ELEMENT_WRAPPER) != null || getAnnotation(type, XML_ROOT_ELEMENT) != null || getAnnotation(type, XML_TYPE) != null) {
+        String jsonName = getJsonName(type);
+        if (jsonName != null) {
+          jsonNames.put(binaryName(type), jsonName);
+        }
+        typeIds.put(binaryName(type), getTypeIdName(type));
+      }
+    }
+
+    try {
+      writeRegistry(models.get(0), models, namespacePrefixes, jsonNames, typeIds);
+    }
+    catch (IOException e) {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write the model registry: " + e.getMessage());
+    }
+    return false;
+  }
+
+  private void collectTypes(TypeElement type, List<TypeElement> types) {
+    types.add(type);
+    for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+      collectTypes(nested, types);
+    }
+  }
+
+  /**
+   * Add the models, and the types of the registry generated by an earlier compilation, from the classes that were
+   * compiled then. The types that are being compiled now take the place of their earlier versions.
+   */
+  private void addCompiledTypes(List<String> modelClassNames, List<TypeElement> models, List<TypeElement> types) {
+    List<String> compiledTypeNames = readResourceLines(TYPES_RESOURCE);
+    if (compiledTypeNames.isEmpty()) {
+      return;
+    }
+
+    Set<String> compiling = new LinkedHashSet<String>();
+    for (TypeElement type : types) {
+      compiling.add(binaryName(type));
+    }
+    for (String modelClassName : modelClassNames) {
+      TypeElement model = compiledType(modelClassName);
+      if (model != null && getAnnotation(model, MEDIA_TYPE_DEFINITION) != null) {
+        models.add(model);
+      }
+    }
+    for (String typeName : compiledTypeNames) {
+      if (!compiling.contains(typeName)) {
+        TypeElement type = compiledType(typeName);
+        if (type != null) {
+          types.add(type);
+        }
+      }
+    }
+  }
+
+  private TypeElement compiledType(String binaryName) {
+    return processingEnv.getElementUtils().getTypeElement(binaryName.replace('$', '.'));
+  }
+
+  private List<String> readResourceLines(String resourceName) {
+    List<String> names = new ArrayList<String>();
+    try {
+      FileObject resource = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", resourceName);
+      try (BufferedReader reader = new BufferedReader(resource.openReader(true))) {
+        String line = reader.readLine();
+        while (line != null) {
+          if (!line.trim().isEmpty()) {
+            names.add(line.trim());
+          }
+          line = reader.readLine();
+        }
+      }
+    }
+    catch (IOException e) {
+      //no such resource; not a model module (or, for the types, not compiled before).
+    }
+    return names;
+  }
+
+  /**
+   * The JSON name of a type, as computed by <code>GedcomNamespaceManager.getJsonName</code>.
+   */
+  private String getJsonName(TypeElement type) {
+    AnnotationMirror wrapper = getAnnotation(type, JSON_ELEMENT_WRAPPER);
+    if (wrapper != null) {
+      return nameFromQName(getString(wrapper, "namespace"), getString(wrapper, "name"));
+    }
+
+    AnnotationMirror rootElement = getAnnotation(type, XML_ROOT_ELEMENT);
+    if (rootElement != null) {
+      String localPart = getString(rootElement, "name");
+      if (DEFAULT.equals(localPart)) {
+        localPart = Introspector.decapitalize(type.getSimpleName().toString());
+      }
+      String namespaceURI = getString(rootElement, "namespace");
+      if (DEFAULT.equals(namespaceURI)) {
+        namespaceURI = getSchemaNamespace(type);
+      }
+      return nameFromQName(namespaceURI, localPart);
+    }
+
+    return null;
+  }
+
+  /**
+   * The type id of a type, as computed by <code>GedcomNamespaceManager.getTypeIdName</code>.
+   */
+  private String getTypeIdName(TypeElement type) {
+    String ns = getSchemaNamespace(type);
+    String name = Introspector.decapitalize(type.getSimpleName().toString());
+    AnnotationMirror typeMeta = getAnnotation(type, XML_TYPE);
+    if (typeMeta != null) {
+      if (!DEFAULT.equals(getString(typeMeta, "name"))) {
+        name = getString(typeMeta, "name");
+      }
+
+      if (!DEFAULT.equals(getString(typeMeta, "namespace"))) {
+        ns = getString(typeMeta, "namespace");
+      }
+    }
+
+    return ns + name;
+  }
+
+  private String getSchemaNamespace(TypeElement type) {
+    PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+    AnnotationMirror schema = getAnnotation(pkg, XML_SCHEMA);
+    return schema == null ? "" : getString(schema, "namespace");
+  }
+
+  private static String nameFromQName(String namespaceUri, String localPart) {
+    return XML_NS_URI.equals(namespaceUri) ? namespaceUri + '#' + localPart : namespaceUri + localPart;
+  }
+
+  private String binaryName(TypeElement type) {
+    return processingEnv.getElementUtils().getBinaryName(type).toString();
+  }
+
+  private static AnnotationMirror getAnnotation(Element element, String annotationType) {
+    for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+      if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationType)) {
+        return mirror;
+      }
+    }
+    return null;
+  }
+
+  private Object getValue(AnnotationMirror mirror, String name) {
+    Map<? extends ExecutableElement, ? extends AnnotationValue> values = processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+      if (entry.getKey().getSimpleName().contentEquals(name)) {
+        return entry.getValue().getValue();
+      }
+    }
+    return null;
+  }
+
+  private String getString(AnnotationMirror mirror, String name) {
+    return (String) getValue(mirror, name);
+  }
+
+  @SuppressWarnings ( "unchecked" )
+  private List<? extends AnnotationValue> getList(AnnotationMirror mirror, String name) {
+    return (List<? extends AnnotationValue>) getValue(mirror, name);
+  }
+
+  private void writeRegistry(TypeElement firstModel, List<TypeElement> models, Map<String, String> namespacePrefixes,
+                             Map<String, String> jsonNames, Map<String, String> typeIds) throws IOException {
+    String packageName = processingEnv.getElementUtils().getPackageOf(firstModel).getQualifiedName().toString();
+    String simpleName = firstModel.getSimpleName() + "ModelRegistry";
+    String className = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+
+    Set<String> modelClassNames = new LinkedHashSet<String>();
+    for (TypeElement model : models) {
+      modelClassNames.add(binaryName(model));
+    }
+
+    Element[] originatingElements = models.toArray(new Element[0]);
+    try (PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(className, originatingElements).openWriter())) {
+      if (!packageName.isEmpty()) {
+        out.println("package " + packageName + ";");
+        out.println();
+      }
+      out.println("import java.util.Map;");
+      out.println("import java.util.Set;");
+      out.println();
+      out.println("/**");
+      out.println(" * The model registry of this module. Generated by " + getClass().getName() + "; don't edit.");
+      out.println(" */");
+      out.println("@javax.annotation.processing.Generated(\"" + getClass().getName() + "\")");
+      out.println("public final class " + simpleName + " implements " + REGISTRY_INTERFACE + " {");
+      out.println();
+      out.println("  private static final Set<String> MODEL_CLASS_NAMES = Set.of(");
+      writeStrings(out, modelClassNames);
+      out.println("  );");
+      writeMap(out, "NAMESPACE_PREFIXES", namespacePrefixes);
+      writeMap(out, "JSON_NAMES", jsonNames);
+      writeMap(out, "TYPE_IDS", typeIds);
+      out.println();
+      writeGetter(out, "Set<String>", "getModelClassNames", "MODEL_CLASS_NAMES");
+      writeGetter(out, "Map<String, String>", "getNamespacePrefixes", "NAMESPACE_PREFIXES");
+      writeGetter(out, "Map<String, String>", "getJsonNames", "JSON_NAMES");
+      writeGetter(out, "Map<String, String>", "getTypeIds", "TYPE_IDS");
+      out.println("}");
+    }
+
+    FileObject services = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", "META-INF/services/" + REGISTRY_INTERFACE, originatingElements);
+    try (Writer out = services.openWriter()) {
+      out.write(className);
+      out.write('\n');
+    }
+
+    FileObject typeNames = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", TYPES_RESOURCE, originatingElements);
+    try (Writer out = typeNames.openWriter()) {
+      for (String typeName : typeIds.keySet()) {
+        out.write(typeName);
+        out.write('\n');
+      }
+    }
+  }
+
+  private static void writeStrings(PrintWriter out, Iterable<String> values) {
+    String separator = "";
+    for (String value : values) {
+      out.print(separator);
+      out.print("    " + literal(value));
+      separator = ",\n";
+    }
+    out.println();
+  }
+
+  private static void writeMap(PrintWriter out, String name, Map<String, String> entries) {
+    out.println("  private static final Map<String, String> " + name + " = Map.ofEntries(");
+    String separator = "";
+    for (Map.Entry<String, String> entry : entries.entrySet()) {
+      out.print(separator);
+      out.print("    Map.entry(" + literal(entry.getKey()) + ", " + literal(entry.getValue()) + ")");
+      separator = ",\n";
+    }
+    out.println();
+    out.println("  );");
+  }
+
+  private static void writeGetter(PrintWriter out, String type, String method, String field) {
+    out.println("  @Override");
+    out.println("  public " + type + " " + method + "() {");
+    out.println("    return " + field + ";");
+    out.println("  }");
+    out.println();
+  }
+
+  private static String literal(String value) {
+    StringBuilder literal = new StringBuilder("\"");
+    for (char ch : value.toCharArray()) {
+      switch (ch) {
+        case '"':
+          literal.append("\\\"");
+          break;
+        case '\\':
+          literal.append("\\\\");
+          break;
+        default:
+          if (ch < 0x20 || ch > 0x7e) {
+            literal.append(String.format("\\u%04x", (int) ch));
+          }
+          else {
+            literal.append(ch);
+          }
+      }
+    }
+    return literal.append('"').toString();
+  }
+}
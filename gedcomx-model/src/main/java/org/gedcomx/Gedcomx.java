@@ -41,6 +41,8 @@ import org.gedcomx.source.SourceDescription;
 import org.gedcomx.source.SourceReference;
 import org.gedcomx.types.RelationshipType;
 import org.gedcomx.types.ResourceType;
+import org.gedcomx.util.GedcomxChangeListener;
+import org.gedcomx.util.LookupIndex;
 
 import javax.xml.XMLConstants;
 
@@ -48,9 +50,17 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.xml.bind.annotation.*;
 import java.text.DateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 /**
@@ -134,6 +144,12 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
   @Schema(description = "The record descriptors included in this genealogical data set.")
   private List<RecordDescriptor> recordDescriptors;
 
+  // Listeners for changes made through this document's methods.
+  private List<GedcomxChangeListener> changeListeners;
+
+  // Indexes for the find methods, if enabled.
+  private LookupIndexes lookupIndexes;
+
   public Gedcomx() {
   }
 
@@ -286,7 +302,11 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
    * @return The person, or null.
    */
   public Person findPerson(URI uri) {
-    return findSubject(this.persons, uri);
+    if (this.lookupIndexes == null || uri == null) {
+      return findSubject(this.persons, uri);
+    }
+    LookupIndex<Person> index = this.lookupIndexes.persons = LookupIndex.current(this.lookupIndexes.persons, this.persons, Gedcomx::subjectKeys);
+    return findSubject(index, this.persons, uri);
   }
 
   /**
@@ -318,6 +338,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
 
   public void setPersons(List<Person> persons) {
     this.persons = persons;
+    fireElementsReplaced();
   }
 
   /**
@@ -341,6 +362,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
         persons = new LinkedList<Person>();
       }
       persons.add(person);
+      fireElementAdded(person);
     }
   }
 
@@ -400,6 +422,19 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
    * @return the couple relationship for the parents in the family, if any, or null if there isn't one (or if there are not two parents).
    */
   public Relationship findCoupleRelationship(ResourceReference person1, ResourceReference person2) {
+    if (this.lookupIndexes != null && isIndexable(person1) && isIndexable(person2)) {
+      LookupIndex<Relationship> index = this.lookupIndexes.couples = LookupIndex.current(this.lookupIndexes.couples, getRelationships(), (relationship, keys) -> {
+        if (relationship.getKnownType() == RelationshipType.Couple) {
+          keys.accept(referencesKey(relationship.getPerson1(), relationship.getPerson2()));
+        }
+      });
+      Relationship found = index.get(referencesKey(person1, person2));
+      if (found == null || (found.getKnownType() == RelationshipType.Couple && samePerson(person1, found.getPerson1()) && samePerson(person2, found.getPerson2()))) {
+        return found;
+      }
+      // changed since it was indexed.
+    }
+
     if (getRelationships() != null) {
       for (Relationship relationship : getRelationships()) {
         if (relationship.getKnownType() == RelationshipType.Couple &&
@@ -421,6 +456,19 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
   public Relationship findParentChildRelationship(ResourceReference parent, ResourceReference child) {
     if (parent != null && child != null && getRelationships() != null &&
       parent.getResource() != null && child.getResource() != null) {
+      if (this.lookupIndexes != null) {
+        LookupIndex<Relationship> index = this.lookupIndexes.parentChildren = LookupIndex.current(this.lookupIndexes.parentChildren, getRelationships(), (relationship, keys) -> {
+          if (relationship.getKnownType() == RelationshipType.ParentChild) {
+            keys.accept(referencesKey(relationship.getPerson1(), relationship.getPerson2()));
+          }
+        });
+        Relationship found = index.get(referencesKey(parent, child));
+        if (found == null || (found.getKnownType() == RelationshipType.ParentChild && samePerson(found.getPerson1(), parent) && samePerson(found.getPerson2(), child))) {
+          return found;
+        }
+        // changed since it was indexed.
+      }
+
       for (Relationship relationship : getRelationships()) {
         if (relationship.getKnownType().equals(RelationshipType.ParentChild) &&
           samePerson(relationship.getPerson1(), parent) &&
@@ -445,6 +493,34 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
          ref1.getResource().equals(ref2.getResource()));
   }
 
+  /**
+   * Whether the given person reference can be looked up in a lookup index: a missing reference (which matches only
+   * a missing reference) or a reference to a resource.
+   *
+   * @param ref The reference.
+   * @return Whether the reference can be looked up in a lookup index.
+   */
+  protected static boolean isIndexable(ResourceReference ref) {
+    return ref == null || ref.getResource() != null;
+  }
+
+  /**
+   * The key in a lookup index of a relationship between the given persons, matching as samePerson() does.
+   *
+   * @param refs The references to the persons, in order.
+   * @return The key, or null if any of the references can't be looked up in an index.
+   */
+  protected static Object referencesKey(ResourceReference... refs) {
+    URI[] resources = new URI[refs.length];
+    for (int i = 0; i < refs.length; i++) {
+      if (!isIndexable(refs[i])) {
+        return null;
+      }
+      resources[i] = refs[i] == null ? null : refs[i].getResource();
+    }
+    return Arrays.asList(resources);
+  }
+
   /**
    * Find a relationship in the document by URI.
    *
@@ -452,7 +528,11 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
    * @return The relationship, or null.
    */
   public Relationship findRelationship(URI uri) {
-    return findSubject(this.relationships, uri);
+    if (this.lookupIndexes == null || uri == null) {
+      return findSubject(this.relationships, uri);
+    }
+    LookupIndex<Relationship> index = this.lookupIndexes.relationships = LookupIndex.current(this.lookupIndexes.relationships, this.relationships, Gedcomx::subjectKeys);
+    return findSubject(index, this.relationships, uri);
   }
 
   /**
@@ -483,6 +563,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
   @JsonProperty ( "relationships" )
   public void setRelationships(List<Relationship> relationships) {
     this.relationships = relationships;
+    fireElementsReplaced();
   }
 
   /**
@@ -506,6 +587,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
         relationships = new LinkedList<Relationship>();
       }
       relationships.add(relationship);
+      fireElementAdded(relationship);
     }
   }
 
@@ -559,7 +641,11 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
    * @return The description, or null.
    */
   public SourceDescription findDescription(URI uri) {
-    return findElement(this.sourceDescriptions, uri);
+    if (this.lookupIndexes == null || uri == null) {
+      return findElement(this.sourceDescriptions, uri);
+    }
+    LookupIndex<SourceDescription> index = this.lookupIndexes.descriptions = LookupIndex.current(this.lookupIndexes.descriptions, this.sourceDescriptions, Gedcomx::elementKeys);
+    return findElement(index, this.sourceDescriptions, uri);
   }
 
   /**
@@ -591,6 +677,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
 
   public void setSourceDescriptions(List<SourceDescription> sourceDescriptions) {
     this.sourceDescriptions = sourceDescriptions;
+    fireElementsReplaced();
   }
 
   /**
@@ -614,6 +701,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
         sourceDescriptions = new LinkedList<SourceDescription>();
       }
       sourceDescriptions.add(sourceDescription);
+      fireElementAdded(sourceDescription);
     }
   }
 
@@ -624,7 +712,11 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
    * @return The agent, or null.
    */
   public Agent findAgent(URI uri) {
-    return findElement(this.agents, uri);
+    if (this.lookupIndexes == null || uri == null) {
+      return findElement(this.agents, uri);
+    }
+    LookupIndex<Agent> index = this.lookupIndexes.agents = LookupIndex.current(this.lookupIndexes.agents, this.agents, Gedcomx::elementKeys);
+    return findElement(index, this.agents, uri);
   }
 
   /**
@@ -656,6 +748,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
 
   public void setAgents(List<Agent> agents) {
     this.agents = agents;
+    fireElementsReplaced();
   }
 
   /**
@@ -679,6 +772,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
         agents = new LinkedList<Agent>();
       }
       agents.add(agent);
+      fireElementAdded(agent);
     }
   }
 
@@ -710,6 +804,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
   @JsonProperty ( "events" )
   public void setEvents(List<Event> events) {
     this.events = events;
+    fireElementsReplaced();
   }
 
   /**
@@ -733,6 +828,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
         events = new LinkedList<Event>();
       }
       events.add(event);
+      fireElementAdded(event);
     }
   }
 
@@ -743,7 +839,11 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
    * @return The place, or null.
    */
   public PlaceDescription findPlace(URI uri) {
-    return findSubject(this.places, uri);
+    if (this.lookupIndexes == null || uri == null) {
+      return findSubject(this.places, uri);
+    }
+    LookupIndex<PlaceDescription> index = this.lookupIndexes.places = LookupIndex.current(this.lookupIndexes.places, this.places, Gedcomx::subjectKeys);
+    return findSubject(index, this.places, uri);
   }
 
   /**
@@ -775,6 +875,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
 
   public void setPlaces(List<PlaceDescription> places) {
     this.places = places;
+    fireElementsReplaced();
   }
 
   /**
@@ -798,6 +899,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
         places = new LinkedList<PlaceDescription>();
       }
       places.add(place);
+      fireElementAdded(place);
     }
   }
 
@@ -830,6 +932,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
 
   public void setDocuments(List<Document> documents) {
     this.documents = documents;
+    fireElementsReplaced();
   }
 
   /**
@@ -853,6 +956,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
         documents = new LinkedList<Document>();
       }
       documents.add(document);
+      fireElementAdded(document);
     }
   }
 
@@ -886,6 +990,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
 
   public void setCollections(List<Collection> collections) {
     this.collections = collections;
+    fireElementsReplaced();
   }
 
   /**
@@ -909,6 +1014,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
         collections = new LinkedList<Collection>();
       }
       collections.add(collection);
+      fireElementAdded(collection);
     }
   }
 
@@ -945,6 +1051,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
 
   public void setFields(List<Field> fields) {
     this.fields = fields;
+    fireElementsReplaced();
   }
 
   /**
@@ -968,6 +1075,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
         fields = new LinkedList<Field>();
       }
       fields.add(field);
+      fireElementAdded(field);
     }
   }
 
@@ -1000,6 +1108,7 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
   @JsonProperty ( "recordDescriptors" )
   public void setRecordDescriptors(List<RecordDescriptor> recordDescriptors) {
     this.recordDescriptors = recordDescriptors;
+    fireElementsReplaced();
   }
 
   /**
@@ -1024,257 +1133,246 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
         recordDescriptors = new LinkedList<RecordDescriptor>();
       }
       recordDescriptors.add(recordDescriptor);
+      fireElementAdded(recordDescriptor);
     }
   }
 
   /**
-   * Accept a visitor.
-   *
-   * @param visitor The visitor.
+   * Use indexes for the find methods (findPerson(), findRelationship(), findCoupleRelationship(),
+   * findParentChildRelationship(), findDescription(), findAgent() and findPlace()), so that repeated lookups in a big
+   * document take constant time rather than searching the whole document each time. Each index is built when it is
+   * first needed, and is rebuilt when the list it indexes is replaced or changes size. Changes made through this
+   * document's methods (including renameElement()) are taken into account, but elements that are changed directly
+   * (e.g., by setting the id or identifiers of a person) may not be found until invalidateLookupIndex() is called.
    */
-  public void accept(GedcomxModelVisitor visitor) {
-    visitor.visitGedcomx(this);
+  public void enableLookupIndex() {
+    if (this.lookupIndexes == null) {
+      this.lookupIndexes = new LookupIndexes();
+    }
   }
 
-  public void embed(Gedcomx gedcomx) {
-    List<Link> links = gedcomx.getLinks();
-    if (links != null) {
-      for (Link link : links) {
-        boolean found = false;
-        if (link.getRel() != null) {
-          if (getLinks() != null) {
-            for (Link target : getLinks()) {
-              if (link.getRel().equals(target.getRel())) {
-                found = true;
-                break;
-              }
-            }
-          }
-        }
+  /**
+   * Stop using indexes for the find methods, releasing the memory they use.
+   */
+  public void disableLookupIndex() {
+    invalidateLookupIndex();
+    this.lookupIndexes = null;
+  }
 
-        if (!found) {
-          addLink(link);
-        }
-      }
+  /**
+   * Whether the find methods use indexes.
+   *
+   * @return Whether enableLookupIndex() has been called (and disableLookupIndex() hasn't since).
+   */
+  protected boolean usesLookupIndex() {
+    return this.lookupIndexes != null;
+  }
+
+  /**
+   * Discard the indexes used by the find methods, so that they are rebuilt when next needed (e.g., after changing the
+   * ids or identifiers of elements of this document directly).
+   */
+  public void invalidateLookupIndex() {
+    if (this.lookupIndexes != null) {
+      this.lookupIndexes.clear();
     }
+  }
 
-    List<Person> persons = gedcomx.getPersons();
-    if (persons != null) {
-      for (Person person : persons) {
-        boolean found = false;
-        if (person.getId() != null) {
-          if (getPersons() != null) {
-            for (Person target : getPersons()) {
-              if (person.getId().equals(target.getId())) {
-                target.embed(person);
-                found = true;
-                break;
-              }
-            }
-          }
-        }
+  /**
+   * Remove an element (person, relationship, source description, agent, event, place, document, collection, field or
+   * record descriptor) from the data set.
+   *
+   * @param element The element to be removed.
+   * @return Whether the element was in the data set.
+   */
+  public boolean removeElement(HypermediaEnabledData element) {
+    boolean removed = removeFrom(this.persons, element)
+      || removeFrom(this.relationships, element)
+      || removeFrom(this.sourceDescriptions, element)
+      || removeFrom(this.agents, element)
+      || removeFrom(this.events, element)
+      || removeFrom(this.places, element)
+      || removeFrom(this.documents, element)
+      || removeFrom(this.collections, element)
+      || removeFrom(this.fields, element)
+      || removeFrom(this.recordDescriptors, element);
+    if (removed) {
+      fireElementRemoved(element);
+    }
+    return removed;
+  }
 
-        if (!found) {
-          addPerson(person);
+  /**
+   * Remove the given element (compared by identity) from the given list.
+   *
+   * @param list The list (possibly null).
+   * @param element The element to remove.
+   * @return Whether the element was in the list.
+   */
+  protected static boolean removeFrom(List<?> list, Object element) {
+    if (list != null) {
+      for (Iterator<?> it = list.iterator(); it.hasNext(); ) {
+        if (it.next() == element) {
+          it.remove();
+          return true;
         }
       }
     }
+    return false;
+  }
 
-    List<Relationship> relationships = gedcomx.getRelationships();
-    if (relationships != null) {
-      for (Relationship relationship : relationships) {
-        boolean found = false;
-        if (relationship.getId() != null) {
-          if (getRelationships() != null) {
-            for (Relationship target : getRelationships()) {
-              if (relationship.getId().equals(target.getId())) {
-                target.embed(relationship);
-                found = true;
-                break;
-              }
-            }
-          }
-        }
+  /**
+   * Change the id of an element in the data set, telling any change listeners about it.
+   *
+   * @param element The element.
+   * @param id The new id.
+   */
+  public void renameElement(HypermediaEnabledData element, String id) {
+    String oldId = element.getId();
+    element.setId(id);
+    fireElementRenamed(element, oldId);
+  }
 
-        if (!found) {
-          addRelationship(relationship);
-        }
-      }
+  /**
+   * Add a listener for changes made to the elements of this data set through its methods. Listeners are not copied or
+   * serialized with the data set.
+   *
+   * @param listener The listener.
+   */
+  public void addChangeListener(GedcomxChangeListener listener) {
+    if (changeListeners == null) {
+      changeListeners = new ArrayList<>(1);
     }
+    changeListeners.add(listener);
+  }
 
-    List<SourceDescription> sourceDescriptions = gedcomx.getSourceDescriptions();
-    if (sourceDescriptions != null) {
-      for (SourceDescription sourceDescription : sourceDescriptions) {
-        boolean found = false;
-        if (sourceDescription.getId() != null) {
-          if (getSourceDescriptions() != null) {
-            for (SourceDescription target : getSourceDescriptions()) {
-              if (sourceDescription.getId().equals(target.getId())) {
-                target.embed(sourceDescription);
-                found = true;
-                break;
-              }
-            }
-          }
-        }
-
-        if (!found) {
-          addSourceDescription(sourceDescription);
-        }
+  /**
+   * Remove a listener for changes made to the elements of this data set.
+   *
+   * @param listener The listener.
+   */
+  public void removeChangeListener(GedcomxChangeListener listener) {
+    if (changeListeners != null) {
+      changeListeners.remove(listener);
+      if (changeListeners.isEmpty()) {
+        changeListeners = null;
       }
     }
+  }
 
-    List<Agent> agents = gedcomx.getAgents();
-    if (agents != null) {
-      for (Agent agent : agents) {
-        boolean found = false;
-        if (agent.getId() != null) {
-          if (getAgents() != null) {
-            for (Agent target : getAgents()) {
-              if (agent.getId().equals(target.getId())) {
-                target.embed(agent);
-                found = true;
-                break;
-              }
-            }
-          }
-        }
-
-        if (!found) {
-          addAgent(agent);
-        }
+  protected void fireElementAdded(HypermediaEnabledData element) {
+    if (lookupIndexes != null) {
+      lookupIndexes.appended(this, element);
+    }
+    if (changeListeners != null) {
+      for (GedcomxChangeListener listener : changeListeners) {
+        listener.elementAdded(this, element);
       }
     }
+  }
 
-    List<Event> events = gedcomx.getEvents();
-    if (events != null) {
-      for (Event event : events) {
-        boolean found = false;
-        if (event.getId() != null) {
-          if (getEvents() != null) {
-            for (Event target : getEvents()) {
-              if (event.getId().equals(target.getId())) {
-                target.embed(event);
-                found = true;
-                break;
-              }
-            }
-          }
-        }
-
-        if (!found) {
-          addEvent(event);
-        }
+  protected void fireElementRemoved(HypermediaEnabledData element) {
+    invalidateLookupIndex();
+    if (changeListeners != null) {
+      for (GedcomxChangeListener listener : changeListeners) {
+        listener.elementRemoved(this, element);
       }
     }
+  }
 
-    List<PlaceDescription> placeDescriptions = gedcomx.getPlaces();
-    if (placeDescriptions != null) {
-      for (PlaceDescription placeDescription : placeDescriptions) {
-        boolean found = false;
-        if (placeDescription.getId() != null) {
-          if (getPlaces() != null) {
-            for (PlaceDescription target : getPlaces()) {
-              if (placeDescription.getId().equals(target.getId())) {
-                target.embed(placeDescription);
-                found = true;
-                break;
-              }
-            }
-          }
-        }
-
-        if (!found) {
-          addPlace(placeDescription);
-        }
+  protected void fireElementRenamed(HypermediaEnabledData element, String oldId) {
+    invalidateLookupIndex();
+    if (changeListeners != null) {
+      for (GedcomxChangeListener listener : changeListeners) {
+        listener.elementRenamed(this, element, oldId);
       }
     }
+  }
 
-    List<Document> documents = gedcomx.getDocuments();
-    if (documents != null) {
-      for (Document document : documents) {
-        boolean found = false;
-        if (document.getId() != null) {
-          if (getDocuments() != null) {
-            for (Document target : getDocuments()) {
-              if (document.getId().equals(target.getId())) {
-                target.embed(document);
-                found = true;
-                break;
-              }
-            }
-          }
-        }
-
-        if (!found) {
-          addDocument(document);
-        }
+  protected void fireElementsReplaced() {
+    invalidateLookupIndex();
+    if (changeListeners != null) {
+      for (GedcomxChangeListener listener : changeListeners) {
+        listener.elementsReplaced(this);
       }
     }
+  }
 
-    List<Collection> collections = gedcomx.getCollections();
-    if (collections != null) {
-      for (Collection collection : collections) {
-        boolean found = false;
-        if (collection.getId() != null) {
-          if (getCollections() != null) {
-            for (Collection target : getCollections()) {
-              if (collection.getId().equals(target.getId())) {
-                target.embed(collection);
-                found = true;
-                break;
-              }
-            }
+  /**
+   * Accept a visitor.
+   *
+   * @param visitor The visitor.
+   */
+  public void accept(GedcomxModelVisitor visitor) {
+    visitor.visitGedcomx(this);
+  }
+
+  public void embed(Gedcomx gedcomx) {
+    List<Link> links = gedcomx.getLinks();
+    if (links != null) {
+      // links with a rel that this document already has are skipped.
+      Set<String> rels = new HashSet<>();
+      if (getLinks() != null) {
+        for (Link target : getLinks()) {
+          if (target.getRel() != null) {
+            rels.add(target.getRel());
           }
         }
+      }
 
-        if (!found) {
-          addCollection(collection);
+      for (Link link : links) {
+        if (link.getRel() == null || rels.add(link.getRel())) {
+          addLink(link);
         }
       }
     }
 
-    List<Field> fields = gedcomx.getFields();
-    if (fields != null) {
-      for (Field field : fields) {
-        boolean found = false;
-        if (field.getId() != null) {
-          if (getFields() != null) {
-            for (Field target : getFields()) {
-              if (field.getId().equals(target.getId())) {
-                found = true;
-                break;
-              }
-            }
-          }
-        }
+    embedElements(gedcomx.getPersons(), getPersons(), this::addPerson, Person::embed);
+    embedElements(gedcomx.getRelationships(), getRelationships(), this::addRelationship, Relationship::embed);
+    embedElements(gedcomx.getSourceDescriptions(), getSourceDescriptions(), this::addSourceDescription, SourceDescription::embed);
+    embedElements(gedcomx.getAgents(), getAgents(), this::addAgent, Agent::embed);
+    embedElements(gedcomx.getEvents(), getEvents(), this::addEvent, Event::embed);
+    embedElements(gedcomx.getPlaces(), getPlaces(), this::addPlace, PlaceDescription::embed);
+    embedElements(gedcomx.getDocuments(), getDocuments(), this::addDocument, Document::embed);
+    embedElements(gedcomx.getCollections(), getCollections(), this::addCollection, Collection::embed);
+    embedElements(gedcomx.getFields(), getFields(), this::addField, null);
+    embedElements(gedcomx.getRecordDescriptors(), getRecordDescriptors(), this::addRecordDescriptor, RecordDescriptor::embed);
+  }
 
-        if (!found) {
-          addField(field);
-        }
-      }
+  /**
+   * Embed the given elements into this document, in order: an element with the same id as an element that is already in
+   * the document (or that was added before it) is embedded into that element, and any other element is added.
+   *
+   * @param elements The elements to embed (possibly null).
+   * @param targets The elements of the same kind that are already in this document (possibly null).
+   * @param add How to add an element to this document.
+   * @param embed How to embed an element into the element with the same id, or null if such an element is to be ignored.
+   */
+  protected static <E extends HypermediaEnabledData> void embedElements(List<? extends E> elements, List<? extends E> targets, Consumer<E> add, BiConsumer<E, E> embed) {
+    if (elements == null) {
+      return;
     }
 
-    List<RecordDescriptor> recordDescriptors = gedcomx.getRecordDescriptors();
-    if (recordDescriptors != null) {
-      for (RecordDescriptor recordDescriptor : recordDescriptors) {
-        boolean found = false;
-        if (recordDescriptor.getId() != null) {
-          if (getRecordDescriptors() != null) {
-            for (RecordDescriptor target : getRecordDescriptors()) {
-              if (recordDescriptor.getId().equals(target.getId())) {
-                target.embed(recordDescriptor);
-                found = true;
-                break;
-              }
-            }
-          }
+    Map<String, E> targetsById = new HashMap<>();
+    if (targets != null) {
+      for (E target : targets) {
+        if (target.getId() != null) {
+          targetsById.putIfAbsent(target.getId(), target);
         }
+      }
+    }
 
-        if (!found) {
-          addRecordDescriptor(recordDescriptor);
+    for (E element : elements) {
+      E target = element.getId() == null ? null : targetsById.get(element.getId());
+      if (target == null) {
+        add.accept(element);
+        if (element.getId() != null) {
+          targetsById.put(element.getId(), element);
         }
       }
+      else if (embed != null) {
+        embed.accept(target, element);
+      }
     }
   }
 
@@ -1343,9 +1441,10 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
       citation.append("; contributed by various users.");
       personDescription.addCitation(new SourceCitation().lang("en").value(citation.toString()));
       if (getSourceDescriptions() == null) {
-        setSourceDescriptions(new ArrayList<>());
+        this.sourceDescriptions = new ArrayList<>();
       }
       getSourceDescriptions().add(0, personDescription);
+      fireElementAdded(personDescription);
       setDescriptionRef(URI.create("#" + sdid));
     }
     return this;
@@ -1357,37 +1456,52 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
    * @return this
    */
   public Gedcomx fixLocalReferences() {
-    List<Person> locals = getPersons() == null ? Collections.emptyList() : getPersons();
-    List<Relationship> relationships = getRelationships() == null ? Collections.emptyList() : getRelationships();
-    List<SourceDescription> sds = getSourceDescriptions() == null ? Collections.emptyList() : getSourceDescriptions();
-    List<PlaceDescription> placeDescriptions = getPlaces() == null ? Collections.emptyList() : getPlaces();
+    return fixLocalReferences(localIds(getPersons()), localIds(getSourceDescriptions()));
+  }
 
+  /**
+   * Fixes all references to entities that are in the document to be local references, given the ids of the persons and
+   * source descriptions in the document. Each reference is resolved with a single lookup, so this takes time linear in
+   * the size of the document.
+   *
+   * @param personIds The ids of the persons in the document.
+   * @param descriptionIds The ids of the source descriptions in the document.
+   * @return this
+   */
+  protected Gedcomx fixLocalReferences(Set<String> personIds, Set<String> descriptionIds) {
     //make the references to other persons in the relationship local if they're in the same document.
     //also make the references to the sources in each source reference local if they're in the same document.
-    for (Person local : locals) {
-      String localId = local.getId();
-      if (localId != null) {
-        for (Relationship relationship : relationships) {
-          fixId(relationship.getPerson1(), localId);
-          fixId(relationship.getPerson2(), localId);
-          fixupSourceReferences(sds, relationship);
-        }
+    if (getRelationships() != null && !personIds.isEmpty()) {
+      for (Relationship relationship : getRelationships()) {
+        fixId(relationship.getPerson1(), personIds);
+        fixId(relationship.getPerson2(), personIds);
+        fixupSourceReferences(descriptionIds, relationship);
+      }
+    }
+    if (getPersons() != null) {
+      for (Person local : getPersons()) {
+        fixupSourceReferences(descriptionIds, local);
       }
-      fixupSourceReferences(sds, local);
     }
 
-    for (PlaceDescription placeDescription : placeDescriptions) {
-      if (placeDescription.getPlace() != null) {
-        String resourceId = placeDescription.getPlace().getResourceId();
+    //make the place references of place descriptions local if more than one description refers to the same place.
+    if (getPlaces() != null) {
+      Map<String, PlaceDescription> firstByPlaceId = new HashMap<>();
+      Set<String> sharedPlaceIds = new HashSet<>();
+      for (PlaceDescription placeDescription : getPlaces()) {
+        String resourceId = placeDescription.getPlace() == null ? null : placeDescription.getPlace().getResourceId();
         if (resourceId != null) {
-          for (PlaceDescription checkDescription : placeDescriptions) {
-            if (placeDescription != checkDescription) {
-              if (checkDescription.getPlace() != null && resourceId.equals(checkDescription.getPlace().getResourceId())) {
-                org.gedcomx.common.URI uri = new org.gedcomx.common.URI("#" + placeDescription.getPlace().getResourceId());
-                placeDescription.setPlace(new ResourceReference(uri, placeDescription.getPlace().getResourceId()));
-                break;
-              }
-            }
+          PlaceDescription first = firstByPlaceId.putIfAbsent(resourceId, placeDescription);
+          if (first != null && first != placeDescription) {
+            sharedPlaceIds.add(resourceId);
+          }
+        }
+      }
+      if (!sharedPlaceIds.isEmpty()) {
+        for (PlaceDescription placeDescription : getPlaces()) {
+          String resourceId = placeDescription.getPlace() == null ? null : placeDescription.getPlace().getResourceId();
+          if (resourceId != null && sharedPlaceIds.contains(resourceId)) {
+            placeDescription.setPlace(new ResourceReference(URI.create("#" + resourceId), resourceId));
           }
         }
       }
@@ -1395,6 +1509,25 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
     return this;
   }
 
+  /**
+   * The (non-null) ids of the given elements.
+   *
+   * @param elements The elements, or null.
+   * @return The ids of the elements.
+   */
+  protected static Set<String> localIds(List<? extends HypermediaEnabledData> elements) {
+    if (elements == null) {
+      return Collections.emptySet();
+    }
+    Set<String> ids = new HashSet<>(elements.size() * 4 / 3 + 1);
+    for (HypermediaEnabledData element : elements) {
+      if (element.getId() != null) {
+        ids.add(element.getId());
+      }
+    }
+    return ids;
+  }
+
   protected static void fixupSourceReferences(List<SourceDescription> sds, Subject local) {
     if (local.getSources() != null) {
       for (SourceReference sourceReference : local.getSources()) {
@@ -1410,12 +1543,29 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
     }
   }
 
+  protected static void fixupSourceReferences(Set<String> descriptionIds, Subject local) {
+    if (local.getSources() != null && !descriptionIds.isEmpty()) {
+      for (SourceReference sourceReference : local.getSources()) {
+        String sdid = sourceReference.getDescriptionId();
+        if (sdid != null && descriptionIds.contains(sdid)) {
+          sourceReference.setDescriptionRef(URI.create("#" + sdid));
+        }
+      }
+    }
+  }
+
   protected static void fixId(ResourceReference ref, String localId) {
     if (ref != null && localId.equals(ref.getResourceId())) {
       ref.setResource(org.gedcomx.common.URI.create("#" + localId));
     }
   }
 
+  protected static void fixId(ResourceReference ref, Set<String> localIds) {
+    if (ref != null && ref.getResourceId() != null && localIds.contains(ref.getResourceId())) {
+      ref.setResource(URI.create("#" + ref.getResourceId()));
+    }
+  }
+
   /**
    * Create a stream of all the subjects of this record.
    *
@@ -1465,4 +1615,143 @@ public class Gedcomx extends HypermediaEnabledData implements HasFields {
     return null;
   }
 
+  /**
+   * The keys of a subject in a lookup index: its id and the values of its identifiers.
+   *
+   * @param subject The subject.
+   * @param keys The consumer of the keys.
+   */
+  protected static void subjectKeys(Subject subject, Consumer<Object> keys) {
+    keys.accept(subject.getId());
+    if (subject.getIdentifiers() != null) {
+      for (Identifier identifier : subject.getIdentifiers()) {
+        keys.accept(identifier.getValue());
+      }
+    }
+  }
+
+  /**
+   * The key of an element in a lookup index: its id.
+   *
+   * @param element The element.
+   * @param keys The consumer of the key.
+   */
+  protected static void elementKeys(HypermediaEnabledData element, Consumer<Object> keys) {
+    keys.accept(element.getId());
+  }
+
+  /**
+   * Find a subject as findSubject(List, URI) does, using a lookup index of the list (see subjectKeys()).
+   *
+   * @param index The index of the items.
+   * @param items The items.
+   * @param ref The reference to the subject.
+   * @return The subject, or null.
+   */
+  protected static <S extends Subject> S findSubject(LookupIndex<S> index, List<S> items, URI ref) {
+    String value = ref.toString();
+    String id = value.startsWith("#") ? value.substring(1) : null;
+    S byId = id == null ? null : index.get(id);
+    S byIdentifier = index.get(ref);
+    if (byId != null && byIdentifier != null && byId != byIdentifier) {
+      // one subject has the id and another has the identifier: whichever is first in the list wins.
+      return findSubject(items, ref);
+    }
+
+    S found = byId != null ? byId : byIdentifier;
+    if (found == null || (found == byId && id.equals(found.getId())) || (found == byIdentifier && hasIdentifier(found, ref))) {
+      return found;
+    }
+    // changed since it was indexed.
+    return findSubject(items, ref);
+  }
+
+  private static boolean hasIdentifier(Subject subject, URI ref) {
+    if (subject.getIdentifiers() != null) {
+      for (Identifier identifier : subject.getIdentifiers()) {
+        if (ref.equals(identifier.getValue())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Find an element as findElement(List, URI) does, using a lookup index of the list (see elementKeys()).
+   *
+   * @param index The index of the items.
+   * @param items The items.
+   * @param ref The reference to the element.
+   * @return The element, or null.
+   */
+  protected static <E extends HypermediaEnabledData> E findElement(LookupIndex<E> index, List<E> items, URI ref) {
+    String value = ref.toString();
+    if (!value.startsWith("#")) {
+      return null;
+    }
+
+    String id = value.substring(1);
+    E found = index.get(id);
+    // (if the element has been changed since it was indexed, search for it instead.)
+    return found == null || id.equals(found.getId()) ? found : findElement(items, ref);
+  }
+
+  /**
+   * The indexes for the find methods, each built when first needed.
+   */
+  private static final class LookupIndexes {
+    private LookupIndex<Person> persons;
+    private LookupIndex<Relationship> relationships;
+    private LookupIndex<Relationship> couples;
+    private LookupIndex<Relationship> parentChildren;
+    private LookupIndex<SourceDescription> descriptions;
+    private LookupIndex<Agent> agents;
+    private LookupIndex<PlaceDescription> places;
+
+    private void appended(Gedcomx doc, HypermediaEnabledData element) {
+      if (element instanceof Person) {
+        if (persons != null) {
+          persons.appended(doc.persons, (Person) element);
+        }
+      }
+      else if (element instanceof Relationship) {
+        if (relationships != null) {
+          relationships.appended(doc.relationships, (Relationship) element);
+        }
+        if (couples != null) {
+          couples.appended(doc.relationships, (Relationship) element);
+        }
+        if (parentChildren != null) {
+          parentChildren.appended(doc.relationships, (Relationship) element);
+        }
+      }
+      else if (element instanceof SourceDescription) {
+        if (descriptions != null) {
+          descriptions.appended(doc.sourceDescriptions, (SourceDescription) element);
+        }
+      }
+      else if (element instanceof Agent) {
+        if (agents != null) {
+          agents.appended(doc.agents, (Agent) element);
+        }
+      }
+      else if (element instanceof PlaceDescription) {
+        if (places != null) {
+          places.appended(doc.places, (PlaceDescription) element);
+        }
+      }
+    }
+
+    private void clear() {
+      persons = null;
+      relationships = null;
+      couples = null;
+      parentChildren = null;
+      descriptions = null;
+      agents = null;
+      places = null;
+    }
+  }
+
 }
@@ -0,0 +1,415 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.util;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.rt.GedcomxConstants;
+import org.gedcomx.rt.json.JsonMapperRegistry;
+import tools.jackson.core.StreamWriteFeature;
+import tools.jackson.databind.json.JsonMapper;
+
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Class for streaming a RecordSet to an OutputStream (in XML, like RecordSetWriter, or in JSON, like
+ *   JsonRecordSetWriter), serializing the records on a pool of worker threads.
+ *
+ * writeRecord() places each record on a bounded queue and returns. The configured number of worker threads serialize
+ *   the records into byte buffers, and a single writer thread appends the buffers to the output stream in the order
+ *   in which the records were submitted. When the queue is full, writeRecord() waits for room (back-pressure), so at
+ *   most 'queueCapacity' records are held in memory at once.
+ *
+ * If serializing or writing a record fails, the remaining records are discarded, and the failure is thrown (as an
+ *   IOException) from the next call to writeRecord(), setMetadata(), flush() or close().
+ */
+public class AsyncRecordSetWriter {
+  private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+  private static final JsonMapper JSON_MAPPER = JsonMapperRegistry.getJsonMapper().rebuild()
+    .disable(StreamWriteFeature.AUTO_CLOSE_TARGET, StreamWriteFeature.AUTO_CLOSE_CONTENT)
+    .build();
+  // Marker placed on the queue after the last buffer.
+  private static final Future<byte[]> END = CompletableFuture.completedFuture(null);
+
+  private final OutputStream outputStream;
+  private final RecordSetIndex.Format format;
+  private final BlockingQueue<Future<byte[]>> queue;
+  private final ExecutorService workers;
+  private final ThreadLocal<Marshaller> marshallers;
+  private final Thread writerThread;
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private final AtomicLong recordsWritten = new AtomicLong();
+  private final AtomicLong bytesWritten = new AtomicLong();
+  private final long startTime = System.nanoTime();
+  // Metadata to write after the records, if it was set after records had already been written.
+  private Gedcomx metadata;
+  private boolean wroteMetadata = false;
+  private long numRecords = 0;
+  private boolean closed = false;
+
+  /**
+   * A buffer of serialized data that counts as a record (as opposed to metadata or the surrounding document).
+   */
+  private static class RecordTask extends FutureTask<byte[]> {
+    RecordTask(Callable<byte[]> callable) {
+      super(callable);
+    }
+  }
+
+  /**
+   * Marker placed on the queue by flush(), completed by the writer thread once everything ahead of it has been written.
+   */
+  private static class FlushRequest extends CompletableFuture<byte[]> {
+  }
+
+  /**
+   * Constructor. Prepares to write GedcomX document records to the given output stream (which may well be a
+   *   GZIPOutputStream), serializing them on the given number of threads, and queueing up to 4 records per thread.
+   * @param outputStream - OutputStream to write the RecordSet to.
+   * @param format - Whether to write the RecordSet as XML or JSON.
+   * @param threads - Number of worker threads to use to serialize records.
+   */
+  public AsyncRecordSetWriter(OutputStream outputStream, RecordSetIndex.Format format, int threads) {
+    this(outputStream, format, threads, threads * 4);
+  }
+
+  /**
+   * Constructor. Prepares to write GedcomX document records to the given output stream (which may well be a
+   *   GZIPOutputStream), serializing them on the given number of threads.
+   * @param outputStream - OutputStream to write the RecordSet to.
+   * @param format - Whether to write the RecordSet as XML or JSON.
+   * @param threads - Number of worker threads to use to serialize records.
+   * @param queueCapacity - Maximum number of records that may be waiting to be serialized or written.
+   */
+  public AsyncRecordSetWriter(OutputStream outputStream, RecordSetIndex.Format format, int threads, int queueCapacity) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Must have at least one worker thread.");
+    }
+    if (queueCapacity < 1) {
+      throw new IllegalArgumentException("Queue capacity must be at least 1.");
+    }
+    this.outputStream = outputStream;
+    this.format = format;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.marshallers = ThreadLocal.withInitial(AsyncRecordSetWriter::createMarshaller);
+    this.workers = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "gedcomx-recordset-encoder");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.writerThread = new Thread(this::write, "gedcomx-recordset-writer");
+    this.writerThread.setDaemon(true);
+    this.writerThread.start();
+
+    if (format == RecordSetIndex.Format.XML) {
+      enqueue("<?xml version='1.0' encoding='UTF-8'?><records xmlns=\"" + GedcomxConstants.GEDCOMX_NAMESPACE + "\">");
+    }
+    else {
+      enqueue("{\n");
+    }
+  }
+
+  private static Marshaller createMarshaller() {
+    try {
+      Marshaller marshaller = XmlRecordSetIterator.getJaxbContext().createMarshaller();
+      marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+      return marshaller;
+    }
+    catch (JAXBException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Queue the given record to be serialized and written to the output stream. Waits if the queue is full.
+   * @param record - GedcomX document to add as a 'record' to the RecordSet OutputStream.
+   * @throws IOException If writing an earlier record failed, or if interrupted while waiting.
+   */
+  public synchronized void writeRecord(Gedcomx record) throws IOException {
+    checkOpen();
+    if (numRecords == 0 && format == RecordSetIndex.Format.JSON) {
+      enqueue("\"" + JsonRecordSetWriter.RECORDS_STR + "\": [\n");
+    }
+    String prefix = numRecords > 0 && format == RecordSetIndex.Format.JSON ? "," : "";
+    numRecords++;
+    put(new RecordTask(() -> encode(prefix, record, "record", "")));
+  }
+
+  /**
+   * Set the 'metadata' document. If no records have been written yet, it is written first; otherwise it is held and
+   *   written after all of the records, as with RecordSetWriter. In JSON, if no metadata is set, the "metadata" member
+   *   is still written, as null, as JsonRecordSetWriter writes it: first if there are no records, or after the records.
+   * @param metadata - GedcomX document with group-level information.
+   * @throws IOException If writing an earlier record failed, or if interrupted while waiting.
+   */
+  public synchronized void setMetadata(Gedcomx metadata) throws IOException {
+    checkOpen();
+    if (wroteMetadata) {
+      throw new IllegalStateException("Already wrote metadata to stream. Can't change it now.");
+    }
+    if (numRecords > 0) {
+      this.metadata = metadata;
+    }
+    else {
+      put(new FutureTask<>(() -> format == RecordSetIndex.Format.JSON
+        ? encode("\"" + JsonRecordSetWriter.METADATA_STR + "\":", metadata, null, ",\n")
+        : encode("", metadata, "metadata", "")));
+      wroteMetadata = true;
+    }
+  }
+
+  /**
+   * Wait until all of the records written so far have been serialized and written, and flush the output stream.
+   * @throws IOException If writing a record failed, or if interrupted while waiting.
+   */
+  public synchronized void flush() throws IOException {
+    checkOpen();
+    FlushRequest request = new FlushRequest();
+    put(request);
+    try {
+      request.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+    checkFailure();
+  }
+
+  /**
+   * Finish writing the RecordSet, including the metadata (if set and not yet written) and the closing tag or brace,
+   *   wait for everything to be written, and close the output stream. Throws the first failure, if any.
+   * @throws IOException If writing a record failed or there's an I/O problem.
+   */
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (format == RecordSetIndex.Format.JSON) {
+        if (numRecords == 0) {
+          if (!wroteMetadata) {
+            enqueue("\"" + JsonRecordSetWriter.METADATA_STR + "\":null,\n");
+          }
+          enqueue("\"" + JsonRecordSetWriter.RECORDS_STR + "\": [\n");
+        }
+        enqueue("\n]");
+        if (metadata != null) {
+          Gedcomx metadata = this.metadata;
+          put(new FutureTask<>(() -> encode(",\n\"" + JsonRecordSetWriter.METADATA_STR + "\":", metadata, null, "")));
+        }
+        else if (!wroteMetadata && numRecords > 0) {
+          enqueue(",\n\"" + JsonRecordSetWriter.METADATA_STR + "\":null");
+        }
+        enqueue("\n}");
+      }
+      else {
+        if (metadata != null) {
+          Gedcomx metadata = this.metadata;
+          put(new FutureTask<>(() -> encode("", metadata, "metadata", "")));
+        }
+        enqueue("</records>");
+      }
+      queue.put(END);
+      writerThread.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failure.compareAndSet(null, e);
+    }
+    finally {
+      workers.shutdownNow();
+      try {
+        outputStream.close();
+      }
+      catch (IOException e) {
+        failure.compareAndSet(null, e);
+      }
+    }
+    checkFailure();
+  }
+
+  /**
+   * @return the number of buffers (mostly records) waiting to be serialized or written.
+   */
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  /**
+   * @return the number of records written to the output stream so far.
+   */
+  public long getRecordsWritten() {
+    return recordsWritten.get();
+  }
+
+  /**
+   * @return the number of (uncompressed) bytes written to the output stream so far.
+   */
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  /**
+   * @return the average number of records written per second since this writer was created.
+   */
+  public double getRecordsPerSecond() {
+    return perSecond(recordsWritten.get());
+  }
+
+  /**
+   * @return the average number of bytes written per second since this writer was created.
+   */
+  public double getBytesPerSecond() {
+    return perSecond(bytesWritten.get());
+  }
+
+  private double perSecond(long count) {
+    long elapsed = System.nanoTime() - startTime;
+    return elapsed > 0 ? count * 1e9 / elapsed : 0;
+  }
+
+  private void checkOpen() throws IOException {
+    if (closed) {
+      throw new IllegalStateException("Writer is closed.");
+    }
+    checkFailure();
+  }
+
+  private void checkFailure() throws IOException {
+    Throwable t = failure.get();
+    if (t != null) {
+      throw t instanceof IOException ? (IOException) t : new IOException(t);
+    }
+  }
+
+  private void enqueue(String text) {
+    try {
+      queue.put(CompletableFuture.completedFuture(text.getBytes(StandardCharsets.UTF_8)));
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void put(Future<byte[]> item) throws IOException {
+    try {
+      queue.put(item);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    if (item instanceof FutureTask) {
+      workers.execute((FutureTask<byte[]>) item);
+    }
+  }
+
+  /**
+   * Serialize the given document, with the given text before and after it. Runs on a worker thread.
+   * @param label - Element name for XML ('record' or 'metadata'); ignored for JSON.
+   */
+  private byte[] encode(String prefix, Gedcomx doc, String label, String suffix) throws IOException, JAXBException, XMLStreamException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bytes.write(prefix.getBytes(StandardCharsets.UTF_8));
+    if (format == RecordSetIndex.Format.JSON) {
+      JSON_MAPPER.writeValue(bytes, doc);
+    }
+    else {
+      // Use a CleanXMLStreamWriter to avoid illegal XML characters in the marshalled output, as RecordSetWriter does.
+      XMLStreamWriter xmlWriter = new CleanXMLStreamWriter(XML_OUTPUT_FACTORY.createXMLStreamWriter(bytes, "UTF-8"));
+      marshallers.get().marshal(new JAXBElement<>(new QName(GedcomxConstants.GEDCOMX_NAMESPACE, label), Gedcomx.class, doc), xmlWriter);
+      xmlWriter.close();
+    }
+    bytes.write(suffix.getBytes(StandardCharsets.UTF_8));
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Append the serialized buffers to the output stream in queue order. Runs on the writer thread.
+   */
+  private void write() {
+    while (true) {
+      Future<byte[]> item;
+      try {
+        item = queue.take();
+      }
+      catch (InterruptedException e) {
+        failure.compareAndSet(null, e);
+        return;
+      }
+      if (item == END) {
+        return;
+      }
+      try {
+        if (item instanceof FlushRequest) {
+          if (failure.get() == null) {
+            outputStream.flush();
+          }
+          ((FlushRequest) item).complete(null);
+        }
+        else if (failure.get() != null) {
+          // Discard the rest after a failure, but keep taking from the queue so that producers don't block.
+          item.cancel(false);
+        }
+        else {
+          byte[] buffer = item.get();
+          outputStream.write(buffer);
+          bytesWritten.addAndGet(buffer.length);
+          if (item instanceof RecordTask) {
+            recordsWritten.incrementAndGet();
+          }
+        }
+      }
+      catch (ExecutionException e) {
+        failure.compareAndSet(null, e.getCause());
+      }
+      catch (IOException | InterruptedException e) {
+        failure.compareAndSet(null, e);
+      }
+      finally {
+        if (item instanceof FlushRequest) {
+          ((FlushRequest) item).complete(null);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,395 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.util;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.rt.json.JsonMapperRegistry;
+import org.gedcomx.rt.xml.JaxbContextRegistry;
+import tools.jackson.databind.json.JsonMapper;
+
+import jakarta.xml.bind.JAXBException;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.gedcomx.util.BlockRecordSetWriter.*;
+
+/**
+ * Class for reading a block-compressed RecordSet container written by a BlockRecordSetWriter.
+ *
+ * Each block can be decompressed and decoded independently, so the records of a file (or of any byte range of it)
+ *   can be read in parallel, e.g. with <code>reader.records(start, end).parallel()</code>. To split a file across
+ *   several workers or processes, give each one a byte range: a range owns the blocks whose sync marker starts within
+ *   it, so ranges that cover the file without overlapping read each record exactly once.
+ * If the file was not closed properly (so has no block index), the blocks are found by scanning for sync markers.
+ * Blocks may be read concurrently from multiple threads.
+ */
+public class BlockRecordSetReader implements Closeable {
+  private static final JsonMapper JSON_MAPPER = JsonMapperRegistry.getJsonMapper();
+  private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+  private final FileChannel channel;
+  private final long size;
+  private final RecordSetIndex.Format format;
+  private final byte[] sync = new byte[SYNC_SIZE];
+  // All blocks (including the metadata block) from the index at the end of the file, or null if there is none.
+  private final List<Block> index;
+
+  /**
+   * The position of a block of records within the container.
+   */
+  public static class Block {
+    private final long offset;
+    private final int recordCount;
+
+    Block(long offset, int recordCount) {
+      this.offset = offset;
+      this.recordCount = recordCount;
+    }
+
+    /**
+     * @return the byte offset of the block within the container.
+     */
+    public long getOffset() {
+      return offset;
+    }
+
+    /**
+     * @return the number of records in the block.
+     */
+    public int getRecordCount() {
+      return recordCount;
+    }
+
+    private boolean isMetadata() {
+      return recordCount == METADATA_BLOCK;
+    }
+  }
+
+  /**
+   * Constructor.
+   * @param filename - Path of the container file.
+   * @throws IOException if the file can't be opened or isn't a block-compressed RecordSet.
+   */
+  public BlockRecordSetReader(String filename) throws IOException {
+    this(Paths.get(filename));
+  }
+
+  /**
+   * Constructor.
+   * @param path - Path of the container file.
+   * @throws IOException if the file can't be opened or isn't a block-compressed RecordSet.
+   */
+  public BlockRecordSetReader(Path path) throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      size = channel.size();
+      ByteBuffer header = read(0, HEADER_SIZE);
+      byte[] magic = new byte[MAGIC.length];
+      header.get(magic);
+      if (!Arrays.equals(MAGIC, magic) || header.get() != VERSION) {
+        throw new IOException("Not a block-compressed RecordSet: " + path);
+      }
+      format = RecordSetIndex.Format.values()[header.get()];
+      header.get(sync);
+      index = readIndex();
+    }
+    catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return the format (XML or JSON) used to encode the records.
+   */
+  public RecordSetIndex.Format getFormat() {
+    return format;
+  }
+
+  /**
+   * @return all of the blocks of records in the container.
+   * @throws IOException if the container can't be read.
+   */
+  public List<Block> getBlocks() throws IOException {
+    return getBlocks(0, Long.MAX_VALUE);
+  }
+
+  /**
+   * Get the blocks of records whose sync markers start within the given byte range.
+   * @param start - Offset of the start of the range (inclusive).
+   * @param end - Offset of the end of the range (exclusive).
+   * @return the blocks of records in the given range.
+   * @throws IOException if the container can't be read.
+   */
+  public List<Block> getBlocks(long start, long end) throws IOException {
+    List<Block> blocks = new ArrayList<>();
+    for (Block block : findBlocks(start, end)) {
+      if (!block.isMetadata()) {
+        blocks.add(block);
+      }
+    }
+    return blocks;
+  }
+
+  /**
+   * Get the metadata document of the RecordSet.
+   * @return the metadata, or null if the RecordSet has none.
+   * @throws IOException if the metadata can't be read.
+   */
+  public Gedcomx getMetadata() throws IOException {
+    for (Block block : findBlocks(0, Long.MAX_VALUE)) {
+      if (block.isMetadata()) {
+        return readBlock(block).get(0);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Decompress and decode the records in the given block.
+   * @param block - Block to read.
+   * @return the records in the block.
+   * @throws IOException if the block can't be read.
+   */
+  public List<Gedcomx> readBlock(Block block) throws IOException {
+    ByteBuffer header = readBlockHeader(block.getOffset());
+    int count = header.getInt();
+    int uncompressedLength = header.getInt();
+    int storedLength = header.getInt();
+    ByteBuffer stored = read(block.getOffset() + BLOCK_HEADER_SIZE, storedLength);
+
+    byte[] bytes = new byte[uncompressedLength];
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(stored.array());
+      int length = 0;
+      while (length < uncompressedLength && !inflater.finished()) {
+        int inflated = inflater.inflate(bytes, length, uncompressedLength - length);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        length += inflated;
+      }
+      if (length != uncompressedLength) {
+        throw new IOException("Corrupt block at " + block.getOffset());
+      }
+    }
+    catch (DataFormatException e) {
+      throw new IOException("Corrupt block at " + block.getOffset(), e);
+    }
+    finally {
+      inflater.end();
+    }
+
+    ByteBuffer data = ByteBuffer.wrap(bytes);
+    int records = count == METADATA_BLOCK ? 1 : count;
+    List<Gedcomx> result = new ArrayList<>(records);
+    try {
+      if (format == RecordSetIndex.Format.XML) {
+        JaxbContextRegistry.withUnmarshaller(XmlRecordSetIterator.getJaxbContext(), unmarshaller -> {
+          for (int i = 0; i < records; i++) {
+            int length = data.getInt();
+            int offset = data.position();
+            result.add(unmarshaller.unmarshal(new StreamSource(new ByteArrayInputStream(bytes, offset, length)), Gedcomx.class).getValue());
+            data.position(offset + length);
+          }
+          return null;
+        });
+      }
+      else {
+        for (int i = 0; i < records; i++) {
+          int length = data.getInt();
+          int offset = data.position();
+          result.add(JSON_MAPPER.readValue(bytes, offset, length, Gedcomx.class));
+          data.position(offset + length);
+        }
+      }
+    }
+    catch (JAXBException e) {
+      throw new IOException(e);
+    }
+    return result;
+  }
+
+  /**
+   * Create a stream of all of the records in the container. The stream may be made parallel, in which case whole
+   *   blocks are decompressed and decoded on the fork-join pool.
+   * @return A stream of the records.
+   * @throws IOException if the container can't be read.
+   */
+  public Stream<Gedcomx> records() throws IOException {
+    return records(0, Long.MAX_VALUE);
+  }
+
+  /**
+   * Create a stream of the records in the blocks whose sync markers start within the given byte range. The stream
+   *   may be made parallel, in which case whole blocks are decompressed and decoded on the fork-join pool.
+   * @param start - Offset of the start of the range (inclusive).
+   * @param end - Offset of the end of the range (exclusive).
+   * @return A stream of the records in the range.
+   * @throws IOException if the container can't be read.
+   */
+  public Stream<Gedcomx> records(long start, long end) throws IOException {
+    return getBlocks(start, end).stream().flatMap(block -> {
+      try {
+        return readBlock(block).stream();
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+  }
+
+  /**
+   * @return the size of the container file, in bytes, for dividing it into ranges.
+   */
+  public long getSize() {
+    return size;
+  }
+
+  private List<Block> findBlocks(long start, long end) throws IOException {
+    if (index != null) {
+      List<Block> blocks = new ArrayList<>();
+      for (Block block : index) {
+        if (block.getOffset() >= start && block.getOffset() < end) {
+          blocks.add(block);
+        }
+      }
+      return blocks;
+    }
+    return scanBlocks(start, end);
+  }
+
+  private List<Block> readIndex() throws IOException {
+    if (size < HEADER_SIZE + BLOCK_HEADER_SIZE + TRAILER_SIZE) {
+      return null;
+    }
+    ByteBuffer trailer = read(size - TRAILER_SIZE, TRAILER_SIZE);
+    long indexOffset = trailer.getLong();
+    byte[] magic = new byte[TRAILER_MAGIC.length];
+    trailer.get(magic);
+    if (!Arrays.equals(TRAILER_MAGIC, magic) || indexOffset < HEADER_SIZE || indexOffset > size - TRAILER_SIZE - BLOCK_HEADER_SIZE) {
+      return null;
+    }
+    ByteBuffer header = readBlockHeader(indexOffset);
+    if (header.getInt() != INDEX_BLOCK) {
+      throw new IOException("Corrupt block index at " + indexOffset);
+    }
+    header.getInt();
+    int length = header.getInt();
+    ByteBuffer entries = read(indexOffset + BLOCK_HEADER_SIZE, length);
+    List<Block> blocks = new ArrayList<>(length / 12);
+    while (entries.hasRemaining()) {
+      blocks.add(new Block(entries.getLong(), entries.getInt()));
+    }
+    return Collections.unmodifiableList(blocks);
+  }
+
+  private List<Block> scanBlocks(long start, long end) throws IOException {
+    List<Block> blocks = new ArrayList<>();
+    long position = findSync(Math.max(start, HEADER_SIZE), end);
+    while (position >= 0 && position < end && position + BLOCK_HEADER_SIZE <= size) {
+      ByteBuffer header = readBlockHeader(position);
+      int count = header.getInt();
+      header.getInt();
+      int storedLength = header.getInt();
+      if (count == INDEX_BLOCK || position + BLOCK_HEADER_SIZE + storedLength > size) {
+        // Reached the index, or a block that was only partly written.
+        break;
+      }
+      blocks.add(new Block(position, count));
+      position += BLOCK_HEADER_SIZE + storedLength;
+    }
+    return blocks;
+  }
+
+  /**
+   * Find the first sync marker that starts at or after 'from' and before 'end'.
+   * @return the offset of the sync marker, or -1 if there is none.
+   */
+  private long findSync(long from, long end) throws IOException {
+    long limit = Math.min(end, size - SYNC_SIZE + 1);
+    long position = from;
+    while (position < limit) {
+      int length = (int) Math.min(SCAN_BUFFER_SIZE, limit - position + SYNC_SIZE - 1);
+      byte[] buffer = read(position, length).array();
+      for (int i = 0; i + SYNC_SIZE <= length; i++) {
+        if (matchesSync(buffer, i)) {
+          return position + i;
+        }
+      }
+      position += length - SYNC_SIZE + 1;
+    }
+    return -1;
+  }
+
+  private boolean matchesSync(byte[] buffer, int offset) {
+    for (int i = 0; i < SYNC_SIZE; i++) {
+      if (buffer[offset + i] != sync[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Read the header of the block at the given offset, check its sync marker, and return it positioned after the marker.
+   */
+  private ByteBuffer readBlockHeader(long offset) throws IOException {
+    ByteBuffer header = read(offset, BLOCK_HEADER_SIZE);
+    if (!matchesSync(header.array(), 0)) {
+      throw new IOException("Missing sync marker at " + offset);
+    }
+    header.position(SYNC_SIZE);
+    return header;
+  }
+
+  private ByteBuffer read(long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new EOFException("Unexpected end of block-compressed RecordSet at " + (position + buffer.position()));
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Close the container file.
+   * @throws IOException from the file channel.
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
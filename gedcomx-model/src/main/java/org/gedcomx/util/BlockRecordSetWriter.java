@@ -0,0 +1,240 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.util;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.rt.GedcomxConstants;
+import org.gedcomx.rt.json.JsonMapperRegistry;
+import tools.jackson.databind.json.JsonMapper;
+
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Class for writing a RecordSet to an OutputStream as a block-compressed container, so that the resulting file can be
+ *   split across workers and decompressed in parallel (see BlockRecordSetReader), unlike a single GZIPped XML or JSON
+ *   document.
+ *
+ * Records are encoded individually (as XML 'record' elements or as JSON objects) and collected into blocks of roughly
+ *   the configured (uncompressed) size. Each block is deflated on its own and preceded by a sync marker that is unique
+ *   to the file, so that a reader starting at an arbitrary byte offset can find the next block boundary. When the
+ *   writer is closed, an index of all the blocks is written at the end of the file.
+ *
+ * <pre>
+ *   file   := "GXRS" version(1) format(1) sync(16) block* index trailer
+ *   block  := sync(16) count(4) uncompressedLength(4) storedLength(4) deflated(storedLength)
+ *             (count is the number of records, or -1 for the metadata block; the deflated data is a
+ *             sequence of length(4) bytes(length) records)
+ *   index  := sync(16) -2(4) storedLength(4) storedLength(4) (offset(8) count(4))*
+ *   trailer:= indexOffset(8) "GXRX"
+ * </pre>
+ */
+public class BlockRecordSetWriter {
+  static final byte[] MAGIC = {'G', 'X', 'R', 'S'};
+  static final byte[] TRAILER_MAGIC = {'G', 'X', 'R', 'X'};
+  static final int VERSION = 1;
+  static final int SYNC_SIZE = 16;
+  static final int HEADER_SIZE = MAGIC.length + 2 + SYNC_SIZE;
+  static final int BLOCK_HEADER_SIZE = SYNC_SIZE + 12;
+  static final int TRAILER_SIZE = 8 + TRAILER_MAGIC.length;
+  static final int METADATA_BLOCK = -1;
+  static final int INDEX_BLOCK = -2;
+  public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+  private static final JsonMapper JSON_MAPPER = JsonMapperRegistry.getJsonMapper();
+
+  private final CountingOutputStream countingStream;
+  private final DataOutputStream outputStream;
+  private final RecordSetIndex.Format format;
+  private final int blockSize;
+  private final byte[] sync = new byte[SYNC_SIZE];
+  private final Deflater deflater;
+  private final Marshaller marshaller;
+  // Encoded records of the block being built.
+  private final ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+  private final DataOutputStream block = new DataOutputStream(blockBytes);
+  private int blockRecords = 0;
+  // Offset and record count (or METADATA_BLOCK) of each block written so far.
+  private final List<long[]> blocks = new ArrayList<>();
+  private boolean wroteMetadata = false;
+  private boolean closed = false;
+
+  /**
+   * Constructor. Prepares to write GedcomX document records to the given output stream in blocks of about 1 MB
+   *   (before compression).
+   * @param outputStream - OutputStream to write the container to. Should not be compressed, since the blocks are.
+   * @param format - Whether to encode the records as XML or JSON.
+   */
+  public BlockRecordSetWriter(OutputStream outputStream, RecordSetIndex.Format format) {
+    this(outputStream, format, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Constructor. Prepares to write GedcomX document records to the given output stream.
+   * @param outputStream - OutputStream to write the container to. Should not be compressed, since the blocks are.
+   * @param format - Whether to encode the records as XML or JSON.
+   * @param blockSize - Number of (uncompressed) bytes of records to collect before compressing and writing a block.
+   *                    Smaller blocks can be spread across more workers; larger blocks compress better.
+   * @param compressionLevel - Deflate compression level (0-9, or -1 for the default).
+   */
+  public BlockRecordSetWriter(OutputStream outputStream, RecordSetIndex.Format format, int blockSize, int compressionLevel) {
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("Block size must be at least 1.");
+    }
+    this.countingStream = new CountingOutputStream(outputStream);
+    this.outputStream = new DataOutputStream(countingStream);
+    this.format = format;
+    this.blockSize = blockSize;
+    this.deflater = new Deflater(compressionLevel);
+    new SecureRandom().nextBytes(sync);
+    try {
+      if (format == RecordSetIndex.Format.XML) {
+        marshaller = XmlRecordSetIterator.getJaxbContext().createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+      }
+      else {
+        marshaller = null;
+      }
+      this.outputStream.write(MAGIC);
+      this.outputStream.writeByte(VERSION);
+      this.outputStream.writeByte(format.ordinal());
+      this.outputStream.write(sync);
+    }
+    catch (JAXBException e) {
+      throw new RuntimeException(e);
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Add the given record to the current block, writing the block out if it has reached the block size.
+   * @param record - GedcomX document to add as a record.
+   * @throws IOException If there's a problem writing the block.
+   */
+  public synchronized void writeRecord(Gedcomx record) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("Writer is closed.");
+    }
+    byte[] bytes = encode(record, "record");
+    block.writeInt(bytes.length);
+    block.write(bytes);
+    blockRecords++;
+    if (blockBytes.size() >= blockSize) {
+      flushBlock();
+    }
+  }
+
+  /**
+   * Write the 'metadata' document, in a block of its own.
+   * @param metadata - GedcomX document with group-level information.
+   * @throws IOException If there's a problem writing the block.
+   */
+  public synchronized void setMetadata(Gedcomx metadata) throws IOException {
+    if (wroteMetadata) {
+      throw new IllegalStateException("Already wrote metadata to stream. Can't change it now.");
+    }
+    if (closed) {
+      throw new IllegalStateException("Writer is closed.");
+    }
+    byte[] bytes = encode(metadata, "metadata");
+    flushBlock();
+    block.writeInt(bytes.length);
+    block.write(bytes);
+    writeBlock(METADATA_BLOCK);
+    wroteMetadata = true;
+  }
+
+  /**
+   * Write out the current block, if it has any records in it, even if it hasn't reached the block size.
+   * @throws IOException If there's a problem writing the block.
+   */
+  public synchronized void flushBlock() throws IOException {
+    if (blockRecords > 0) {
+      writeBlock(blockRecords);
+      blockRecords = 0;
+    }
+  }
+
+  private void writeBlock(int count) throws IOException {
+    byte[] uncompressed = blockBytes.toByteArray();
+    blockBytes.reset();
+    deflater.reset();
+    deflater.setInput(uncompressed);
+    deflater.finish();
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(uncompressed.length / 4 + 64);
+    byte[] buffer = new byte[64 * 1024];
+    while (!deflater.finished()) {
+      compressed.write(buffer, 0, deflater.deflate(buffer));
+    }
+    blocks.add(new long[]{countingStream.getCount(), count});
+    outputStream.write(sync);
+    outputStream.writeInt(count);
+    outputStream.writeInt(uncompressed.length);
+    outputStream.writeInt(compressed.size());
+    compressed.writeTo(outputStream);
+  }
+
+  private byte[] encode(Gedcomx record, String label) throws IOException {
+    if (format == RecordSetIndex.Format.JSON) {
+      return JSON_MAPPER.writeValueAsBytes(record);
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      marshaller.marshal(new JAXBElement<>(new QName(GedcomxConstants.GEDCOMX_NAMESPACE, label), Gedcomx.class, record), bytes);
+    }
+    catch (JAXBException e) {
+      throw new IOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Write out the last block and the block index, and close the output stream.
+   * @throws IOException If there's an I/O problem.
+   */
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    flushBlock();
+    deflater.end();
+    long indexOffset = countingStream.getCount();
+    outputStream.write(sync);
+    outputStream.writeInt(INDEX_BLOCK);
+    outputStream.writeInt(blocks.size() * 12);
+    outputStream.writeInt(blocks.size() * 12);
+    for (long[] entry : blocks) {
+      outputStream.writeLong(entry[0]);
+      outputStream.writeInt((int) entry[1]);
+    }
+    outputStream.writeLong(indexOffset);
+    outputStream.write(TRAILER_MAGIC);
+    outputStream.close();
+    closed = true;
+  }
+}
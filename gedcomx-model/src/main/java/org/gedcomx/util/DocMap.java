@@ -19,41 +19,70 @@ import org.gedcomx.Gedcomx;
 import org.gedcomx.agent.Agent;
 import org.gedcomx.common.ResourceReference;
 import org.gedcomx.common.URI;
+import org.gedcomx.conclusion.Document;
+import org.gedcomx.conclusion.Event;
 import org.gedcomx.conclusion.Identifier;
 import org.gedcomx.conclusion.Person;
 import org.gedcomx.conclusion.PlaceDescription;
 import org.gedcomx.conclusion.PlaceReference;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.links.HypermediaEnabledData;
+import org.gedcomx.records.Field;
 import org.gedcomx.records.RecordDescriptor;
 import org.gedcomx.source.SourceDescription;
 import org.gedcomx.source.SourceReference;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
- * Utility class for simplifying the lookup of Person, SourceDescription, RecordDescription or Agent objects
- *   in a GedcomX document.
+ * Utility class for simplifying the lookup of Person, Relationship, SourceDescription, RecordDescription, Agent,
+ *   PlaceDescription, Event, Document or Field objects in a GedcomX document.
  * Each object can be looked up by its local 'id' (with or without a preceding "#"), using a String or URI.
- * Persons can also be looked up by any of their identifiers, and SourceDescriptions can be looked up by
- *   any of the identifiers of the entity they are describing.
+ * Persons, relationships, events and places can also be looked up by any of their identifiers, and SourceDescriptions
+ *   can be looked up by any of the identifiers of the entity they are describing.
+ * The maps are built when the DocMap is created, and rebuilt by update(). A DocMap that tracks its document (see
+ *   DocMap(Gedcomx, boolean)) instead keeps its maps up to date as elements are added, removed or renamed through the
+ *   document's methods (see GedcomxChangeListener).
  * User: Randy Wilson
  * Date: 6/9/14
  * Time: 3:53 PM
  */
-public class DocMap {
+public class DocMap implements GedcomxChangeListener {
   private Gedcomx doc;
-  private SourceDescription mainSourceDescription;
-  private Map<String, SourceDescription> sourceDescriptionMap;
-  private Map<String, Person> personMap;
-  private Map<String, RecordDescriptor> recordDescriptorMap;
-  private Map<String, Agent> agentMap;
-  private Map<String, PlaceDescription> placeMap;
+  private final boolean tracking;
+  private final Index<SourceDescription> sourceDescriptionIndex = new Index<>(() -> doc.getSourceDescriptions(), SourceDescription::getIdentifiers);
+  private final Index<Person> personIndex = new Index<>(() -> doc.getPersons(), Person::getIdentifiers);
+  private final Index<Relationship> relationshipIndex = new Index<>(() -> doc.getRelationships(), Relationship::getIdentifiers);
+  private final Index<RecordDescriptor> recordDescriptorIndex = new Index<>(() -> doc.getRecordDescriptors(), null);
+  private final Index<Agent> agentIndex = new Index<>(() -> doc.getAgents(), null);
+  private final Index<PlaceDescription> placeIndex = new Index<>(() -> doc.getPlaces(), PlaceDescription::getIdentifiers);
+  private final Index<Event> eventIndex = new Index<>(() -> doc.getEvents(), Event::getIdentifiers);
+  private final Index<Document> documentIndex = new Index<>(() -> doc.getDocuments(), null);
+  private final Index<Field> fieldIndex = new Index<>(() -> doc.getFields(), null);
 
   /**
    * Constructor. Create an object that allows convenient lookup of things in a GedcomX document.
    * @param doc - GedcomX document to build maps for.
    */
   public DocMap(Gedcomx doc) {
+    this(doc, false);
+  }
+
+  /**
+   * Constructor. Create an object that allows convenient lookup of things in a GedcomX document, optionally keeping
+   *   the maps up to date as the document is changed through its methods (e.g., Gedcomx.addPerson()), rather than
+   *   requiring update() to be called after each change.
+   * @param doc - GedcomX document to build maps for.
+   * @param tracking - Whether to listen for changes to the document (until stopTracking() is called).
+   */
+  public DocMap(Gedcomx doc, boolean tracking) {
+    this.tracking = tracking;
     // Build all the maps.
     update(doc);
   }
@@ -63,13 +92,99 @@ public class DocMap {
    * @param doc - GedcomX document to rebuild maps for.
    */
   public void update(Gedcomx doc) {
+    if (tracking && this.doc != doc) {
+      stopTracking();
+      doc.addChangeListener(this);
+    }
     this.doc = doc;
-    sourceDescriptionMap = getSourceDescriptionMap(doc);
-    personMap = getPersonMap(doc);
-    recordDescriptorMap = getRecordDescriptorMap(doc);
-    agentMap = getAgentMap(doc);
-    placeMap = getPlaceMap(doc);
-    mainSourceDescription = getSourceDescription(doc.getDescriptionRef());
+    rebuild();
+  }
+
+  /**
+   * Stop listening for changes to the document, if this DocMap was tracking it.
+   */
+  public void stopTracking() {
+    if (tracking && this.doc != null) {
+      this.doc.removeChangeListener(this);
+    }
+  }
+
+  private void rebuild() {
+    sourceDescriptionIndex.rebuild();
+    personIndex.rebuild();
+    relationshipIndex.rebuild();
+    recordDescriptorIndex.rebuild();
+    agentIndex.rebuild();
+    placeIndex.rebuild();
+    eventIndex.rebuild();
+    documentIndex.rebuild();
+    fieldIndex.rebuild();
+  }
+
+  @Override
+  public void elementAdded(Gedcomx doc, HypermediaEnabledData element) {
+    Index<HypermediaEnabledData> index = indexFor(element);
+    if (index != null) {
+      index.add(element);
+    }
+  }
+
+  @Override
+  public void elementRemoved(Gedcomx doc, HypermediaEnabledData element) {
+    Index<HypermediaEnabledData> index = indexFor(element);
+    if (index != null) {
+      index.remove(element, element.getId());
+    }
+  }
+
+  @Override
+  public void elementRenamed(Gedcomx doc, HypermediaEnabledData element, String oldId) {
+    Index<HypermediaEnabledData> index = indexFor(element);
+    if (index != null) {
+      index.remove(element, oldId);
+      index.add(element);
+    }
+  }
+
+  @Override
+  public void elementsReplaced(Gedcomx doc) {
+    rebuild();
+  }
+
+  @SuppressWarnings ( "unchecked" )
+  private Index<HypermediaEnabledData> indexFor(HypermediaEnabledData element) {
+    Index<?> index;
+    if (element instanceof Person) {
+      index = personIndex;
+    }
+    else if (element instanceof Relationship) {
+      index = relationshipIndex;
+    }
+    else if (element instanceof SourceDescription) {
+      index = sourceDescriptionIndex;
+    }
+    else if (element instanceof PlaceDescription) {
+      index = placeIndex;
+    }
+    else if (element instanceof Event) {
+      index = eventIndex;
+    }
+    else if (element instanceof Agent) {
+      index = agentIndex;
+    }
+    else if (element instanceof Document) {
+      index = documentIndex;
+    }
+    else if (element instanceof Field) {
+      index = fieldIndex;
+    }
+    else if (element instanceof RecordDescriptor) {
+      index = recordDescriptorIndex;
+    }
+    else {
+      index = null;
+    }
+    return (Index<HypermediaEnabledData>) index;
   }
 
   /**
@@ -85,7 +200,7 @@ public class DocMap {
    * @return SourceDescription referenced by the GedcomX document's descriptionRef, or null if none.
    */
   public SourceDescription getMainSourceDescription() {
-    return mainSourceDescription;
+    return getSourceDescription(doc.getDescriptionRef());
   }
 
   /**
@@ -94,6 +209,7 @@ public class DocMap {
    * @return Person referenced by the main SourceDescription.
    */
   public Person getMainPerson() {
+    SourceDescription mainSourceDescription = getMainSourceDescription();
     return mainSourceDescription == null ? null : getPerson(mainSourceDescription.getAbout());
   }
 
@@ -105,7 +221,7 @@ public class DocMap {
    * @return Person with the given id or identifier.
    */
   public Person getPerson(String idOrUrl) {
-    return personMap.get(idOrUrl);
+    return personIndex.get(idOrUrl);
   }
 
   /**
@@ -137,7 +253,7 @@ public class DocMap {
    * @return Person with the given id or identifier.
    */
   public SourceDescription getSourceDescription(String idOrUrl) {
-    return sourceDescriptionMap.get(idOrUrl);
+    return sourceDescriptionIndex.get(idOrUrl);
   }
 
   /**
@@ -171,10 +287,8 @@ public class DocMap {
     if (recordDescriptorIdOrUrl == null) {
       return null;
     }
-    if (recordDescriptorIdOrUrl.contains("#")) {
-      recordDescriptorIdOrUrl = recordDescriptorIdOrUrl.substring(recordDescriptorIdOrUrl.indexOf("#") + 1);
-    }
-    return recordDescriptorMap.get(recordDescriptorIdOrUrl);
+    int hash = recordDescriptorIdOrUrl.indexOf('#');
+    return recordDescriptorIndex.getById(hash < 0 ? recordDescriptorIdOrUrl : recordDescriptorIdOrUrl.substring(hash + 1));
   }
 
   /**
@@ -192,7 +306,7 @@ public class DocMap {
    * @return Agent with the given id.
    */
   public Agent getAgent(String agentId) {
-    return agentMap.get(agentId);
+    return agentIndex.get(agentId);
   }
 
   /**
@@ -210,7 +324,7 @@ public class DocMap {
    * @return PlaceDescription object with the given local id or URI.
    */
   public PlaceDescription getPlaceDescription(String idOrUri) {
-    return idOrUri == null ? null : placeMap.get(idOrUri);
+    return placeIndex.get(idOrUri);
   }
 
   /**
@@ -231,6 +345,80 @@ public class DocMap {
     return placeReference == null ? null : getPlaceDescription(placeReference.getDescriptionRef());
   }
 
+  /**
+   * Get the relationship from the GedcomX document that has the given id (with or without "#") or an identifier
+   *   that matches the given idOrUrl.
+   * @param idOrUrl - local relationship id (with or without "#") or any relationship identifier
+   * @return Relationship with the given id or identifier.
+   */
+  public Relationship getRelationship(String idOrUrl) {
+    return relationshipIndex.get(idOrUrl);
+  }
+
+  /**
+   * Get the relationship from the GedcomX document that has the given id (with or without "#") or identifier.
+   * @param uri - local relationship id (with or without "#") or any relationship identifier
+   * @return Relationship with the given id or identifier.
+   */
+  public Relationship getRelationship(URI uri) {
+    return uri == null ? null : getRelationship(uri.toString());
+  }
+
+  /**
+   * Get the event from the GedcomX document that has the given id (with or without "#") or an identifier
+   *   that matches the given idOrUrl.
+   * @param idOrUrl - local event id (with or without "#") or any event identifier
+   * @return Event with the given id or identifier.
+   */
+  public Event getEvent(String idOrUrl) {
+    return eventIndex.get(idOrUrl);
+  }
+
+  /**
+   * Get the event from the GedcomX document that has the given id (with or without "#") or identifier.
+   * @param uri - local event id (with or without "#") or any event identifier
+   * @return Event with the given id or identifier.
+   */
+  public Event getEvent(URI uri) {
+    return uri == null ? null : getEvent(uri.toString());
+  }
+
+  /**
+   * Find the Document with the given local id.
+   * @param documentId - id of a document (with or without an initial "#").
+   * @return Document with the given id.
+   */
+  public Document getDocumentById(String documentId) {
+    return documentIndex.get(documentId);
+  }
+
+  /**
+   * Find the Document with the given local id.
+   * @param documentId - URI containing the id of a document (with or without an initial "#").
+   * @return Document with the given id.
+   */
+  public Document getDocumentById(URI documentId) {
+    return documentId == null ? null : getDocumentById(documentId.toString());
+  }
+
+  /**
+   * Find the (document-level) Field with the given local id.
+   * @param fieldId - id of a field (with or without an initial "#").
+   * @return Field with the given id.
+   */
+  public Field getField(String fieldId) {
+    return fieldIndex.get(fieldId);
+  }
+
+  /**
+   * Find the (document-level) Field with the given local id.
+   * @param fieldId - URI containing the id of a field (with or without an initial "#").
+   * @return Field with the given id.
+   */
+  public Field getField(URI fieldId) {
+    return fieldId == null ? null : getField(fieldId.toString());
+  }
+
   /**
    * Create a map of id (and "#" + id) and all identifier URI strings to SourceDescription with that ID,
    *   to make it easier to look up SourceDescriptions that are referenced elsewhere.
@@ -338,4 +526,125 @@ public class DocMap {
     }
     return map;
   }
+
+  /**
+   * Map of the elements of one kind by id (stored without the "#") and, for elements that have them, by identifier.
+   *   The maps are only allocated when there is something to put in them. As with a rebuild, when several elements
+   *   have the same key, the last one in the document's list wins. A change that can't be applied to the maps in that
+   *   way (e.g., removing one of several elements with the same id) makes the index stale, and it is rebuilt from the
+   *   document's list on the next lookup.
+   */
+  private static final class Index<E extends HypermediaEnabledData> {
+    private final Supplier<List<? extends E>> elements;
+    private final Function<E, List<Identifier>> identifiers;
+    private Map<String, E> byId;
+    private Map<String, E> byIdentifier;
+    // Keys shared by more than one element, which can't simply be removed from the maps.
+    private Set<String> sharedIds;
+    private Set<String> sharedIdentifiers;
+    private boolean stale;
+
+    private Index(Supplier<List<? extends E>> elements, Function<E, List<Identifier>> identifiers) {
+      this.elements = elements;
+      this.identifiers = identifiers;
+    }
+
+    private void rebuild() {
+      List<? extends E> elements = this.elements.get();
+      byId = elements == null || elements.isEmpty() ? null : new HashMap<>(elements.size() * 4 / 3 + 1);
+      byIdentifier = null;
+      sharedIds = null;
+      sharedIdentifiers = null;
+      stale = false;
+      if (elements != null) {
+        for (E element : elements) {
+          put(element, true);
+        }
+      }
+    }
+
+    private void add(E element) {
+      if (!stale) {
+        put(element, false);
+      }
+    }
+
+    private void put(E element, boolean inOrder) {
+      if (element.getId() != null) {
+        if (byId == null) {
+          byId = new HashMap<>();
+        }
+        E previous = byId.put(element.getId(), element);
+        if (previous != null && previous != element) {
+          sharedIds = shared(sharedIds, element.getId(), element, inOrder);
+        }
+      }
+      List<Identifier> ids = identifiers == null ? null : identifiers.apply(element);
+      if (ids != null) {
+        for (Identifier identifier : ids) {
+          if (identifier.getValue() != null) {
+            if (byIdentifier == null) {
+              byIdentifier = new HashMap<>();
+            }
+            String key = identifier.getValue().toString();
+            E previous = byIdentifier.put(key, element);
+            if (previous != null && previous != element) {
+              sharedIdentifiers = shared(sharedIdentifiers, key, element, inOrder);
+            }
+          }
+        }
+      }
+    }
+
+    private Set<String> shared(Set<String> keys, String key, E element, boolean inOrder) {
+      if (!inOrder) {
+        // The element replaced another one with the same key, which is only right if it is the last in the list.
+        List<? extends E> elements = this.elements.get();
+        if (elements == null || elements.isEmpty() || elements.get(elements.size() - 1) != element) {
+          stale = true;
+        }
+      }
+      if (keys == null) {
+        keys = new HashSet<>();
+      }
+      keys.add(key);
+      return keys;
+    }
+
+    private void remove(E element, String id) {
+      if (stale) {
+        return;
+      }
+      if (byId != null && id != null && byId.remove(id, element) && sharedIds != null && sharedIds.contains(id)) {
+        // another element may have the same id.
+        stale = true;
+      }
+      List<Identifier> ids = byIdentifier == null ? null : identifiers.apply(element);
+      if (ids != null) {
+        for (Identifier identifier : ids) {
+          if (identifier.getValue() != null) {
+            String key = identifier.getValue().toString();
+            if (byIdentifier.remove(key, element) && sharedIdentifiers != null && sharedIdentifiers.contains(key)) {
+              stale = true;
+            }
+          }
+        }
+      }
+    }
+
+    private E getById(String id) {
+      if (stale) {
+        rebuild();
+      }
+      return byId == null ? null : byId.get(id);
+    }
+
+    private E get(String idOrUrl) {
+      if (idOrUrl == null) {
+        return null;
+      }
+      E element = getById(idOrUrl.startsWith("#") ? idOrUrl.substring(1) : idOrUrl);
+      return element != null || byIdentifier == null ? element : byIdentifier.get(idOrUrl);
+    }
+  }
 }
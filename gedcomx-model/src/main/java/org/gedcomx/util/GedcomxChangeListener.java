@@ -0,0 +1,58 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.util;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.links.HypermediaEnabledData;
+
+/**
+ * Listener for changes made to the top-level elements of a GedcomX document (persons, relationships, source
+ *   descriptions, agents, events, places, documents, collections, fields and record descriptors) through the
+ *   document's own methods, e.g. Gedcomx.addPerson(), Gedcomx.removeElement() or Gedcomx.renameElement().
+ * Changes made directly to the lists returned by the document's getters are not reported.
+ * Register a listener with Gedcomx.addChangeListener().
+ */
+public interface GedcomxChangeListener {
+
+  /**
+   * Called after an element has been added to the document.
+   * @param doc - Document that was changed.
+   * @param element - Element that was added.
+   */
+  void elementAdded(Gedcomx doc, HypermediaEnabledData element);
+
+  /**
+   * Called after an element has been removed from the document.
+   * @param doc - Document that was changed.
+   * @param element - Element that was removed.
+   */
+  void elementRemoved(Gedcomx doc, HypermediaEnabledData element);
+
+  /**
+   * Called after the id of an element in the document has been changed.
+   * @param doc - Document that was changed.
+   * @param element - Element whose id was changed.
+   * @param oldId - The element's previous id.
+   */
+  void elementRenamed(Gedcomx doc, HypermediaEnabledData element, String oldId);
+
+  /**
+   * Called after one of the document's lists of elements has been replaced (e.g., by Gedcomx.setPersons()), so
+   *   that any number of elements may have been added or removed.
+   * @param doc - Document that was changed.
+   */
+  void elementsReplaced(Gedcomx doc);
+}
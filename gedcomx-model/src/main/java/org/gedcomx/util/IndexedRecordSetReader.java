@@ -0,0 +1,161 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.util;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.rt.GedcomxConstants;
+import org.gedcomx.rt.json.JsonMapperRegistry;
+import org.gedcomx.rt.xml.JaxbContextRegistry;
+import tools.jackson.databind.json.JsonMapper;
+
+import jakarta.xml.bind.JAXBException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Class for reading individual records from an uncompressed RecordSet file (XML or JSON), using the sidecar index
+ *   written alongside it by a RecordSetWriter or JsonRecordSetWriter (see RecordSetIndex). Each lookup does a
+ *   positional read of just the bytes of the requested record and decodes only that record, so a single record can
+ *   be fetched from a large RecordSet file without scanning it.
+ * Lookups may be done concurrently from multiple threads.
+ */
+public class IndexedRecordSetReader implements Closeable {
+  private static final JsonMapper JSON_MAPPER = JsonMapperRegistry.getJsonMapper();
+  private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newFactory();
+  private static final byte[] XML_PREFIX = ("<records xmlns=\"" + GedcomxConstants.GEDCOMX_NAMESPACE + "\">").getBytes(StandardCharsets.UTF_8);
+  private static final byte[] XML_SUFFIX = "</records>".getBytes(StandardCharsets.UTF_8);
+
+  private final FileChannel channel;
+  private final RecordSetIndex index;
+
+  /**
+   * Constructor.
+   * @param filename - Path of the RecordSet file.
+   * @param indexFilename - Path of the index file that was written along with the RecordSet file.
+   * @throws IOException if either file can't be opened.
+   */
+  public IndexedRecordSetReader(String filename, String indexFilename) throws IOException {
+    this(Paths.get(filename), RecordSetIndex.read(indexFilename));
+  }
+
+  /**
+   * Constructor.
+   * @param path - Path of the RecordSet file.
+   * @param index - Index that was written along with the RecordSet file.
+   * @throws IOException if the RecordSet file can't be opened.
+   */
+  public IndexedRecordSetReader(Path path, RecordSetIndex index) throws IOException {
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    this.index = index;
+  }
+
+  /**
+   * @return the index used by this reader.
+   */
+  public RecordSetIndex getIndex() {
+    return index;
+  }
+
+  /**
+   * Get the record with the given id.
+   * @param recordId - id of the record.
+   * @return the record with the given id, or null if there is no such record.
+   * @throws IOException if the record can't be read.
+   */
+  public Gedcomx getRecord(String recordId) throws IOException {
+    return read(index.getRecordById(recordId));
+  }
+
+  /**
+   * Get the record whose main person has the given identifier.
+   * @param personIdentifier - identifier of the record's main person.
+   * @return the record whose main person has the given identifier, or null if there is no such record.
+   * @throws IOException if the record can't be read.
+   */
+  public Gedcomx getRecordByPersonIdentifier(String personIdentifier) throws IOException {
+    return read(index.getRecordByPersonIdentifier(personIdentifier));
+  }
+
+  /**
+   * Get the metadata document of the RecordSet.
+   * @return the metadata, or null if the RecordSet has none.
+   * @throws IOException if the metadata can't be read.
+   */
+  public Gedcomx getMetadata() throws IOException {
+    return read(index.getMetadata());
+  }
+
+  private Gedcomx read(RecordSetIndex.Entry entry) throws IOException {
+    if (entry == null) {
+      return null;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(entry.getLength());
+    long position = entry.getOffset();
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException("RecordSet file is shorter than its index");
+      }
+      position += read;
+    }
+    byte[] bytes = buffer.array();
+    return index.getFormat() == RecordSetIndex.Format.JSON ? JSON_MAPPER.readValue(bytes, Gedcomx.class) : readXml(bytes);
+  }
+
+  private static Gedcomx readXml(byte[] bytes) throws IOException {
+    // The record is a fragment of the RecordSet, so wrap it in a 'records' element to give it the default namespace.
+    InputStream inputStream = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+      new ByteArrayInputStream(XML_PREFIX), new ByteArrayInputStream(bytes), new ByteArrayInputStream(XML_SUFFIX))));
+    try {
+      XMLStreamReader xmlStreamReader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream, "UTF-8");
+      try {
+        xmlStreamReader.nextTag(); // records
+        xmlStreamReader.nextTag(); // record or metadata
+        return JaxbContextRegistry.withUnmarshaller(XmlRecordSetIterator.getJaxbContext(), unmarshaller -> unmarshaller.unmarshal(xmlStreamReader, Gedcomx.class)).getValue();
+      }
+      finally {
+        xmlStreamReader.close();
+      }
+    }
+    catch (XMLStreamException | JAXBException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Close the RecordSet file.
+   * @throws IOException from the file channel.
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -16,11 +16,11 @@
 package org.gedcomx.util;
 
 import org.gedcomx.Gedcomx;
-import org.gedcomx.rt.json.GedcomJacksonModule;
+import org.gedcomx.rt.json.JsonMapperRegistry;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
 import tools.jackson.databind.json.JsonMapper;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -31,16 +31,22 @@ import java.util.zip.GZIPInputStream;
  *   from a stream (e.g., a gzipped byte array) without having to inflate all the records at once.
  *   This reads JSON-formatted Records.
  *
+ * A single streaming JSON parser is driven over the input: the iterator positions itself on the "records" array
+ *   and binds each element directly from the token stream, so no record is ever buffered or re-parsed. The "metadata"
+ *   and "id" of the RecordSet are captured wherever they appear in the top-level object.
+ *
  * User: Brent Hale
  * Date: 6/3/2015
  */
 public class JsonRecordSetIterator implements RecordSetIterator {
-  private InputStream inputStream;
+  private static final JsonMapper JSON_MAPPER = JsonMapperRegistry.getJsonMapper();
+
+  private JsonParser parser;
   private Gedcomx nextRecord;
   private Gedcomx metadata;
-  private JsonMapper jsonMapper;
   private String id;
-  private boolean noMoreRecords;
+  // Flag for whether the parser is still positioned within the "records" array.
+  private boolean inRecords;
 
   /**
    * Constructor for a record iterator that takes a filename of a RecordSet file and iterates through its record elements.
@@ -57,126 +63,63 @@ public class JsonRecordSetIterator implements RecordSetIterator {
 
   /**
    * Constructor for a record iterator that takes an InputStream of a RecordSet file and
-   * iterates through its record elements.  This creates a BufferedInputStream on the
-   * InputStream.
+   * iterates through its record elements.  The parser does its own buffering, so there is
+   * no need to wrap the InputStream in a BufferedInputStream.
    *
    * @param inputStream - InputStream to read a GedcomX RecordSet file from.
    * @throws IOException If there's an I/O problem.
    */
   public JsonRecordSetIterator(InputStream inputStream) throws IOException {
-    this.inputStream = new BufferedInputStream(inputStream);
-
-    jsonMapper = GedcomJacksonModule.createJsonMapper();
-
-    // Read the beginning object brace { plus label: {"metadata":
-    int character = inputStream.read();
-    assert character == '{';
-
-    // Read until you get to the "records": [ section of the stream
-    noMoreRecords = false;
-    readUntil(inputStream, "records");
-
-    // Read the opening array bracket [
-    readUntilChar(inputStream, '[');
-
-    prepareNext();
+    this(JSON_MAPPER, inputStream);
   }
 
-  private void readUntil(InputStream inputStream, String untilLabel) throws IOException {
-    // Read until we see the first label (meaning opening quote
-    String name;
-
-    while (! (name = getName(inputStream)).equals(untilLabel)) {
-      if (name.equals(untilLabel)) {
-        break;
-      }
-
-      // Otherwise look for some other objects.
-      if (name.equals("metadata")) {
-        readMetadata(inputStream);
-      }
+  /**
+   * Constructor for a record iterator that uses the given mapper (e.g., one that knows about extension classes)
+   * to bind the records of the RecordSet read from the given InputStream.
+   *
+   * @param jsonMapper - JsonMapper to use to bind each record.
+   * @param inputStream - InputStream to read a GedcomX RecordSet file from.
+   * @throws IOException If there's an I/O problem.
+   */
+  public JsonRecordSetIterator(JsonMapper jsonMapper, InputStream inputStream) throws IOException {
+    parser = jsonMapper.createParser(inputStream);
 
-      else if (name.equals("id")) {
-        id = getName(inputStream, false);
-      }
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      close();
+      throw new IOException("Expected a JSON object at the start of the RecordSet.");
     }
-  }
 
-  private void readMetadata(InputStream inputStream) throws IOException {
-    // I have to do it this way since if I pass the inputStream to jsonMapper.readValue() it leaves
-    // the inputStream past the end of the actual metadata object.  Then the next getName() is lost.
-    byte[] object = getObjectAsBytes(inputStream);
-    metadata = jsonMapper.readValue(object, Gedcomx.class);
+    // Read until we get to the "records": [ section of the stream, picking up the id and metadata on the way.
+    inRecords = readUntilRecords();
+    prepareNext();
   }
 
   /**
-   * Read in the current Json object from the stream.  It will read the opening brace til the end brace
-   * and return that in a string.  If the first character is a comma then it will ignore it.
+   * Read the top-level properties of the RecordSet object until the "records" array is found, capturing the "id"
+   *   and "metadata" along the way and skipping anything else.
+   *
+   * @return true if the parser is now positioned at the start of the "records" array; false if the end of the
+   *   RecordSet object was reached first.
    */
-  private byte[] getObjectAsBytes(InputStream inputStream) throws IOException {
-    int character;
-    ByteArrayOutputStream bos = new ByteArrayOutputStream();
-    int openingBraces = 0;
-    int closingBraces = 0;
-    boolean firstTime = true;
-
-    while ((character = inputStream.read()) >= 0) {
-      if (character == ',') {
-        if (firstTime) {
-          firstTime = false;
-          continue;   // Ignore comma if it is the first read character.
-        }
+  private boolean readUntilRecords() {
+    JsonToken token;
+    while ((token = parser.nextToken()) == JsonToken.PROPERTY_NAME) {
+      String name = parser.currentName();
+      token = parser.nextToken();
+      if (JsonRecordSetWriter.RECORDS_STR.equals(name) && token == JsonToken.START_ARRAY) {
+        return true;
       }
-      firstTime = false;
-
-      bos.write(character);
-
-      if (character == '{') {
-        openingBraces++;
+      else if (JsonRecordSetWriter.METADATA_STR.equals(name) && token == JsonToken.START_OBJECT) {
+        metadata = parser.readValueAs(Gedcomx.class);
       }
-      else if (character == '}') {
-        closingBraces++;
+      else if (JsonRecordSetWriter.ID_STR.equals(name) && token == JsonToken.VALUE_STRING) {
+        id = parser.getString();
       }
-
-      if ((openingBraces > 0) && (openingBraces == closingBraces)) {
-        break;
-      }
-    }
-
-    return bos.toByteArray();
-  }
-
-  /**
-   * Read from the stream until it finds an opening quote.  Then read the characters until the next quote mark
-   * as the name.
-   * This will also consume the trailing colon character (:).
-   */
-  private String getName(InputStream inputStream) throws IOException {
-    return getName(inputStream, true);
-  }
-
-  private String getName(InputStream inputStream, boolean consumeColon) throws IOException {
-    StringBuilder name = new StringBuilder();
-    readUntilChar(inputStream, '"');
-    int character;
-    while ((character = inputStream.read()) != '"') {
-      name.append((char)character);
-    }
-    if (consumeColon) {
-      readUntilChar(inputStream, ':');
-    }
-
-    return name.toString();
-  }
-
-  private void readUntilChar(InputStream inputStream, char c) throws IOException {
-    int character;
-    while ((character = inputStream.read()) != c) {
-      if (character < 0) {
-        close();
-        break;    // End of file.
+      else {
+        parser.skipChildren();
       }
     }
+    return false;
   }
 
   /**
@@ -190,28 +133,23 @@ public class JsonRecordSetIterator implements RecordSetIterator {
 
   /**
    * Prepare the next record to be retrieved.  Sets 'nextRecord' to the parsed record, if any, or null
-   *   if there are no more.  Consumes bytes from the xmlStreamReader.
-   * This does not close the inputStream once there are no more records to read.  The metadata
+   *   if there are no more.  Consumes tokens from the parser.
+   * This does not close the parser once there are no more records to read.  The metadata
    * may be after the Records.
    */
-  synchronized private void prepareNext() throws IOException {
-    // I have to do it this way since if I pass the inputStream to jsonMapper.readValue() it leaves
-    // the inputStream past the end of the actual record object.  Then the next get is lost.
-    if (noMoreRecords) {
-      nextRecord = null;
-      return;
-    }
-
-    byte[] object = getObjectAsBytes(inputStream);
-    nextRecord = jsonMapper.readValue(object, Gedcomx.class);
-
-    // Need to read past the next comma separating records.
-    // We also might see the end of the array bracket ].
-    int character;
-    while ((character = inputStream.read()) != ',') {
-      if (character == ']') {
-        noMoreRecords = true;
-        break;
+  synchronized private void prepareNext() {
+    nextRecord = null;
+    while (inRecords && nextRecord == null) {
+      JsonToken token = parser.nextToken();
+      if (token == JsonToken.START_OBJECT) {
+        nextRecord = parser.readValueAs(Gedcomx.class);
+      }
+      else if (token == JsonToken.END_ARRAY || token == null) {
+        inRecords = false;
+      }
+      else {
+        // Not a record (e.g., a null); skip over it.
+        parser.skipChildren();
       }
     }
   }
@@ -231,17 +169,27 @@ public class JsonRecordSetIterator implements RecordSetIterator {
     }
   }
 
+  /**
+   * Read the rest of the top-level RecordSet object (after the records) to find the metadata and id, if they
+   *   haven't been found yet. Does nothing while there are still records left to read.
+   */
+  private void readRemaining() {
+    if (parser != null && !inRecords && !parser.isClosed()) {
+      readUntilRecords();
+    }
+  }
+
   /**
    * This should be read last as you cannot be sure of when the metadata will appear in the data stream.
+   * If the metadata appears after the records, it will not be available until all of the records have been read.
    *
    * @return The Metadata document.
    */
   synchronized public Gedcomx getMetadata() {
     if (metadata == null) {
       try {
-        readUntil(inputStream, JsonRecordSetWriter.METADATA_STR);
-        readMetadata(inputStream);
-      } catch (IOException e) {
+        readRemaining();
+      } catch (Exception e) {
         // Do nothing.
       }
     }
@@ -254,25 +202,36 @@ public class JsonRecordSetIterator implements RecordSetIterator {
   }
 
   /**
-   * Close the input stream and accompanying reader if they are still open.
+   * Close the parser and the underlying input stream if they are still open.
    * If you want to get the metadata and id of the RecordSet, then get them before you close().
    */
   public void close() {
-    if (inputStream != null) {
+    if (parser != null) {
       try {
-        inputStream.close();
-      } catch (IOException e) {
-        inputStream = null;
+        parser.close();
+      } catch (Exception e) {
+        // Do nothing.
       } finally {
-        inputStream = null;
+        parser = null;
       }
     }
   }
 
-  public String getId() throws IOException {
+  /**
+   * Get the id of the RecordSet. If the id appears after the records, it will not be available until all of
+   *   the records have been read.
+   *
+   * @return The id of the RecordSet, or null if none was found.
+   * @throws IOException If there's an I/O problem.
+   */
+  synchronized public String getId() throws IOException {
     if (id == null) {
-      readUntil(inputStream, JsonRecordSetWriter.ID_STR);
-      id = getName(inputStream, false);
+      try {
+        readRemaining();
+      }
+      catch (Exception e) {
+        throw new IOException(e);
+      }
     }
     return id;
   }
@@ -18,16 +18,27 @@ package org.gedcomx.util;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import org.gedcomx.Gedcomx;
-import org.gedcomx.rt.json.GedcomJacksonModule;
+import org.gedcomx.rt.json.JsonMapperRegistry;
 import tools.jackson.core.StreamWriteFeature;
 import tools.jackson.databind.json.JsonMapper;
 
 public class JsonRecordSetWriter {
   // Stream to write data to
-  private OutputStream outputStream;
-  private JsonMapper jsonMapper;
+  private CountingOutputStream outputStream;
+  // When the outputStream is gzipped calling writeValue() below will close the OutputStream.
+  // These configurations will disable that feature.  See javadoc for writeValue().
+  private static final JsonMapper PRETTY_JSON_MAPPER = createJsonMapper(true);
+  private static final JsonMapper COMPACT_JSON_MAPPER = createJsonMapper(false);
+  private final JsonMapper jsonMapper;
+  private final boolean pretty;
   private long numOfRecords = 0;
+  // Position of the metadata, for the index
+  private long metadataOffset;
+  private long metadataLength;
+  // Writer for the sidecar index, if any
+  private RecordSetIndex.Writer indexWriter;
 
   public static final String ID_STR = "id";
   public static final String METADATA_STR = "metadata";
@@ -41,40 +52,80 @@ public class JsonRecordSetWriter {
    * @param metadata - The metadata associated with this RecordSet.  It will be written to the stream first.
    */
   public JsonRecordSetWriter(OutputStream outputStream, Gedcomx metadata) {
-    try {
-      this.outputStream = outputStream;
+    this(outputStream, metadata, true);
+  }
 
-      jsonMapper = GedcomJacksonModule.createJsonMapperBuilder()
-        // When the outputStream is gzipped calling writeValue() below will close the OutputStream.
-        // These configurations will disable that feature.  See javadoc for writeValue().
-        .disable(StreamWriteFeature.AUTO_CLOSE_TARGET, StreamWriteFeature.AUTO_CLOSE_CONTENT)
-        .build();
+  /**
+   * Constructor. Prepares to write GedcomX document records to the given output stream (which may well be a
+   *   GZIPOutputStream), so that only one such document needs to be fully instantiated in memory at once.
+   *
+   * @param outputStream - OutputStream to write the Gedcomx document to.
+   * @param metadata - The metadata associated with this RecordSet.  It will be written to the stream first.
+   * @param pretty - Whether to pretty-print the JSON. Compact JSON (without indentation or line breaks) is
+   *   considerably smaller and faster to write.
+   */
+  public JsonRecordSetWriter(OutputStream outputStream, Gedcomx metadata, boolean pretty) {
+    this.pretty = pretty;
+    this.jsonMapper = pretty ? PRETTY_JSON_MAPPER : COMPACT_JSON_MAPPER;
+    try {
+      this.outputStream = new CountingOutputStream(outputStream);
+      outputStream = this.outputStream;
 
-      outputStream.write("{\n".getBytes());      // Begin JSON Object for the RecordSet
+      outputStream.write(pretty ? "{\n".getBytes() : "{".getBytes());      // Begin JSON Object for the RecordSet
 
       writeLabel(outputStream, METADATA_STR);
+      metadataOffset = this.outputStream.getCount();
       jsonMapper.writeValue(outputStream, metadata);  // This insures that the metadata is at the top of the file.
-      outputStream.write(",\n".getBytes());
+      metadataLength = this.outputStream.getCount() - metadataOffset;
+      outputStream.write(pretty ? ",\n".getBytes() : ",".getBytes());
 
       writeLabel(outputStream, RECORDS_STR);
-      outputStream.write(" [\n".getBytes());      // Begin the array of Records
+      outputStream.write(pretty ? " [\n".getBytes() : "[".getBytes());      // Begin the array of Records
 
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
+  private static JsonMapper createJsonMapper(boolean pretty) {
+    return JsonMapperRegistry.getJsonMapper(pretty, JsonInclude.Include.NON_NULL).rebuild()
+      .disable(StreamWriteFeature.AUTO_CLOSE_TARGET, StreamWriteFeature.AUTO_CLOSE_CONTENT)
+      .build();
+  }
+
   private void writeLabel(OutputStream outputStream, String label) throws IOException {
     outputStream.write('"');
     outputStream.write(label.getBytes());
     outputStream.write("\":".getBytes());
   }
 
+  /**
+   * Write a sidecar index (see RecordSetIndex) to the given stream as the records are written, so that individual
+   *   records can later be read from the RecordSet file using an IndexedRecordSetReader. The byte offsets in the index
+   *   refer to the bytes written to this writer's output stream, so the index is only useful if that stream is not
+   *   compressed. Must be called before any records have been written. The index stream is closed when this writer
+   *   is closed.
+   *
+   * @param indexOutputStream - OutputStream to write the index to.
+   * @throws IOException from stream
+   */
+  public void setIndexOutputStream(OutputStream indexOutputStream) throws IOException {
+    if (numOfRecords > 0) {
+      throw new IllegalStateException("Already wrote records to stream. Can't start an index now.");
+    }
+    indexWriter = new RecordSetIndex.Writer(indexOutputStream, RecordSetIndex.Format.JSON);
+    indexWriter.writeMetadata(metadataOffset, metadataLength);
+  }
+
   public void writeRecord(Gedcomx record) throws IOException {
       if (numOfRecords > 0) {
         outputStream.write(',');
       }
+      long offset = outputStream.getCount();
       jsonMapper.writeValue(outputStream, record);
+      if (indexWriter != null) {
+        indexWriter.writeRecord(record, offset, outputStream.getCount() - offset);
+      }
 
 //    if (! label.equals(METADATA_STR)) {
       numOfRecords++;
@@ -88,9 +139,12 @@ public class JsonRecordSetWriter {
    */
   public void close() throws IOException {
     if (outputStream != null) {
-      outputStream.write("]\n}".getBytes());    // End the JSON records array and the RecordSet object
+      outputStream.write(pretty ? "]\n}".getBytes() : "]}".getBytes());    // End the JSON records array and the RecordSet object
       outputStream.close();
     }
+    if (indexWriter != null) {
+      indexWriter.close();
+    }
   }
 
   public long getNumOfRecords() {
@@ -0,0 +1,106 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Index of the elements of a list by one or more keys per element, for constant-time lookups in big documents.
+ *   Where several elements have the same key, the first one in the list wins, as it would with a linear search.
+ * The index is a snapshot of the list: it is only current while the list is the same list with the same size (see
+ *   isCurrent()), and changes made to the elements after they were indexed are not seen, so callers should check
+ *   that what they find still matches what they were looking for.
+ *
+ * @param <E> The type of element.
+ */
+public final class LookupIndex<E> {
+  private final List<? extends E> list;
+  private final BiConsumer<? super E, Consumer<Object>> keys;
+  private final Map<Object, E> elements;
+  private int size;
+
+  /**
+   * Constructor. Index the elements of the given list.
+   * @param list - List to index (may be null).
+   * @param keys - Function that gives each of the keys of an element to the given consumer. Null keys are ignored.
+   */
+  public LookupIndex(List<? extends E> list, BiConsumer<? super E, Consumer<Object>> keys) {
+    this.list = list;
+    this.keys = keys;
+    this.elements = new HashMap<>(list == null ? 0 : list.size() * 4 / 3 + 1);
+    if (list != null) {
+      for (E element : list) {
+        index(element);
+      }
+      this.size = list.size();
+    }
+  }
+
+  private void index(E element) {
+    keys.accept(element, key -> {
+      if (key != null) {
+        elements.putIfAbsent(key, element);
+      }
+    });
+  }
+
+  /**
+   * Whether this index is (still) an index of the given list.
+   * @param list - List that is to be searched.
+   * @return Whether the index was built from the given list, and the list hasn't changed size since then.
+   */
+  public boolean isCurrent(List<?> list) {
+    return this.list == list && (list == null || list.size() == this.size);
+  }
+
+  /**
+   * Add an element that was just appended to the list to the index, so that the index stays current. Does nothing
+   *   if the index wasn't current before the element was appended.
+   * @param list - List the element was appended to.
+   * @param element - Element that was appended.
+   */
+  public void appended(List<? extends E> list, E element) {
+    if (this.list == list && list != null && list.size() == this.size + 1 && list.get(this.size) == element) {
+      index(element);
+      this.size++;
+    }
+  }
+
+  /**
+   * Get the first element in the list with the given key.
+   * @param key - Key to look up.
+   * @return First element with the given key when the index was built, or null if none.
+   */
+  public E get(Object key) {
+    return key == null ? null : elements.get(key);
+  }
+
+  /**
+   * Get the index for the given list, building a new one if the given index is null or is not current.
+   * @param index - Existing index (may be null).
+   * @param list - List to be searched.
+   * @param keys - Function that gives each of the keys of an element to the given consumer.
+   * @param <E> The type of element.
+   * @return A current index for the given list.
+   */
+  public static <E> LookupIndex<E> current(LookupIndex<E> index, List<? extends E> list, BiConsumer<? super E, Consumer<Object>> keys) {
+    return index != null && index.isCurrent(list) ? index : new LookupIndex<>(list, keys);
+  }
+}
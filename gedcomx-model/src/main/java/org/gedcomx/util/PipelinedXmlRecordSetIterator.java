@@ -0,0 +1,408 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.util;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.rt.GedcomxConstants;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Class for iterating through the 'record' elements (GedcomX documents) in an XML RecordSet, decoding the records on
+ *   a pool of worker threads.
+ *
+ * A single reader thread splits the StAX event stream into one fragment per 'record' element, and the configured
+ *   number of worker threads (each with its own Unmarshaller from the shared JAXBContext) unmarshal the fragments.
+ *   Records are delivered in document order by default, or in the order in which they finish decoding if
+ *   'ordered' is false. At most 'readAhead' records are split or decoded ahead of the consumer, which caps the
+ *   memory used by the pipeline.
+ *
+ * The 'metadata' element is decoded by the reader thread, and is available from getMetadata() as soon as the
+ *   reader has passed it. If it comes after the records, it is available once hasNext() has returned false.
+ */
+public class PipelinedXmlRecordSetIterator implements RecordSetIterator {
+  private static final QName recordName = new QName(GedcomxConstants.GEDCOMX_NAMESPACE, "record");
+  private static final QName metadataName = new QName(GedcomxConstants.GEDCOMX_NAMESPACE, "metadata");
+  // Marker placed on the result queue after the last record.
+  private static final Future<Gedcomx> END = CompletableFuture.completedFuture(null);
+
+  private final InputStream inputStream;
+  private final JAXBContext jaxbContext;
+  private final boolean ordered;
+  private final Semaphore readAhead;
+  private final BlockingQueue<Future<Gedcomx>> results = new LinkedBlockingQueue<>();
+  // Number of tasks that have not yet been placed on the result queue (unordered mode), plus one for the reader itself.
+  private final AtomicInteger pending = new AtomicInteger(1);
+  private final ExecutorService workers;
+  private final ThreadLocal<Unmarshaller> unmarshallers;
+  private final Thread readerThread;
+  private volatile Gedcomx metadata;
+  private volatile boolean closed;
+  private Gedcomx nextRecord;
+  private boolean finished;
+
+  /**
+   * Constructor for a pipelined record iterator that takes a filename of a RecordSet file and iterates through its
+   *   record elements in order.
+   * @param filename - Filename to read a GedcomX RecordSet file from.
+   * @param threads - Number of worker threads to use to decode records.
+   * @throws IOException If there's an I/O problem.
+   */
+  public PipelinedXmlRecordSetIterator(String filename, int threads) throws IOException {
+    this(new FileInputStream(filename), filename.toLowerCase().endsWith(".gz"), threads);
+  }
+
+  public PipelinedXmlRecordSetIterator(InputStream inputStream, boolean isGzipped, int threads) throws IOException {
+    this(isGzipped ? new GZIPInputStream(inputStream) : inputStream, threads);
+  }
+
+  /**
+   * Constructor for a pipelined record iterator that iterates through the record elements of the RecordSet read from
+   *   the given InputStream, in order, reading ahead up to 4 records per thread.
+   * @param inputStream - InputStream to read a GedcomX RecordSet file from.
+   * @param threads - Number of worker threads to use to decode records.
+   */
+  public PipelinedXmlRecordSetIterator(InputStream inputStream, int threads) {
+    this(inputStream, threads, threads * 4, true);
+  }
+
+  /**
+   * Constructor for a pipelined record iterator that iterates through the record elements of the RecordSet read from
+   *   the given InputStream.
+   * @param inputStream - InputStream to read a GedcomX RecordSet file from.
+   * @param threads - Number of worker threads to use to decode records.
+   * @param readAhead - Maximum number of records that may be split or decoded ahead of the consumer.
+   * @param ordered - true to return the records in document order; false to return them as soon as they are decoded.
+   */
+  public PipelinedXmlRecordSetIterator(InputStream inputStream, int threads, int readAhead, boolean ordered) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Must have at least one worker thread.");
+    }
+    if (readAhead < 1) {
+      throw new IllegalArgumentException("Must read ahead at least one record.");
+    }
+    this.inputStream = inputStream;
+    this.jaxbContext = XmlRecordSetIterator.getJaxbContext();
+    this.ordered = ordered;
+    this.readAhead = new Semaphore(readAhead);
+    this.unmarshallers = ThreadLocal.withInitial(this::createUnmarshaller);
+    this.workers = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "gedcomx-recordset-decoder");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.readerThread = new Thread(this::read, "gedcomx-recordset-reader");
+    this.readerThread.setDaemon(true);
+    this.readerThread.start();
+  }
+
+  private Unmarshaller createUnmarshaller() {
+    try {
+      return jaxbContext.createUnmarshaller();
+    }
+    catch (JAXBException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Body of the reader thread: split the stream into record fragments and hand them to the workers.
+   */
+  private void read() {
+    XMLEventReader events = null;
+    try {
+      // See the note in XmlRecordSetIterator about needing woodstox on the classpath.
+      events = XMLInputFactory.newFactory().createXMLEventReader(inputStream);
+      while (!closed && events.hasNext()) {
+        XMLEvent event = events.peek();
+        if (event.isStartElement() && event.asStartElement().getName().equals(recordName)) {
+          submit(readFragment(events));
+        }
+        else if (event.isStartElement() && event.asStartElement().getName().equals(metadataName)) {
+          if (metadata != null) {
+            throw new IllegalStateException("Cannot have two metadata elements in a RecordSet");
+          }
+          metadata = createUnmarshaller().unmarshal(events, Gedcomx.class).getValue();
+        }
+        else {
+          events.nextEvent();
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      // Closed while waiting for room to read ahead.
+    }
+    catch (Exception e) {
+      if (!closed) {
+        results.add(CompletableFuture.failedFuture(e));
+      }
+    }
+    finally {
+      try {
+        if (events != null) {
+          events.close();
+        }
+        inputStream.close();
+      }
+      catch (Exception e) {
+        // Do nothing.
+      }
+      taskDone();
+    }
+  }
+
+  /**
+   * Read the events of the element at the current position of the given reader, through its end element.
+   */
+  private static List<XMLEvent> readFragment(XMLEventReader events) throws XMLStreamException {
+    List<XMLEvent> fragment = new ArrayList<>();
+    int depth = 0;
+    do {
+      XMLEvent event = events.nextEvent();
+      fragment.add(event);
+      if (event.isStartElement()) {
+        depth++;
+      }
+      else if (event.isEndElement()) {
+        depth--;
+      }
+    } while (depth > 0);
+    return fragment;
+  }
+
+  private void submit(final List<XMLEvent> fragment) throws InterruptedException {
+    readAhead.acquire();
+    if (ordered) {
+      FutureTask<Gedcomx> task = new FutureTask<>(() -> decode(fragment));
+      results.put(task);
+      workers.execute(task);
+    }
+    else {
+      pending.incrementAndGet();
+      workers.execute(new FutureTask<>(() -> decode(fragment)) {
+        @Override
+        protected void done() {
+          results.add(this);
+          taskDone();
+        }
+      });
+    }
+  }
+
+  private Gedcomx decode(List<XMLEvent> fragment) throws JAXBException {
+    return unmarshallers.get().unmarshal(new XMLEventListReader(fragment), Gedcomx.class).getValue();
+  }
+
+  /**
+   * Note that the reader (or, in unordered mode, a decoding task) is done. Whoever finishes last marks the end of
+   *   the results.
+   */
+  private void taskDone() {
+    // In ordered mode only the reader calls this, after it has queued all of the tasks.
+    if (ordered || pending.decrementAndGet() == 0) {
+      results.add(END);
+    }
+  }
+
+  /**
+   * Take the next result off of the result queue, waiting for it to be decoded if necessary.
+   */
+  private void fetchNext() {
+    try {
+      Future<Gedcomx> result = results.take();
+      if (result == END) {
+        finished = true;
+        workers.shutdown();
+        return;
+      }
+      readAhead.release();
+      nextRecord = result.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      close();
+      throw new RuntimeException(e);
+    }
+    catch (ExecutionException e) {
+      close();
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /**
+   * Tell whether the RecordIterator has another GedcomX record to return. Waits for the next record to be decoded
+   *   if necessary.
+   * @return true if there is another record to read; false otherwise.
+   */
+  @Override
+  synchronized public boolean hasNext() {
+    if (nextRecord == null && !finished) {
+      fetchNext();
+    }
+    return nextRecord != null;
+  }
+
+  @Override
+  synchronized public Gedcomx next() {
+    if (!hasNext()) {
+      return null;
+    }
+    Gedcomx record = nextRecord;
+    nextRecord = null;
+    return record;
+  }
+
+  @Override
+  public Gedcomx getMetadata() {
+    return metadata;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Stop the reader and worker threads and close the input stream, if they are still running.
+   */
+  @Override
+  synchronized public void close() {
+    if (!closed) {
+      closed = true;
+      finished = true;
+      nextRecord = null;
+      readerThread.interrupt();
+      workers.shutdownNow();
+      try {
+        inputStream.close();
+      }
+      catch (IOException e) {
+        // Do nothing.
+      }
+    }
+  }
+
+  /**
+   * An XMLEventReader over the events of a record fragment, so that each fragment can be unmarshalled on its own.
+   */
+  static class XMLEventListReader implements XMLEventReader {
+    private final List<XMLEvent> events;
+    private int index = 0;
+
+    XMLEventListReader(List<XMLEvent> events) {
+      this.events = events;
+    }
+
+    @Override
+    public XMLEvent nextEvent() {
+      if (index >= events.size()) {
+        throw new NoSuchElementException();
+      }
+      return events.get(index++);
+    }
+
+    @Override
+    public boolean hasNext() {
+      return index < events.size();
+    }
+
+    @Override
+    public XMLEvent peek() {
+      return index < events.size() ? events.get(index) : null;
+    }
+
+    @Override
+    public Object next() {
+      return nextEvent();
+    }
+
+    @Override
+    public String getElementText() throws XMLStreamException {
+      if (index == 0 || !events.get(index - 1).isStartElement()) {
+        throw new XMLStreamException("Not positioned on a start element.");
+      }
+      StringBuilder text = new StringBuilder();
+      XMLEvent event;
+      while (!(event = nextEvent()).isEndElement()) {
+        if (event.isCharacters()) {
+          text.append(event.asCharacters().getData());
+        }
+        else if (event.isStartElement()) {
+          throw new XMLStreamException("Unexpected element in text-only element.", event.getLocation());
+        }
+      }
+      return text.toString();
+    }
+
+    @Override
+    public XMLEvent nextTag() throws XMLStreamException {
+      while (hasNext()) {
+        XMLEvent event = nextEvent();
+        if (event.isStartElement() || event.isEndElement()) {
+          return event;
+        }
+        if (event.isCharacters() && !event.asCharacters().isWhiteSpace()) {
+          throw new XMLStreamException("Unexpected text while looking for a tag.", event.getLocation());
+        }
+        if (event.getEventType() != XMLStreamConstants.COMMENT && event.getEventType() != XMLStreamConstants.PROCESSING_INSTRUCTION
+          && !event.isCharacters()) {
+          throw new XMLStreamException("Unexpected event while looking for a tag.", event.getLocation());
+        }
+      }
+      throw new XMLStreamException("No more tags.");
+    }
+
+    @Override
+    public Object getProperty(String name) {
+      throw new IllegalArgumentException(name);
+    }
+
+    @Override
+    public void close() {
+      // Nothing to close.
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.util;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.conclusion.Identifier;
+import org.gedcomx.conclusion.Person;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sidecar index for a RecordSet file written by a RecordSetWriter or JsonRecordSetWriter, mapping each record's id
+ *   (and the identifiers of each record's main person) to the byte offset and length of that record in the file.
+ *   The offset and length of the metadata document, if any, are recorded as well.
+ * The writers emit the index as they write the records (see setIndexOutputStream()), and an IndexedRecordSetReader
+ *   uses it to decode individual records from the (uncompressed) RecordSet file without reading the rest of it.
+ *
+ * The index file is UTF-8 text with one tab-separated line per entry:
+ * <pre>
+ *   #gedcomx-recordset-index  1  xml|json
+ *   M  offset  length
+ *   R  offset  length  recordId  [personIdentifier...]
+ * </pre>
+ */
+public class RecordSetIndex {
+  public enum Format { XML, JSON }
+
+  static final String HEADER = "#gedcomx-recordset-index";
+  static final String VERSION = "1";
+  private static final String METADATA_LINE = "M";
+  private static final String RECORD_LINE = "R";
+
+  private final Format format;
+  private Entry metadata;
+  private final Map<String, Entry> recordsById = new LinkedHashMap<>();
+  private final Map<String, Entry> recordsByPersonIdentifier = new HashMap<>();
+
+  /**
+   * The position of a record (or the metadata) within a RecordSet file.
+   */
+  public static class Entry {
+    private final long offset;
+    private final int length;
+
+    public Entry(long offset, int length) {
+      this.offset = offset;
+      this.length = length;
+    }
+
+    /**
+     * @return the byte offset of the record within the RecordSet file.
+     */
+    public long getOffset() {
+      return offset;
+    }
+
+    /**
+     * @return the number of bytes in the record.
+     */
+    public int getLength() {
+      return length;
+    }
+  }
+
+  private RecordSetIndex(Format format) {
+    this.format = format;
+  }
+
+  /**
+   * @return the format (XML or JSON) of the RecordSet file that this index describes.
+   */
+  public Format getFormat() {
+    return format;
+  }
+
+  /**
+   * @return the position of the metadata document, or null if the RecordSet has no metadata.
+   */
+  public Entry getMetadata() {
+    return metadata;
+  }
+
+  /**
+   * @param recordId - id of a record in the RecordSet.
+   * @return the position of the record with the given id, or null if there is no such record.
+   */
+  public Entry getRecordById(String recordId) {
+    return recordsById.get(recordId);
+  }
+
+  /**
+   * @param personIdentifier - identifier of the main person of a record in the RecordSet.
+   * @return the position of the record whose main person has the given identifier, or null if there is no such record.
+   */
+  public Entry getRecordByPersonIdentifier(String personIdentifier) {
+    return recordsByPersonIdentifier.get(personIdentifier);
+  }
+
+  /**
+   * @return the ids of the indexed records, in the order they appear in the RecordSet file.
+   */
+  public Set<String> getRecordIds() {
+    return Collections.unmodifiableSet(recordsById.keySet());
+  }
+
+  /**
+   * Read an index file.
+   * @param filename - Path of the index file.
+   * @return the index.
+   * @throws IOException if the file can't be read or isn't a RecordSet index.
+   */
+  public static RecordSetIndex read(String filename) throws IOException {
+    try (InputStream inputStream = new FileInputStream(filename)) {
+      return read(inputStream);
+    }
+  }
+
+  /**
+   * Read an index from the given input stream. Does not close the stream.
+   * @param inputStream - Stream to read the index from.
+   * @return the index.
+   * @throws IOException if the stream can't be read or doesn't contain a RecordSet index.
+   */
+  public static RecordSetIndex read(InputStream inputStream) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    String line = reader.readLine();
+    String[] header = line == null ? new String[0] : line.split("\t");
+    if (header.length != 3 || !HEADER.equals(header[0]) || !VERSION.equals(header[1])) {
+      throw new IOException("Not a RecordSet index: " + line);
+    }
+    RecordSetIndex index = new RecordSetIndex(Format.valueOf(header[2].toUpperCase()));
+    while ((line = reader.readLine()) != null) {
+      String[] fields = line.split("\t");
+      try {
+        Entry entry = new Entry(Long.parseLong(fields[1]), Integer.parseInt(fields[2]));
+        if (METADATA_LINE.equals(fields[0])) {
+          index.metadata = entry;
+        }
+        else if (RECORD_LINE.equals(fields[0])) {
+          if (fields.length > 3 && !fields[3].isEmpty()) {
+            index.recordsById.put(fields[3], entry);
+          }
+          for (int i = 4; i < fields.length; i++) {
+            index.recordsByPersonIdentifier.put(fields[i], entry);
+          }
+        }
+      }
+      catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+        throw new IOException("Bad RecordSet index entry: " + line, e);
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Writes index entries to a stream as a record set writer writes the corresponding records.
+   */
+  static class Writer {
+    private final java.io.Writer writer;
+
+    Writer(OutputStream outputStream, Format format) throws IOException {
+      writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+      writer.write(HEADER + "\t" + VERSION + "\t" + format.name().toLowerCase() + "\n");
+    }
+
+    void writeMetadata(long offset, long length) throws IOException {
+      writer.write(METADATA_LINE + "\t" + offset + "\t" + checkLength(length) + "\n");
+    }
+
+    void writeRecord(Gedcomx record, long offset, long length) throws IOException {
+      StringBuilder line = new StringBuilder(RECORD_LINE).append('\t').append(offset).append('\t').append(checkLength(length)).append('\t');
+      if (isKey(record.getId())) {
+        line.append(record.getId());
+      }
+      Person mainPerson = new DocMap(record).getMainPerson();
+      if (mainPerson != null && mainPerson.getIdentifiers() != null) {
+        for (Identifier identifier : mainPerson.getIdentifiers()) {
+          if (identifier.getValue() != null && isKey(identifier.getValue().toString())) {
+            line.append('\t').append(identifier.getValue().toString());
+          }
+        }
+      }
+      writer.write(line.append('\n').toString());
+    }
+
+    void close() throws IOException {
+      writer.close();
+    }
+
+    private static int checkLength(long length) {
+      if (length > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Record too large to index: " + length + " bytes");
+      }
+      return (int) length;
+    }
+
+    private static boolean isKey(String key) {
+      return key != null && !key.isEmpty() && key.indexOf('\t') < 0 && key.indexOf('\n') < 0 && key.indexOf('\r') < 0;
+    }
+  }
+}
@@ -18,6 +18,8 @@ package org.gedcomx.util;
 import org.gedcomx.Gedcomx;
 
 import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Class for iterating through the 'record' elements (GedcomX documents) in a RecordSet one at a time
@@ -59,4 +61,26 @@ public interface RecordSetIterator extends Iterator<Gedcomx> {
    * Close the input stream and/or accompanying reader if they are still open.
    */
   void close();
+
+  /**
+   * Create a stream of the (remaining) records in the RecordSet. The stream may be made parallel, in which case
+   *   batches of decoded records are handed off to the fork-join pool. Closing the stream closes this iterator.
+   *
+   * @return A stream of the records in the RecordSet.
+   */
+  default Stream<Gedcomx> records() {
+    return records(RecordSetSpliterator.DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Create a stream of the (remaining) records in the RecordSet. The stream may be made parallel, in which case
+   *   batches of the given number of decoded records are handed off to the fork-join pool. Closing the stream
+   *   closes this iterator.
+   *
+   * @param batchSize The number of records to hand off at a time in a parallel stream.
+   * @return A stream of the records in the RecordSet.
+   */
+  default Stream<Gedcomx> records(int batchSize) {
+    return StreamSupport.stream(new RecordSetSpliterator(this, batchSize), false).onClose(this::close);
+  }
 }
@@ -0,0 +1,99 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.util;
+
+import org.gedcomx.Gedcomx;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over the records of a RecordSetIterator, for use in (possibly parallel) streams.
+ *
+ * The records can only be read from the underlying stream one at a time, so each split takes a batch of records that
+ *   have already been decoded by the iterator and hands them off as a sized, array-backed spliterator that the
+ *   fork-join pool can process (and split further) while the next batch is being read. Unlike the spliterator that
+ *   the JDK creates for a plain Iterator, the batch size stays small and fixed, so that even a modest number of
+ *   large records gets spread across all of the available cores.
+ */
+public class RecordSetSpliterator implements Spliterator<Gedcomx> {
+  public static final int DEFAULT_BATCH_SIZE = 16;
+
+  private final RecordSetIterator iterator;
+  private final int batchSize;
+
+  /**
+   * Constructor.
+   * @param iterator - Iterator to read records from.
+   */
+  public RecordSetSpliterator(RecordSetIterator iterator) {
+    this(iterator, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Constructor.
+   * @param iterator - Iterator to read records from.
+   * @param batchSize - Number of records to hand off with each split.
+   */
+  public RecordSetSpliterator(RecordSetIterator iterator, int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be at least 1.");
+    }
+    this.iterator = iterator;
+    this.batchSize = batchSize;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super Gedcomx> action) {
+    if (iterator.hasNext()) {
+      action.accept(iterator.next());
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public void forEachRemaining(Consumer<? super Gedcomx> action) {
+    while (iterator.hasNext()) {
+      action.accept(iterator.next());
+    }
+  }
+
+  /**
+   * Split off the next batch of records.
+   * @return a spliterator over the next batch of (already decoded) records, or null if there are no more records.
+   */
+  @Override
+  public Spliterator<Gedcomx> trySplit() {
+    Gedcomx[] batch = new Gedcomx[batchSize];
+    int size = 0;
+    while (size < batchSize && iterator.hasNext()) {
+      batch[size++] = iterator.next();
+    }
+    return size == 0 ? null : Spliterators.spliterator(batch, 0, size, ORDERED | NONNULL);
+  }
+
+  @Override
+  public long estimateSize() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | NONNULL;
+  }
+}
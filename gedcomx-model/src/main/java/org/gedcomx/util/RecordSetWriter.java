@@ -18,6 +18,7 @@ package org.gedcomx.util;
 import org.gedcomx.Gedcomx;
 import org.gedcomx.records.RecordSet;
 import org.gedcomx.rt.GedcomxConstants;
+import org.gedcomx.rt.xml.JaxbContextRegistry;
 
 import jakarta.xml.bind.*;
 import javax.xml.namespace.QName;
@@ -44,7 +45,9 @@ public class RecordSetWriter {
   private boolean wroteMetadata = false;
 
   // Stream to write data to
-  private OutputStream outputStream;
+  private CountingOutputStream outputStream;
+  // Writer for the sidecar index, if any
+  private RecordSetIndex.Writer indexWriter;
 
   /**
    * Constructor. Prepares to write GedcomX document records to the given output stream (which may well be a
@@ -79,11 +82,11 @@ public class RecordSetWriter {
    */
   protected RecordSetWriter(OutputStream outputStream, boolean shouldFilter, Class... marshallerClasses) {
     try {
-      marshaller = JAXBContext.newInstance(marshallerClasses).createMarshaller();
+      marshaller = JaxbContextRegistry.getContext(marshallerClasses).createMarshaller();
       marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
 
-      this.outputStream = outputStream;
-      xmlWriter = XMLOutputFactory.newFactory().createXMLStreamWriter(outputStream, "UTF-8");
+      this.outputStream = new CountingOutputStream(outputStream);
+      xmlWriter = XMLOutputFactory.newFactory().createXMLStreamWriter(this.outputStream, "UTF-8");
       if (shouldFilter) {
         // Use a CleanXMLStreamWriter to avoid illegal XML characters in the marshalled output, such as a vertical tab character.
         xmlWriter = new CleanXMLStreamWriter(xmlWriter);
@@ -137,7 +140,51 @@ public class RecordSetWriter {
     }
   }
 
+  /**
+   * Write a sidecar index (see RecordSetIndex) to the given stream as the records are written, so that individual
+   *   records can later be read from the RecordSet file using an IndexedRecordSetReader. The byte offsets in the index
+   *   refer to the bytes written to this writer's output stream, so the index is only useful if that stream is not
+   *   compressed. Must be called before any records or metadata have been written. The index stream is closed when
+   *   this writer is closed.
+   * @param indexOutputStream - OutputStream to write the index to.
+   * @throws IOException If there's a problem writing the index header.
+   */
+  public synchronized void setIndexOutputStream(OutputStream indexOutputStream) throws IOException {
+    if (wroteRecords || wroteMetadata) {
+      throw new IllegalStateException("Already wrote to stream. Can't start an index now.");
+    }
+    indexWriter = new RecordSetIndex.Writer(indexOutputStream, RecordSetIndex.Format.XML);
+  }
+
   private void writeRecord(Gedcomx record, String label) throws JAXBException {
+    if (indexWriter == null) {
+      marshal(record, label);
+      return;
+    }
+    try {
+      // Close the pending start tag (if any) and flush, so that the byte count is at the start of the record.
+      xmlWriter.writeCharacters("\n");
+      xmlWriter.flush();
+      long offset = outputStream.getCount();
+      marshal(record, label);
+      xmlWriter.flush();
+      long length = outputStream.getCount() - offset;
+      if (label.equals("metadata")) {
+        indexWriter.writeMetadata(offset, length);
+      }
+      else {
+        indexWriter.writeRecord(record, offset, length);
+      }
+    }
+    catch (XMLStreamException e) {
+      throw new RuntimeException(e);
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void marshal(Gedcomx record, String label) throws JAXBException {
     marshaller.marshal(new JAXBElement<Gedcomx>(new QName(GedcomxConstants.GEDCOMX_NAMESPACE, label), Gedcomx.class, record), xmlWriter);
   }
 
@@ -153,6 +200,9 @@ public class RecordSetWriter {
       xmlWriter.writeEndElement();
       xmlWriter.close();
       outputStream.close();
+      if (indexWriter != null) {
+        indexWriter.close();
+      }
     }
     catch (XMLStreamException e) {
       throw new RuntimeException(e);
@@ -18,6 +18,7 @@ package org.gedcomx.util;
 import org.gedcomx.Gedcomx;
 import org.gedcomx.records.RecordSet;
 import org.gedcomx.rt.GedcomxConstants;
+import org.gedcomx.rt.xml.JaxbContextRegistry;
 
 import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
@@ -50,7 +51,7 @@ public class XmlRecordSetIterator implements RecordSetIterator {
 
   static {
     try {
-      jaxbContext = JAXBContext.newInstance(RecordSet.class, Gedcomx.class);
+      jaxbContext = JaxbContextRegistry.getContext(RecordSet.class, Gedcomx.class);
     }
     catch (Exception ex) {
       ex.printStackTrace();
@@ -164,6 +165,14 @@ public class XmlRecordSetIterator implements RecordSetIterator {
     }
   }
 
+  /**
+   * Get the JAXBContext shared by the XML record set iterators.
+   * @return the JAXBContext for RecordSet and Gedcomx.
+   */
+  static JAXBContext getJaxbContext() {
+    return jaxbContext;
+  }
+
   @Override
   synchronized public Gedcomx getMetadata() {
     return metadata;
@@ -3,6 +3,8 @@ package org.gedcomx.common;
 import org.gedcomx.Gedcomx;
 import org.gedcomx.agent.Agent;
 import org.gedcomx.conclusion.*;
+import org.gedcomx.source.SourceDescription;
+import org.gedcomx.source.SourceReference;
 import org.gedcomx.types.FactType;
 import org.gedcomx.types.RelationshipType;
 import org.junit.jupiter.api.Test;
@@ -80,7 +82,18 @@ class GedcomxTest {
 
   @Test
   void family() {
+    assertFamily(makeDoc());
+  }
+
+  @Test
+  void familyWithLookupIndex() {
     Gedcomx g = makeDoc();
+    g.enableLookupIndex();
+    assertFamily(g);
+    assertFamily(g);
+  }
+
+  private void assertFamily(Gedcomx g) {
     FamilyView family = g.getPersons().get(0).getDisplayExtension().getFamiliesAsParent().get(0);
 
     // parent1-parent2 relationship
@@ -113,6 +126,113 @@ class GedcomxTest {
     assertNull(pcRel.getFacts());
   }
 
+  @Test
+  void findWithLookupIndex() {
+    Gedcomx g = new Gedcomx();
+    g.enableLookupIndex();
+    for (int i = 0; i < 100; i++) {
+      Person person = new Person();
+      person.setId("p" + i);
+      person.addIdentifier(new Identifier(new URI("https://example.org/persons/" + i)));
+      g.addPerson(person);
+      g.addSourceDescription(new SourceDescription().id("sd" + i));
+    }
+    assertEquals("p42", g.findPerson(new URI("#p42")).getId());
+    assertEquals("p42", g.findPerson(new URI("https://example.org/persons/42")).getId());
+    assertNull(g.findPerson(new URI("p42")));
+    assertEquals("sd7", g.findDescription(new URI("#sd7")).getId());
+    assertNull(g.findDescription(new URI("sd7")));
+
+    // added through the document (after the index was built).
+    Person added = new Person();
+    added.setId("added");
+    g.addPerson(added);
+    assertSame(added, g.findPerson(new URI("#added")));
+
+    // renamed through the document, and directly.
+    g.renameElement(added, "renamed");
+    assertNull(g.findPerson(new URI("#added")));
+    assertSame(added, g.findPerson(new URI("#renamed")));
+    g.getPersons().get(0).setId("changed");
+    assertNull(g.findPerson(new URI("#p0")));
+    g.invalidateLookupIndex();
+    assertEquals("https://example.org/persons/0", g.findPerson(new URI("#changed")).getIdentifiers().get(0).getValue().toString());
+
+    // the first match wins, as without an index.
+    Person duplicate = new Person();
+    duplicate.setId("p1");
+    g.addPerson(duplicate);
+    assertNotSame(duplicate, g.findPerson(new URI("#p1")));
+    assertTrue(g.removeElement(g.findPerson(new URI("#p1"))));
+    assertSame(duplicate, g.findPerson(new URI("#p1")));
+
+    g.disableLookupIndex();
+    assertSame(duplicate, g.findPerson(new URI("#p1")));
+  }
+
+  @Test
+  void embed() {
+    Gedcomx target = new Gedcomx();
+    target.addPerson(new Person().id("p1").gender(new Gender(org.gedcomx.types.GenderType.Male)));
+    target.addPerson(new Person().id("p2"));
+    target.link("self", new URI("https://example.org/self"));
+
+    Gedcomx page = new Gedcomx();
+    page.addPerson(new Person().id("p3").fact(new Fact(FactType.Birth, "1900")));
+    page.addPerson(new Person().id("p2").fact(new Fact(FactType.Death, "1950")));
+    page.addPerson(new Person().fact(new Fact(FactType.Burial, "1951")));
+    page.addPerson(new Person().id("p3").fact(new Fact(FactType.Death, "1980")));
+    page.link("self", new URI("https://example.org/page"));
+    page.link("next", new URI("https://example.org/next"));
+    page.link("next", new URI("https://example.org/next2"));
+    page.addLink(new org.gedcomx.links.Link(null, new URI("https://example.org/norel")));
+
+    target.embed(page);
+
+    assertEquals(4, target.getPersons().size());
+    assertEquals("p1", target.getPersons().get(0).getId());
+    assertEquals("p2", target.getPersons().get(1).getId());
+    assertEquals(FactType.Death, target.getPersons().get(1).getFacts().get(0).getKnownType());
+    assertEquals("p3", target.getPersons().get(2).getId());
+    assertEquals(2, target.getPersons().get(2).getFacts().size());
+    assertNull(target.getPersons().get(3).getId());
+
+    assertEquals(3, target.getLinks().size());
+    assertEquals("https://example.org/self", target.getLink("self").getHref().toString());
+    assertEquals("https://example.org/next", target.getLink("next").getHref().toString());
+  }
+
+  @Test
+  void fixLocalReferences() {
+    Gedcomx doc = new Gedcomx();
+    doc.addSourceDescription(new SourceDescription().id("sd1"));
+    Person p1 = new Person().id("p1");
+    p1.addSource(new SourceReference().descriptionRef(new URI("https://example.org/sd1")).descriptionId("sd1"));
+    doc.addPerson(p1);
+    doc.addPerson(new Person().id("p2"));
+    Relationship rel = new Relationship();
+    rel.setPerson1(new ResourceReference(new URI("https://example.org/p1"), "p1"));
+    rel.setPerson2(new ResourceReference(new URI("https://example.org/p3"), "p3"));
+    rel.addSource(new SourceReference().descriptionRef(new URI("https://example.org/sd1")).descriptionId("sd1"));
+    rel.addSource(new SourceReference().descriptionRef(new URI("https://example.org/sd2")).descriptionId("sd2"));
+    doc.addRelationship(rel);
+    doc.addPlace(new PlaceDescription().id("pd1").place(new ResourceReference(new URI("https://example.org/pl1"), "pl1")));
+    doc.addPlace(new PlaceDescription().id("pd2").place(new ResourceReference(new URI("https://example.org/pl1"), "pl1")));
+    doc.addPlace(new PlaceDescription().id("pd3").place(new ResourceReference(new URI("https://example.org/pl2"), "pl2")));
+
+    doc.fixLocalReferences();
+
+    assertEquals("#sd1", p1.getSources().get(0).getDescriptionRef().toString());
+    assertEquals("#p1", rel.getPerson1().getResource().toString());
+    assertEquals("https://example.org/p3", rel.getPerson2().getResource().toString());
+    assertEquals("#sd1", rel.getSources().get(0).getDescriptionRef().toString());
+    assertEquals("https://example.org/sd2", rel.getSources().get(1).getDescriptionRef().toString());
+    assertEquals("#pl1", doc.getPlaces().get(0).getPlace().getResource().toString());
+    assertEquals("pl1", doc.getPlaces().get(0).getPlace().getResourceId());
+    assertEquals("#pl1", doc.getPlaces().get(1).getPlace().getResource().toString());
+    assertEquals("https://example.org/pl2", doc.getPlaces().get(2).getPlace().getResource().toString());
+  }
+
   private Gedcomx makeDoc() {
     Gedcomx g = new Gedcomx();
 
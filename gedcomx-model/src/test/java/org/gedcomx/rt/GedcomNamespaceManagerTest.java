@@ -0,0 +1,221 @@
+package org.gedcomx.rt;
+
+import jakarta.xml.bind.annotation.XmlRootElement;
+import jakarta.xml.bind.annotation.XmlType;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Event;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.processor.ModelRegistryProcessor;
+import org.gedcomx.rt.json.JsonElementWrapper;
+import org.gedcomx.source.SourceDescription;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GedcomNamespaceManagerTest {
+
+  @XmlRootElement ( namespace = "http://example.org/ns/" )
+  static class First {
+  }
+
+  @JsonElementWrapper ( namespace = "http://example.org/ns/", name = "first" )
+  static class Second {
+  }
+
+  @Test
+  void lookupsInBothDirections() {
+    GedcomNamespaceManager.registerKnownJsonTypes(Gedcomx.class, Person.class);
+    String jsonName = GedcomNamespaceManager.getJsonName(Gedcomx.class);
+    assertSame(Gedcomx.class, GedcomNamespaceManager.getKnownJsonType(jsonName));
+    assertSame(Person.class, GedcomNamespaceManager.getKnownTypeById(GedcomNamespaceManager.getTypeIdName(Person.class)));
+    assertEquals("http://example.org/ns/first", GedcomNamespaceManager.getJsonName(First.class));
+    assertNull(GedcomNamespaceManager.getKnownJsonType("http://example.org/ns/unknown"));
+  }
+
+  @Test
+  void laterRegistrationTakesNameOver() {
+    GedcomNamespaceManager.registerKnownJsonType(First.class);
+    assertSame(First.class, GedcomNamespaceManager.getKnownJsonType("http://example.org/ns/first"));
+    GedcomNamespaceManager.registerKnownJsonType(Second.class);
+    assertSame(Second.class, GedcomNamespaceManager.getKnownJsonType("http://example.org/ns/first"));
+    GedcomNamespaceManager.registerKnownJsonType(First.class);
+    assertSame(First.class, GedcomNamespaceManager.getKnownJsonType("http://example.org/ns/first"));
+  }
+
+  @Test
+  void knownPrefixesAreNotChangedByOverrides() {
+    Map<String, String> known = GedcomNamespaceManager.getKnownPrefixes();
+    assertEquals("gxc", known.get("http://gedcomx.org/conclusion/v1/"));
+    assertThrows(UnsupportedOperationException.class, () -> known.put("http://example.org/ns/", "ex"));
+
+    GedcomNamespaceManager manager = new GedcomNamespaceManager(Collections.singletonMap("http://example.org/ns/", "ex"));
+    assertEquals("ex", manager.getPreferredPrefix("http://example.org/ns/", null, true));
+    assertNull(GedcomNamespaceManager.getKnownPrefixes().get("http://example.org/ns/"));
+  }
+
+  @Test
+  void concurrentRegistration() throws Exception {
+    Class<?>[] types = {Gedcomx.class, Person.class, Relationship.class, SourceDescription.class, Agent.class, Event.class,
+                        PlaceDescription.class};
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        Class<?> type = types[i % types.length];
+        futures.add(executor.submit(() -> {
+          GedcomNamespaceManager.registerKnownJsonType(type);
+          assertSame(type, GedcomNamespaceManager.getKnownTypeById(GedcomNamespaceManager.getTypeIdName(type)));
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+
+    for (Class<?> type : types) {
+      assertSame(type, GedcomNamespaceManager.getKnownTypeById(GedcomNamespaceManager.getTypeIdName(type)));
+    }
+  }
+
+  @Test
+  void modelRegistriesMatchAnnotations() throws Exception {
+    Set<String> models = new HashSet<>();
+    for (ModelRegistry registry : ServiceLoader.load(ModelRegistry.class)) {
+      models.addAll(registry.getModelClassNames());
+      for (Map.Entry<String, String> prefix : registry.getNamespacePrefixes().entrySet()) {
+        assertEquals(prefix.getValue(), GedcomNamespaceManager.getKnownPrefixes().get(prefix.getKey()));
+      }
+      for (Map.Entry<String, String> typeId : registry.getTypeIds().entrySet()) {
+        Class<?> type = Class.forName(typeId.getKey());
+        assertEquals(GedcomNamespaceManager.readTypeIdName(type), typeId.getValue());
+        assertEquals(GedcomNamespaceManager.readJsonName(type), registry.getJsonNames().get(typeId.getKey()));
+      }
+    }
+    assertTrue(models.contains(Gedcomx.class.getName()));
+  }
+
+  /**
+   * A registry, like one left over from an earlier build, that still has the old type id of ex.Thing.
+   */
+  public static class StaleRegistry implements ModelRegistry {
+    @Override
+    public Set<String> getModelClassNames() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Map<String, String> getNamespacePrefixes() {
+      return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<String, String> getJsonNames() {
+      return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<String, String> getTypeIds() {
+      return Map.of("ex.Thing", "http://example.org/ex/thing", First.class.getName(), "http://example.org/ex/precomputed");
+    }
+  }
+
+  @Test
+  void registryIsIgnoredForClassesFromElsewhere(@TempDir Path dir) throws Exception {
+    // ex.Thing, with its XmlType renamed since the registry was generated, compiled somewhere else.
+    Path classes = dir.resolve("classes");
+    Path source = write(dir.resolve("src/ex/Thing.java"), "package ex; @jakarta.xml.bind.annotation.XmlType(name = \"renamed\") public class Thing {}");
+    compile(classes, Collections.emptyList(), source);
+
+    GedcomNamespaceManager.PrecomputedNames names = new GedcomNamespaceManager.PrecomputedNames();
+    names.add(new StaleRegistry());
+    try (URLClassLoader loader = new URLClassLoader(new URL[]{classes.toUri().toURL()}, getClass().getClassLoader())) {
+      Class<?> thing = loader.loadClass("ex.Thing");
+      assertFalse(names.describes(thing));
+      assertEquals("renamed", GedcomNamespaceManager.getTypeIdName(thing));
+    }
+    // A class from the same place as the registry takes its names from the registry.
+    assertTrue(names.describes(First.class));
+    assertEquals("http://example.org/ex/precomputed", names.getTypeId(First.class));
+  }
+
+  @Test
+  void registryIsRegeneratedByIncrementalCompilation(@TempDir Path dir) throws Exception {
+    Path classes = dir.resolve("classes");
+    write(classes.resolve("META-INF/gedcomx.models"), "ex.Ex\n");
+    Path model = write(dir.resolve("src/ex/Ex.java"), "package ex; @org.gedcomx.rt.MediaTypeDefinition(name = \"Ex\", version = \"1\", description = \"\", " +
+      "xmlMediaType = \"application/x-ex+xml\", jsonMediaType = \"application/x-ex+json\", " +
+      "models = @org.gedcomx.rt.Model(id = \"ex\", namespace = \"http://example.org/ex/\")) public class Ex {}");
+    Path thing = write(dir.resolve("src/ex/Thing.java"), "package ex; @jakarta.xml.bind.annotation.XmlType(name = \"thing\") public class Thing {}");
+    Path other = write(dir.resolve("src/ex/Other.java"), "package ex; @jakarta.xml.bind.annotation.XmlType(name = \"other\") public class Other {}");
+    compile(classes, Collections.emptyList(), model, thing, other);
+    assertEquals("thing", generatedTypeIds(classes).get("ex.Thing"));
+
+    // Only the renamed type is recompiled, against the classes of the earlier compilation.
+    write(thing, "package ex; @jakarta.xml.bind.annotation.XmlType(name = \"renamed\") public class Thing {}");
+    compile(classes, Collections.singletonList(classes.toFile()), thing);
+    Map<String, String> typeIds = generatedTypeIds(classes);
+    assertEquals("renamed", typeIds.get("ex.Thing"));
+    assertEquals("other", typeIds.get("ex.Other"));
+  }
+
+  private static Path write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void compile(Path classes, List<File> classPath, Path... sources) throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    try (StandardJavaFileManager files = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+      Files.createDirectories(classes);
+      files.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(classes.toFile()));
+      files.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singletonList(classes.toFile()));
+      List<File> path = new ArrayList<File>(classPath);
+      for (Class<?> type : Arrays.asList(XmlType.class, ModelRegistry.class)) {
+        path.add(new File(type.getProtectionDomain().getCodeSource().getLocation().getPath()));
+      }
+      files.setLocation(StandardLocation.CLASS_PATH, path);
+      Iterable<? extends JavaFileObject> units = files.getJavaFileObjects(sources);
+      JavaCompiler.CompilationTask task = compiler.getTask(null, files, null, null, null, units);
+      task.setProcessors(Collections.singletonList(new ModelRegistryProcessor()));
+      assertTrue(task.call());
+    }
+  }
+
+  private static Map<String, String> generatedTypeIds(Path classes) throws Exception {
+    try (URLClassLoader loader = new URLClassLoader(new URL[]{classes.toUri().toURL()}, GedcomNamespaceManagerTest.class.getClassLoader())) {
+      ModelRegistry registry = (ModelRegistry) loader.loadClass("ex.ExModelRegistry").getDeclaredConstructor().newInstance();
+      return registry.getTypeIds();
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package org.gedcomx.rt.json;
+
+import jakarta.xml.bind.annotation.XmlRootElement;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.rt.GedcomNamespaceManager;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExtensibleObjectDeserializerTest {
+
+  @XmlRootElement ( namespace = "http://example.org/cache/" )
+  @JsonElementWrapper ( namespace = "http://example.org/cache/", name = "items" )
+  public static class CacheTestItem {
+    private String value;
+
+    public String getValue() {
+      return value;
+    }
+
+    public void setValue(String value) {
+      this.value = value;
+    }
+  }
+
+  @Test
+  void unknownPropertiesAreResolvedAgainAfterRegistration() {
+    String json = "{\"persons\":[{\"id\":\"p1\",\"http://example.org/cache/items\":[{\"value\":\"a\"}],\"http://example.org/cache/other\":\"b\"}]}";
+
+    // Not known yet, so skipped (and remembered as unknown).
+    for (int i = 0; i < 2; i++) {
+      Person person = JsonMapperRegistry.getReader(Gedcomx.class).<Gedcomx>readValue(json).getPersons().get(0);
+      assertNull(person.findExtensionOfType(CacheTestItem.class));
+    }
+
+    GedcomNamespaceManager.registerKnownJsonType(CacheTestItem.class);
+    for (int i = 0; i < 2; i++) {
+      Person person = JsonMapperRegistry.getReader(Gedcomx.class).<Gedcomx>readValue(json).getPersons().get(0);
+      assertEquals("p1", person.getId());
+      assertEquals("a", person.findExtensionOfType(CacheTestItem.class).getValue());
+      assertEquals(1, person.getExtensionElements().size());
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package org.gedcomx.rt.json;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.rt.SerializationUtil;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonMapperRegistryTest {
+
+  @Test
+  void mappersAreShared() {
+    JsonMapper mapper = JsonMapperRegistry.getJsonMapper(Gedcomx.class);
+    assertSame(mapper, JsonMapperRegistry.getJsonMapper(Gedcomx.class));
+    assertSame(mapper, JsonMapperRegistry.getJsonMapper(true, JsonInclude.Include.NON_NULL, Gedcomx.class));
+    assertNotSame(mapper, JsonMapperRegistry.getJsonMapper(false, JsonInclude.Include.NON_NULL, Gedcomx.class));
+    assertNotSame(mapper, JsonMapperRegistry.getJsonMapper(Gedcomx.class, Person.class));
+    assertSame(JsonMapperRegistry.getJsonMapper(Gedcomx.class, Person.class), JsonMapperRegistry.getJsonMapper(Person.class, Gedcomx.class));
+    assertSame(JsonMapperRegistry.getReader(Gedcomx.class), JsonMapperRegistry.getReader(Gedcomx.class));
+    assertSame(JsonMapperRegistry.getWriter(Gedcomx.class), JsonMapperRegistry.getWriter(Gedcomx.class));
+
+    JsonMapper custom = GedcomJacksonModule.createJsonMapper(Gedcomx.class);
+    assertSame(JsonMapperRegistry.getWriter(custom, Gedcomx.class, true, JsonInclude.Include.NON_NULL),
+               JsonMapperRegistry.getWriter(custom, Gedcomx.class, true, JsonInclude.Include.NON_NULL));
+  }
+
+  @Test
+  void prettyAndCompact() throws Exception {
+    Gedcomx doc = new Gedcomx().person(new Person().id("p1"));
+    String pretty = JsonMapperRegistry.getWriter(Gedcomx.class).writeValueAsString(doc);
+    String compact = JsonMapperRegistry.getWriter(Gedcomx.class, false, JsonInclude.Include.NON_NULL).writeValueAsString(doc);
+    assertTrue(pretty.contains("\n"));
+    assertFalse(compact.contains("\n"));
+    assertEquals(compact, pretty.replaceAll("\\s", ""));
+
+    Gedcomx read = JsonMapperRegistry.getReader(Gedcomx.class).readValue(compact);
+    assertEquals("p1", read.getPersons().get(0).getId());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SerializationUtil.writeJson(doc, Gedcomx.class, out);
+    assertEquals(pretty, out.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void compactModeIsHonoured() throws Exception {
+    Gedcomx doc = new Gedcomx().person(new Person().id("p1"));
+    String compact = GedcomJacksonModule.createJsonMapper(false, Gedcomx.class).writeValueAsString(doc);
+    assertFalse(compact.contains("\n"));
+    assertTrue(GedcomJacksonModule.createJsonMapper(Gedcomx.class).writeValueAsString(doc).contains("\n"));
+
+    // A mapper's own indentation setting is kept when it is given to SerializationUtil.
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SerializationUtil.writeJson(doc, Gedcomx.class, JsonMapperRegistry.getJsonMapper(false, JsonInclude.Include.NON_NULL, Gedcomx.class), out);
+    assertEquals(compact, out.toString(StandardCharsets.UTF_8));
+    assertEquals(compact, new String(SerializationUtil.toJsonStream(doc, false), StandardCharsets.UTF_8));
+    assertTrue(new String(SerializationUtil.toJsonStream(doc, true), StandardCharsets.UTF_8).contains("\n"));
+  }
+}
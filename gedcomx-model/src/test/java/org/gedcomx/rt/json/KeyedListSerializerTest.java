@@ -0,0 +1,62 @@
+package org.gedcomx.rt.json;
+
+import org.gedcomx.common.URI;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.links.Link;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.DatabindException;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyedListSerializerTest {
+
+  @Test
+  void keysAreWrittenInOrderOfFirstAppearance() {
+    // Both sides of the size at which keys are indexed rather than searched for.
+    for (int count : new int[]{3, KeyedListSerializer.MAX_SEARCHED_SIZE + 5}) {
+      Person person = new Person();
+      List<String> expectedKeys = new ArrayList<>();
+      for (int i = count - 1; i >= 0; i--) {
+        person.addLink("rel" + i, new URI("urn:" + i));
+        expectedKeys.add("rel" + i);
+        if (i % 3 == 0) {
+          person.addLink("related", new URI("urn:related" + i));
+          if (!expectedKeys.contains("related")) {
+            expectedKeys.add("related");
+          }
+        }
+      }
+
+      JsonMapper mapper = JsonMapperRegistry.getJsonMapper(Person.class);
+      JsonNode links = mapper.readTree(mapper.writeValueAsString(person)).get("links");
+      assertEquals(expectedKeys, new ArrayList<>(links.propertyNames()));
+      assertEquals("urn:" + (count - 1), links.get("rel" + (count - 1)).get("href").asString());
+      JsonNode related = links.get("related");
+      assertTrue(related.isArray());
+      assertEquals((count + 2) / 3, related.size());
+      assertEquals("urn:related" + ((count - 1) / 3 * 3), related.get(0).get("href").asString());
+      assertEquals("urn:related0", related.get(related.size() - 1).get("href").asString());
+
+      Person read = mapper.readValue(mapper.writeValueAsString(person), Person.class);
+      assertEquals(person.getLinks().size(), read.getLinks().size());
+    }
+  }
+
+  @Test
+  void repeatedUniqueKeyFails() {
+    for (int count : new int[]{2, KeyedListSerializer.MAX_SEARCHED_SIZE + 5}) {
+      Person person = new Person();
+      for (int i = 0; i < count - 1; i++) {
+        person.addLink(new Link("rel" + i, new URI("urn:" + i)));
+      }
+      person.addLink(new Link("rel0", new URI("urn:again")));
+      JsonMapper mapper = JsonMapperRegistry.getJsonMapper(Person.class);
+      assertThrows(DatabindException.class, () -> mapper.writeValueAsString(person));
+    }
+  }
+}
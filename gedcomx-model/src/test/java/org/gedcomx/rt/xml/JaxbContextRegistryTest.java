@@ -0,0 +1,61 @@
+package org.gedcomx.rt.xml;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.Unmarshaller;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.records.RecordSet;
+import org.gedcomx.rt.SerializationUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JaxbContextRegistryTest {
+
+  @Test
+  void contextsAreShared() throws Exception {
+    JAXBContext context = JaxbContextRegistry.getContext(Gedcomx.class, RecordSet.class);
+    assertSame(context, JaxbContextRegistry.getContext(RecordSet.class, Gedcomx.class));
+    assertNotSame(context, JaxbContextRegistry.getContext(Gedcomx.class));
+  }
+
+  @Test
+  void marshallersArePooled() throws Exception {
+    JAXBContext context = JaxbContextRegistry.getContext(Gedcomx.class);
+    Marshaller first = JaxbContextRegistry.withMarshaller(context, Gedcomx.class, true, false, marshaller -> marshaller);
+    assertSame(first, JaxbContextRegistry.withMarshaller(context, Gedcomx.class, true, false, marshaller -> marshaller));
+    assertNotSame(first, JaxbContextRegistry.withMarshaller(context, Gedcomx.class, false, false, marshaller -> marshaller));
+    Unmarshaller unmarshaller = JaxbContextRegistry.withUnmarshaller(context, u -> u);
+    assertSame(unmarshaller, JaxbContextRegistry.withUnmarshaller(context, u -> u));
+
+    // Marshallers for contexts that didn't come from the registry aren't kept.
+    JAXBContext other = JAXBContext.newInstance(Gedcomx.class);
+    Marshaller unpooled = JaxbContextRegistry.withMarshaller(other, Gedcomx.class, true, false, marshaller -> marshaller);
+    assertNotSame(unpooled, JaxbContextRegistry.withMarshaller(other, Gedcomx.class, true, false, marshaller -> marshaller));
+  }
+
+  @Test
+  void concurrentRoundTrips() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Gedcomx>> results = new ArrayList<>();
+      for (int i = 0; i < 200; i++) {
+        Gedcomx doc = new Gedcomx().person(new Person().id("p" + i));
+        results.add(executor.submit(() -> SerializationUtil.processThroughXml(doc, Gedcomx.class)));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        assertEquals("p" + i, results.get(i).get().getPersons().get(0).getId());
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+}
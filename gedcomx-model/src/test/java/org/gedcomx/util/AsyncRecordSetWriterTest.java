@@ -0,0 +1,143 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.util;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.conclusion.Person;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Class for testing the AsyncRecordSetWriter.
+ */
+class AsyncRecordSetWriterTest {
+
+  @Test
+  void writeAndReadBack() throws Exception {
+    List<Gedcomx> records = new ArrayList<>(JsonRecordSetIteratorTest.getRecordsFromRecordSetFile());
+    for (int i = 0; i < 100; i++) {
+      records.add(new Gedcomx().id("r" + i).person(new Person().id("p" + i)));
+    }
+    Gedcomx metadata = TestRecordSetWriter.getMetadataFromFile();
+
+    for (RecordSetIndex.Format format : RecordSetIndex.Format.values()) {
+      for (int metadataPos : new int[]{-1, 0, 50}) {
+        // metadataPos 0: set before the records; otherwise after that record (or not at all if -1).
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        AsyncRecordSetWriter writer = new AsyncRecordSetWriter(new GZIPOutputStream(bos), format, 3, 5);
+        if (metadataPos == 0) {
+          writer.setMetadata(metadata);
+        }
+        for (int i = 0; i < records.size(); i++) {
+          writer.writeRecord(records.get(i));
+          if (i == metadataPos && i > 0) {
+            writer.setMetadata(metadata);
+          }
+        }
+        writer.flush();
+        assertEquals(records.size(), writer.getRecordsWritten());
+        assertEquals(0, writer.getQueueDepth());
+        assertTrue(writer.getBytesWritten() > 0);
+        assertTrue(writer.getRecordsPerSecond() > 0);
+        writer.close();
+        writer.close();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
+        RecordSetIterator iterator = format == RecordSetIndex.Format.XML
+          ? new XmlRecordSetIterator(new GZIPInputStream(bis))
+          : new JsonRecordSetIterator(bis, true);
+        for (Gedcomx expected : records) {
+          assertTrue(iterator.hasNext());
+          assertEquals(expected.getId(), iterator.next().getId());
+        }
+        assertFalse(iterator.hasNext());
+        if (metadataPos == -1) {
+          assertNull(iterator.getMetadata());
+        }
+        else {
+          assertEquals(metadata.getSourceDescriptions().size(), iterator.getMetadata().getSourceDescriptions().size());
+        }
+        iterator.close();
+      }
+    }
+  }
+
+  @Test
+  void jsonMetadataIsWrittenAsJsonRecordSetWriterWritesIt() throws Exception {
+    JsonMapper mapper = JsonMapper.builder().build();
+    for (int records : new int[]{0, 3}) {
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      JsonRecordSetWriter jsonWriter = new JsonRecordSetWriter(expected, null, false);
+      ByteArrayOutputStream actual = new ByteArrayOutputStream();
+      AsyncRecordSetWriter writer = new AsyncRecordSetWriter(actual, RecordSetIndex.Format.JSON, 2);
+      for (int i = 0; i < records; i++) {
+        Gedcomx record = new Gedcomx().id("r" + i).person(new Person().id("p" + i));
+        jsonWriter.writeRecord(record);
+        writer.writeRecord(record);
+      }
+      jsonWriter.close();
+      writer.close();
+
+      // the same members, including a null "metadata" (object nodes are equal regardless of the order of their members).
+      JsonNode document = mapper.readTree(actual.toByteArray());
+      assertEquals(mapper.readTree(expected.toByteArray()), document);
+      assertTrue(document.get(JsonRecordSetWriter.METADATA_STR).isNull());
+      if (records == 0) {
+        assertEquals(JsonRecordSetWriter.METADATA_STR, document.propertyNames().iterator().next());
+      }
+
+      JsonRecordSetIterator iterator = new JsonRecordSetIterator(new ByteArrayInputStream(actual.toByteArray()));
+      for (int i = 0; i < records; i++) {
+        assertEquals("r" + i, iterator.next().getId());
+      }
+      assertFalse(iterator.hasNext());
+      assertNull(iterator.getMetadata());
+      iterator.close();
+    }
+  }
+
+  @Test
+  void failureIsPropagated() throws Exception {
+    OutputStream failing = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("disk full");
+      }
+    };
+    AsyncRecordSetWriter writer = new AsyncRecordSetWriter(failing, RecordSetIndex.Format.JSON, 2, 2);
+    IOException e = assertThrows(IOException.class, () -> {
+      for (int i = 0; i < 1000; i++) {
+        writer.writeRecord(new Gedcomx().id("r" + i));
+      }
+      writer.close();
+    });
+    assertEquals("disk full", e.getMessage());
+    assertThrows(IOException.class, writer::close);
+    assertEquals(0, writer.getRecordsWritten());
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.util;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.conclusion.Person;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Class for testing the BlockRecordSetWriter and BlockRecordSetReader.
+ */
+class BlockRecordSetReaderTest {
+
+  @Test
+  void readWriteXml() throws Exception {
+    readWrite(RecordSetIndex.Format.XML);
+  }
+
+  @Test
+  void readWriteJson() throws Exception {
+    readWrite(RecordSetIndex.Format.JSON);
+  }
+
+  private void readWrite(RecordSetIndex.Format format) throws Exception {
+    List<Gedcomx> records = new ArrayList<>(JsonRecordSetIteratorTest.getRecordsFromRecordSetFile());
+    for (int i = 0; i < 200; i++) {
+      records.add(new Gedcomx().id("r" + i).person(new Person().id("p" + i)));
+    }
+    List<String> expectedIds = records.stream().map(Gedcomx::getId).collect(Collectors.toList());
+
+    File file = File.createTempFile("recordset", ".gxrs");
+    try {
+      BlockRecordSetWriter writer = new BlockRecordSetWriter(new FileOutputStream(file), format, 1000, 6);
+      for (int i = 0; i < records.size(); i++) {
+        writer.writeRecord(records.get(i));
+        if (i == 50) {
+          writer.setMetadata(TestRecordSetWriter.getMetadataFromFile());
+        }
+      }
+      writer.close();
+
+      try (BlockRecordSetReader reader = new BlockRecordSetReader(file.getPath())) {
+        checkContents(reader, format, expectedIds);
+      }
+
+      // Chop off the block index (as if the writer never got closed), so that the reader has to scan for sync markers.
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(raf.length() - 20);
+      }
+      try (BlockRecordSetReader reader = new BlockRecordSetReader(file.getPath())) {
+        checkContents(reader, format, expectedIds);
+      }
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  private static void checkContents(BlockRecordSetReader reader, RecordSetIndex.Format format, List<String> expectedIds) throws Exception {
+    assertEquals(format, reader.getFormat());
+    assertTrue(reader.getBlocks().size() > 10);
+    assertNotNull(reader.getMetadata());
+    assertFalse(reader.getMetadata().getSourceDescriptions().isEmpty());
+
+    try (Stream<Gedcomx> records = reader.records()) {
+      assertEquals(expectedIds, records.map(Gedcomx::getId).collect(Collectors.toList()));
+    }
+    try (Stream<Gedcomx> records = reader.records()) {
+      assertEquals(expectedIds, records.parallel().map(Gedcomx::getId).collect(Collectors.toList()));
+    }
+
+    // Split the file into arbitrary byte ranges; each record should be read exactly once.
+    for (int splits : new int[]{2, 7, 32}) {
+      List<String> ids = new ArrayList<>();
+      long splitSize = reader.getSize() / splits + 1;
+      for (long start = 0; start < reader.getSize(); start += splitSize) {
+        try (Stream<Gedcomx> records = reader.records(start, start + splitSize)) {
+          ids.addAll(records.parallel().map(Gedcomx::getId).collect(Collectors.toList()));
+        }
+      }
+      assertEquals(expectedIds, ids);
+    }
+  }
+}
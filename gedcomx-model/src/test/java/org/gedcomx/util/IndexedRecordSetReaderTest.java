@@ -0,0 +1,159 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.util;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.common.URI;
+import org.gedcomx.conclusion.Identifier;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.source.SourceDescription;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Class for testing the RecordSetIndex and IndexedRecordSetReader.
+ */
+class IndexedRecordSetReaderTest {
+
+  @Test
+  void xmlRecordSet() throws Exception {
+    List<Gedcomx> records = getRecords();
+    Gedcomx metadata = TestRecordSetWriter.getMetadataFromFile();
+    for (boolean metadataFirst : new boolean[]{true, false}) {
+      File file = File.createTempFile("recordset", ".xml");
+      File indexFile = File.createTempFile("recordset", ".idx");
+      try {
+        RecordSetWriter writer = new RecordSetWriter(new FileOutputStream(file));
+        writer.setIndexOutputStream(new FileOutputStream(indexFile));
+        if (metadataFirst) {
+          writer.setMetadata(metadata);
+        }
+        for (Gedcomx record : records) {
+          writer.writeRecord(record);
+        }
+        if (!metadataFirst) {
+          writer.setMetadata(metadata);
+        }
+        writer.close();
+
+        checkRecords(file, indexFile, records, metadata, RecordSetIndex.Format.XML);
+      }
+      finally {
+        file.delete();
+        indexFile.delete();
+      }
+    }
+  }
+
+  @Test
+  void jsonRecordSet() throws Exception {
+    List<Gedcomx> records = getRecords();
+    Gedcomx metadata = TestRecordSetWriter.getMetadataFromFile();
+    File file = File.createTempFile("recordset", ".json");
+    File indexFile = File.createTempFile("recordset", ".idx");
+    try {
+      JsonRecordSetWriter writer = new JsonRecordSetWriter(new FileOutputStream(file), metadata);
+      writer.setIndexOutputStream(new FileOutputStream(indexFile));
+      for (Gedcomx record : records) {
+        writer.writeRecord(record);
+      }
+      writer.close();
+
+      checkRecords(file, indexFile, records, metadata, RecordSetIndex.Format.JSON);
+
+      // The indexed file is still an ordinary RecordSet.
+      JsonRecordSetIterator iterator = new JsonRecordSetIterator(file.getPath());
+      int count = 0;
+      while (iterator.hasNext()) {
+        assertEquals(records.get(count++).getId(), iterator.next().getId());
+      }
+      assertEquals(records.size(), count);
+      iterator.close();
+    }
+    finally {
+      file.delete();
+      indexFile.delete();
+    }
+  }
+
+  @Test
+  void personIdentifiers() throws Exception {
+    RecordSetIndex index = RecordSetIndex.read(new ByteArrayInputStream(
+      "#gedcomx-recordset-index\t1\tjson\nR\t10\t5\tr1\thttp://id/1\thttp://id/2\nR\t20\t6\t\thttp://id/3\n".getBytes()));
+    assertEquals(10, index.getRecordById("r1").getOffset());
+    assertEquals(5, index.getRecordByPersonIdentifier("http://id/2").getLength());
+    assertEquals(20, index.getRecordByPersonIdentifier("http://id/3").getOffset());
+    assertEquals(1, index.getRecordIds().size());
+    assertNull(index.getMetadata());
+  }
+
+  @Test
+  void badIndex() {
+    assertThrows(java.io.IOException.class, () -> RecordSetIndex.read(new ByteArrayInputStream("not an index\n".getBytes())));
+  }
+
+  private static List<Gedcomx> getRecords() throws Exception {
+    List<Gedcomx> records = new ArrayList<>(JsonRecordSetIteratorTest.getRecordsFromRecordSetFile());
+    // Add a record about a person, so that there is a main person with identifiers to look it up by.
+    Person person = new Person().id("p1");
+    person.addIdentifier(new Identifier(new URI("https://familysearch.org/ark:/61903/1:1:ABCD-123")));
+    person.addIdentifier(new Identifier(new URI("https://familysearch.org/ark:/61903/1:1:ABCD-456")));
+    Gedcomx record = new Gedcomx().id("r_person");
+    record.addPerson(person);
+    record.addSourceDescription(new SourceDescription().id("sd1").about(URI.create("#p1")));
+    record.setDescriptionRef(URI.create("#sd1"));
+    records.add(1, record);
+    return records;
+  }
+
+  private static void checkRecords(File file, File indexFile, List<Gedcomx> records, Gedcomx metadata, RecordSetIndex.Format format) throws Exception {
+    try (IndexedRecordSetReader reader = new IndexedRecordSetReader(file.getPath(), indexFile.getPath())) {
+      assertEquals(format, reader.getIndex().getFormat());
+      List<String> expectedIds = new ArrayList<>();
+      // Read them in reverse order to make sure nothing depends on reading sequentially.
+      for (int i = records.size() - 1; i >= 0; i--) {
+        Gedcomx expected = records.get(i);
+        expectedIds.add(0, expected.getId());
+        Gedcomx actual = reader.getRecord(expected.getId());
+        assertNotNull(actual);
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getPersons().size(), actual.getPersons().size());
+        assertEquals(expected.getSourceDescriptions().size(), actual.getSourceDescriptions().size());
+
+        Person mainPerson = new DocMap(expected).getMainPerson();
+        assertEquals(expected.getId().equals("r_person"), mainPerson != null);
+        if (mainPerson != null) {
+          for (Identifier identifier : mainPerson.getIdentifiers()) {
+            assertEquals(expected.getId(), reader.getRecordByPersonIdentifier(identifier.getValue().toString()).getId());
+          }
+        }
+      }
+      assertEquals(expectedIds, new ArrayList<>(reader.getIndex().getRecordIds()));
+      assertNull(reader.getRecord("nonexistent"));
+      assertNull(reader.getRecordByPersonIdentifier("nonexistent"));
+      Gedcomx actualMetadata = reader.getMetadata();
+      assertNotNull(actualMetadata);
+      assertEquals(metadata.getSourceDescriptions().size(), actualMetadata.getSourceDescriptions().size());
+    }
+  }
+}
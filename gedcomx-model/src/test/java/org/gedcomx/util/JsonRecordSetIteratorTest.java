@@ -27,8 +27,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -132,6 +135,61 @@ public class JsonRecordSetIteratorTest {
     jsonRecordSetIterator.close();
   }
 
+  @Test
+  void bracesInStringValuesAndTrailingMetadata() throws Exception {
+    String json = "{\"records\":[" +
+      "{\"id\":\"r1\",\"persons\":[{\"id\":\"p1\",\"names\":[{\"nameForms\":[{\"fullText\":\"Brace } { ] [ , \\\"quoted\\\"\"}]}]}]}," +
+      "{\"id\":\"r2\",\"unknown\":{\"nested\":[1,2,{\"x\":\"}\"}]}}" +
+      "],\"id\":\"rs1\",\"metadata\":{\"id\":\"m1\"}}";
+
+    JsonRecordSetIterator iterator = new JsonRecordSetIterator(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    assertNull(iterator.getMetadata());    // Haven't hit it yet.
+    Gedcomx record1 = iterator.next();
+    assertEquals("r1", record1.getId());
+    assertEquals("Brace } { ] [ , \"quoted\"", record1.getPersons().get(0).getNames().get(0).getNameForms().get(0).getFullText());
+    assertEquals("r2", iterator.next().getId());
+    assertFalse(iterator.hasNext());
+    assertNull(iterator.next());
+    assertEquals("m1", iterator.getMetadata().getId());
+    assertEquals("rs1", iterator.getId());
+    iterator.close();
+  }
+
+  @Test
+  void emptyRecordSet() throws Exception {
+    JsonRecordSetIterator iterator = new JsonRecordSetIterator(new ByteArrayInputStream("{\"id\":\"rs1\",\"records\":[]}".getBytes(StandardCharsets.UTF_8)));
+    assertFalse(iterator.hasNext());
+    assertNull(iterator.next());
+    assertEquals("rs1", iterator.getId());
+    assertNull(iterator.getMetadata());
+    iterator.close();
+  }
+
+  @Test
+  void recordsStream() throws Exception {
+    StringBuilder json = new StringBuilder("{\"records\":[");
+    List<String> expectedIds = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      json.append(i > 0 ? "," : "").append("{\"id\":\"r").append(i).append("\"}");
+      expectedIds.add("r" + i);
+    }
+    json.append("]}");
+
+    for (int batchSize : new int[]{1, 7, 1000}) {
+      JsonRecordSetIterator iterator = new JsonRecordSetIterator(new ByteArrayInputStream(json.toString().getBytes(StandardCharsets.UTF_8)));
+      try (Stream<Gedcomx> records = iterator.records(batchSize)) {
+        assertEquals(expectedIds, records.parallel().map(Gedcomx::getId).collect(Collectors.toList()));
+      }
+      assertFalse(iterator.hasNext());
+    }
+
+    JsonRecordSetIterator iterator = new JsonRecordSetIterator(new ByteArrayInputStream(json.toString().getBytes(StandardCharsets.UTF_8)));
+    try (Stream<Gedcomx> records = iterator.records()) {
+      assertEquals(expectedIds.subList(0, 5), records.limit(5).map(Gedcomx::getId).collect(Collectors.toList()));
+    }
+    assertThrows(IllegalArgumentException.class, () -> iterator.records(0));
+  }
+
   public static List<Gedcomx> getRecordsFromRecordSetFile() throws IOException {
     // currently my input has to be xml until I can create a Json version.
     InputStream inputStream = ClassLoader.getSystemClassLoader().getResourceAsStream("gedcomx-recordset.xml");
@@ -22,6 +22,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.zip.GZIPOutputStream;
@@ -38,52 +39,61 @@ class JsonRecordSetWriterTest {
   @Test
   void recordSetWriterJson() throws Exception {
     for (boolean isGzipped : new boolean[]{false, true}) {
-      InputStream inputStream = getClass().getClassLoader().getResourceAsStream("gedcomx-recordset.json");
+      for (boolean pretty : new boolean[]{false, true}) {
+        recordSetWriterJson(isGzipped, pretty);
+      }
+    }
+  }
 
-      int numRecords = 0;
-      JsonRecordSetIterator jsonRecordSetIterator1 = new JsonRecordSetIterator(inputStream, false);
+  private void recordSetWriterJson(boolean isGzipped, boolean pretty) throws Exception {
+    InputStream inputStream = getClass().getClassLoader().getResourceAsStream("gedcomx-recordset.json");
 
-      ByteArrayOutputStream bos = new ByteArrayOutputStream();
-      OutputStream outputStream = isGzipped ? new GZIPOutputStream(bos) : bos;
+    int numRecords = 0;
+    JsonRecordSetIterator jsonRecordSetIterator1 = new JsonRecordSetIterator(inputStream, false);
 
-      Gedcomx metadata = TestRecordSetWriter.getMetadataFromFile();
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    OutputStream outputStream = isGzipped ? new GZIPOutputStream(bos) : bos;
 
-      JsonRecordSetWriter jsonRecordSetWriter = new JsonRecordSetWriter(outputStream, metadata);
+    Gedcomx metadata = TestRecordSetWriter.getMetadataFromFile();
 
-      Gedcomx record;
-      List<String> recordIds = new ArrayList<String>();
-      List<Gedcomx> records = new ArrayList<Gedcomx>();
+    JsonRecordSetWriter jsonRecordSetWriter = new JsonRecordSetWriter(outputStream, metadata, pretty);
 
-      String[] expectedRecordIds = new String[]{"r_14946444", "r_21837581269", "r_731503667"};
-      // Read a record from the json input file.
-      while ((record = jsonRecordSetIterator1.next()) != null) {
-        assertEquals(expectedRecordIds[numRecords++], record.getId());
+    Gedcomx record;
+    List<String> recordIds = new ArrayList<String>();
+    List<Gedcomx> records = new ArrayList<Gedcomx>();
 
-        // Try and write it to the json writer.
-        jsonRecordSetWriter.writeRecord(record);
+    String[] expectedRecordIds = new String[]{"r_14946444", "r_21837581269", "r_731503667"};
+    // Read a record from the json input file.
+    while ((record = jsonRecordSetIterator1.next()) != null) {
+      assertEquals(expectedRecordIds[numRecords++], record.getId());
 
-        records.add(record);
-        recordIds.add(record.getId());
-      }
-      jsonRecordSetIterator1.close();
+      // Try and write it to the json writer.
+      jsonRecordSetWriter.writeRecord(record);
 
-      assertEquals(3, jsonRecordSetWriter.getNumOfRecords());
+      records.add(record);
+      recordIds.add(record.getId());
+    }
+    jsonRecordSetIterator1.close();
 
-      jsonRecordSetWriter.close();
-      assertEquals(3, records.size());
+    assertEquals(3, jsonRecordSetWriter.getNumOfRecords());
 
-      // Now try and read back in from the JSON.
-      byte[] bytes = bos.toByteArray();
-      JsonRecordSetIterator jsonRecordSetIterator2 = new JsonRecordSetIterator(new ByteArrayInputStream(bytes), isGzipped);
-      for (int i = 0; i < numRecords; i++) {
-        record = jsonRecordSetIterator2.next();
-        assertNotNull(record);
-        assertEquals(recordIds.get(i), record.getId());
-      }
-      Gedcomx metadata2 = jsonRecordSetIterator2.getMetadata();
-      assertEquals(metadata2.getSourceDescription().getTitle().getValue(), metadata.getSourceDescription().getTitle().getValue());
-      assertNull(jsonRecordSetIterator2.next());
-      jsonRecordSetIterator2.close();
+    jsonRecordSetWriter.close();
+    assertEquals(3, records.size());
+
+    // Now try and read back in from the JSON.
+    byte[] bytes = bos.toByteArray();
+    if (!isGzipped) {
+      assertEquals(pretty, new String(bytes, StandardCharsets.UTF_8).contains("\n"));
+    }
+    JsonRecordSetIterator jsonRecordSetIterator2 = new JsonRecordSetIterator(new ByteArrayInputStream(bytes), isGzipped);
+    for (int i = 0; i < numRecords; i++) {
+      record = jsonRecordSetIterator2.next();
+      assertNotNull(record);
+      assertEquals(recordIds.get(i), record.getId());
     }
+    Gedcomx metadata2 = jsonRecordSetIterator2.getMetadata();
+    assertEquals(metadata2.getSourceDescription().getTitle().getValue(), metadata.getSourceDescription().getTitle().getValue());
+    assertNull(jsonRecordSetIterator2.next());
+    jsonRecordSetIterator2.close();
   }
 }
@@ -3,6 +3,9 @@ package org.gedcomx.util;
 import org.gedcomx.Gedcomx;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.gedcomx.agent.Agent;
 import org.gedcomx.common.ResourceReference;
 import org.gedcomx.common.URI;
@@ -15,6 +18,7 @@ import org.gedcomx.types.IdentifierType;
 import org.gedcomx.types.RelationshipType;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 
 /**
@@ -119,4 +123,98 @@ class TestDocMap {
     assertEquals("p2", docMap.getPerson(doc.getRelationships().get(0).getPerson2()).getId());
   }
 
+  @Test
+  void trackingChanges() {
+    Gedcomx doc = new Gedcomx();
+    Person p1 = new Person();
+    p1.setId("p1");
+    p1.addIdentifier(new Identifier(new URI("http://test.com/person1"), IdentifierType.Primary));
+    doc.addPerson(p1);
+
+    DocMap docMap = new DocMap(doc, true);
+    DocMap snapshot = new DocMap(doc);
+    assertSame(p1, docMap.getPerson("#p1"));
+
+    Person p2 = new Person();
+    p2.setId("p2");
+    doc.addPerson(p2);
+    Relationship relationship = new Relationship();
+    relationship.setId("r1");
+    relationship.setPerson1(new ResourceReference(new URI("#p1")));
+    relationship.setPerson2(new ResourceReference(new URI("#p2")));
+    doc.addRelationship(relationship);
+    Event event = new Event();
+    event.setId("e1");
+    doc.addEvent(event);
+    Document document = new Document();
+    document.setId("d1");
+    doc.addDocument(document);
+
+    assertSame(p2, docMap.getPerson("p2"));
+    assertNull(snapshot.getPerson("p2"));
+    assertSame(relationship, docMap.getRelationship("#r1"));
+    assertSame(event, docMap.getEvent(new URI("#e1")));
+    assertSame(document, docMap.getDocumentById("d1"));
+
+    doc.renameElement(p1, "p1a");
+    assertNull(docMap.getPerson("p1"));
+    assertSame(p1, docMap.getPerson("#p1a"));
+    assertSame(p1, docMap.getPerson("http://test.com/person1"));
+
+    assertTrue(doc.removeElement(p1));
+    assertNull(docMap.getPerson("p1a"));
+    assertNull(docMap.getPerson("http://test.com/person1"));
+    assertEquals(1, doc.getPersons().size());
+
+    doc.addSourceDescription(new SourceDescription().id("sd1").about(new URI("#p2")));
+    doc.setDescriptionRef(new URI("#sd1"));
+    assertSame(p2, docMap.getMainPerson());
+
+    doc.setPersons(new ArrayList<>());
+    assertNull(docMap.getPerson("p2"));
+
+    docMap.stopTracking();
+    doc.addPerson(p1);
+    assertNull(docMap.getPerson("p1a"));
+    docMap.update(doc);
+    assertSame(p1, docMap.getPerson("p1a"));
+  }
+
+  @Test
+  void trackingDuplicateIds() {
+    Gedcomx doc = new Gedcomx();
+    Person a = new Person().id("dup");
+    a.addIdentifier(new Identifier(new URI("http://test.com/dup"), IdentifierType.Primary));
+    Person b = new Person().id("dup");
+    b.addIdentifier(new Identifier(new URI("http://test.com/dup"), IdentifierType.Primary));
+    Person c = new Person().id("c");
+    doc.addPerson(a);
+    doc.addPerson(b);
+    doc.addPerson(c);
+
+    DocMap docMap = new DocMap(doc, true);
+    assertSame(b, docMap.getPerson("dup"));
+
+    // Removing the element that has the key leaves the other one with the same key, as a rebuild would.
+    assertTrue(doc.removeElement(b));
+    assertSame(a, docMap.getPerson("dup"));
+    assertSame(a, docMap.getPerson("http://test.com/dup"));
+    assertSame(new DocMap(doc).getPerson("dup"), docMap.getPerson("dup"));
+
+    // Renaming an element to an id that a later element has doesn't take that id over.
+    doc.addPerson(b);
+    doc.renameElement(b, "b");
+    assertSame(a, docMap.getPerson("dup"));
+    doc.renameElement(a, "c");
+    assertSame(c, docMap.getPerson("c"));
+    assertSame(new DocMap(doc).getPerson("c"), docMap.getPerson("c"));
+    assertNull(docMap.getPerson("dup"));
+    assertSame(b, docMap.getPerson("b"));
+
+    // Removing the one that was shadowed changes nothing.
+    assertTrue(doc.removeElement(a));
+    assertSame(c, docMap.getPerson("c"));
+    assertSame(b, docMap.getPerson("http://test.com/dup"));
+  }
+
 }
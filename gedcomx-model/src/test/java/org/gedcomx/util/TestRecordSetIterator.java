@@ -22,8 +22,18 @@ import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -112,4 +122,107 @@ class TestRecordSetIterator {
     // Close it before it reaches the end of the file to test close.
     recordIterator.close();
   }
+
+  @Test
+  void recordsStream() throws Exception {
+    InputStream inputStream = getClass().getClassLoader().getResourceAsStream("gedcomx-recordset.xml");
+    RecordSetIterator recordIterator = new XmlRecordSetIterator(inputStream);
+    try (Stream<Gedcomx> records = recordIterator.records(2)) {
+      assertEquals(Arrays.asList("r_14946444", "r_21837581269", "r_731503667"),
+                   records.parallel().map(Gedcomx::getId).collect(Collectors.toList()));
+    }
+
+    // Closing the stream closes the iterator (and its input stream).
+    AtomicBoolean closed = new AtomicBoolean(false);
+    inputStream = new FilterInputStream(getClass().getClassLoader().getResourceAsStream("gedcomx-recordset.xml")) {
+      @Override
+      public void close() throws IOException {
+        closed.set(true);
+        super.close();
+      }
+    };
+    recordIterator = new XmlRecordSetIterator(inputStream);
+    try (Stream<Gedcomx> records = recordIterator.records()) {
+      assertEquals("r_14946444", records.findFirst().map(Gedcomx::getId).orElse(null));
+      assertFalse(closed.get());
+    }
+    assertTrue(closed.get());
+  }
+
+  @Test
+  void pipelinedParserWithMetadata() throws Exception {
+    InputStream inputStream = getClass().getClassLoader().getResourceAsStream("gedcomx-recordset2.xml");
+    RecordSetIterator recordIterator = new PipelinedXmlRecordSetIterator(inputStream, 2);
+    assertTrue(recordIterator.hasNext());
+    Gedcomx record1 = recordIterator.next();
+    Gedcomx record2 = recordIterator.next();
+    Gedcomx record3 = recordIterator.next();
+    assertEquals("r_14946444", record1.getId());
+    assertEquals("r_21837581269", record2.getId());
+    assertEquals("r_731503667", record3.getId());
+    assertEquals(6, record3.getPersons().size());
+    assertFalse(recordIterator.hasNext());
+    assertNull(recordIterator.next());
+    // By the time we know there are no more records, we have seen the metadata.
+    assertNotNull(recordIterator.getMetadata());
+    recordIterator.close();
+  }
+
+  @Test
+  void pipelinedParserOrderedAndUnordered() throws Exception {
+    List<String> expectedIds = new ArrayList<>();
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    RecordSetWriter writer = new RecordSetWriter(bos);
+    List<Gedcomx> records = JsonRecordSetIteratorTest.getRecordsFromRecordSetFile();
+    for (int i = 0; i < 40; i++) {
+      for (Gedcomx record : records) {
+        String id = record.getId();
+        record.setId(id + "-" + i);
+        expectedIds.add(record.getId());
+        writer.writeRecord(record);
+        record.setId(id);
+      }
+    }
+    writer.close();
+    byte[] bytes = bos.toByteArray();
+
+    for (boolean ordered : new boolean[]{true, false}) {
+      RecordSetIterator recordIterator = new PipelinedXmlRecordSetIterator(new ByteArrayInputStream(bytes), 4, 8, ordered);
+      List<String> ids = new ArrayList<>();
+      while (recordIterator.hasNext()) {
+        ids.add(recordIterator.next().getId());
+      }
+      recordIterator.close();
+      if (ordered) {
+        assertEquals(expectedIds, ids);
+      }
+      else {
+        assertEquals(expectedIds.size(), ids.size());
+        assertEquals(new HashSet<>(expectedIds), new HashSet<>(ids));
+      }
+    }
+  }
+
+  @Test
+  void pipelinedParserPropagatesErrors() throws Exception {
+    String xml = "<records xmlns=\"http://gedcomx.org/v1/\"><record id=\"r1\"/><record id=\"r2\">";
+    RecordSetIterator recordIterator = new PipelinedXmlRecordSetIterator(new ByteArrayInputStream(xml.getBytes("UTF-8")), 2);
+    assertEquals("r1", recordIterator.next().getId());
+    assertThrows(RuntimeException.class, recordIterator::next);
+    recordIterator.close();
+  }
+
+  @Test
+  void pipelinedParserClose() throws Exception {
+    URL url = getClass().getClassLoader().getResource("gedcomx-recordset2.xml");
+    assertNotNull(url);
+
+    RecordSetIterator recordIterator = new PipelinedXmlRecordSetIterator(url.getFile(), 2);
+    assertTrue(recordIterator.hasNext());
+
+    // Close it before it reaches the end of the file.
+    recordIterator.close();
+    assertFalse(recordIterator.hasNext());
+    assertNull(recordIterator.next());
+  }
 }
@@ -28,11 +28,17 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.security.CodeSource;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 /**
  * A nice namespace prefix mapper that can be used to make XML and JSON output as pretty as it can be.
+ * <p>
+ * This class also keeps the registry of known namespace prefixes, JSON wrapper names and JSON types. The registry is
+ * an immutable snapshot that is replaced (copy-on-write) whenever something new is registered, so lookups are simple
+ * hash lookups that never lock, and registering a type that is already registered doesn't copy anything.
  *
  * @author Ryan Heaton
  */
@@ -41,13 +47,10 @@ public class GedcomNamespaceManager extends NamespacePrefixMapper {
   private final String defaultns;
   private final Map<String, String> ns2prefix;
 
-  private static boolean INITIALIZED = false;
-  private static final Map<String, String> KNOWN_PREFIXES = new HashMap<String, String>();
-  private static final Map<String, String> RUNTIME_VERSIONS = new HashMap<String, String>();
-  private static final Map<String, Class<?>> WRAPPED_JSON_TYPES_BY_NAME = new HashMap<String, Class<?>>();
-  private static final Map<QName, String> QNAME_WRAPPER_JSON_NAMES = new HashMap<QName, String>();
-  private static final Map<String, Class<?>> KNOWN_JSON_TYPES_BY_NAME = new HashMap<String, Class<?>>();
-  private static final Map<String, Class<?>> KNOWN_JSON_TYPES_BY_TYPE_ID = new HashMap<String, Class<?>>();
+  // Guards the replacement of the registry snapshot; readers don't use it.
+  private static final Object REGISTRY_LOCK = new Object();
+  private static final AtomicLong REGISTRY_VERSIONS = new AtomicLong();
+  private static volatile Registry REGISTRY = new Registry();
 
   public GedcomNamespaceManager(Class<?> rootClass) {
     this(getDefaultNamespace(rootClass));
@@ -84,7 +87,7 @@ public class GedcomNamespaceManager extends NamespacePrefixMapper {
   }
 
   public GedcomNamespaceManager(Map<String, String> overrides, String defaultns) {
-    Map<String, String> ns2prefix = getKnownPrefixes();
+    Map<String, String> ns2prefix = new HashMap<String, String>(getKnownPrefixes());
     if (overrides != null) {
       ns2prefix.putAll(overrides);
     }
@@ -107,43 +110,85 @@ public class GedcomNamespaceManager extends NamespacePrefixMapper {
     this(null, null);
   }
 
+  /**
+   * The version of the registry of known prefixes, wrapper names and JSON types. It changes whenever something is
+   * registered, so a cache of lookups can compare it to the version it was filled at to tell whether it's stale.
+   *
+   * @return The version of the registry.
+   */
+  public static long getRegistryVersion() {
+    return REGISTRY.version;
+  }
+
   /**
    * The known set of namespace-to-prefix mappings.
    *
-   * @return The known set of namespace-to-prefix mappings.
+   * @return The known (unmodifiable) set of namespace-to-prefix mappings.
    */
   public static Map<String, String> getKnownPrefixes() {
-    if (INITIALIZED) {
-      return KNOWN_PREFIXES;    // if already initialized no need to wait for a synchronized method to tell us it is initialized - just return it immediately.
+    return initializedRegistry().knownPrefixes;
+  }
+
+  private static Registry initializedRegistry() {
+    Registry registry = REGISTRY;
+    if (!registry.initialized) {
+      init(Thread.currentThread().getContextClassLoader());
+      registry = REGISTRY;
     }
-    init(Thread.currentThread().getContextClassLoader());
-    return KNOWN_PREFIXES;
+    return registry;
   }
 
-  protected static synchronized void init(ClassLoader loader) {
-    if (INITIALIZED) {
+  protected static void init(ClassLoader loader) {
+    if (REGISTRY.initialized) {
       return;
     }
 
-    Map<String, String> namespacePrefixes = new HashMap<String, String>();
-    namespacePrefixes.put("http://www.w3.org/2001/XMLSchema-instance", "xsi");
-    namespacePrefixes.put("http://gedcomx.org/record/v1/", "gxr");
-    namespacePrefixes.put("http://gedcomx.org/conclusion/v1/", "gxc");
+    synchronized (REGISTRY_LOCK) {
+      if (!REGISTRY.initialized) {
+        Map<String, String> namespacePrefixes = new HashMap<String, String>();
+        namespacePrefixes.put("http://www.w3.org/2001/XMLSchema-instance", "xsi");
+        namespacePrefixes.put("http://gedcomx.org/record/v1/", "gxr");
+        namespacePrefixes.put("http://gedcomx.org/conclusion/v1/", "gxc");
+        Set<String> describedModels = new HashSet<String>();
+        PrecomputedNames precomputed = new PrecomputedNames();
+
+        if (!"false".equals(System.getProperty("gedcomx.modelRegistries"))) {
+          try {
+            for (ModelRegistry modelRegistry : ServiceLoader.load(ModelRegistry.class, loader)) {
+              namespacePrefixes.putAll(modelRegistry.getNamespacePrefixes());
+              describedModels.addAll(modelRegistry.getModelClassNames());
+              precomputed.add(modelRegistry);
+            }
+          }
+          catch (ServiceConfigurationError e) {
+            //no-op; the models will be read from their annotations.
+          }
+        }
 
-    Map<QName, String> wrapperJsonNames = new HashMap<QName, String>();
-    Map<String, Class<?>> wrappedJsonTypes = new HashMap<String, Class<?>>();
+        namespacePrefixes.putAll(readNamespacePrefixes(loader, describedModels));
+        REGISTRY = REGISTRY.initialize(namespacePrefixes, new HashMap<QName, String>(), new HashMap<String, Class<?>>(), precomputed);
+      }
+    }
+  }
 
+  /**
+   * Read the namespace prefixes of the models that are listed in META-INF/gedcomx.models, but aren't described by a
+   * (generated) model registry, from their annotations.
+   */
+  private static Map<String, String> readNamespacePrefixes(ClassLoader loader, Set<String> describedModels) {
+    Map<String, String> namespacePrefixes = new HashMap<String, String>();
     Set<Class<?>> modelClasses = new HashSet<Class<?>>();
 
     try {
       Enumeration<URL> resources = loader.getResources("META-INF/gedcomx.models");
       while (resources.hasMoreElements()) {
-        try {
-          URL resource = resources.nextElement();
-          BufferedReader reader = new BufferedReader(new InputStreamReader(resource.openStream()));
+        URL resource = resources.nextElement();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.openStream()))) {
           String classname = reader.readLine();
           while (classname != null) {
-            modelClasses.add(Class.forName(classname, true, loader));
+            if (!describedModels.contains(classname)) {
+              modelClasses.add(Class.forName(classname, true, loader));
+            }
             classname = reader.readLine();
           }
         }
@@ -163,10 +208,7 @@ public class GedcomNamespaceManager extends NamespacePrefixMapper {
       }
     }
 
-    KNOWN_PREFIXES.putAll(namespacePrefixes);
-    QNAME_WRAPPER_JSON_NAMES.putAll(wrapperJsonNames);
-    WRAPPED_JSON_TYPES_BY_NAME.putAll(wrappedJsonTypes);
-    INITIALIZED = true;
+    return namespacePrefixes;
   }
 
   public static String nameFromQName(String namespaceUri, String localPart) {
@@ -201,8 +243,7 @@ public class GedcomNamespaceManager extends NamespacePrefixMapper {
    * @return The json wrapper name, or null if none.
    */
   public static String getJsonNameForWrapperName(QName wrapperName) {
-    init(Thread.currentThread().getContextClassLoader());
-    return QNAME_WRAPPER_JSON_NAMES.get(wrapperName);
+    return initializedRegistry().wrapperJsonNames.get(wrapperName);
   }
 
   /**
@@ -212,14 +253,7 @@ public class GedcomNamespaceManager extends NamespacePrefixMapper {
    * @return The wrapper qname.
    */
   public static QName findWrapperNameForJsonName(String jsonName) {
-    init(Thread.currentThread().getContextClassLoader());
-    for (Map.Entry<QName, String> entry : QNAME_WRAPPER_JSON_NAMES.entrySet()) {
-      if (entry.getValue().equals(jsonName)) {
-        return entry.getKey();
-      }
-    }
-
-    return null;
+    return initializedRegistry().wrapperNamesByJsonName.get(jsonName);
   }
 
   /**
@@ -229,8 +263,7 @@ public class GedcomNamespaceManager extends NamespacePrefixMapper {
    * @return The wrapped type.
    */
   public static Class<?> getWrappedTypeForJsonName(String jsonName) {
-    init(Thread.currentThread().getContextClassLoader());
-    return WRAPPED_JSON_TYPES_BY_NAME.get(jsonName);
+    return initializedRegistry().wrappedJsonTypesByName.get(jsonName);
   }
 
   /**
@@ -239,7 +272,14 @@ public class GedcomNamespaceManager extends NamespacePrefixMapper {
    * @param type the types to register.
    */
   public static void registerKnownJsonTypes(Class<?>... type) {
-    Stream.of(type).forEach(GedcomNamespaceManager::registerKnownJsonType);
+    Registry registry = initializedRegistry();
+    if (Stream.of(type).allMatch(registry::isCurrent)) {
+      return;
+    }
+
+    synchronized (REGISTRY_LOCK) {
+      REGISTRY = REGISTRY.register(type);
+    }
   }
 
   /**
@@ -248,11 +288,7 @@ public class GedcomNamespaceManager extends NamespacePrefixMapper {
    * @param type the type to register.
    */
   public static void registerKnownJsonType(Class<?> type) {
-    String jsonName = getJsonName(type);
-    if (jsonName != null) {
-      KNOWN_JSON_TYPES_BY_NAME.put(jsonName, type);
-    }
-    KNOWN_JSON_TYPES_BY_TYPE_ID.put(getTypeIdName(type), type);
+    registerKnownJsonTypes(type);
   }
 
   /**
@@ -262,6 +298,10 @@ public class GedcomNamespaceManager extends NamespacePrefixMapper {
    * @return The json name.
    */
   public static String getJsonName(Class<?> type) {
+    return initializedRegistry().jsonNameOf(type);
+  }
+
+  static String readJsonName(Class<?> type) {
     if (type.isAnnotationPresent(JsonElementWrapper.class)) {
       //support custom json element name
       JsonElementWrapper ext = type.getAnnotation(JsonElementWrapper.class);
@@ -299,6 +339,10 @@ public class GedcomNamespaceManager extends NamespacePrefixMapper {
    * @return The type id.
    */
   public static String getTypeIdName(Class<?> type) {
+    return initializedRegistry().typeIdOf(type);
+  }
+
+  static String readTypeIdName(Class<?> type) {
     String ns = "";
     if (type.getPackage() != null && type.getPackage().isAnnotationPresent(XmlSchema.class)) {
       ns = type.getPackage().getAnnotation(XmlSchema.class).namespace();
@@ -326,7 +370,7 @@ public class GedcomNamespaceManager extends NamespacePrefixMapper {
    * @return The known type, or null if not known.
    */
   public static Class<?> getKnownJsonType(String jsonName) {
-    return KNOWN_JSON_TYPES_BY_NAME.get(jsonName);
+    return REGISTRY.knownJsonTypesByName.get(jsonName);
   }
 
   /**
@@ -336,7 +380,149 @@ public class GedcomNamespaceManager extends NamespacePrefixMapper {
    * @return The known type, or null if not known.
    */
   public static Class<?> getKnownTypeById(String typeId) {
-    return KNOWN_JSON_TYPES_BY_TYPE_ID.get(typeId);
+    return REGISTRY.knownJsonTypesByTypeId.get(typeId);
+  }
+
+  /**
+   * An immutable snapshot of the registry. Each "modification" returns a new snapshot, which is then published through
+   * the volatile REGISTRY field.
+   */
+  private static final class Registry {
+    private final long version = REGISTRY_VERSIONS.incrementAndGet();
+    private final boolean initialized;
+    private final Map<String, String> knownPrefixes;
+    private final Map<QName, String> wrapperJsonNames;
+    private final Map<String, QName> wrapperNamesByJsonName;
+    private final Map<String, Class<?>> wrappedJsonTypesByName;
+    private final Map<String, Class<?>> knownJsonTypesByName;
+    private final Map<String, Class<?>> knownJsonTypesByTypeId;
+    // The names of each registered type (the JSON name may be null).
+    private final Map<Class<?>, String> jsonNamesByType;
+    private final Map<Class<?>, String> typeIdsByType;
+    // The names of the types described by the model registries.
+    private final PrecomputedNames precomputed;
+
+    private Registry() {
+      this(false, new HashMap<String, String>(), new HashMap<QName, String>(), new HashMap<String, Class<?>>(),
+           new HashMap<String, Class<?>>(), new HashMap<String, Class<?>>(), new HashMap<Class<?>, String>(), new HashMap<Class<?>, String>(),
+           new PrecomputedNames());
+    }
+
+    private Registry(boolean initialized, Map<String, String> knownPrefixes, Map<QName, String> wrapperJsonNames,
+                     Map<String, Class<?>> wrappedJsonTypesByName, Map<String, Class<?>> knownJsonTypesByName,
+                     Map<String, Class<?>> knownJsonTypesByTypeId, Map<Class<?>, String> jsonNamesByType,
+                     Map<Class<?>, String> typeIdsByType, PrecomputedNames precomputed) {
+      this.initialized = initialized;
+      this.knownPrefixes = Collections.unmodifiableMap(knownPrefixes);
+      this.wrapperJsonNames = Collections.unmodifiableMap(wrapperJsonNames);
+      Map<String, QName> wrapperNamesByJsonName = new HashMap<String, QName>();
+      for (Map.Entry<QName, String> entry : wrapperJsonNames.entrySet()) {
+        wrapperNamesByJsonName.put(entry.getValue(), entry.getKey());
+      }
+      this.wrapperNamesByJsonName = Collections.unmodifiableMap(wrapperNamesByJsonName);
+      this.wrappedJsonTypesByName = Collections.unmodifiableMap(wrappedJsonTypesByName);
+      this.knownJsonTypesByName = Collections.unmodifiableMap(knownJsonTypesByName);
+      this.knownJsonTypesByTypeId = Collections.unmodifiableMap(knownJsonTypesByTypeId);
+      this.jsonNamesByType = Collections.unmodifiableMap(jsonNamesByType);
+      this.typeIdsByType = Collections.unmodifiableMap(typeIdsByType);
+      this.precomputed = precomputed;
+    }
+
+    private Registry initialize(Map<String, String> knownPrefixes, Map<QName, String> wrapperJsonNames, Map<String, Class<?>> wrappedJsonTypesByName,
+                                PrecomputedNames precomputed) {
+      return new Registry(true, knownPrefixes, wrapperJsonNames, wrappedJsonTypesByName, new HashMap<String, Class<?>>(this.knownJsonTypesByName),
+                          new HashMap<String, Class<?>>(this.knownJsonTypesByTypeId), new HashMap<Class<?>, String>(this.jsonNamesByType),
+                          new HashMap<Class<?>, String>(this.typeIdsByType), precomputed);
+    }
+
+    private String jsonNameOf(Class<?> type) {
+      if (this.typeIdsByType.containsKey(type)) {
+        return this.jsonNamesByType.get(type);
+      }
+      else if (this.precomputed.describes(type)) {
+        return this.precomputed.getJsonName(type);
+      }
+      return readJsonName(type);
+    }
+
+    private String typeIdOf(Class<?> type) {
+      String typeId = this.typeIdsByType.get(type);
+      if (typeId == null && this.precomputed.describes(type)) {
+        typeId = this.precomputed.getTypeId(type);
+      }
+      return typeId != null ? typeId : readTypeIdName(type);
+    }
+
+    /**
+     * Whether the given type is registered and its names still resolve to it (a later registration of another type with
+     * the same name takes the name over, and registering this type again takes it back).
+     */
+    private boolean isCurrent(Class<?> type) {
+      String typeId = this.typeIdsByType.get(type);
+      if (typeId == null || this.knownJsonTypesByTypeId.get(typeId) != type) {
+        return false;
+      }
+      String jsonName = this.jsonNamesByType.get(type);
+      return jsonName == null || this.knownJsonTypesByName.get(jsonName) == type;
+    }
+
+    private Registry register(Class<?>... types) {
+      Map<String, Class<?>> knownJsonTypesByName = new HashMap<String, Class<?>>(this.knownJsonTypesByName);
+      Map<String, Class<?>> knownJsonTypesByTypeId = new HashMap<String, Class<?>>(this.knownJsonTypesByTypeId);
+      Map<Class<?>, String> jsonNamesByType = new HashMap<Class<?>, String>(this.jsonNamesByType);
+      Map<Class<?>, String> typeIdsByType = new HashMap<Class<?>, String>(this.typeIdsByType);
+      for (Class<?> type : types) {
+        String jsonName = jsonNameOf(type);
+        if (jsonName != null) {
+          knownJsonTypesByName.put(jsonName, type);
+        }
+        String typeId = typeIdOf(type);
+        knownJsonTypesByTypeId.put(typeId, type);
+        jsonNamesByType.put(type, jsonName);
+        typeIdsByType.put(type, typeId);
+      }
+      return new Registry(this.initialized, this.knownPrefixes, this.wrapperJsonNames, this.wrappedJsonTypesByName,
+                          knownJsonTypesByName, knownJsonTypesByTypeId, jsonNamesByType, typeIdsByType,
+                          this.precomputed);
+    }
+  }
+
+  /**
+   * The names of the types described by the model registries, keyed by class name. A registry only vouches for the
+   * classes that come from the same place (jar or directory) as the registry itself: a class found elsewhere (such as
+   * one recompiled without its registry, or another version of it earlier on the class path) may not have the
+   * annotations the registry was generated from, so its names are read from its annotations instead.
+   */
+  static final class PrecomputedNames {
+    private final Map<String, String> jsonNames = new HashMap<String, String>();
+    private final Map<String, String> typeIds = new HashMap<String, String>();
+    private final Map<String, String> sources = new HashMap<String, String>();
+
+    void add(ModelRegistry registry) {
+      String source = sourceOf(registry.getClass());
+      for (Map.Entry<String, String> typeId : registry.getTypeIds().entrySet()) {
+        this.typeIds.put(typeId.getKey(), typeId.getValue());
+        this.jsonNames.put(typeId.getKey(), registry.getJsonNames().get(typeId.getKey()));
+        this.sources.put(typeId.getKey(), source);
+      }
+    }
+
+    boolean describes(Class<?> type) {
+      return this.typeIds.containsKey(type.getName()) && Objects.equals(this.sources.get(type.getName()), sourceOf(type));
+    }
+
+    String getJsonName(Class<?> type) {
+      return this.jsonNames.get(type.getName());
+    }
+
+    String getTypeId(Class<?> type) {
+      return this.typeIds.get(type.getName());
+    }
+
+    private static String sourceOf(Class<?> type) {
+      CodeSource codeSource = type.getProtectionDomain().getCodeSource();
+      return codeSource == null || codeSource.getLocation() == null ? null : codeSource.getLocation().toExternalForm();
+    }
   }
 
 }
@@ -0,0 +1,61 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.rt;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Metadata about the model classes of a module, computed when the module is built, so that the
+ * {@link GedcomNamespaceManager} needn't load the model classes and reflect on their annotations at runtime.
+ * <p>
+ * Implementations are generated by the annotation processor in the <code>gedcomx-model-processor</code> module, and are
+ * found with a {@link java.util.ServiceLoader}. Setting the system property <code>gedcomx.modelRegistries</code> to
+ * <code>false</code> ignores them, so that everything is read from the annotations again.
+ */
+public interface ModelRegistry {
+
+  /**
+   * The names of the model classes described by this registry (those listed in the module's
+   * <code>META-INF/gedcomx.models</code>).
+   *
+   * @return The names of the model classes described by this registry.
+   */
+  Set<String> getModelClassNames();
+
+  /**
+   * The prefixes of the namespaces of the models, as defined by their {@link MediaTypeDefinition}.
+   *
+   * @return The prefixes of the namespaces of the models, keyed by namespace.
+   */
+  Map<String, String> getNamespacePrefixes();
+
+  /**
+   * The JSON names of the module's types (see {@link GedcomNamespaceManager#getJsonName(Class)}). Types without a JSON
+   * name are not included.
+   *
+   * @return The JSON names of the module's types, keyed by class name.
+   */
+  Map<String, String> getJsonNames();
+
+  /**
+   * The type ids of the module's types (see {@link GedcomNamespaceManager#getTypeIdName(Class)}).
+   *
+   * @return The type ids of the module's types, keyed by class name.
+   */
+  Map<String, String> getTypeIds();
+
+}
@@ -30,10 +30,10 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBElement;
 import jakarta.xml.bind.JAXBException;
-import jakarta.xml.bind.Marshaller;
 import jakarta.xml.bind.annotation.XmlRootElement;
 import jakarta.xml.bind.annotation.XmlSchema;
-import org.gedcomx.rt.json.GedcomJacksonModule;
+import org.gedcomx.rt.json.JsonMapperRegistry;
+import org.gedcomx.rt.xml.JaxbContextRegistry;
 import org.w3c.dom.Document;
 import tools.jackson.databind.SerializationFeature;
 import tools.jackson.databind.json.JsonMapper;
@@ -50,12 +50,12 @@ public class SerializationUtil {
   }
 
   public static <C> C processThroughXml(Object reference, Class<? extends C> instanceClass, SerializationProcessListener... listeners) throws JAXBException, UnsupportedEncodingException {
-    return processThroughXml(reference, instanceClass, JAXBContext.newInstance(instanceClass), listeners);
+    return processThroughXml(reference, instanceClass, JaxbContextRegistry.getContext(instanceClass), listeners);
   }
 
   public static <C> C processThroughXml(Object reference, Class<? extends C> instanceClass, JAXBContext context, SerializationProcessListener... listeners) throws JAXBException, UnsupportedEncodingException {
     byte[] out = toXmlStream(reference, instanceClass, context, listeners);
-    JAXBElement<? extends C> element = context.createUnmarshaller().unmarshal(new StreamSource(new ByteArrayInputStream(out)), instanceClass);
+    JAXBElement<? extends C> element = JaxbContextRegistry.withUnmarshaller(context, unmarshaller -> unmarshaller.unmarshal(new StreamSource(new ByteArrayInputStream(out)), instanceClass));
     return element.getValue();
   }
 
@@ -68,11 +68,11 @@ public class SerializationUtil {
   }
 
   public static <C> byte[] toXmlStream(Object reference, Class<? extends C> instanceClass, SerializationProcessListener... listeners) throws JAXBException {
-    return toXmlStream(reference, instanceClass, JAXBContext.newInstance(instanceClass), listeners);
+    return toXmlStream(reference, instanceClass, JaxbContextRegistry.getContext(instanceClass), listeners);
   }
 
   public static <C> void writeXml(Object reference, Class<? extends C> instanceClass, OutputStream out) throws JAXBException {
-    writeXml(reference, instanceClass, JAXBContext.newInstance(instanceClass), out);
+    writeXml(reference, instanceClass, JaxbContextRegistry.getContext(instanceClass), out);
   }
 
   public static <C> byte[] toXmlStream(Object reference, Class<? extends C> instanceClass, JAXBContext context, SerializationProcessListener... listeners) throws JAXBException {
@@ -92,8 +92,6 @@ public class SerializationUtil {
 
   @SuppressWarnings ( {"unchecked"} )
   public static <C> void writeXml(Object reference, Class<? extends C> instanceClass, JAXBContext context, OutputStream out) throws JAXBException {
-    Marshaller marshaller = context.createMarshaller();
-    marshaller.setProperty("jaxb.formatted.output", Boolean.TRUE);
     Object el = isRootElement(instanceClass) ? reference : null;
     if (el == null) {
       String ns = "";
@@ -102,8 +100,11 @@ public class SerializationUtil {
       }
       el = new JAXBElement(new QName(ns, instanceClass.getSimpleName()), instanceClass, reference);
     }
-    marshaller.setProperty("org.glassfish.jaxb.namespacePrefixMapper", new GedcomNamespaceManager(instanceClass));
-    marshaller.marshal(el, out);
+    Object element = el;
+    JaxbContextRegistry.withMarshaller(context, instanceClass, true, false, marshaller -> {
+      marshaller.marshal(element, out);
+      return null;
+    });
   }
 
   private static <C> boolean isRootElement(Class<? extends C> instanceClass) {
@@ -143,7 +144,7 @@ public class SerializationUtil {
   }
 
   public static <C> C processThroughJson(Object reference, Class<? extends C> instanceClass, SerializationProcessListener... listeners) {
-    return processThroughJson(reference, instanceClass, GedcomJacksonModule.createJsonMapper(instanceClass), listeners);
+    return processThroughJson(reference, instanceClass, JsonMapperRegistry.getJsonMapper(instanceClass), listeners);
   }
 
   public static <C> C processThroughJson(Object reference, Class<? extends C> instanceClass, JsonMapper mapper, SerializationProcessListener... listeners) {
@@ -159,12 +160,48 @@ public class SerializationUtil {
     writeJson(reference, reference.getClass(), out);
   }
 
+  /**
+   * Write the given object as JSON, excluding null values.
+   *
+   * @param reference the object to write.
+   * @param pretty whether to pretty-print the JSON (or write it compactly).
+   * @param out the stream to write to.
+   */
+  public static void writeJson(Object reference, boolean pretty, OutputStream out) {
+    writeJson(reference, reference.getClass(), pretty, out);
+  }
+
+  /**
+   * Write the given object as JSON, excluding null values.
+   *
+   * @param reference the object to write.
+   * @param pretty whether to pretty-print the JSON (or write it compactly).
+   * @return the JSON.
+   */
+  public static byte[] toJsonStream(Object reference, boolean pretty) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeJson(reference, pretty, out);
+    return out.toByteArray();
+  }
+
   public static <C> byte[] toJsonStream(Object reference, Class<? extends C> instanceClass, SerializationProcessListener... listeners) {
-    return toJsonStream(reference, instanceClass, GedcomJacksonModule.createJsonMapper(instanceClass), listeners);
+    return toJsonStream(reference, instanceClass, JsonMapperRegistry.getJsonMapper(instanceClass), listeners);
   }
 
   public static <C> void writeJson(Object reference, Class<? extends C> instanceClass, OutputStream out) {
-    writeJson(reference, instanceClass, GedcomJacksonModule.createJsonMapper(instanceClass), out);
+    writeJson(reference, instanceClass, JsonMapperRegistry.getJsonMapper(instanceClass), out);
+  }
+
+  /**
+   * Write the given object as JSON, using the registered mapper for the given class and excluding null values.
+   *
+   * @param reference the object to write.
+   * @param instanceClass the class of the object.
+   * @param pretty whether to pretty-print the JSON (or write it compactly).
+   * @param out the stream to write to.
+   */
+  public static <C> void writeJson(Object reference, Class<? extends C> instanceClass, boolean pretty, OutputStream out) {
+    JsonMapperRegistry.getWriter(instanceClass, pretty, JsonInclude.Include.NON_NULL).writeValue(out, reference);
   }
 
   protected static <C> byte[] toJsonStream(Object reference, Class<? extends C> instanceClass, JsonMapper mapper, SerializationProcessListener... listeners) {
@@ -184,14 +221,18 @@ public class SerializationUtil {
     return out.toByteArray();
   }
 
+  /**
+   * Write the given object as JSON using (a copy of) the given mapper, excluding null values. The JSON is pretty-printed
+   * only if the mapper is configured to indent its output.
+   *
+   * @param reference the object to write.
+   * @param instanceClass the class of the object.
+   * @param mapper the mapper.
+   * @param out the stream to write to.
+   */
   public static <C> void writeJson(Object reference, Class<? extends C> instanceClass, JsonMapper mapper, OutputStream out) {
-    GedcomNamespaceManager.registerKnownJsonType(instanceClass);
-    mapper.rebuild()
-      .enable(SerializationFeature.INDENT_OUTPUT)
-      .changeDefaultPropertyInclusion(
-        incl -> JsonInclude.Value.construct(JsonInclude.Include.NON_NULL, JsonInclude.Include.NON_NULL))
-      .build()
-      .writeValue(out, reference);
+    boolean pretty = mapper.serializationConfig().isEnabled(SerializationFeature.INDENT_OUTPUT);
+    JsonMapperRegistry.getWriter(mapper, instanceClass, pretty, JsonInclude.Include.NON_NULL).writeValue(out, reference);
   }
 
   public static ObjectNode toJsonNode(Object reference) {
@@ -199,7 +240,7 @@ public class SerializationUtil {
   }
 
   public static ObjectNode toJsonNode(Object reference, Class<?> instanceClass) {
-    return toJsonNode(reference, instanceClass, GedcomJacksonModule.createJsonMapper(instanceClass));
+    return toJsonNode(reference, instanceClass, JsonMapperRegistry.getJsonMapper(instanceClass));
   }
 
   public static ObjectNode toJsonNode(Object reference, Class<?> instanceClass, JsonMapper mapper) {
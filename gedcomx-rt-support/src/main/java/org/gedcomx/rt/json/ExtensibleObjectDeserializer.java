@@ -17,6 +17,8 @@ package org.gedcomx.rt.json;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.XMLConstants;
 import javax.xml.namespace.QName;
@@ -38,6 +40,12 @@ import tools.jackson.databind.deser.bean.BeanDeserializer;
  */
 public class ExtensibleObjectDeserializer extends BeanDeserializer {
 
+  // The most unknown property names to remember; documents can have any number of them, so the cache is bounded.
+  private static final int MAX_CACHED_PROPERTIES = 1024;
+
+  // How each unknown property is handled, resolved once per registry version (see GedcomNamespaceManager).
+  private volatile PropertyCache propertyCache = new PropertyCache(-1);
+
   public ExtensibleObjectDeserializer(BeanDeserializer src) {
     super(src);
   }
@@ -54,9 +62,10 @@ public class ExtensibleObjectDeserializer extends BeanDeserializer {
       return;
     }
 
+    UnknownProperty property = getUnknownProperty(propName);
     if (beanOrClass instanceof SupportsExtensionElements target) {
       //first check if it's a known json type
-      Class<?> type = GedcomNamespaceManager.getKnownJsonType(propName);
+      Class<?> type = property.knownType;
       if (type != null) {
         //it's a known json type.
         if (HasJsonKey.class.isAssignableFrom(type)) {
@@ -73,12 +82,11 @@ public class ExtensibleObjectDeserializer extends BeanDeserializer {
         return;
       }
       else {
-        QName wrapper = getWrapperName(propName);
-        type = GedcomNamespaceManager.getWrappedTypeForJsonName(propName);
+        type = property.wrappedType;
         if (type != null) {
           List<?> objects = readArrayOf(type, jp);
           for (Object ext : objects) {
-            target.addExtensionElement(new JAXBElement(wrapper, type, ext));
+            target.addExtensionElement(new JAXBElement(property.name, type, ext));
           }
           return;
         }
@@ -86,30 +94,53 @@ public class ExtensibleObjectDeserializer extends BeanDeserializer {
     }
 
     if (beanOrClass instanceof SupportsExtensionAttributes && jp.currentToken().isScalarValue()) {
-      ((SupportsExtensionAttributes) beanOrClass).addExtensionAttribute(getWrapperName(propName), jp.getString());
+      ((SupportsExtensionAttributes) beanOrClass).addExtensionAttribute(property.name, jp.getString());
       return;
     }
 
     jp.skipChildren();
   }
 
-  private QName getWrapperName(String propName) {
+  private UnknownProperty getUnknownProperty(String propName) {
+    // Read the version before resolving, so that anything registered meanwhile makes the cache stale.
+    long version = GedcomNamespaceManager.getRegistryVersion();
+    PropertyCache cache = this.propertyCache;
+    if (cache.version != version) {
+      cache = new PropertyCache(version);
+      this.propertyCache = cache;
+    }
+
+    UnknownProperty property = cache.properties.get(propName);
+    if (property == null) {
+      property = new UnknownProperty(propName);
+      if (cache.properties.size() < MAX_CACHED_PROPERTIES) {
+        cache.properties.putIfAbsent(propName, property);
+      }
+    }
+    return property;
+  }
+
+  private static QName getWrapperName(String propName) {
     QName qname = GedcomNamespaceManager.findWrapperNameForJsonName(propName);
 
     if (qname == null && propName.indexOf(':') >= 0) {
       //if the propname has a ':', we'll treat it as a qname, because all qnames I know have a ':' in them.
-      List<String> knownNS = new ArrayList<>(GedcomNamespaceManager.getKnownPrefixes().keySet());
-      knownNS.add(XMLConstants.XML_NS_URI + "#");
-      for (String ns : knownNS) {
-        if (propName.startsWith(ns)) {
-          String nsURI = propName.substring(0, ns.length());
-          String localPart = propName.substring(ns.length());
-          if (!localPart.isEmpty()) {
-            qname = new QName(nsURI, localPart);
-          }
+      String ns = null;
+      for (String knownNS : GedcomNamespaceManager.getKnownPrefixes().keySet()) {
+        if (propName.startsWith(knownNS)) {
+          ns = knownNS;
           break;
         }
       }
+      if (ns == null && propName.startsWith(XMLConstants.XML_NS_URI + "#")) {
+        ns = XMLConstants.XML_NS_URI + "#";
+      }
+      if (ns != null) {
+        String localPart = propName.substring(ns.length());
+        if (!localPart.isEmpty()) {
+          qname = new QName(ns, localPart);
+        }
+      }
 
       if (qname == null && propName.indexOf('#') > 0) {
         //well, it wasn't a known namespace; let's try separating ns from local part with a #
@@ -165,4 +196,32 @@ public class ExtensibleObjectDeserializer extends BeanDeserializer {
     }
   }
 
+  /**
+   * How to handle an unknown property: as a known JSON type, as a wrapped type, or (for scalar values) as an extension
+   * attribute with the given name.
+   */
+  private static final class UnknownProperty {
+    private final Class<?> knownType;
+    private final Class<?> wrappedType;
+    private final QName name;
+
+    private UnknownProperty(String propName) {
+      this.knownType = GedcomNamespaceManager.getKnownJsonType(propName);
+      this.wrappedType = this.knownType == null ? GedcomNamespaceManager.getWrappedTypeForJsonName(propName) : null;
+      this.name = getWrapperName(propName);
+    }
+  }
+
+  /**
+   * The unknown properties resolved at a registry version.
+   */
+  private static final class PropertyCache {
+    private final long version;
+    private final ConcurrentMap<String, UnknownProperty> properties = new ConcurrentHashMap<>();
+
+    private PropertyCache(long version) {
+      this.version = version;
+    }
+  }
+
 }
@@ -44,7 +44,9 @@ import tools.jackson.databind.type.CollectionType;
  * As an alternative, the {@link #createJsonMapper(Class[])} and
  * {@link #createJsonMapperBuilder(Class[])} methods will perform class registration for you, prior to returning the
  * corresponding Jackson mapper object. Some additional configuration is also performed by these methods, such as
- * enabling pretty printing and excluding null values from serialization.
+ * enabling pretty printing and excluding null values from serialization. Use
+ * {@link #createJsonMapper(boolean, Class[])} or {@link #createJsonMapperBuilder(boolean, Class[])} with
+ * {@code pretty} set to {@code false} for compact output, which is considerably smaller and faster to write.
  * <p>
  * Manual module registration can be performed as follows: {@code JsonMapper.builder().addModule(new GedcomJacksonModule()).build()}<br>
  * Automatic module registration can be performed as follows: {@code JsonMapper.builder().findAndAddModules().build()}.
@@ -60,7 +62,18 @@ public class GedcomJacksonModule extends JacksonModule {
    * @return The JSON mapper.
    */
   public static JsonMapper createJsonMapper(Class<?>... classes) {
-    return createJsonMapperBuilder(classes).build();
+    return createJsonMapper(true, classes);
+  }
+
+  /**
+   * Creates a JSON mapper given the specified context classes.
+   *
+   * @param pretty whether the mapper should pretty-print its output (or write compact JSON).
+   * @param classes the context classes.
+   * @return The JSON mapper.
+   */
+  public static JsonMapper createJsonMapper(boolean pretty, Class<?>... classes) {
+    return createJsonMapperBuilder(pretty, classes).build();
   }
 
   /**
@@ -70,11 +83,22 @@ public class GedcomJacksonModule extends JacksonModule {
    * @return The JSON mapper builder.
    */
   public static JsonMapper.Builder createJsonMapperBuilder(Class<?>... classes) {
+    return createJsonMapperBuilder(true, classes);
+  }
+
+  /**
+   * Creates a JSON mapper builder given the specified context classes.
+   *
+   * @param pretty whether the mapper should pretty-print its output (or write compact JSON).
+   * @param classes the context classes.
+   * @return The JSON mapper builder.
+   */
+  public static JsonMapper.Builder createJsonMapperBuilder(boolean pretty, Class<?>... classes) {
     GedcomNamespaceManager.registerKnownJsonTypes(classes);
 
     return JsonMapper.builder()
       .annotationIntrospector(new JacksonAnnotationIntrospector())
-      .enable(SerializationFeature.INDENT_OUTPUT)
+      .configure(SerializationFeature.INDENT_OUTPUT, pretty)
       .changeDefaultPropertyInclusion(
         incl -> JsonInclude.Value.construct(JsonInclude.Include.NON_NULL, JsonInclude.Include.NON_NULL))
       .addModule(new GedcomJacksonModule());
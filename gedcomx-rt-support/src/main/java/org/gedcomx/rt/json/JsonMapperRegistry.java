@@ -0,0 +1,208 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.rt.json;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.gedcomx.rt.GedcomNamespaceManager;
+import tools.jackson.databind.ObjectReader;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.SerializationFeature;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of configured JSON mappers, so that each configuration is built only once and Jackson's serializer and
+ * deserializer caches are kept from one use to the next. Building a {@link JsonMapper} (as
+ * {@link GedcomJacksonModule#createJsonMapper(Class[])} does) is expensive, and so is the first use of a new mapper,
+ * so code that serializes many documents should get its mapper here rather than creating one each time.
+ * <p>
+ * Mappers are keyed by the set of context classes, whether the output is pretty-printed, and the property inclusion.
+ * The {@link ObjectReader} and {@link ObjectWriter} for each root type are cached as well. Everything returned from
+ * this registry is immutable and may be shared between threads.
+ *
+ * @see org.gedcomx.rt.SerializationUtil
+ */
+public final class JsonMapperRegistry {
+
+  private static final ConcurrentMap<Key, Entry> MAPPERS = new ConcurrentHashMap<>();
+  // Mappers derived from mappers supplied by the caller, keyed (weakly) by the supplied mapper.
+  private static final Map<JsonMapper, ConcurrentMap<Key, Entry>> DERIVED = Collections.synchronizedMap(new WeakHashMap<>());
+
+  private JsonMapperRegistry() {
+  }
+
+  /**
+   * Get the JSON mapper for the specified context classes, configured as by
+   * {@link GedcomJacksonModule#createJsonMapper(Class[])} (pretty-printed, excluding null values).
+   *
+   * @param classes the context classes.
+   * @return The (shared) JSON mapper.
+   */
+  public static JsonMapper getJsonMapper(Class<?>... classes) {
+    return getJsonMapper(true, JsonInclude.Include.NON_NULL, classes);
+  }
+
+  /**
+   * Get the JSON mapper for the specified context classes and output settings.
+   *
+   * @param pretty whether to pretty-print the output.
+   * @param inclusion which property values to include in the output.
+   * @param classes the context classes.
+   * @return The (shared) JSON mapper.
+   */
+  public static JsonMapper getJsonMapper(boolean pretty, JsonInclude.Include inclusion, Class<?>... classes) {
+    return getEntry(pretty, inclusion, classes).mapper;
+  }
+
+  /**
+   * Get a reader for the given root type, using the JSON mapper for that type.
+   *
+   * @param type the root type to read.
+   * @return The (shared) reader.
+   */
+  public static ObjectReader getReader(Class<?> type) {
+    return getEntry(true, JsonInclude.Include.NON_NULL, type).readerFor(type);
+  }
+
+  /**
+   * Get a pretty-printing writer, excluding null values, for the given root type, using the JSON mapper for that type.
+   *
+   * @param type the root type to write.
+   * @return The (shared) writer.
+   */
+  public static ObjectWriter getWriter(Class<?> type) {
+    return getWriter(type, true, JsonInclude.Include.NON_NULL);
+  }
+
+  /**
+   * Get a writer for the given root type and output settings, using the JSON mapper for that type.
+   *
+   * @param type the root type to write.
+   * @param pretty whether to pretty-print the output.
+   * @param inclusion which property values to include in the output.
+   * @return The (shared) writer.
+   */
+  public static ObjectWriter getWriter(Class<?> type, boolean pretty, JsonInclude.Include inclusion) {
+    return getEntry(pretty, inclusion, type).writerFor(type);
+  }
+
+  /**
+   * Get a writer for the given root type that uses a copy of the given mapper with the given output settings. The copy
+   * is made only once per mapper and settings (and is released when the given mapper is no longer in use).
+   *
+   * @param mapper the mapper to copy.
+   * @param type the root type to write.
+   * @param pretty whether to pretty-print the output.
+   * @param inclusion which property values to include in the output.
+   * @return The (shared) writer.
+   */
+  public static ObjectWriter getWriter(JsonMapper mapper, Class<?> type, boolean pretty, JsonInclude.Include inclusion) {
+    ConcurrentMap<Key, Entry> derived = DERIVED.computeIfAbsent(mapper, m -> new ConcurrentHashMap<>());
+    Key key = new Key(Collections.emptySet(), pretty, inclusion);
+    return derived.computeIfAbsent(key, k -> new Entry(mapper.rebuild()
+      .configure(SerializationFeature.INDENT_OUTPUT, pretty)
+      .changeDefaultPropertyInclusion(incl -> JsonInclude.Value.construct(inclusion, inclusion))
+      .build())).writerFor(type);
+  }
+
+  private static Entry getEntry(boolean pretty, JsonInclude.Include inclusion, Class<?>... classes) {
+    Key key = new Key(new HashSet<>(Arrays.asList(classes)), pretty, inclusion);
+    return MAPPERS.computeIfAbsent(key, k -> {
+      Entry entry = new Entry(GedcomJacksonModule.createJsonMapperBuilder(pretty, classes)
+        .changeDefaultPropertyInclusion(incl -> JsonInclude.Value.construct(inclusion, inclusion))
+        .build());
+      // A registry mapper that is passed back in already has its own settings, so it needn't be copied for them.
+      ConcurrentMap<Key, Entry> derived = new ConcurrentHashMap<>();
+      derived.put(new Key(Collections.emptySet(), pretty, inclusion), entry);
+      DERIVED.put(entry.mapper, derived);
+      return entry;
+    });
+  }
+
+  /**
+   * A configured mapper, with its readers and writers.
+   */
+  private static final class Entry {
+    private final JsonMapper mapper;
+    private final ObjectWriter writer;
+    private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    // Root types that have been registered with the namespace manager.
+    private final Set<Class<?>> registered = ConcurrentHashMap.newKeySet();
+
+    private Entry(JsonMapper mapper) {
+      this.mapper = mapper;
+      this.writer = mapper.writer();
+    }
+
+    private ObjectReader readerFor(Class<?> type) {
+      register(type);
+      return readers.computeIfAbsent(type, mapper::readerFor);
+    }
+
+    private ObjectWriter writerFor(Class<?> type) {
+      // The writer serializes by runtime type, so (as with JsonMapper.writeValue) one writer serves all root types.
+      register(type);
+      return writer;
+    }
+
+    private void register(Class<?> type) {
+      if (registered.add(type)) {
+        GedcomNamespaceManager.registerKnownJsonType(type);
+      }
+    }
+  }
+
+  /**
+   * The configuration of a mapper.
+   */
+  private static final class Key {
+    private final Set<Class<?>> classes;
+    private final boolean pretty;
+    private final JsonInclude.Include inclusion;
+
+    private Key(Set<Class<?>> classes, boolean pretty, JsonInclude.Include inclusion) {
+      this.classes = classes;
+      this.pretty = pretty;
+      this.inclusion = inclusion;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return pretty == key.pretty && inclusion == key.inclusion && classes.equals(key.classes);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(classes, pretty, inclusion);
+    }
+  }
+}
@@ -16,10 +16,12 @@
 package org.gedcomx.rt.json;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 
 import tools.jackson.core.JacksonException;
 import tools.jackson.core.JsonGenerator;
@@ -28,12 +30,20 @@ import tools.jackson.databind.SerializationContext;
 import tools.jackson.databind.ValueSerializer;
 
 /**
+ * Serializes a collection of {@link HasJsonKey} objects as a JSON object, grouping the objects by their JSON key. Keys
+ * are written in the order in which they first appear in the collection, so the same collection always serializes the
+ * same way.
+ *
  * @author Ryan Heaton
  */
 public class KeyedListSerializer extends ValueSerializer<Collection<? extends HasJsonKey>> {
 
   public static final String JSON_DEFAULT_KEY = "$";
 
+  // Collections up to this size (which is nearly all of them) are grouped by searching the collection itself, without
+  // allocating anything. Bigger collections are grouped using an index of where each key next appears.
+  static final int MAX_SEARCHED_SIZE = 16;
+
   @Override
   public void serialize(Collection<? extends HasJsonKey> value, JsonGenerator jgen, SerializationContext provider)
     throws JacksonException {
@@ -48,33 +58,45 @@ public class KeyedListSerializer extends ValueSerializer<Collection<? extends Ha
       jgen.writeNull();
     }
     else {
+      List<?> items = value instanceof List && value instanceof RandomAccess ? (List<?>) value : new ArrayList<Object>(value);
+      int[] next = items.size() > MAX_SEARCHED_SIZE ? indexKeys(items) : null;
+      boolean[] written = next != null ? new boolean[items.size()] : null;
+
       jgen.writeStartObject();
-      Map<String, List<Object>> bykey = new HashMap<>();
-      for (Object keyed : value) {
-        String jsonKey = ((HasJsonKey) keyed).getJsonKey();
-        if (jsonKey == null) {
-          jsonKey = JSON_DEFAULT_KEY;
+      // The items are nearly always of a single class, so remember the last serializer instead of looking it up for each.
+      Class<?> itemClass = null;
+      ValueSerializer<Object> itemSerializer = null;
+      for (int first = 0; first < items.size(); first++) {
+        String jsonKey = getJsonKey(items.get(first));
+        if (written != null ? written[first] : isRepeated(items, first, jsonKey)) {
+          // already written with the first item that has this key.
+          continue;
         }
 
-        List<Object> keyedList = bykey.computeIfAbsent(jsonKey, k -> new ArrayList<>());
-        keyedList.add(keyed);
-
-        boolean unique = ((HasJsonKey) keyed).isHasUniqueKey();
-        if (unique && keyedList.size() > 1) {
-          throw DatabindException.from(jgen, "Attempt to serialize " + keyed + " failed because it's key '" + jsonKey + "' is not unique.");
+        int second = nextIndex(items, next, first, jsonKey);
+        for (int i = second; i >= 0; i = nextIndex(items, next, i, jsonKey)) {
+          Object keyed = items.get(i);
+          if (((HasJsonKey) keyed).isHasUniqueKey()) {
+            throw DatabindException.from(jgen, "Attempt to serialize " + keyed + " failed because it's key '" + jsonKey + "' is not unique.");
+          }
         }
-      }
 
-      for (Map.Entry<String, List<Object>> keyedObjects : bykey.entrySet()) {
-        String jsonKey = keyedObjects.getKey();
         jgen.writeName(jsonKey);
-        boolean notUnique = keyedObjects.getValue().size() != 1 || !((HasJsonKey)keyedObjects.getValue().get(0)).isHasUniqueKey();
+        boolean notUnique = second >= 0 || !((HasJsonKey) items.get(first)).isHasUniqueKey();
         if (notUnique) {
           jgen.writeStartArray();
         }
 
-        for (Object keyed : keyedObjects.getValue()) {
-          provider.findTypedValueSerializer(keyed.getClass(), true).serialize(keyed, jgen, provider);
+        for (int i = first; i >= 0; i = nextIndex(items, next, i, jsonKey)) {
+          Object keyed = items.get(i);
+          if (keyed.getClass() != itemClass) {
+            itemClass = keyed.getClass();
+            itemSerializer = provider.findTypedValueSerializer(itemClass, true);
+          }
+          itemSerializer.serialize(keyed, jgen, provider);
+          if (written != null) {
+            written[i] = true;
+          }
         }
 
         if (notUnique) {
@@ -84,4 +106,47 @@ public class KeyedListSerializer extends ValueSerializer<Collection<? extends Ha
       jgen.writeEndObject();
     }
   }
+
+  private static String getJsonKey(Object keyed) {
+    String jsonKey = ((HasJsonKey) keyed).getJsonKey();
+    return jsonKey == null ? JSON_DEFAULT_KEY : jsonKey;
+  }
+
+  /**
+   * Index the keys of a big collection: for each item, the position of the next item with the same key (or -1).
+   */
+  private static int[] indexKeys(List<?> items) {
+    int[] next = new int[items.size()];
+    Arrays.fill(next, -1);
+    Map<String, Integer> last = new HashMap<>();
+    for (int i = 0; i < items.size(); i++) {
+      Integer previous = last.put(getJsonKey(items.get(i)), i);
+      if (previous != null) {
+        next[previous] = i;
+      }
+    }
+    return next;
+  }
+
+  private static boolean isRepeated(List<?> items, int index, String jsonKey) {
+    for (int i = 0; i < index; i++) {
+      if (jsonKey.equals(getJsonKey(items.get(i)))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int nextIndex(List<?> items, int[] next, int index, String jsonKey) {
+    if (next != null) {
+      return next[index];
+    }
+
+    for (int i = index + 1; i < items.size(); i++) {
+      if (jsonKey.equals(getJsonKey(items.get(i)))) {
+        return i;
+      }
+    }
+    return -1;
+  }
 }
@@ -0,0 +1,224 @@
+/**
+ * Copyright Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.rt.xml;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.Unmarshaller;
+import org.gedcomx.rt.GedcomNamespaceManager;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of JAXB contexts, so that each context is created only once, with pools of configured marshallers and
+ * unmarshallers for the contexts it creates. Creating a {@link JAXBContext} takes tens of milliseconds, which dominates
+ * the time it takes to read or write a small document, so code that reads or writes many documents should get its
+ * context here rather than creating one each time.
+ * <p>
+ * Contexts are keyed by the set of context classes. A context is thread-safe, but its marshallers and unmarshallers
+ * are not, so they are lent out to one caller at a time through {@link #withMarshaller} and {@link #withUnmarshaller}.
+ * A callback must not keep the marshaller or unmarshaller after it returns, or change its configuration.
+ *
+ * @see org.gedcomx.rt.SerializationUtil
+ */
+public final class JaxbContextRegistry {
+
+  // The most marshallers (for each configuration) or unmarshallers kept idle for a context.
+  private static final int MAX_POOLED = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+  private static final ConcurrentMap<Set<Class<?>>, Pool> CONTEXTS = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<JAXBContext, Pool> POOLS = new ConcurrentHashMap<>();
+
+  private JaxbContextRegistry() {
+  }
+
+  /**
+   * Something to do with a marshaller.
+   *
+   * @param <T> The result type.
+   */
+  @FunctionalInterface
+  public interface MarshallerCallback<T> {
+    T doWithMarshaller(Marshaller marshaller) throws JAXBException;
+  }
+
+  /**
+   * Something to do with an unmarshaller.
+   *
+   * @param <T> The result type.
+   */
+  @FunctionalInterface
+  public interface UnmarshallerCallback<T> {
+    T doWithUnmarshaller(Unmarshaller unmarshaller) throws JAXBException;
+  }
+
+  /**
+   * Get the JAXB context for the specified classes.
+   *
+   * @param classes the context classes.
+   * @return The (shared) JAXB context.
+   * @throws JAXBException If the context could not be created.
+   */
+  public static JAXBContext getContext(Class<?>... classes) throws JAXBException {
+    try {
+      return CONTEXTS.computeIfAbsent(new HashSet<>(Arrays.asList(classes)), key -> {
+        try {
+          Pool pool = new Pool(JAXBContext.newInstance(classes));
+          POOLS.put(pool.context, pool);
+          return pool;
+        }
+        catch (JAXBException e) {
+          throw new ContextException(e);
+        }
+      }).context;
+    }
+    catch (ContextException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Lend a marshaller for the given context to the given callback. Marshallers for contexts from this registry are
+   * pooled; for any other context a new marshaller is created.
+   *
+   * @param context the context.
+   * @param rootClass the class whose namespace is to be the default namespace of the output, or null to leave the
+   *                  namespace prefixes to JAXB.
+   * @param pretty whether to format the output.
+   * @param fragment whether to leave out the XML declaration.
+   * @param callback what to do with the marshaller.
+   * @param <T> The result type.
+   * @return The result of the callback.
+   * @throws JAXBException If the callback (or creating the marshaller) throws it.
+   */
+  public static <T> T withMarshaller(JAXBContext context, Class<?> rootClass, boolean pretty, boolean fragment, MarshallerCallback<T> callback) throws JAXBException {
+    Pool pool = POOLS.get(context);
+    MarshallerKey key = new MarshallerKey(rootClass, pretty, fragment);
+    BlockingQueue<Marshaller> idle = pool == null ? null : pool.marshallers.computeIfAbsent(key, k -> new ArrayBlockingQueue<>(MAX_POOLED));
+    Marshaller marshaller = idle == null ? null : idle.poll();
+    if (marshaller == null) {
+      marshaller = createMarshaller(context, key);
+    }
+    T result = callback.doWithMarshaller(marshaller);
+    if (idle != null) {
+      idle.offer(marshaller);
+    }
+    return result;
+  }
+
+  /**
+   * Lend an unmarshaller for the given context to the given callback. Unmarshallers for contexts from this registry are
+   * pooled; for any other context a new unmarshaller is created.
+   *
+   * @param context the context.
+   * @param callback what to do with the unmarshaller.
+   * @param <T> The result type.
+   * @return The result of the callback.
+   * @throws JAXBException If the callback (or creating the unmarshaller) throws it.
+   */
+  public static <T> T withUnmarshaller(JAXBContext context, UnmarshallerCallback<T> callback) throws JAXBException {
+    Pool pool = POOLS.get(context);
+    Unmarshaller unmarshaller = pool == null ? null : pool.unmarshallers.poll();
+    if (unmarshaller == null) {
+      unmarshaller = context.createUnmarshaller();
+    }
+    T result = callback.doWithUnmarshaller(unmarshaller);
+    if (pool != null) {
+      pool.unmarshallers.offer(unmarshaller);
+    }
+    return result;
+  }
+
+  private static Marshaller createMarshaller(JAXBContext context, MarshallerKey key) throws JAXBException {
+    Marshaller marshaller = context.createMarshaller();
+    if (key.pretty) {
+      marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+    }
+    if (key.fragment) {
+      marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+    }
+    if (key.rootClass != null) {
+      marshaller.setProperty("org.glassfish.jaxb.namespacePrefixMapper", new GedcomNamespaceManager(key.rootClass));
+    }
+    return marshaller;
+  }
+
+  /**
+   * A context with its idle marshallers and unmarshallers.
+   */
+  private static final class Pool {
+    private final JAXBContext context;
+    private final ConcurrentMap<MarshallerKey, BlockingQueue<Marshaller>> marshallers = new ConcurrentHashMap<>();
+    private final BlockingQueue<Unmarshaller> unmarshallers = new ArrayBlockingQueue<>(MAX_POOLED);
+
+    private Pool(JAXBContext context) {
+      this.context = context;
+    }
+  }
+
+  /**
+   * The configuration of a marshaller.
+   */
+  private static final class MarshallerKey {
+    private final Class<?> rootClass;
+    private final boolean pretty;
+    private final boolean fragment;
+
+    private MarshallerKey(Class<?> rootClass, boolean pretty, boolean fragment) {
+      this.rootClass = rootClass;
+      this.pretty = pretty;
+      this.fragment = fragment;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof MarshallerKey)) {
+        return false;
+      }
+      MarshallerKey key = (MarshallerKey) o;
+      return pretty == key.pretty && fragment == key.fragment && Objects.equals(rootClass, key.rootClass);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(rootClass, pretty, fragment);
+    }
+  }
+
+  /**
+   * Carries a checked exception out of a mapping function.
+   */
+  private static final class ContextException extends RuntimeException {
+    private ContextException(JAXBException cause) {
+      super(cause);
+    }
+
+    @Override
+    public synchronized JAXBException getCause() {
+      return (JAXBException) super.getCause();
+    }
+  }
+}